@@ -0,0 +1,91 @@
+package io.powerledger.vpp.benchmark;
+
+import io.powerledger.vpp.dto.AvailableCapacityResponse;
+import io.powerledger.vpp.telemetry.AvailableEnergyTotals;
+import io.powerledger.vpp.telemetry.TelemetryStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Contention between telemetry updates and available-capacity queries on {@link AvailableEnergyTotals}.
+ * The {@code contended} group runs three threads appending readings to random batteries, each of
+ * which updates the live totals, against one thread querying a postcode range; {@code query} is the
+ * same query without concurrent updates, for comparison.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Group)
+public class AvailableEnergyBenchmark {
+
+    @Param({"200000"})
+    private int fleetSize;
+
+    /** Number of postcodes covered by the queried range, out of 10,000. */
+    @Param({"100", "10000"})
+    private int rangeWidth;
+
+    private TelemetryStore telemetryStore;
+    private AvailableEnergyTotals availableEnergyTotals;
+    private String startPostcode;
+    private String endPostcode;
+
+    @Setup
+    public void setUp() {
+        availableEnergyTotals = new AvailableEnergyTotals();
+        telemetryStore = new TelemetryStore(SyntheticFleet.repositoryOf(SyntheticFleet.rows(fleetSize)),
+                availableEnergyTotals, true, 24);
+        telemetryStore.load();
+        long now = System.currentTimeMillis();
+        SplittableRandom random = new SplittableRandom(1);
+        // One reading per battery, so every battery is reporting
+        for (int id = 1; id <= fleetSize; id++) {
+            telemetryStore.append(id, now, random.nextInt(101), 0);
+        }
+        int start = (10_000 - rangeWidth) / 2;
+        startPostcode = SyntheticFleet.postcode(start);
+        endPostcode = SyntheticFleet.postcode(start + rangeWidth - 1);
+    }
+
+    @State(Scope.Thread)
+    public static class Readings {
+        final SplittableRandom random = new SplittableRandom();
+    }
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(3)
+    public boolean update(Readings readings) {
+        SplittableRandom random = readings.random;
+        return telemetryStore.append(random.nextInt(fleetSize) + 1, System.currentTimeMillis(), random.nextInt(101), 0);
+    }
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(1)
+    public AvailableCapacityResponse contendedQuery() {
+        return availableEnergyTotals.availableInRange(startPostcode, endPostcode);
+    }
+
+    @Benchmark
+    @Group("query")
+    public AvailableCapacityResponse query() {
+        return availableEnergyTotals.availableInRange(startPostcode, endPostcode);
+    }
+}
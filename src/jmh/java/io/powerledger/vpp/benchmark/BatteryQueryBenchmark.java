@@ -0,0 +1,90 @@
+package io.powerledger.vpp.benchmark;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.powerledger.vpp.cache.BatteryStatsCache;
+import io.powerledger.vpp.dto.BatteryStatsResponse;
+import io.powerledger.vpp.dto.CapacityAggregate;
+import io.powerledger.vpp.geo.PostcodeCentroidIndex;
+import io.powerledger.vpp.index.BatteryNameIndex;
+import io.powerledger.vpp.index.BatteryRangeIndex;
+import io.powerledger.vpp.index.CapacitySketchIndex;
+import io.powerledger.vpp.repository.BatteryRepository;
+import io.powerledger.vpp.serviceImpl.BatteryServiceImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.io.ClassPathResource;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Range query hot path of {@link BatteryServiceImpl} served by the in-memory index: postcode
+ * slicing, capacity filtering, name sorting and the capacity sums. The result cache is disabled
+ * so every invocation computes the response.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Benchmark)
+public class BatteryQueryBenchmark {
+
+    @Param({"1000", "100000", "1000000", "10000000"})
+    private int fleetSize;
+
+    /** Number of postcodes covered by the queried range, out of 10,000. */
+    @Param({"10", "1000", "10000"})
+    private int rangeWidth;
+
+    /** "none" queries without capacity bounds; "half" keeps roughly the middle half of capacities. */
+    @Param({"none", "half"})
+    private String capacityFilter;
+
+    private BatteryServiceImpl batteryService;
+    private String startPostcode;
+    private String endPostcode;
+    private Long minCapacity;
+    private Long maxCapacity;
+
+    @Setup
+    public void setUp() {
+        BatteryRepository repository = SyntheticFleet.repositoryOf(SyntheticFleet.rows(fleetSize));
+        BatteryRangeIndex index = new BatteryRangeIndex(repository, true, "");
+        index.load();
+
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        batteryService = new BatteryServiceImpl(repository, meterRegistry, index,
+                new BatteryStatsCache(meterRegistry, false, 1, Duration.ofMinutes(1)), event -> { },
+                new CapacitySketchIndex(repository, false), new BatteryNameIndex(repository, false),
+                new PostcodeCentroidIndex(new ClassPathResource("geo/postcode-centroids.csv"), 0.5));
+
+        int start = (10_000 - rangeWidth) / 2;
+        startPostcode = SyntheticFleet.postcode(start);
+        endPostcode = SyntheticFleet.postcode(start + rangeWidth - 1);
+        if (capacityFilter.equals("half")) {
+            int quarter = (SyntheticFleet.MAX_CAPACITY - SyntheticFleet.MIN_CAPACITY) / 4;
+            minCapacity = (long) SyntheticFleet.MIN_CAPACITY + quarter;
+            maxCapacity = (long) SyntheticFleet.MAX_CAPACITY - quarter;
+        }
+    }
+
+    @Benchmark
+    public BatteryStatsResponse getBatteriesInRange() {
+        return batteryService.getBatteriesInRange(startPostcode, endPostcode, minCapacity, maxCapacity);
+    }
+
+    @Benchmark
+    public CapacityAggregate getCapacityInRange() {
+        return batteryService.getCapacityInRange(startPostcode, endPostcode, minCapacity, maxCapacity);
+    }
+}
@@ -0,0 +1,52 @@
+package io.powerledger.vpp.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectWriter;
+import io.powerledger.vpp.dto.BatteryStatsResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Jackson serialisation of {@link BatteryStatsResponse} with the ObjectMapper defaults Spring MVC
+ * uses, written to a discarding stream so only encoding is measured.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Benchmark)
+public class BatteryStatsResponseSerializationBenchmark {
+
+    @Param({"10", "1000", "100000", "1000000"})
+    private int nameCount;
+
+    private ObjectWriter writer;
+    private BatteryStatsResponse response;
+
+    @Setup
+    public void setUp() {
+        writer = Jackson2ObjectMapperBuilder.json().build().writerFor(BatteryStatsResponse.class);
+        List<String> names = SyntheticFleet.sortedNames(nameCount);
+        response = new BatteryStatsResponse(names, 50_500L * nameCount, 50_500.0);
+    }
+
+    @Benchmark
+    public void serialize() throws IOException {
+        writer.writeValue(OutputStream.nullOutputStream(), response);
+    }
+}
@@ -0,0 +1,75 @@
+package io.powerledger.vpp.benchmark;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.powerledger.vpp.cache.BatteryStatsCache;
+import io.powerledger.vpp.dto.DispatchPlanRequest;
+import io.powerledger.vpp.dto.DispatchPlanResponse;
+import io.powerledger.vpp.geo.PostcodeCentroidIndex;
+import io.powerledger.vpp.index.BatteryNameIndex;
+import io.powerledger.vpp.index.BatteryRangeIndex;
+import io.powerledger.vpp.index.CapacitySketchIndex;
+import io.powerledger.vpp.repository.BatteryRepository;
+import io.powerledger.vpp.serviceImpl.BatteryServiceImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.io.ClassPathResource;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Dispatch plan latency of {@link BatteryServiceImpl} against fleet size, with the whole fleet in
+ * range and served by the in-memory index: ordering every capacity and selecting the plan.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Benchmark)
+public class DispatchPlanBenchmark {
+
+    @Param({"10000", "100000", "1000000"})
+    private int fleetSize;
+
+    /** Target as a fraction of the fleet's total capacity. */
+    @Param({"0.01", "0.5"})
+    private double targetFraction;
+
+    @Param({"MIN_COUNT", "MIN_OVERSHOOT"})
+    private DispatchPlanRequest.Objective objective;
+
+    private BatteryServiceImpl batteryService;
+    private DispatchPlanRequest request;
+
+    @Setup
+    public void setUp() {
+        BatteryRepository repository = SyntheticFleet.repositoryOf(SyntheticFleet.rows(fleetSize));
+        BatteryRangeIndex index = new BatteryRangeIndex(repository, true, "");
+        index.load();
+
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        batteryService = new BatteryServiceImpl(repository, meterRegistry, index,
+                new BatteryStatsCache(meterRegistry, false, 1, Duration.ofMinutes(1)), event -> { },
+                new CapacitySketchIndex(repository, false), new BatteryNameIndex(repository, false),
+                new PostcodeCentroidIndex(new ClassPathResource("geo/postcode-centroids.csv"), 0.5));
+
+        long totalCapacity = index.aggregateCapacityInRange("0000", "9999", Integer.MIN_VALUE, Integer.MAX_VALUE)
+                .getTotalCapacity();
+        request = new DispatchPlanRequest("0000", "9999", (long) (totalCapacity * targetFraction), objective);
+    }
+
+    @Benchmark
+    public DispatchPlanResponse planDispatch() {
+        return batteryService.planDispatch(request);
+    }
+}
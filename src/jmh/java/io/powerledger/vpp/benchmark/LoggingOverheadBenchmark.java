@@ -0,0 +1,112 @@
+package io.powerledger.vpp.benchmark;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.FileAppender;
+import io.powerledger.vpp.logging.MeteredAsyncAppender;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-request cost on the calling thread of the range query log line, written to a file with the
+ * application's pattern.
+ * <ul>
+ *     <li>{@code sync}: the previous setup, INFO written synchronously by the file appender</li>
+ *     <li>{@code async}: INFO through {@link MeteredAsyncAppender} with the default queue and drop policy</li>
+ *     <li>{@code debug-disabled}: the line demoted to DEBUG with the logger at INFO, as now configured</li>
+ * </ul>
+ */
+@BenchmarkMode({Mode.AverageTime, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LoggingOverheadBenchmark {
+
+    @Param({"sync", "async", "debug-disabled"})
+    private String mode;
+
+    private LoggerContext loggerContext;
+    private Logger logger;
+    private MeteredAsyncAppender asyncAppender;
+    private Path logFile;
+
+    @Setup
+    public void setUp() throws IOException {
+        logFile = Files.createTempFile("logging-benchmark", ".log");
+        // The SLF4J-bound context, so events get the real MDC adapter; reset drops the default console appender
+        loggerContext = (LoggerContext) LoggerFactory.getILoggerFactory();
+        loggerContext.reset();
+
+        PatternLayoutEncoder encoder = new PatternLayoutEncoder();
+        encoder.setContext(loggerContext);
+        encoder.setPattern("%d{yyyy-MM-dd HH:mm:ss} [%thread] %-5level %logger{36} - %msg%n");
+        encoder.start();
+
+        FileAppender<ILoggingEvent> fileAppender = new FileAppender<>();
+        fileAppender.setContext(loggerContext);
+        fileAppender.setName("FILE");
+        fileAppender.setFile(logFile.toString());
+        fileAppender.setEncoder(encoder);
+        // Matches logback-spring.xml: behind the queue the file appender flushes only when its buffer fills
+        fileAppender.setImmediateFlush(!mode.equals("async"));
+        fileAppender.start();
+
+        Appender<ILoggingEvent> appender = fileAppender;
+        if (mode.equals("async")) {
+            asyncAppender = new MeteredAsyncAppender();
+            asyncAppender.setContext(loggerContext);
+            asyncAppender.setName("ASYNC_FILE");
+            asyncAppender.setQueueSize(8192);
+            asyncAppender.setDiscardingThreshold(1638);
+            asyncAppender.addAppender(fileAppender);
+            asyncAppender.start();
+            appender = asyncAppender;
+        }
+
+        logger = loggerContext.getLogger("io.powerledger.vpp.serviceImpl.BatteryServiceImpl");
+        logger.setLevel(Level.INFO);
+        logger.addAppender(appender);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        if (asyncAppender != null) {
+            System.out.printf("%nDropped %,d events%n", asyncAppender.getDroppedCount());
+        }
+        loggerContext.stop();
+        Files.deleteIfExists(logFile);
+    }
+
+    @Benchmark
+    public void logRangeQuery() {
+        if (mode.equals("debug-disabled")) {
+            logger.debug("Fetching batteries between postcodes {} and {} with capacity between {} and {}",
+                    "6000", "6200", 10_000L, null);
+        } else {
+            logger.info("Fetching batteries between postcodes {} and {} with capacity between {} and {}",
+                    "6000", "6200", 10_000L, null);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package io.powerledger.vpp.benchmark;
+
+import io.powerledger.vpp.dto.BatteryRow;
+import io.powerledger.vpp.index.BatteryNameIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Top-10 name search latency of {@link BatteryNameIndex} against fleet size. Synthetic names look like
+ * {@code Battery 4821-17}, so every name shares the {@code battery} prefix.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Benchmark)
+public class NameSearchBenchmark {
+
+    @Param({"100000", "1000000", "2000000"})
+    private int fleetSize;
+
+    /**
+     * {@code battery 12}: a prefix shared by many names; {@code 4-17}: a substring in the middle of names;
+     * {@code 99-9999}: a rare substring; {@code pylon}: no match.
+     */
+    @Param({"battery 12", "4-17", "99-9999", "pylon"})
+    private String query;
+
+    private BatteryNameIndex index;
+
+    @Setup
+    public void setUp() {
+        index = new BatteryNameIndex(SyntheticFleet.repositoryOf(SyntheticFleet.rows(fleetSize)), true);
+        index.load();
+    }
+
+    @Benchmark
+    public List<BatteryRow> search() {
+        return index.search(query, 10);
+    }
+}
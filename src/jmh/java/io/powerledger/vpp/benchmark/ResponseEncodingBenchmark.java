@@ -0,0 +1,109 @@
+package io.powerledger.vpp.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import io.powerledger.vpp.dto.BatteryStatsResponse;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Server CPU per {@link BatteryStatsResponse} for each negotiated encoding, with the mappers the
+ * converters use. {@code json+gzip} adds the compression Tomcat applies to JSON responses; the binary
+ * encodings are not in {@code server.compression.mime-types} and go out uncompressed. Bytes on the
+ * wire for each encoding and size are reported as the {@code wireBytes} secondary result.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Benchmark)
+public class ResponseEncodingBenchmark {
+
+    @Param({"100", "10000", "1000000"})
+    private int nameCount;
+
+    @Param({"json+gzip", "json", "smile", "cbor"})
+    private String encoding;
+
+    private ObjectWriter writer;
+    private boolean gzip;
+    private BatteryStatsResponse response;
+
+    @Setup
+    public void setUp() throws IOException {
+        writer = switch (encoding) {
+            case "json", "json+gzip" -> Jackson2ObjectMapperBuilder.json().build().writerFor(BatteryStatsResponse.class);
+            case "smile" -> Jackson2ObjectMapperBuilder.smile().factory(new SmileFactory()).build().writerFor(BatteryStatsResponse.class);
+            case "cbor" -> Jackson2ObjectMapperBuilder.cbor().factory(new CBORFactory()).build().writerFor(BatteryStatsResponse.class);
+            default -> throw new IllegalArgumentException("Unknown encoding " + encoding);
+        };
+        gzip = encoding.endsWith("+gzip");
+        List<String> names = SyntheticFleet.sortedNames(nameCount);
+        response = new BatteryStatsResponse(names, 50_500L * nameCount, 50_500.0);
+    }
+
+    @Benchmark
+    public long encode(Wire counters) throws IOException {
+        CountingOutputStream wire = new CountingOutputStream();
+        encode(wire);
+        counters.wireBytes = wire.bytes;
+        return wire.bytes;
+    }
+
+    private void encode(CountingOutputStream wire) throws IOException {
+        if (gzip) {
+            try (GZIPOutputStream compressed = new GZIPOutputStream(wire, 8192)) {
+                writer.writeValue(compressed, response);
+            }
+        } else {
+            writer.writeValue(wire, response);
+        }
+    }
+
+    /**
+     * Size of the last encoded response, reported next to the time per response.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Wire {
+
+        public long wireBytes;
+    }
+
+    /**
+     * Discards what is written, counting the bytes.
+     */
+    private static final class CountingOutputStream extends OutputStream {
+
+        long bytes;
+
+        @Override
+        public void write(int b) {
+            bytes++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            bytes += len;
+        }
+    }
+}
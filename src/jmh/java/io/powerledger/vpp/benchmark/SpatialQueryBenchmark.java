@@ -0,0 +1,84 @@
+package io.powerledger.vpp.benchmark;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.powerledger.vpp.cache.BatteryStatsCache;
+import io.powerledger.vpp.dto.BatteryRow;
+import io.powerledger.vpp.dto.BatteryStatsResponse;
+import io.powerledger.vpp.geo.PostcodeCentroidIndex;
+import io.powerledger.vpp.index.BatteryNameIndex;
+import io.powerledger.vpp.index.BatteryRangeIndex;
+import io.powerledger.vpp.index.CapacitySketchIndex;
+import io.powerledger.vpp.repository.BatteryRepository;
+import io.powerledger.vpp.serviceImpl.BatteryServiceImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Radius and nearest-battery queries of {@link BatteryServiceImpl} around Perth (6000), served by the
+ * centroid grid and the in-memory index. Every synthetic battery is moved to a postcode of the bundled
+ * centroid file, so all of them can be located.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Benchmark)
+public class SpatialQueryBenchmark {
+
+    @Param({"100000", "1000000"})
+    private int fleetSize;
+
+    /** {@code near:R} finds the batteries within R km; {@code nearest:K} finds the K nearest batteries. */
+    @Param({"near:25", "near:1000", "nearest:10", "nearest:1000"})
+    private String query;
+
+    private BatteryServiceImpl batteryService;
+    private boolean nearest;
+    private int argument;
+
+    @Setup
+    public void setUp() {
+        PostcodeCentroidIndex centroids = new PostcodeCentroidIndex(new ClassPathResource("geo/postcode-centroids.csv"), 0.5);
+        int[] located = centroids.withinRadius("6000", 20_000).postcodes();
+        List<BatteryRow> rows = SyntheticFleet.rows(fleetSize).stream()
+                .map(row -> new BatteryRow(row.getId(), row.getName(),
+                        String.format("%04d", located[(int) (row.getId() % located.length)]), row.getCapacity()))
+                .toList();
+
+        BatteryRepository repository = SyntheticFleet.repositoryOf(rows);
+        BatteryRangeIndex index = new BatteryRangeIndex(repository, true, "");
+        index.load();
+
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        batteryService = new BatteryServiceImpl(repository, meterRegistry, index,
+                new BatteryStatsCache(meterRegistry, false, 1, Duration.ofMinutes(1)), event -> { },
+                new CapacitySketchIndex(repository, false), new BatteryNameIndex(repository, false), centroids);
+        ReflectionTestUtils.setField(batteryService, "nearestInitialRadiusKm", 25.0);
+
+        nearest = query.startsWith("nearest:");
+        argument = Integer.parseInt(query.substring(query.indexOf(':') + 1));
+    }
+
+    @Benchmark
+    public BatteryStatsResponse query() {
+        return nearest
+                ? batteryService.getNearestBatteries("6000", argument, null, null)
+                : batteryService.getBatteriesNear("6000", argument, null, null);
+    }
+}
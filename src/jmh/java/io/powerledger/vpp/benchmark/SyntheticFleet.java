@@ -0,0 +1,68 @@
+package io.powerledger.vpp.benchmark;
+
+import io.powerledger.vpp.dto.BatteryRow;
+import io.powerledger.vpp.repository.BatteryRepository;
+import io.powerledger.vpp.repository.BatteryRepositoryCustom;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Deterministic synthetic fleets for the benchmarks.
+ * Postcodes are spread uniformly over 0000-9999 and capacities over 1,000-100,000 Wh.
+ */
+final class SyntheticFleet {
+
+    static final int MIN_CAPACITY = 1_000;
+    static final int MAX_CAPACITY = 100_000;
+
+    private static final long SEED = 20_240_501L;
+    private static final String[] POSTCODES = new String[10_000];
+
+    static {
+        for (int i = 0; i < POSTCODES.length; i++) {
+            POSTCODES[i] = String.format("%04d", i);
+        }
+    }
+
+    private SyntheticFleet() {
+    }
+
+    static List<BatteryRow> rows(int size) {
+        SplittableRandom random = new SplittableRandom(SEED);
+        List<BatteryRow> rows = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            rows.add(new BatteryRow((long) i + 1, "Battery " + random.nextInt(size) + "-" + i,
+                    POSTCODES[random.nextInt(POSTCODES.length)], random.nextInt(MIN_CAPACITY, MAX_CAPACITY + 1)));
+        }
+        return rows;
+    }
+
+    static List<String> sortedNames(int size) {
+        return rows(size).stream().map(BatteryRow::getName).sorted().toList();
+    }
+
+    static String postcode(int value) {
+        return POSTCODES[value];
+    }
+
+    /**
+     * Repository stub that only supports the full scans used to load the in-memory stores.
+     */
+    static BatteryRepository repositoryOf(List<BatteryRow> rows) {
+        return (BatteryRepository) Proxy.newProxyInstance(BatteryRepository.class.getClassLoader(),
+                new Class<?>[]{BatteryRepository.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("findAllRows")) {
+                        return rows;
+                    }
+                    if (method.getName().equals("forEachCapacity")) {
+                        BatteryRepositoryCustom.CapacityRowHandler handler = (BatteryRepositoryCustom.CapacityRowHandler) args[2];
+                        rows.forEach(row -> handler.accept(row.getId(), Integer.parseInt(row.getPostcode()), row.getCapacity()));
+                        return null;
+                    }
+                    throw new UnsupportedOperationException("Not available in benchmarks: " + method.getName());
+                });
+    }
+}
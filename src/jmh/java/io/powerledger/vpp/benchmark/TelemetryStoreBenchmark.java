@@ -0,0 +1,73 @@
+package io.powerledger.vpp.benchmark;
+
+import io.powerledger.vpp.telemetry.AvailableEnergyTotals;
+import io.powerledger.vpp.telemetry.TelemetryStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Telemetry hot paths of {@link TelemetryStore}: appending one reading to a random battery's ring
+ * buffer, and summarizing the latest and windowed readings of a postcode range.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Benchmark)
+public class TelemetryStoreBenchmark {
+
+    @Param({"200000"})
+    private int fleetSize;
+
+    /** Number of postcodes covered by the summarized range, out of 10,000. */
+    @Param({"100", "10000"})
+    private int rangeWidth;
+
+    private TelemetryStore telemetryStore;
+    private String startPostcode;
+    private String endPostcode;
+
+    @Setup
+    public void setUp() {
+        telemetryStore = new TelemetryStore(SyntheticFleet.repositoryOf(SyntheticFleet.rows(fleetSize)),
+                new AvailableEnergyTotals(), true, 24);
+        telemetryStore.load();
+        SplittableRandom random = new SplittableRandom(1);
+        long now = System.currentTimeMillis();
+        // Fill every ring buffer
+        for (int i = 0; i < fleetSize * 24; i++) {
+            telemetryStore.append(random.nextInt(fleetSize) + 1, now, random.nextInt(101), random.nextInt(-5000, 5000));
+        }
+        int start = (10_000 - rangeWidth) / 2;
+        startPostcode = SyntheticFleet.postcode(start);
+        endPostcode = SyntheticFleet.postcode(start + rangeWidth - 1);
+    }
+
+    @State(Scope.Thread)
+    public static class Readings {
+        final SplittableRandom random = new SplittableRandom();
+    }
+
+    @Benchmark
+    public boolean append(Readings readings) {
+        return telemetryStore.append(readings.random.nextInt(fleetSize) + 1, System.currentTimeMillis(), 55.5f, 1200);
+    }
+
+    @Benchmark
+    public TelemetryStore.RangeTotals summarize() {
+        return telemetryStore.summarize(startPostcode, endPostcode, System.currentTimeMillis() - 60_000);
+    }
+}
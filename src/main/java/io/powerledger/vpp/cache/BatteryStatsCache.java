@@ -0,0 +1,149 @@
+package io.powerledger.vpp.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import io.powerledger.vpp.dto.BatteryStatsResponse;
+import io.powerledger.vpp.event.BatteriesRegisteredEvent;
+import io.powerledger.vpp.event.BatteriesUpdatedEvent;
+import io.powerledger.vpp.model.Battery;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Bounded cache of range query results, keyed on the query parameters.
+ * <p>
+ * Registrations evict only the entries whose postcode range contains one of the registered
+ * postcodes, and fleet syncs those containing a changed battery's previous or current postcode.
+ * Results are computed outside the cache's locks, so no database call runs while a map bin is
+ * held; a result is stored only if no registration committed while it was computed.
+ * Hits, misses, evictions and size are published as {@code cache.*} meters tagged
+ * {@code cache=batteries.range}, and entries removed by registrations are counted in
+ * {@code batteries.cache.range.invalidated}. Enabled with {@code vpp.cache.range.enabled}.
+ */
+@Component
+@Slf4j
+public class BatteryStatsCache {
+
+    private final boolean enabled;
+    private final Cache<Key, BatteryStatsResponse> cache;
+    private final Counter invalidations;
+
+    // Bumped before every eviction pass; loads that straddle a bump are not stored
+    private final AtomicLong invalidationEpoch = new AtomicLong();
+
+    public BatteryStatsCache(MeterRegistry meterRegistry,
+                             @Value("${vpp.cache.range.enabled:false}") boolean enabled,
+                             @Value("${vpp.cache.range.max-size:10000}") long maxSize,
+                             @Value("${vpp.cache.range.ttl:5m}") Duration ttl) {
+        this.enabled = enabled;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        this.invalidations = meterRegistry.counter("batteries.cache.range.invalidated");
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "batteries.range");
+    }
+
+    /**
+     * Returns the cached response for the key, or computes and caches it.
+     * Exceptions from the loader, such as not-found results, are propagated and not cached.
+     */
+    public BatteryStatsResponse get(Key key, Supplier<BatteryStatsResponse> loader) {
+        if (!enabled) {
+            return loader.get();
+        }
+        BatteryStatsResponse cached = cache.getIfPresent(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        long epoch = invalidationEpoch.get();
+        BatteryStatsResponse response = loader.get();
+        cache.asMap().compute(key, (k, current) -> invalidationEpoch.get() == epoch ? response : current);
+        return response;
+    }
+
+    /**
+     * Evicts entries whose postcode range overlaps the registered postcodes.
+     * Runs after commit and after the in-memory indexes have been updated.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    @Order(Ordered.LOWEST_PRECEDENCE)
+    public void onBatteriesRegistered(BatteriesRegisteredEvent event) {
+        if (!enabled || event.batteries().isEmpty()) {
+            return;
+        }
+        evict(event.batteries().stream().map(Battery::getPostcode).toList());
+    }
+
+    /**
+     * Evicts entries whose postcode range overlaps the previous or current postcode of a battery
+     * changed by a fleet sync. Runs after commit and after the in-memory indexes have been updated.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    @Order(Ordered.LOWEST_PRECEDENCE)
+    public void onBatteriesUpdated(BatteriesUpdatedEvent event) {
+        if (!enabled || event.changes().isEmpty()) {
+            return;
+        }
+        evict(event.changes().stream()
+                .flatMap(change -> Stream.of(change.previous().getPostcode(), change.current().getPostcode()))
+                .toList());
+    }
+
+    private void evict(List<String> changedPostcodes) {
+        String[] postcodes = changedPostcodes.stream()
+                .distinct()
+                .sorted()
+                .toArray(String[]::new);
+
+        invalidationEpoch.incrementAndGet();
+        int removed = 0;
+        for (Iterator<Key> keys = cache.asMap().keySet().iterator(); keys.hasNext(); ) {
+            if (keys.next().overlaps(postcodes)) {
+                keys.remove();
+                removed++;
+            }
+        }
+
+        invalidations.increment(removed);
+        log.debug("Invalidated {} cached ranges for {} changed postcodes", removed, postcodes.length);
+    }
+
+    /**
+     * Query parameters identifying a cached response. Postcodes compare as strings, matching the
+     * repository's BETWEEN semantics.
+     */
+    public record Key(String startPostcode, String endPostcode, Long minCapacity, Long maxCapacity,
+                      String cursor, Integer limit) {
+
+        public static Key of(String startPostcode, String endPostcode, Long minCapacity, Long maxCapacity) {
+            return new Key(startPostcode, endPostcode, minCapacity, maxCapacity, null, null);
+        }
+
+        /**
+         * Whether any of the sorted postcodes falls inside this key's postcode range.
+         */
+        boolean overlaps(String[] sortedPostcodes) {
+            int index = Arrays.binarySearch(sortedPostcodes, startPostcode);
+            int first = index >= 0 ? index : -index - 1;
+            return first < sortedPostcodes.length && sortedPostcodes[first].compareTo(endPostcode) <= 0;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package io.powerledger.vpp.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.powerledger.vpp.metrics.TimedMappingJackson2CborHttpMessageConverter;
+import io.powerledger.vpp.metrics.TimedMappingJackson2HttpMessageConverter;
+import io.powerledger.vpp.metrics.TimedMappingJackson2SmileHttpMessageConverter;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+
+/**
+ * Metrics wiring that cannot live on the instrumented beans themselves.
+ */
+@Configuration
+public class MetricsConfig {
+
+    /**
+     * Replaces Spring Boot's JSON converter with one that times response serialisation.
+     */
+    @Bean
+    public MappingJackson2HttpMessageConverter mappingJackson2HttpMessageConverter(ObjectMapper objectMapper,
+                                                                                 MeterRegistry meterRegistry) {
+        return new TimedMappingJackson2HttpMessageConverter(objectMapper, meterRegistry);
+    }
+
+    /**
+     * Replaces Spring MVC's default Smile converter with a timed one. Its mapper gets the same
+     * {@code spring.jackson.*} settings as the JSON mapper; Spring MVC lists it after JSON, so
+     * JSON stays the default for clients that accept any type.
+     */
+    @Bean
+    public TimedMappingJackson2SmileHttpMessageConverter smileHttpMessageConverter(Jackson2ObjectMapperBuilder builder,
+                                                                                  MeterRegistry meterRegistry) {
+        return new TimedMappingJackson2SmileHttpMessageConverter(builder.factory(new SmileFactory()).build(), meterRegistry);
+    }
+
+    /**
+     * Replaces Spring MVC's default CBOR converter with a timed one, configured like the Smile converter.
+     */
+    @Bean
+    public TimedMappingJackson2CborHttpMessageConverter cborHttpMessageConverter(Jackson2ObjectMapperBuilder builder,
+                                                                                MeterRegistry meterRegistry) {
+        return new TimedMappingJackson2CborHttpMessageConverter(builder.factory(new CBORFactory()).build(), meterRegistry);
+    }
+}
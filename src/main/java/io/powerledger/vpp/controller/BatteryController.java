@@ -1,14 +1,43 @@
 package io.powerledger.vpp.controller;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.powerledger.vpp.dto.BatteryRow;
+import io.powerledger.vpp.dto.BatteryStatsBatchRequest;
 import io.powerledger.vpp.dto.BatteryStatsResponse;
+import io.powerledger.vpp.dto.BatterySyncSummary;
+import io.powerledger.vpp.dto.CapacityAggregate;
+import io.powerledger.vpp.dto.CapacityDistributionResponse;
+import io.powerledger.vpp.dto.BatteryRangeQuery;
+import io.powerledger.vpp.dto.IngestTicket;
+import io.powerledger.vpp.dto.StreamIngestSummary;
 import io.powerledger.vpp.model.Battery;
 import io.powerledger.vpp.service.BatteryService;
+import io.powerledger.vpp.service.BatteryStreamIngestService;
+import io.powerledger.vpp.service.BatterySubscriptionService;
+import io.powerledger.vpp.service.BatteryWriteBehindService;
 import jakarta.validation.Valid;
+import jakarta.validation.constraints.DecimalMax;
+import jakarta.validation.constraints.DecimalMin;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.Pattern;
+import jakarta.validation.constraints.Size;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -20,7 +49,15 @@ import java.util.List;
 @Validated
 public class BatteryController {
 
+    // Postcodes are stored as numbers, so range bounds must be 4-digit postcodes like registered ones
+    private static final String POSTCODE_PATTERN = "\\d{4}";
+    private static final String POSTCODE_MESSAGE = "Postcode must be a 4-digit number";
+
     private final BatteryService batteryService;
+    private final BatteryStreamIngestService batteryStreamIngestService;
+    private final BatteryWriteBehindService batteryWriteBehindService;
+    private final BatterySubscriptionService batterySubscriptionService;
+    private final ObjectMapper objectMapper;
 
     /**
      * Adds a list of batteries to the system.
@@ -34,6 +71,76 @@ public class BatteryController {
         return ResponseEntity.ok(savedBatteries);
     }
 
+    /**
+     * Synchronises a partner's fleet, for example its nightly resend of every battery. Batteries are
+     * matched on their external ids: new ones are inserted, changed ones updated, and ones already stored
+     * as sent are not written, so a sync can be repeated safely. Batteries stored earlier but missing from
+     * the list are left as they are.
+     *
+     * @param batteries List of Battery objects with externalId, name, postcode, and capacity.
+     * @return Numbers of inserted, updated and unchanged batteries with HTTP 200 status.
+     */
+    @PutMapping
+    public ResponseEntity<BatterySyncSummary> syncBatteries(@Valid @RequestBody List<Battery> batteries) {
+        return ResponseEntity.ok(batteryService.syncBatteries(batteries));
+    }
+
+    /**
+     * Adds a list of batteries through the write-behind buffer when the client's {@code Prefer} header
+     * includes {@code respond-async}, alone or with other preferences such as {@code wait=5}. The
+     * batteries are written together with other buffered registrations, and the returned ticket is polled
+     * for the outcome. Without that preference, or when write-behind is disabled, the batteries are saved
+     * synchronously.
+     *
+     * @param preferences Values of the Prefer header.
+     * @param batteries   List of Battery objects with name, postcode, and capacity.
+     * @return Pending ticket with HTTP 202 status and its Location, or the persisted batteries with HTTP 200 status.
+     */
+    @PostMapping(headers = "Prefer")
+    public ResponseEntity<?> addBatteriesAsync(@RequestHeader("Prefer") List<String> preferences,
+                                               @Valid @RequestBody List<Battery> batteries) {
+        if (!prefersRespondAsync(preferences) || !batteryWriteBehindService.isEnabled()) {
+            return addBatteries(batteries);
+        }
+        IngestTicket ticket = batteryWriteBehindService.submit(batteries);
+        return ResponseEntity.accepted()
+                .location(URI.create("/api/v1/batteries/tickets/" + ticket.getId()))
+                .body(ticket);
+    }
+
+    // Each value is a comma-separated list of preferences, each a token with optional "=value" and ";" parameters
+    private static boolean prefersRespondAsync(List<String> preferences) {
+        return preferences.stream()
+                .flatMap(value -> Arrays.stream(value.split(",")))
+                .map(preference -> preference.split("[=;]", 2)[0].trim())
+                .anyMatch("respond-async"::equalsIgnoreCase);
+    }
+
+    /**
+     * Retrieves the status of a registration accepted by {@link #addBatteriesAsync}.
+     *
+     * @param ticketId Id of the ticket returned with HTTP 202.
+     * @return Ticket with its status and, once completed, the generated battery ids.
+     */
+    @GetMapping("/tickets/{ticketId}")
+    public ResponseEntity<IngestTicket> getIngestTicket(@PathVariable String ticketId) {
+        return ResponseEntity.ok(batteryWriteBehindService.getTicket(ticketId));
+    }
+
+    /**
+     * Registers batteries from a newline-delimited JSON stream, one Battery object per line.
+     * Batteries are validated and saved in chunks while the body is read, so uploads of any size
+     * use constant memory, and only a summary is returned.
+     *
+     * @param ndjson Request body with one Battery JSON object per line.
+     * @return Accepted and rejected counts with per-line errors, with HTTP 200 status.
+     * @throws IOException if the request body cannot be read.
+     */
+    @PostMapping(path = "/stream", consumes = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamIngestSummary> addBatteriesStream(InputStream ndjson) throws IOException {
+        return ResponseEntity.ok(batteryStreamIngestService.ingest(ndjson));
+    }
+
     /**
      * Retrieves battery names and statistics based on postcode and optional capacity range filters.
      *
@@ -45,8 +152,8 @@ public class BatteryController {
      */
     @GetMapping
     public ResponseEntity<BatteryStatsResponse> getBatteriesInRange(
-            @RequestParam String startPostcode,
-            @RequestParam String endPostcode,
+            @RequestParam @Pattern(regexp = POSTCODE_PATTERN, message = POSTCODE_MESSAGE) String startPostcode,
+            @RequestParam @Pattern(regexp = POSTCODE_PATTERN, message = POSTCODE_MESSAGE) String endPostcode,
             @RequestParam(required = false) Long minCapacity,
             @RequestParam(required = false) Long maxCapacity) {
 
@@ -56,4 +163,185 @@ public class BatteryController {
 
         return ResponseEntity.ok(response);
     }
+
+    /**
+     * Retrieves one page of battery names, ordered by name, together with the totals for the whole range.
+     * Selected instead of the unpaginated endpoint when a limit is given.
+     *
+     * @param startPostcode Starting postcode (inclusive).
+     * @param endPostcode   Ending postcode (inclusive).
+     * @param minCapacity   (Optional) Minimum capacity filter.
+     * @param maxCapacity   (Optional) Maximum capacity filter.
+     * @param cursor        (Optional) nextCursor from the previous page; omitted for the first page.
+     * @param limit         Maximum number of names in the page (1 to 10,000).
+     * @return BatteryStatsResponse with the page of names, range totals and nextCursor when more names follow.
+     */
+    @GetMapping(params = "limit")
+    public ResponseEntity<BatteryStatsResponse> getBatteriesPageInRange(
+            @RequestParam @Pattern(regexp = POSTCODE_PATTERN, message = POSTCODE_MESSAGE) String startPostcode,
+            @RequestParam @Pattern(regexp = POSTCODE_PATTERN, message = POSTCODE_MESSAGE) String endPostcode,
+            @RequestParam(required = false) Long minCapacity,
+            @RequestParam(required = false) Long maxCapacity,
+            @RequestParam(required = false) String cursor,
+            @RequestParam @Min(1) @Max(10_000) int limit) {
+
+        BatteryStatsResponse response = batteryService.getBatteriesInRange(
+                startPostcode, endPostcode, minCapacity, maxCapacity, cursor, limit
+        );
+
+        return ResponseEntity.ok(response);
+    }
+
+    /**
+     * Retrieves battery names and statistics for many postcode ranges in one request. All ranges are
+     * evaluated against a single ordered read of the batteries they cover, instead of one query each.
+     *
+     * @param request Up to 1,000 ranges, each with optional capacity filters.
+     * @return One BatteryStatsResponse per range, in request order; ranges without batteries have empty statistics.
+     */
+    @PostMapping("/stats/batch")
+    public ResponseEntity<List<BatteryStatsResponse>> getBatteriesInRanges(@Valid @RequestBody BatteryStatsBatchRequest request) {
+        return ResponseEntity.ok(batteryService.getBatteriesInRanges(request.getRanges()));
+    }
+
+    /**
+     * Subscribes to the statistics of a postcode and optional capacity range as server-sent events,
+     * instead of polling the range query. A {@code snapshot} event carries the range's
+     * BatteryStatsResponse; afterwards {@code delta} events carry the names of newly registered
+     * batteries in the range and its updated count, total and average capacity. Registrations are
+     * coalesced into at most one delta per {@code vpp.subscriptions.coalesce-interval}, and a further
+     * snapshot replaces the client's state when deltas cannot be applied safely.
+     *
+     * @param startPostcode Starting postcode (inclusive).
+     * @param endPostcode   Ending postcode (inclusive).
+     * @param minCapacity   (Optional) Minimum capacity filter.
+     * @param maxCapacity   (Optional) Maximum capacity filter.
+     * @return Event stream that stays open until the client disconnects or {@code vpp.subscriptions.timeout} passes.
+     */
+    @GetMapping(path = "/subscribe", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter subscribeToRange(
+            @RequestParam @Pattern(regexp = POSTCODE_PATTERN, message = POSTCODE_MESSAGE) String startPostcode,
+            @RequestParam @Pattern(regexp = POSTCODE_PATTERN, message = POSTCODE_MESSAGE) String endPostcode,
+            @RequestParam(required = false) Long minCapacity,
+            @RequestParam(required = false) Long maxCapacity) {
+
+        return batterySubscriptionService.subscribe(new BatteryRangeQuery(startPostcode, endPostcode, minCapacity, maxCapacity));
+    }
+
+    /**
+     * Finds batteries by partial name, ignoring case, from an in-memory name index.
+     *
+     * @param q     Text to look for (1 to 100 characters); shorter than three characters matches name prefixes only.
+     * @param limit Maximum number of batteries to return (1 to 100); defaults to 10.
+     * @return Matching batteries with postcode and capacity, those whose name starts with the query first.
+     */
+    @GetMapping("/search")
+    public ResponseEntity<List<BatteryRow>> searchBatteries(
+            @RequestParam @NotBlank @Size(max = 100) String q,
+            @RequestParam(defaultValue = "10") @Min(1) @Max(100) int limit) {
+
+        return ResponseEntity.ok(batteryService.searchBatteries(q, limit));
+    }
+
+    /**
+     * Retrieves the batteries whose postcode centroid lies within a radius of a postcode's centroid,
+     * with the same statistics as a postcode range query.
+     *
+     * @param postcode    4-digit postcode at the centre.
+     * @param radiusKm    Radius in km, above 0 and at most 20,000.
+     * @param minCapacity (Optional) Minimum capacity filter.
+     * @param maxCapacity (Optional) Maximum capacity filter.
+     * @return BatteryStatsResponse with sorted names, total and average capacity, and unlocatedBatteryCount.
+     */
+    @GetMapping("/near")
+    public ResponseEntity<BatteryStatsResponse> getBatteriesNear(
+            @RequestParam @Pattern(regexp = POSTCODE_PATTERN, message = POSTCODE_MESSAGE) String postcode,
+            @RequestParam @DecimalMin(value = "0", inclusive = false) @DecimalMax("20000") double radiusKm,
+            @RequestParam(required = false) Long minCapacity,
+            @RequestParam(required = false) Long maxCapacity) {
+
+        return ResponseEntity.ok(batteryService.getBatteriesNear(postcode, radiusKm, minCapacity, maxCapacity));
+    }
+
+    /**
+     * Retrieves the batteries nearest to a postcode, measured between postcode centroids.
+     *
+     * @param postcode    4-digit postcode at the centre.
+     * @param count       Maximum number of batteries to return (1 to 10,000); defaults to 10.
+     * @param minCapacity (Optional) Minimum capacity filter.
+     * @param maxCapacity (Optional) Maximum capacity filter.
+     * @return BatteryStatsResponse with the names nearest first, their total and average capacity, and
+     * unlocatedBatteryCount.
+     */
+    @GetMapping("/nearest")
+    public ResponseEntity<BatteryStatsResponse> getNearestBatteries(
+            @RequestParam @Pattern(regexp = POSTCODE_PATTERN, message = POSTCODE_MESSAGE) String postcode,
+            @RequestParam(defaultValue = "10") @Min(1) @Max(10_000) int count,
+            @RequestParam(required = false) Long minCapacity,
+            @RequestParam(required = false) Long maxCapacity) {
+
+        return ResponseEntity.ok(batteryService.getNearestBatteries(postcode, count, minCapacity, maxCapacity));
+    }
+
+    /**
+     * Retrieves the approximate capacity distribution of the batteries in a postcode range, merged
+     * from per-postcode sketches rather than read row by row. Values are accurate to within 1%.
+     *
+     * @param startPostcode Starting postcode (inclusive).
+     * @param endPostcode   Ending postcode (inclusive).
+     * @param percentiles   Percentiles to report, between 0 and 100; defaults to 50, 90 and 99.
+     * @param buckets       Number of equal-width histogram buckets (1 to 100); defaults to 10.
+     * @return CapacityDistributionResponse with count, bounds, mean, percentiles and histogram.
+     */
+    @GetMapping("/distribution")
+    public ResponseEntity<CapacityDistributionResponse> getCapacityDistribution(
+            @RequestParam @Pattern(regexp = POSTCODE_PATTERN, message = POSTCODE_MESSAGE) String startPostcode,
+            @RequestParam @Pattern(regexp = POSTCODE_PATTERN, message = POSTCODE_MESSAGE) String endPostcode,
+            @RequestParam(defaultValue = "50,90,99") List<@DecimalMin("0") @DecimalMax("100") Double> percentiles,
+            @RequestParam(defaultValue = "10") @Min(1) @Max(100) int buckets) {
+
+        return ResponseEntity.ok(batteryService.getCapacityDistribution(startPostcode, endPostcode, percentiles, buckets));
+    }
+
+    /**
+     * Streams sorted battery names as newline-delimited JSON strings, read from a database cursor.
+     * Totals are computed before streaming starts and returned in the X-Total-Count,
+     * X-Total-Capacity and X-Average-Capacity headers.
+     *
+     * @param startPostcode Starting postcode (inclusive).
+     * @param endPostcode   Ending postcode (inclusive).
+     * @param minCapacity   (Optional) Minimum capacity filter.
+     * @param maxCapacity   (Optional) Maximum capacity filter.
+     * @return Streaming NDJSON body with one battery name per line.
+     */
+    @GetMapping(path = "/names", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamBatteryNames(
+            @RequestParam @Pattern(regexp = POSTCODE_PATTERN, message = POSTCODE_MESSAGE) String startPostcode,
+            @RequestParam @Pattern(regexp = POSTCODE_PATTERN, message = POSTCODE_MESSAGE) String endPostcode,
+            @RequestParam(required = false) Long minCapacity,
+            @RequestParam(required = false) Long maxCapacity) {
+
+        CapacityAggregate aggregate = batteryService.getCapacityInRange(startPostcode, endPostcode, minCapacity, maxCapacity);
+
+        StreamingResponseBody body = outputStream -> {
+            try (JsonGenerator generator = objectMapper.getFactory().createGenerator(outputStream)) {
+                generator.setRootValueSeparator(new SerializedString("\n"));
+                batteryService.streamBatteryNamesInRange(startPostcode, endPostcode, minCapacity, maxCapacity, name -> {
+                    try {
+                        generator.writeString(name);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                generator.writeRaw('\n');
+            }
+        };
+
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .header("X-Total-Count", String.valueOf(aggregate.getBatteryCount()))
+                .header("X-Total-Capacity", String.valueOf(aggregate.getTotalCapacity()))
+                .header("X-Average-Capacity", String.valueOf(aggregate.getAverageCapacity()))
+                .body(body);
+    }
 }
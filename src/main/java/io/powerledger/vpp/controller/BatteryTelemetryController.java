@@ -0,0 +1,77 @@
+package io.powerledger.vpp.controller;
+
+import io.powerledger.vpp.dto.AvailableCapacityResponse;
+import io.powerledger.vpp.dto.TelemetryIngestSummary;
+import io.powerledger.vpp.dto.TelemetryRangeResponse;
+import io.powerledger.vpp.dto.TelemetryReading;
+import io.powerledger.vpp.service.BatteryTelemetryService;
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.Pattern;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.validation.annotation.Validated;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+/**
+ * REST Controller for live battery telemetry in the Virtual Power Plant (VPP) system.
+ */
+@RestController
+@RequestMapping("/api/v1/telemetry")
+@RequiredArgsConstructor
+@Validated
+public class BatteryTelemetryController {
+
+    private static final String POSTCODE_PATTERN = "\\d{4}";
+    private static final String POSTCODE_MESSAGE = "Postcode must be a 4-digit number";
+
+    private final BatteryTelemetryService batteryTelemetryService;
+
+    /**
+     * Records state-of-charge and power readings for registered batteries. Readings are held in
+     * memory and persisted in batches shortly after, so the upload is answered with HTTP 202.
+     *
+     * @param readings List of readings keyed by battery id.
+     * @return Accepted and rejected counts with HTTP 202 status.
+     */
+    @PostMapping
+    public ResponseEntity<TelemetryIngestSummary> addTelemetry(@Valid @RequestBody List<TelemetryReading> readings) {
+        return ResponseEntity.accepted().body(batteryTelemetryService.ingest(readings));
+    }
+
+    /**
+     * Retrieves the latest and windowed-average telemetry of the batteries in a postcode range.
+     *
+     * @param startPostcode Starting postcode (inclusive).
+     * @param endPostcode   Ending postcode (inclusive).
+     * @param windowSeconds Averaging window ending now, in seconds (1 to 3,600); defaults to 60.
+     * @return TelemetryRangeResponse with latest and windowed averages.
+     */
+    @GetMapping
+    public ResponseEntity<TelemetryRangeResponse> getTelemetryInRange(
+            @RequestParam @Pattern(regexp = POSTCODE_PATTERN, message = POSTCODE_MESSAGE) String startPostcode,
+            @RequestParam @Pattern(regexp = POSTCODE_PATTERN, message = POSTCODE_MESSAGE) String endPostcode,
+            @RequestParam(defaultValue = "60") @Min(1) @Max(3_600) long windowSeconds) {
+
+        return ResponseEntity.ok(batteryTelemetryService.getTelemetryInRange(startPostcode, endPostcode, windowSeconds));
+    }
+
+    /**
+     * Retrieves the energy currently available in a postcode range: the sum of each reporting battery's
+     * capacity times its latest state of charge, read from counters kept current as readings arrive.
+     *
+     * @param startPostcode Starting postcode (inclusive).
+     * @param endPostcode   Ending postcode (inclusive).
+     * @return AvailableCapacityResponse with reporting batteries, their capacity and available energy.
+     */
+    @GetMapping("/available")
+    public ResponseEntity<AvailableCapacityResponse> getAvailableCapacityInRange(
+            @RequestParam @Pattern(regexp = POSTCODE_PATTERN, message = POSTCODE_MESSAGE) String startPostcode,
+            @RequestParam @Pattern(regexp = POSTCODE_PATTERN, message = POSTCODE_MESSAGE) String endPostcode) {
+
+        return ResponseEntity.ok(batteryTelemetryService.getAvailableCapacityInRange(startPostcode, endPostcode));
+    }
+}
@@ -0,0 +1,34 @@
+package io.powerledger.vpp.controller;
+
+import io.powerledger.vpp.dto.DispatchPlanRequest;
+import io.powerledger.vpp.dto.DispatchPlanResponse;
+import io.powerledger.vpp.service.BatteryService;
+import jakarta.validation.Valid;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.validation.annotation.Validated;
+import org.springframework.web.bind.annotation.*;
+
+/**
+ * REST Controller for planning demand response dispatches in the Virtual Power Plant (VPP) system.
+ */
+@RestController
+@RequestMapping("/api/v1/dispatch")
+@RequiredArgsConstructor
+@Validated
+public class DispatchController {
+
+    private final BatteryService batteryService;
+
+    /**
+     * Selects batteries of a postcode range whose combined capacity meets the target, minimising
+     * either the number of batteries or the capacity above the target.
+     *
+     * @param request Postcode range, target capacity in Wh and objective.
+     * @return DispatchPlanResponse with the selected battery ids and planned capacity.
+     */
+    @PostMapping("/plan")
+    public ResponseEntity<DispatchPlanResponse> planDispatch(@Valid @RequestBody DispatchPlanRequest request) {
+        return ResponseEntity.ok(batteryService.planDispatch(request));
+    }
+}
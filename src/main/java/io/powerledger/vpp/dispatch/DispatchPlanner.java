@@ -0,0 +1,216 @@
+package io.powerledger.vpp.dispatch;
+
+import io.powerledger.vpp.dto.DispatchPlanRequest.Objective;
+import io.powerledger.vpp.dto.DispatchPlanResponse;
+import io.powerledger.vpp.index.BatteryRangeIndex.CapacitySlice;
+import io.powerledger.vpp.repository.BatteryRepositoryCustom.CapacityRowHandler;
+
+import java.util.Arrays;
+
+/**
+ * Greedy selection of batteries whose combined capacity meets a target.
+ * <p>
+ * One counting-sort pass groups the slice into at most 2,048 capacity bands, keyed by the top
+ * significant bits of the capacity, over longs that pack the capacity and the battery's position.
+ * Bands are small enough for the scatter to stay in cache, and only what a plan needs is ordered
+ * within a band, so a plan is a few sequential passes and one key array however large the fleet.
+ * <ul>
+ *     <li>{@link Objective#MIN_COUNT} takes the largest batteries until the target is met, which uses
+ *     the fewest batteries possible, then swaps the smallest one taken for the smallest battery that
+ *     still meets the target. Only the band in which the target is crossed is sorted.</li>
+ *     <li>{@link Objective#MIN_OVERSHOOT} is first-fit decreasing by band: it takes each battery that
+ *     fits under the remaining target, then closes any gap with the smallest battery skipped. Exact
+ *     minimum overshoot is subset sum; the overshoot here is below the capacity of that last battery.</li>
+ * </ul>
+ */
+public final class DispatchPlanner {
+
+    private static final int BAND_BITS = 11;
+
+    private DispatchPlanner() {
+    }
+
+    public static DispatchPlanResponse plan(CapacitySlice slice, long targetCapacity, Objective objective) {
+        Bands bands = Bands.of(slice);
+        return objective == Objective.MIN_OVERSHOOT
+                ? planMinOvershoot(slice, bands, targetCapacity)
+                : planMinCount(slice, bands, targetCapacity);
+    }
+
+    private static DispatchPlanResponse planMinCount(CapacitySlice slice, Bands bands, long target) {
+        long[] keys = bands.keys;
+        int[] starts = bands.starts;
+        long sum = 0;
+        int band = bands.count() - 1;
+        while (band >= 0 && sum + bands.sums[band] < target) {
+            sum += bands.sums[band--];
+        }
+        if (band < 0) {
+            return toPlan(slice, keys, 0, -1, target, sum);
+        }
+
+        Arrays.sort(keys, starts[band], starts[band + 1]);
+        int smallestTaken = starts[band + 1];
+        while (sum < target) {
+            sum += capacity(keys[--smallestTaken]);
+        }
+        // Any battery at or above the need can replace the smallest one taken
+        long need = target - (sum - capacity(keys[smallestTaken]));
+        int replacement = lowerBound(keys, starts[band], smallestTaken, need);
+        if (need < (long) band << bands.shift) {
+            // Lower bands hold capacities below this one's, some of which may still meet the need
+            for (int i = 0; i < starts[band]; i++) {
+                int capacity = capacity(keys[i]);
+                if (capacity >= need && capacity < capacity(keys[replacement])) {
+                    replacement = i;
+                }
+            }
+        }
+        sum += capacity(keys[replacement]) - capacity(keys[smallestTaken]);
+        return toPlan(slice, keys, smallestTaken + 1, replacement, target, sum);
+    }
+
+    private static DispatchPlanResponse planMinOvershoot(CapacitySlice slice, Bands bands, long target) {
+        long[] keys = bands.keys;
+        int[] starts = bands.starts;
+        long[] ids = new long[keys.length];
+        int count = 0;
+        long sum = 0;
+        int smallestSkipped = -1;
+        for (int band = bands.count() - 1; band >= 0 && sum < target; band--) {
+            boolean wholeBand = sum + bands.sums[band] <= target;
+            for (int i = starts[band + 1] - 1; i >= starts[band]; i--) {
+                int capacity = capacity(keys[i]);
+                if (wholeBand || sum + capacity <= target) {
+                    ids[count++] = id(slice, keys[i]);
+                    sum += capacity;
+                } else if (smallestSkipped < 0 || capacity < capacity(keys[smallestSkipped])) {
+                    smallestSkipped = i;
+                }
+            }
+        }
+        // Every skipped battery exceeds the remaining gap, so the smallest one closes it
+        if (sum < target && smallestSkipped >= 0) {
+            ids[count++] = id(slice, keys[smallestSkipped]);
+            sum += capacity(keys[smallestSkipped]);
+        }
+        return new DispatchPlanResponse(target, sum >= target, sum, sum - target, count, Arrays.copyOf(ids, count));
+    }
+
+    /**
+     * Plan of the keys from {@code from} to the end, followed by the key at {@code extra} if it is not negative.
+     */
+    private static DispatchPlanResponse toPlan(CapacitySlice slice, long[] keys, int from, int extra,
+                                               long target, long sum) {
+        int count = keys.length - from + (extra >= 0 ? 1 : 0);
+        long[] ids = new long[count];
+        int next = 0;
+        for (int i = keys.length - 1; i >= from; i--) {
+            ids[next++] = id(slice, keys[i]);
+        }
+        if (extra >= 0) {
+            ids[next] = id(slice, keys[extra]);
+        }
+        return new DispatchPlanResponse(target, sum >= target, sum, sum - target, count, ids);
+    }
+
+    /** First position from {@code start} below {@code end} whose capacity is at least {@code capacity}, or {@code end}. */
+    private static int lowerBound(long[] keys, int start, int end, long capacity) {
+        int low = start;
+        int high = end;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (capacity(keys[mid]) < capacity) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static int capacity(long key) {
+        return (int) (key >>> 32);
+    }
+
+    private static long id(CapacitySlice slice, long key) {
+        return slice.ids()[slice.from() + (int) key];
+    }
+
+    /**
+     * Keys of a slice grouped by ascending capacity band; each key holds the capacity in the high 32
+     * bits and the position within the slice in the low 32 bits. Band {@code b} holds the keys from
+     * {@code starts[b]} to {@code starts[b + 1]}, in position order, and capacities from
+     * {@code b << shift} to {@code ((b + 1) << shift) - 1}.
+     */
+    static final class Bands {
+        final long[] keys;
+        final int[] starts;
+        final long[] sums;
+        final int shift;
+
+        private Bands(long[] keys, int[] starts, long[] sums, int shift) {
+            this.keys = keys;
+            this.starts = starts;
+            this.sums = sums;
+            this.shift = shift;
+        }
+
+        static Bands of(CapacitySlice slice) {
+            int[] capacities = slice.capacities();
+            int from = slice.from();
+            int n = slice.size();
+            int max = 0;
+            for (int i = from; i < slice.to(); i++) {
+                max = Math.max(max, capacities[i]);
+            }
+            int shift = Math.max(0, (Integer.SIZE - Integer.numberOfLeadingZeros(max)) - BAND_BITS);
+
+            int bands = (max >>> shift) + 1;
+            int[] starts = new int[bands + 1];
+            long[] sums = new long[bands];
+            for (int i = from; i < slice.to(); i++) {
+                int band = capacities[i] >>> shift;
+                starts[band + 1]++;
+                sums[band] += capacities[i];
+            }
+            for (int b = 1; b <= bands; b++) {
+                starts[b] += starts[b - 1];
+            }
+            long[] keys = new long[n];
+            int[] next = Arrays.copyOf(starts, bands);
+            for (int i = 0; i < n; i++) {
+                int capacity = capacities[from + i];
+                keys[next[capacity >>> shift]++] = ((long) capacity << 32) | i;
+            }
+            return new Bands(keys, starts, sums, shift);
+        }
+
+        int count() {
+            return sums.length;
+        }
+    }
+
+    /**
+     * Collects streamed capacity rows into a slice, for ranges the in-memory index cannot serve.
+     */
+    public static final class SliceCollector implements CapacityRowHandler {
+        private long[] ids = new long[1024];
+        private int[] capacities = new int[1024];
+        private int size;
+
+        @Override
+        public void accept(long id, int postcode, int capacity) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+                capacities = Arrays.copyOf(capacities, size * 2);
+            }
+            ids[size] = id;
+            capacities[size++] = capacity;
+        }
+
+        public CapacitySlice toSlice() {
+            return new CapacitySlice(ids, capacities, 0, size);
+        }
+    }
+}
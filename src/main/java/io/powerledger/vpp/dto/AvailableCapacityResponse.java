@@ -0,0 +1,20 @@
+package io.powerledger.vpp.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Energy currently available from the batteries in a postcode range, from their latest state of charge.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class AvailableCapacityResponse {
+    /** Batteries in the range that have reported telemetry. */
+    private long reportingBatteries;
+    /** Total capacity of the reporting batteries, in Wh. */
+    private long reportingCapacity;
+    /** Sum of capacity times latest state of charge of the reporting batteries, in Wh. */
+    private long availableEnergy;
+}
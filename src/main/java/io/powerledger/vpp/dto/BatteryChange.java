@@ -0,0 +1,12 @@
+package io.powerledger.vpp.dto;
+
+import io.powerledger.vpp.model.Battery;
+
+/**
+ * A stored battery whose name, postcode or capacity was changed by a fleet sync.
+ *
+ * @param previous The battery as it was before the sync.
+ * @param current  The battery as the sync left it, with the same id.
+ */
+public record BatteryChange(Battery previous, Battery current) {
+}
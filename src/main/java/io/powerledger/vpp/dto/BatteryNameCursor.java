@@ -0,0 +1,34 @@
+package io.powerledger.vpp.dto;
+
+import io.powerledger.vpp.exception.InvalidCursorException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Keyset position in a name-ordered battery listing. Names are not unique, so the battery id
+ * breaks ties; the cursor is passed to clients as an opaque URL-safe string.
+ *
+ * @param name Name of the last battery on the previous page.
+ * @param id   Id of the last battery on the previous page.
+ */
+public record BatteryNameCursor(String name, long id) {
+
+    /** Position before the first battery; every battery name is non-blank, so sorts after "". */
+    public static final BatteryNameCursor FIRST = new BatteryNameCursor("", 0L);
+
+    public String encode() {
+        String raw = id + ":" + name;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static BatteryNameCursor decode(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = raw.indexOf(':');
+            return new BatteryNameCursor(raw.substring(separator + 1), Long.parseLong(raw.substring(0, separator)));
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new InvalidCursorException("Invalid cursor: " + cursor);
+        }
+    }
+}
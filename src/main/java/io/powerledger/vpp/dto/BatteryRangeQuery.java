@@ -0,0 +1,27 @@
+package io.powerledger.vpp.dto;
+
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Pattern;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * One postcode and optional capacity range of a batch statistics request.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatteryRangeQuery {
+
+    @NotNull(message = "Start postcode cannot be null")
+    @Pattern(regexp = "\\d{4}", message = "Postcode must be a 4-digit number")
+    private String startPostcode;
+
+    @NotNull(message = "End postcode cannot be null")
+    @Pattern(regexp = "\\d{4}", message = "Postcode must be a 4-digit number")
+    private String endPostcode;
+
+    private Long minCapacity;
+    private Long maxCapacity;
+}
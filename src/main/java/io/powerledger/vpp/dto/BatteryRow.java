@@ -0,0 +1,16 @@
+package io.powerledger.vpp.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Detached, read-only view of a battery row used for bulk scans that must not hydrate JPA entities.
+ */
+@Data
+@AllArgsConstructor
+public class BatteryRow {
+    private Long id;
+    private String name;
+    private String postcode;
+    private Integer capacity;
+}
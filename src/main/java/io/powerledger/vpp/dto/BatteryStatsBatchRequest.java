@@ -0,0 +1,25 @@
+package io.powerledger.vpp.dto;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Ranges whose statistics are computed together by {@code POST /api/v1/batteries/stats/batch}.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatteryStatsBatchRequest {
+
+    public static final int MAX_RANGES = 1000;
+
+    @NotEmpty(message = "At least one range is required")
+    @Size(max = MAX_RANGES, message = "At most " + MAX_RANGES + " ranges are allowed")
+    private List<@Valid BatteryRangeQuery> ranges;
+}
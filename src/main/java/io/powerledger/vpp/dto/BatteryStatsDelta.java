@@ -0,0 +1,23 @@
+package io.powerledger.vpp.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Change to a subscribed range since the previous event: the batteries registered in it, and the
+ * range's statistics after them.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatteryStatsDelta {
+    /** Names of the batteries registered in the range since the previous event, sorted. */
+    private List<String> addedNames;
+    /** Batteries now in the range. */
+    private long batteryCount;
+    private long totalCapacity;
+    private double averageCapacity;
+}
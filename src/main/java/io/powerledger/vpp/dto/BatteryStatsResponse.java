@@ -1,5 +1,6 @@
 package io.powerledger.vpp.dto;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 
@@ -11,4 +12,23 @@ public class BatteryStatsResponse {
     private List<String> batteryNames;
     private long totalCapacity;
     private double averageCapacity;
+
+    /** Cursor for the next page of names; only present on paginated responses with more names. */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String nextCursor;
+
+    /**
+     * Batteries matching the capacity filters whose postcode has no known centroid, so they are left out of
+     * the results; only present on radius and nearest-battery responses.
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Long unlocatedBatteryCount;
+
+    public BatteryStatsResponse(List<String> batteryNames, long totalCapacity, double averageCapacity) {
+        this(batteryNames, totalCapacity, averageCapacity, null, null);
+    }
+
+    public BatteryStatsResponse(List<String> batteryNames, long totalCapacity, double averageCapacity, String nextCursor) {
+        this(batteryNames, totalCapacity, averageCapacity, nextCursor, null);
+    }
 }
@@ -0,0 +1,17 @@
+package io.powerledger.vpp.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Outcome of a fleet sync: how many batteries were new, changed, or already stored as sent.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatterySyncSummary {
+    private long inserted;
+    private long updated;
+    private long unchanged;
+}
@@ -0,0 +1,27 @@
+package io.powerledger.vpp.dto;
+
+import lombok.Getter;
+
+/**
+ * Count and total capacity of the batteries matching a range query, computed by the database.
+ */
+@Getter
+public class CapacityAggregate {
+    private final long batteryCount;
+    private final long totalCapacity;
+
+    /**
+     * Constructor used by JPQL constructor expressions; SUM yields null when no rows match.
+     *
+     * @param batteryCount  Number of matching batteries.
+     * @param totalCapacity Sum of the matching capacities (nullable).
+     */
+    public CapacityAggregate(Long batteryCount, Long totalCapacity) {
+        this.batteryCount = batteryCount == null ? 0 : batteryCount;
+        this.totalCapacity = totalCapacity == null ? 0 : totalCapacity;
+    }
+
+    public double getAverageCapacity() {
+        return batteryCount == 0 ? 0 : (double) totalCapacity / batteryCount;
+    }
+}
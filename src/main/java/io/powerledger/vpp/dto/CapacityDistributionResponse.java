@@ -0,0 +1,37 @@
+package io.powerledger.vpp.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Approximate capacity distribution of the batteries in a postcode range. Percentiles and bucket
+ * bounds are accurate to within 1% of the capacity values.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CapacityDistributionResponse {
+    private long batteryCount;
+    private long minCapacity;
+    private long maxCapacity;
+    private double meanCapacity;
+    /** Capacity at each requested percentile, keyed like {@code p50} or {@code p99.9}. */
+    private Map<String, Long> percentiles;
+    /** Equal-width capacity buckets from the minimum to the maximum capacity. */
+    private List<Bucket> histogram;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Bucket {
+        /** Lowest capacity in the bucket (inclusive). */
+        private long from;
+        /** Highest capacity in the bucket (inclusive). */
+        private long to;
+        private long count;
+    }
+}
@@ -0,0 +1,42 @@
+package io.powerledger.vpp.dto;
+
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Pattern;
+import jakarta.validation.constraints.Positive;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Capacity target to be met by batteries of a postcode range, for {@code POST /api/v1/dispatch/plan}.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DispatchPlanRequest {
+
+    @NotNull(message = "Start postcode cannot be null")
+    @Pattern(regexp = "\\d{4}", message = "Postcode must be a 4-digit number")
+    private String startPostcode;
+
+    @NotNull(message = "End postcode cannot be null")
+    @Pattern(regexp = "\\d{4}", message = "Postcode must be a 4-digit number")
+    private String endPostcode;
+
+    /** Combined capacity to dispatch, in Wh. */
+    @NotNull(message = "Target capacity cannot be null")
+    @Positive(message = "Target capacity must be a positive value")
+    private Long targetCapacity;
+
+    private Objective objective = Objective.MIN_COUNT;
+
+    /**
+     * What the plan minimises once the target is met.
+     */
+    public enum Objective {
+        /** Fewest batteries; among plans of that size, a small overshoot. */
+        MIN_COUNT,
+        /** Smallest capacity above the target, using as many batteries as that takes. */
+        MIN_OVERSHOOT
+    }
+}
@@ -0,0 +1,24 @@
+package io.powerledger.vpp.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Batteries selected to meet a dispatch capacity target. When the range cannot meet the target,
+ * the plan holds every battery in it and {@code targetMet} is false.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DispatchPlanResponse {
+    private long targetCapacity;
+    private boolean targetMet;
+    /** Combined capacity of the selected batteries, in Wh. */
+    private long plannedCapacity;
+    /** Planned minus target capacity; negative when the target is not met. */
+    private long overshoot;
+    private int batteryCount;
+    /** Ids of the selected batteries, in the order they were selected. */
+    private long[] batteryIds;
+}
@@ -0,0 +1,42 @@
+package io.powerledger.vpp.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Status of a registration accepted by the write-behind buffer, returned with HTTP 202 and
+ * polled until the batteries have been written.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class IngestTicket {
+    private String id;
+    private Status status;
+    private int batteryCount;
+    private Instant submittedAt;
+    private Instant completedAt;
+    /** Generated ids in submission order, once the batteries are written. */
+    private List<Long> batteryIds;
+    private String error;
+
+    public enum Status {
+        PENDING, COMPLETED, FAILED
+    }
+
+    public static IngestTicket pending(String id, int batteryCount) {
+        return new IngestTicket(id, Status.PENDING, batteryCount, Instant.now(), null, null, null);
+    }
+
+    public IngestTicket completed(List<Long> batteryIds) {
+        return new IngestTicket(id, Status.COMPLETED, batteryCount, submittedAt, Instant.now(), batteryIds, null);
+    }
+
+    public IngestTicket failed(String error) {
+        return new IngestTicket(id, Status.FAILED, batteryCount, submittedAt, Instant.now(), null, error);
+    }
+}
@@ -0,0 +1,12 @@
+package io.powerledger.vpp.dto;
+
+/**
+ * Inclusive numeric postcode and capacity bounds of a range scan.
+ *
+ * @param startPostcode First postcode, 0 to 9999.
+ * @param endPostcode   Last postcode, 0 to 9999.
+ * @param minCapacity   Smallest capacity included.
+ * @param maxCapacity   Largest capacity included.
+ */
+public record PostcodeSpan(int startPostcode, int endPostcode, int minCapacity, int maxCapacity) {
+}
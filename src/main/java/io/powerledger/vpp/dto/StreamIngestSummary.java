@@ -0,0 +1,27 @@
+package io.powerledger.vpp.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compact result of a streamed bulk registration: counts plus the first per-line errors.
+ */
+@Data
+@NoArgsConstructor
+public class StreamIngestSummary {
+    private long accepted;
+    private long rejected;
+    private List<LineError> errors = new ArrayList<>();
+    private boolean errorsTruncated;
+
+    @Data
+    @AllArgsConstructor
+    public static class LineError {
+        private long line;
+        private String message;
+    }
+}
@@ -0,0 +1,68 @@
+package io.powerledger.vpp.dto;
+
+import java.util.Arrays;
+
+/**
+ * Growable columns of telemetry readings, handed to the repository as one batch insert.
+ * Values are held in primitive arrays, so a batch of any size is four allocations.
+ */
+public final class TelemetryBatch {
+
+    private long[] batteryIds;
+    private long[] timestamps;
+    private float[] stateOfCharge;
+    private int[] powerWatts;
+    private int size;
+
+    public TelemetryBatch(int initialCapacity) {
+        int capacity = Math.max(1, initialCapacity);
+        this.batteryIds = new long[capacity];
+        this.timestamps = new long[capacity];
+        this.stateOfCharge = new float[capacity];
+        this.powerWatts = new int[capacity];
+    }
+
+    public void add(long batteryId, long timestampMillis, float stateOfCharge, int powerWatts) {
+        if (size == batteryIds.length) {
+            int capacity = size * 2;
+            this.batteryIds = Arrays.copyOf(batteryIds, capacity);
+            this.timestamps = Arrays.copyOf(timestamps, capacity);
+            this.stateOfCharge = Arrays.copyOf(this.stateOfCharge, capacity);
+            this.powerWatts = Arrays.copyOf(this.powerWatts, capacity);
+        }
+        batteryIds[size] = batteryId;
+        timestamps[size] = timestampMillis;
+        this.stateOfCharge[size] = stateOfCharge;
+        this.powerWatts[size] = powerWatts;
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public long batteryId(int i) {
+        return batteryIds[i];
+    }
+
+    /** Epoch milliseconds of the reading. */
+    public long timestamp(int i) {
+        return timestamps[i];
+    }
+
+    public float stateOfCharge(int i) {
+        return stateOfCharge[i];
+    }
+
+    public int powerWatts(int i) {
+        return powerWatts[i];
+    }
+}
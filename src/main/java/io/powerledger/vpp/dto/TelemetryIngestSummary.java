@@ -0,0 +1,16 @@
+package io.powerledger.vpp.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Outcome of a telemetry upload. Readings for batteries that are not registered are rejected.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class TelemetryIngestSummary {
+    private long accepted;
+    private long rejected;
+}
@@ -0,0 +1,31 @@
+package io.powerledger.vpp.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+/**
+ * Latest and windowed-average telemetry of the batteries in a postcode range.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class TelemetryRangeResponse {
+    /** Batteries in the range with at least one reading held in memory. */
+    private long reportingBatteries;
+    /** Time of the most recent reading in the range. */
+    private Instant latestTimestamp;
+    /** Average of each reporting battery's latest state of charge, in percent. */
+    private double latestAverageStateOfCharge;
+    /** Sum of each reporting battery's latest power, in watts. */
+    private long latestTotalPowerWatts;
+    private long windowSeconds;
+    /** Readings taken within the window. */
+    private long windowReadings;
+    /** Average state of charge of the readings in the window, in percent. */
+    private double windowAverageStateOfCharge;
+    /** Average power of the readings in the window, in watts. */
+    private double windowAveragePowerWatts;
+}
@@ -0,0 +1,34 @@
+package io.powerledger.vpp.dto;
+
+import jakarta.validation.constraints.DecimalMax;
+import jakarta.validation.constraints.DecimalMin;
+import jakarta.validation.constraints.NotNull;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+/**
+ * One state-of-charge and power reading reported by a battery.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class TelemetryReading {
+
+    @NotNull(message = "Battery id is required")
+    private Long batteryId;
+
+    /** Time of the reading; the time it was received when omitted. */
+    private Instant timestamp;
+
+    @NotNull(message = "State of charge is required")
+    @DecimalMin(value = "0", message = "State of charge must be between 0 and 100")
+    @DecimalMax(value = "100", message = "State of charge must be between 0 and 100")
+    private Float stateOfCharge;
+
+    /** Power in watts; positive while discharging, negative while charging. */
+    @NotNull(message = "Power is required")
+    private Integer powerWatts;
+}
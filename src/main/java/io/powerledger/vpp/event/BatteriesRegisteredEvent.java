@@ -0,0 +1,14 @@
+package io.powerledger.vpp.event;
+
+import io.powerledger.vpp.model.Battery;
+
+import java.util.List;
+
+/**
+ * Published by the battery service once a batch of batteries has been persisted.
+ * Listeners keeping derived, in-process views of the fleet use it to stay current.
+ *
+ * @param batteries The persisted batteries, with generated ids.
+ */
+public record BatteriesRegisteredEvent(List<Battery> batteries) {
+}
@@ -0,0 +1,15 @@
+package io.powerledger.vpp.event;
+
+import io.powerledger.vpp.dto.BatteryChange;
+
+import java.util.List;
+
+/**
+ * Published by the battery service once a fleet sync has changed stored batteries. Batteries the
+ * sync inserted are published separately, as a {@link BatteriesRegisteredEvent}. Listeners keeping
+ * derived, in-process views of the fleet replace the previous state of each battery with its current one.
+ *
+ * @param changes The changed batteries, before and after the sync.
+ */
+public record BatteriesUpdatedEvent(List<BatteryChange> changes) {
+}
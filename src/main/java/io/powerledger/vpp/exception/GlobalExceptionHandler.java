@@ -2,6 +2,7 @@ package io.powerledger.vpp.exception;
 
 import jakarta.persistence.EntityNotFoundException;
 import jakarta.validation.ConstraintViolationException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.MethodArgumentNotValidException;
@@ -66,6 +67,90 @@ public class GlobalExceptionHandler {
         return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(errorResponse);
     }
 
+    /**
+     * Handles pagination cursors that cannot be decoded.
+     *
+     * @param ex      the InvalidCursorException
+     * @param request the web request
+     * @return a formatted error response with HTTP 400 status
+     */
+    @ExceptionHandler(InvalidCursorException.class)
+    public ResponseEntity<ErrorResponse> handleInvalidCursorException(InvalidCursorException ex, WebRequest request) {
+        ErrorResponse errorResponse = new ErrorResponse(
+                LocalDateTime.now(),
+                HttpStatus.BAD_REQUEST.value(),
+                HttpStatus.BAD_REQUEST.getReasonPhrase(),
+                ex.getMessage(),
+                request.getDescription(false)
+        );
+
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(errorResponse);
+    }
+
+    /**
+     * Handles fleet syncs that cannot be applied.
+     *
+     * @param ex      the InvalidFleetSyncException
+     * @param request the web request
+     * @return a formatted error response with HTTP 400 status
+     */
+    @ExceptionHandler(InvalidFleetSyncException.class)
+    public ResponseEntity<ErrorResponse> handleInvalidFleetSyncException(InvalidFleetSyncException ex, WebRequest request) {
+        ErrorResponse errorResponse = new ErrorResponse(
+                LocalDateTime.now(),
+                HttpStatus.BAD_REQUEST.value(),
+                HttpStatus.BAD_REQUEST.getReasonPhrase(),
+                ex.getMessage(),
+                request.getDescription(false)
+        );
+
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(errorResponse);
+    }
+
+    /**
+     * Handles registrations rejected because the write-behind buffer is full.
+     *
+     * @param ex      the IngestBufferFullException
+     * @param request the web request
+     * @return a formatted error response with HTTP 429 status and a Retry-After header
+     */
+    @ExceptionHandler(IngestBufferFullException.class)
+    public ResponseEntity<ErrorResponse> handleIngestBufferFullException(IngestBufferFullException ex, WebRequest request) {
+        ErrorResponse errorResponse = new ErrorResponse(
+                LocalDateTime.now(),
+                HttpStatus.TOO_MANY_REQUESTS.value(),
+                HttpStatus.TOO_MANY_REQUESTS.getReasonPhrase(),
+                ex.getMessage(),
+                request.getDescription(false)
+        );
+
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(errorResponse);
+    }
+
+    /**
+     * Handles range subscriptions rejected because too many are open.
+     *
+     * @param ex      the SubscriptionLimitException
+     * @param request the web request
+     * @return a formatted error response with HTTP 503 status and a Retry-After header
+     */
+    @ExceptionHandler(SubscriptionLimitException.class)
+    public ResponseEntity<ErrorResponse> handleSubscriptionLimitException(SubscriptionLimitException ex, WebRequest request) {
+        ErrorResponse errorResponse = new ErrorResponse(
+                LocalDateTime.now(),
+                HttpStatus.SERVICE_UNAVAILABLE.value(),
+                HttpStatus.SERVICE_UNAVAILABLE.getReasonPhrase(),
+                ex.getMessage(),
+                request.getDescription(false)
+        );
+
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "30")
+                .body(errorResponse);
+    }
+
     /**
      * Handles cases where an entity is not found in the database.
      *
@@ -0,0 +1,11 @@
+package io.powerledger.vpp.exception;
+
+/**
+ * Thrown when the write-behind buffer has no room for a registration; clients should retry later.
+ */
+public class IngestBufferFullException extends RuntimeException {
+
+    public IngestBufferFullException(String message) {
+        super(message);
+    }
+}
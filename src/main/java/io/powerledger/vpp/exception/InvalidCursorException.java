@@ -0,0 +1,11 @@
+package io.powerledger.vpp.exception;
+
+/**
+ * Thrown when a pagination cursor supplied by a client cannot be decoded.
+ */
+public class InvalidCursorException extends RuntimeException {
+
+    public InvalidCursorException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,12 @@
+package io.powerledger.vpp.exception;
+
+/**
+ * Thrown when a fleet sync request cannot be applied, such as when a battery has no external id or
+ * two batteries share one.
+ */
+public class InvalidFleetSyncException extends RuntimeException {
+
+    public InvalidFleetSyncException(String message) {
+        super(message);
+    }
+}
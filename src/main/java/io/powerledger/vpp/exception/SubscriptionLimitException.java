@@ -0,0 +1,11 @@
+package io.powerledger.vpp.exception;
+
+/**
+ * Thrown when a range subscription would exceed the configured number of open subscriptions.
+ */
+public class SubscriptionLimitException extends RuntimeException {
+
+    public SubscriptionLimitException(String message) {
+        super(message);
+    }
+}
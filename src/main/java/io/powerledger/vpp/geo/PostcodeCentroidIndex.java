@@ -0,0 +1,252 @@
+package io.powerledger.vpp.geo;
+
+import io.powerledger.vpp.model.PostcodeConverter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Postcode centroids loaded from a CSV file ({@code postcode,latitude,longitude}, in decimal degrees)
+ * and bucketed into a uniform latitude/longitude grid, so a radius query measures the distance to the
+ * centroids of the cells overlapping the circle's bounding box only. The file is set with
+ * {@code vpp.geo.centroids} and the cell size with {@code vpp.geo.grid-cell-degrees}.
+ * <p>
+ * Distances are great-circle distances between centroids, so every battery in a postcode is as far
+ * from the query as its postcode's centroid. The grid does not wrap at the antimeridian.
+ */
+@Component
+@Slf4j
+public class PostcodeCentroidIndex {
+
+    /** Mean Earth radius, in km. */
+    static final double EARTH_RADIUS_KM = 6371.0088;
+    private static final double KM_PER_DEGREE = EARTH_RADIUS_KM * Math.PI / 180;
+
+    private final double cellDegrees;
+
+    // Centroids in ascending postcode order; positions index the arrays below.
+    private final int[] postcodes;
+    private final double[] latitudes;
+    private final double[] longitudes;
+    // Position of each postcode's centroid, or -1.
+    private final int[] positionByPostcode = new int[10_000];
+    private final int[] postcodesWithoutCentroid;
+
+    // Grid over the centroids' bounding box; the positions in cell c are cellEntries[cellStarts[c]..cellStarts[c + 1]).
+    private final double minLatitude;
+    private final double minLongitude;
+    private final int rows;
+    private final int columns;
+    private final int[] cellStarts;
+    private final int[] cellEntries;
+
+    public PostcodeCentroidIndex(@Value("${vpp.geo.centroids:classpath:geo/postcode-centroids.csv}") Resource centroids,
+                                 @Value("${vpp.geo.grid-cell-degrees:0.5}") double cellDegrees) {
+        this.cellDegrees = cellDegrees;
+        Arrays.fill(positionByPostcode, -1);
+
+        // Read into per-postcode slots, then compact in postcode order
+        double[][] coordinates = read(centroids);
+        int size = 0;
+        for (int postcode = 0; postcode < positionByPostcode.length; postcode++) {
+            if (!Double.isNaN(coordinates[0][postcode])) {
+                positionByPostcode[postcode] = size++;
+            }
+        }
+        postcodes = new int[size];
+        latitudes = new double[size];
+        longitudes = new double[size];
+        postcodesWithoutCentroid = new int[positionByPostcode.length - size];
+        int missing = 0;
+        for (int postcode = 0; postcode < positionByPostcode.length; postcode++) {
+            int position = positionByPostcode[postcode];
+            if (position >= 0) {
+                postcodes[position] = postcode;
+                latitudes[position] = coordinates[0][postcode];
+                longitudes[position] = coordinates[1][postcode];
+            } else {
+                postcodesWithoutCentroid[missing++] = postcode;
+            }
+        }
+
+        minLatitude = size == 0 ? 0 : Arrays.stream(latitudes).min().getAsDouble();
+        minLongitude = size == 0 ? 0 : Arrays.stream(longitudes).min().getAsDouble();
+        rows = size == 0 ? 1 : row(Arrays.stream(latitudes).max().getAsDouble()) + 1;
+        columns = size == 0 ? 1 : column(Arrays.stream(longitudes).max().getAsDouble()) + 1;
+
+        // Counting sort of positions by cell
+        cellStarts = new int[rows * columns + 1];
+        for (int i = 0; i < size; i++) {
+            cellStarts[cell(i) + 1]++;
+        }
+        for (int c = 0; c < rows * columns; c++) {
+            cellStarts[c + 1] += cellStarts[c];
+        }
+        cellEntries = new int[size];
+        int[] next = Arrays.copyOf(cellStarts, rows * columns);
+        for (int i = 0; i < size; i++) {
+            cellEntries[next[cell(i)]++] = i;
+        }
+        log.info("Loaded {} postcode centroids into a {} x {} grid of {}-degree cells", size, rows, columns, cellDegrees);
+    }
+
+    public boolean contains(String postcode) {
+        return positionByPostcode[PostcodeConverter.toColumn(postcode)] >= 0;
+    }
+
+    /**
+     * Number of postcodes with a centroid.
+     */
+    public int size() {
+        return postcodes.length;
+    }
+
+    /**
+     * Postcodes without a centroid, whose batteries no radius query can reach, in ascending order.
+     * The array is shared and must not be modified.
+     */
+    public int[] postcodesWithoutCentroid() {
+        return postcodesWithoutCentroid;
+    }
+
+    /**
+     * Finds the postcodes whose centroid lies within a radius of a postcode's centroid.
+     *
+     * @param postcode 4-digit postcode at the centre; must have a centroid.
+     * @param radiusKm Radius, in km.
+     * @return The postcodes, including the centre, nearest first and then by postcode.
+     * @throws IllegalArgumentException if the postcode has no centroid.
+     */
+    public Neighbours withinRadius(String postcode, double radiusKm) {
+        int centre = positionByPostcode[PostcodeConverter.toColumn(postcode)];
+        if (centre < 0) {
+            throw new IllegalArgumentException("No centroid for postcode " + postcode);
+        }
+        double latitude = latitudes[centre];
+        double longitude = longitudes[centre];
+
+        // Bounding box of the circle; at high latitudes or large radii it spans every column
+        double latitudeDelta = radiusKm / KM_PER_DEGREE;
+        int fromRow = Math.max(0, row(latitude - latitudeDelta));
+        int toRow = Math.min(rows - 1, row(latitude + latitudeDelta));
+        double widestCos = Math.cos(Math.toRadians(Math.min(90, Math.abs(latitude) + latitudeDelta)));
+        double longitudeDelta = widestCos <= 0 ? 360 : latitudeDelta / widestCos;
+        int fromColumn = longitudeDelta >= 180 ? 0 : Math.max(0, column(longitude - longitudeDelta));
+        int toColumn = longitudeDelta >= 180 ? columns - 1 : Math.min(columns - 1, column(longitude + longitudeDelta));
+
+        // Pack (distance in metres, postcode) so one primitive sort orders by distance, then postcode
+        long[] found = new long[16];
+        int count = 0;
+        for (int r = fromRow; r <= toRow; r++) {
+            for (int c = fromColumn; c <= toColumn; c++) {
+                int cell = r * columns + c;
+                for (int e = cellStarts[cell]; e < cellStarts[cell + 1]; e++) {
+                    int position = cellEntries[e];
+                    double distance = distanceKm(latitude, longitude, latitudes[position], longitudes[position]);
+                    if (distance <= radiusKm) {
+                        if (count == found.length) {
+                            found = Arrays.copyOf(found, count * 2);
+                        }
+                        found[count++] = (Math.round(distance * 1000) << 14) | postcodes[position];
+                    }
+                }
+            }
+        }
+        Arrays.sort(found, 0, count);
+
+        int[] neighbourPostcodes = new int[count];
+        double[] distances = new double[count];
+        for (int i = 0; i < count; i++) {
+            neighbourPostcodes[i] = (int) (found[i] & 0x3FFF);
+            int position = positionByPostcode[neighbourPostcodes[i]];
+            distances[i] = distanceKm(latitude, longitude, latitudes[position], longitudes[position]);
+        }
+        return new Neighbours(neighbourPostcodes, distances);
+    }
+
+    /**
+     * Great-circle distance between two points, in km, by the haversine formula.
+     */
+    static double distanceKm(double latitude1, double longitude1, double latitude2, double longitude2) {
+        double sinHalfLatitude = Math.sin(Math.toRadians(latitude2 - latitude1) / 2);
+        double sinHalfLongitude = Math.sin(Math.toRadians(longitude2 - longitude1) / 2);
+        double a = sinHalfLatitude * sinHalfLatitude
+                + Math.cos(Math.toRadians(latitude1)) * Math.cos(Math.toRadians(latitude2)) * sinHalfLongitude * sinHalfLongitude;
+        return 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
+    private int row(double latitude) {
+        return (int) Math.floor((latitude - minLatitude) / cellDegrees);
+    }
+
+    private int column(double longitude) {
+        return (int) Math.floor((longitude - minLongitude) / cellDegrees);
+    }
+
+    private int cell(int position) {
+        return row(latitudes[position]) * columns + column(longitudes[position]);
+    }
+
+    /**
+     * Reads the file into latitudes and longitudes indexed by numeric postcode, NaN where a postcode has
+     * no centroid. Blank lines, lines starting with {@code #} and a header starting with {@code postcode}
+     * are skipped.
+     */
+    private static double[][] read(Resource centroids) {
+        double[][] coordinates = new double[2][10_000];
+        Arrays.fill(coordinates[0], Double.NaN);
+        Arrays.fill(coordinates[1], Double.NaN);
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(centroids.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.strip();
+                if (line.isEmpty() || line.startsWith("#") || line.startsWith("postcode")) {
+                    continue;
+                }
+                try {
+                    String[] fields = line.split(",");
+                    if (fields.length != 3) {
+                        throw new IllegalArgumentException("Expected postcode,latitude,longitude");
+                    }
+                    int postcode = PostcodeConverter.toColumn(fields[0].strip());
+                    double latitude = Double.parseDouble(fields[1]);
+                    double longitude = Double.parseDouble(fields[2]);
+                    if (!(Math.abs(latitude) <= 90 && Math.abs(longitude) <= 180)) {
+                        throw new IllegalArgumentException("Coordinates out of range");
+                    }
+                    if (!Double.isNaN(coordinates[0][postcode])) {
+                        throw new IllegalArgumentException("Duplicate postcode");
+                    }
+                    coordinates[0][postcode] = latitude;
+                    coordinates[1][postcode] = longitude;
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalStateException("Invalid centroid at " + centroids.getDescription()
+                            + " line " + lineNumber + ": " + e.getMessage(), e);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read postcode centroids from " + centroids.getDescription(), e);
+        }
+        return coordinates;
+    }
+
+    /**
+     * Numeric postcodes and their distances from the query centroid, in km, nearest first.
+     */
+    public record Neighbours(int[] postcodes, double[] distancesKm) {
+
+        public int size() {
+            return postcodes.length;
+        }
+    }
+}
@@ -0,0 +1,686 @@
+package io.powerledger.vpp.index;
+
+import io.powerledger.vpp.dto.BatteryChange;
+import io.powerledger.vpp.dto.BatteryRow;
+import io.powerledger.vpp.event.BatteriesRegisteredEvent;
+import io.powerledger.vpp.event.BatteriesUpdatedEvent;
+import io.powerledger.vpp.model.Battery;
+import io.powerledger.vpp.repository.BatteryRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongPredicate;
+import java.util.stream.Collectors;
+
+/**
+ * In-process, case-insensitive search index over battery names.
+ * <p>
+ * Distinct lower-cased names are held sorted, so prefix matches are a binary search, and a trigram
+ * inverted index maps every three-character sequence to the sorted ordinals of the names containing
+ * it. A substring query walks the shortest posting list of its trigrams, skips names missing from
+ * the others, and verifies the rest, stopping once enough batteries are found. Queries shorter than
+ * {@value #GRAM} characters match prefixes only. Results are prefix matches, then other substring
+ * matches, each in name order and, within a name, in id order.
+ * <p>
+ * Snapshots are immutable and published through a volatile field, so readers never lock. Batteries
+ * registered since the last rebuild are appended, without copying, to a list that queries scan, and
+ * batteries changed by a fleet sync are appended the same way, hiding their earlier entries. Once the
+ * list holds more than {@value #MAX_RECENT}, a background thread folds it into a rebuilt trigram index,
+ * and changes keep being appended until the rebuilt index is swapped in. Enabled with
+ * {@code vpp.index.name-search.enabled}; until it is loaded, {@link #isLoaded} returns false and
+ * callers query the repository.
+ */
+@Component
+@Slf4j
+public class BatteryNameIndex {
+
+    /** Length of the indexed character sequences; shorter queries match name prefixes only. */
+    public static final int GRAM = 3;
+    static final int MAX_RECENT = 10_000;
+
+    private final BatteryRepository batteryRepository;
+    private final boolean enabled;
+    private final Executor rebuilder;
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    private volatile Snapshot snapshot;
+    // Whether a background rebuild is running; guarded by writeLock.
+    private boolean rebuilding;
+
+    // Registrations and sync changes that arrive while the initial load is running; guarded by writeLock.
+    private List<Battery> pendingDuringLoad;
+    private List<Battery> pendingUpdatesDuringLoad;
+
+    @Autowired
+    public BatteryNameIndex(BatteryRepository batteryRepository,
+                            @Value("${vpp.index.name-search.enabled:false}") boolean enabled) {
+        this(batteryRepository, enabled, Executors.newVirtualThreadPerTaskExecutor());
+    }
+
+    BatteryNameIndex(BatteryRepository batteryRepository, boolean enabled, Executor rebuilder) {
+        this.batteryRepository = batteryRepository;
+        this.enabled = enabled;
+        this.rebuilder = rebuilder;
+    }
+
+    /**
+     * Builds the index from the repository once the application has started.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        if (!enabled) {
+            return;
+        }
+        writeLock.lock();
+        try {
+            pendingDuringLoad = new ArrayList<>();
+            pendingUpdatesDuringLoad = new ArrayList<>();
+        } finally {
+            writeLock.unlock();
+        }
+
+        long startTime = System.currentTimeMillis();
+        List<BatteryRow> rows = batteryRepository.findAllRows();
+        Entries entries = new Entries(rows.size());
+        rows.forEach(row -> entries.add(row.getId(), row.getName(), row.getPostcode(), row.getCapacity()));
+
+        Snapshot due;
+        writeLock.lock();
+        try {
+            // Registrations committed before the scan are already in rows; keep only the rest.
+            Set<Long> loadedIds = rows.stream().map(BatteryRow::getId).collect(Collectors.toSet());
+            due = publish(new Snapshot(Base.build(entries), Recent.empty())
+                    .plus(pendingDuringLoad.stream().filter(battery -> !loadedIds.contains(battery.getId())).toList())
+                    .replace(pendingUpdatesDuringLoad));
+            pendingDuringLoad = null;
+            pendingUpdatesDuringLoad = null;
+        } finally {
+            writeLock.unlock();
+        }
+        rebuildInBackground(due);
+        log.info("Loaded battery name index with {} names for {} batteries in {} ms",
+                snapshot.base.keys.length, rows.size(), System.currentTimeMillis() - startTime);
+    }
+
+    /**
+     * Adds newly registered batteries to the index after their transaction commits.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void onBatteriesRegistered(BatteriesRegisteredEvent event) {
+        if (!enabled) {
+            return;
+        }
+        Snapshot due = null;
+        writeLock.lock();
+        try {
+            if (pendingDuringLoad != null) {
+                pendingDuringLoad.addAll(event.batteries());
+            } else if (snapshot != null) {
+                due = publish(snapshot.plus(event.batteries()));
+            }
+        } finally {
+            writeLock.unlock();
+        }
+        rebuildInBackground(due);
+    }
+
+    /**
+     * Replaces the batteries changed by a fleet sync after its transaction commits.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void onBatteriesUpdated(BatteriesUpdatedEvent event) {
+        if (!enabled) {
+            return;
+        }
+        List<Battery> updated = event.changes().stream().map(BatteryChange::current).toList();
+        Snapshot due = null;
+        writeLock.lock();
+        try {
+            if (pendingUpdatesDuringLoad != null) {
+                pendingUpdatesDuringLoad.addAll(updated);
+            } else if (snapshot != null) {
+                due = publish(snapshot.replace(updated));
+            }
+        } finally {
+            writeLock.unlock();
+        }
+        rebuildInBackground(due);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (rebuilder instanceof ExecutorService executor) {
+            executor.shutdown();
+        }
+    }
+
+    // Publishes the snapshot with writeLock held, and returns it if its recent batteries are due to be folded
+    // into a rebuilt trigram index, which the caller starts once it has released the lock.
+    private Snapshot publish(Snapshot next) {
+        snapshot = next;
+        if (rebuilding || next.recent.size <= MAX_RECENT) {
+            return null;
+        }
+        rebuilding = true;
+        return next;
+    }
+
+    private void rebuildInBackground(Snapshot from) {
+        if (from != null) {
+            rebuilder.execute(() -> rebuild(from));
+        }
+    }
+
+    private void rebuild(Snapshot from) {
+        long startTime = System.currentTimeMillis();
+        Snapshot due = null;
+        Base rebuilt = null;
+        try {
+            rebuilt = Base.build(from.entries());
+        } catch (RuntimeException e) {
+            log.error("Failed to rebuild battery name index", e);
+        }
+        writeLock.lock();
+        try {
+            rebuilding = false;
+            if (rebuilt != null) {
+                due = publish(snapshot.rebased(rebuilt, from.recent.size));
+            }
+        } finally {
+            writeLock.unlock();
+        }
+        if (rebuilt != null) {
+            log.debug("Rebuilt battery name index with {} batteries in {} ms",
+                    rebuilt.ids.length, System.currentTimeMillis() - startTime);
+        }
+        rebuildInBackground(due);
+    }
+
+    public boolean isLoaded() {
+        return snapshot != null;
+    }
+
+    /**
+     * Finds batteries whose name contains the query, ignoring case.
+     *
+     * @param query Text to look for; queries shorter than {@value #GRAM} characters match prefixes only.
+     * @param limit Maximum number of batteries to return.
+     * @return Prefix matches, then other matches, each ordered by name and id.
+     */
+    public List<BatteryRow> search(String query, int limit) {
+        Snapshot current = snapshot;
+        String key = normalize(query);
+        List<Match> matches = new ArrayList<>();
+        current.search(key, limit, matches);
+        matches.sort(null);
+        return matches.stream().limit(limit).map(Match::row).toList();
+    }
+
+    /**
+     * Form in which names and queries are compared.
+     */
+    public static String normalize(String text) {
+        return text.strip().toLowerCase(Locale.ROOT);
+    }
+
+    private static boolean isPrefixOnly(String key) {
+        return key.length() < GRAM;
+    }
+
+    // Three UTF-16 units packed into one long
+    private static long gram(String key, int at) {
+        return ((long) key.charAt(at) << 32) | ((long) key.charAt(at + 1) << 16) | key.charAt(at + 2);
+    }
+
+    /** Distinct trigrams of a key, sorted. */
+    private static long[] grams(String key) {
+        if (key.length() < GRAM) {
+            return new long[0];
+        }
+        long[] grams = new long[key.length() - GRAM + 1];
+        for (int i = 0; i < grams.length; i++) {
+            grams[i] = gram(key, i);
+        }
+        Arrays.sort(grams);
+        int distinct = 0;
+        for (int i = 0; i < grams.length; i++) {
+            if (i == 0 || grams[i] != grams[i - 1]) {
+                grams[distinct++] = grams[i];
+            }
+        }
+        return Arrays.copyOf(grams, distinct);
+    }
+
+    /**
+     * A battery matching a query, ordered prefix matches first, then by name key and id.
+     */
+    private record Match(boolean prefix, String key, long id, BatteryRow row) implements Comparable<Match> {
+
+        static Match of(String query, String key, long id, String name, String postcode, int capacity) {
+            return new Match(key.startsWith(query), key, id, new BatteryRow(id, name, postcode, capacity));
+        }
+
+        @Override
+        public int compareTo(Match other) {
+            if (prefix != other.prefix) {
+                return prefix ? -1 : 1;
+            }
+            int byKey = key.compareTo(other.key);
+            return byKey != 0 ? byKey : Long.compare(id, other.id);
+        }
+    }
+
+    /**
+     * Growable columns of batteries.
+     */
+    static final class Entries {
+        long[] ids;
+        String[] names;
+        String[] keys;
+        String[] postcodes;
+        int[] capacities;
+        int size;
+
+        Entries(int capacity) {
+            int initial = Math.max(capacity, 16);
+            ids = new long[initial];
+            names = new String[initial];
+            keys = new String[initial];
+            postcodes = new String[initial];
+            capacities = new int[initial];
+        }
+
+        void add(long id, String name, String postcode, int capacity) {
+            if (size == ids.length) {
+                int grown = size * 2;
+                ids = Arrays.copyOf(ids, grown);
+                names = Arrays.copyOf(names, grown);
+                keys = Arrays.copyOf(keys, grown);
+                postcodes = Arrays.copyOf(postcodes, grown);
+                capacities = Arrays.copyOf(capacities, grown);
+            }
+            ids[size] = id;
+            names[size] = name;
+            keys[size] = normalize(name);
+            postcodes[size] = postcode;
+            capacities[size] = capacity;
+            size++;
+        }
+    }
+
+    /**
+     * Indexed batteries grouped by name key: the batteries of key {@code k} are at positions
+     * {@code starts[k]} to {@code starts[k + 1]} of the battery columns, in id order.
+     */
+    static final class Base {
+        final String[] keys;
+        final int[] starts;
+        final long[] ids;
+        final String[] names;
+        final String[] postcodes;
+        final int[] capacities;
+        final Map<Long, int[]> postings;
+
+        private Base(String[] keys, int[] starts, long[] ids, String[] names, String[] postcodes, int[] capacities,
+                     Map<Long, int[]> postings) {
+            this.keys = keys;
+            this.starts = starts;
+            this.ids = ids;
+            this.names = names;
+            this.postcodes = postcodes;
+            this.capacities = capacities;
+            this.postings = postings;
+        }
+
+        static Base build(Entries entries) {
+            int n = entries.size;
+            Map<String, Integer> ordinals = new HashMap<>();
+            // Rows read from the database hold a separate copy of every repeated name
+            Map<String, String> canonicalNames = new HashMap<>();
+            for (int i = 0; i < n; i++) {
+                ordinals.putIfAbsent(entries.keys[i], 0);
+                entries.names[i] = canonicalNames.computeIfAbsent(entries.names[i], name -> name);
+            }
+            String[] keys = ordinals.keySet().toArray(new String[0]);
+            Arrays.sort(keys);
+            for (int k = 0; k < keys.length; k++) {
+                ordinals.put(keys[k], k);
+            }
+
+            // Sort (key ordinal, entry position) pairs packed into longs
+            long[] order = new long[n];
+            int[] starts = new int[keys.length + 1];
+            for (int i = 0; i < n; i++) {
+                int ordinal = ordinals.get(entries.keys[i]);
+                order[i] = ((long) ordinal << 32) | i;
+                starts[ordinal + 1]++;
+            }
+            Arrays.sort(order);
+            for (int k = 0; k < keys.length; k++) {
+                starts[k + 1] += starts[k];
+                sortById(entries, order, starts[k], starts[k + 1]);
+            }
+
+            long[] ids = new long[n];
+            String[] names = new String[n];
+            String[] postcodes = new String[n];
+            int[] capacities = new int[n];
+            for (int j = 0; j < n; j++) {
+                int i = (int) order[j];
+                ids[j] = entries.ids[i];
+                names[j] = entries.names[i];
+                postcodes[j] = entries.postcodes[i];
+                capacities[j] = entries.capacities[i];
+            }
+            return new Base(keys, starts, ids, names, postcodes, capacities, buildPostings(keys));
+        }
+
+        /**
+         * Puts the positions of one key into id order. Entries mostly arrive in id order, so this rarely sorts.
+         */
+        private static void sortById(Entries entries, long[] order, int from, int to) {
+            boolean sorted = true;
+            for (int j = from + 1; j < to && sorted; j++) {
+                sorted = entries.ids[(int) order[j - 1]] < entries.ids[(int) order[j]];
+            }
+            if (!sorted) {
+                long[] group = Arrays.copyOfRange(order, from, to);
+                Long[] byId = Arrays.stream(group).boxed()
+                        .sorted(Comparator.comparingLong(key -> entries.ids[(int) (long) key]))
+                        .toArray(Long[]::new);
+                for (int j = from; j < to; j++) {
+                    order[j] = byId[j - from];
+                }
+            }
+        }
+
+        private static Map<Long, int[]> buildPostings(String[] keys) {
+            Map<Long, int[]> counts = new HashMap<>();
+            for (String key : keys) {
+                for (long gram : grams(key)) {
+                    counts.computeIfAbsent(gram, g -> new int[1])[0]++;
+                }
+            }
+            Map<Long, int[]> postings = new HashMap<>(counts.size() * 2);
+            counts.forEach((gram, count) -> {
+                postings.put(gram, new int[count[0]]);
+                count[0] = 0;
+            });
+            // Keys are visited in ordinal order, so every posting list comes out sorted
+            for (int k = 0; k < keys.length; k++) {
+                for (long gram : grams(keys[k])) {
+                    postings.get(gram)[counts.get(gram)[0]++] = k;
+                }
+            }
+            return postings;
+        }
+
+        /**
+         * Adds the first {@code limit} matches in order: prefix matches, then other substring matches,
+         * skipping batteries with the given ids.
+         */
+        void search(String query, int limit, LongPredicate hidden, List<Match> matches) {
+            int found = 0;
+            for (int k = lowerBound(query); k < keys.length && keys[k].startsWith(query) && found < limit; k++) {
+                found += addBatteries(query, k, limit - found, hidden, matches);
+            }
+            if (found >= limit || isPrefixOnly(query)) {
+                return;
+            }
+
+            long[] grams = grams(query);
+            int[][] lists = new int[grams.length][];
+            for (int g = 0; g < grams.length; g++) {
+                lists[g] = postings.get(grams[g]);
+                if (lists[g] == null) {
+                    return;
+                }
+            }
+            Arrays.sort(lists, Comparator.comparingInt(list -> list.length));
+            int[] cursors = new int[lists.length];
+            for (int candidate : lists[0]) {
+                if (found >= limit) {
+                    return;
+                }
+                if (inAll(lists, cursors, candidate) && !keys[candidate].startsWith(query)
+                        && keys[candidate].contains(query)) {
+                    found += addBatteries(query, candidate, limit - found, hidden, matches);
+                }
+            }
+        }
+
+        // Candidates ascend, so each cursor only moves forward
+        private static boolean inAll(int[][] lists, int[] cursors, int candidate) {
+            for (int l = 1; l < lists.length; l++) {
+                int[] list = lists[l];
+                int at = Arrays.binarySearch(list, cursors[l], list.length, candidate);
+                if (at < 0) {
+                    cursors[l] = -at - 1;
+                    return false;
+                }
+                cursors[l] = at;
+            }
+            return true;
+        }
+
+        private int addBatteries(String query, int k, int max, LongPredicate hidden, List<Match> matches) {
+            int added = 0;
+            for (int i = starts[k]; i < starts[k + 1] && added < max; i++) {
+                if (!hidden.test(ids[i])) {
+                    matches.add(Match.of(query, keys[k], ids[i], names[i], postcodes[i], capacities[i]));
+                    added++;
+                }
+            }
+            return added;
+        }
+
+        /** Ordinal of the first key >= the query. */
+        private int lowerBound(String query) {
+            int at = Arrays.binarySearch(keys, query);
+            return at >= 0 ? at : -at - 1;
+        }
+    }
+
+    /**
+     * Batteries registered or changed since the trigram index was last built, in commit order. Appends write
+     * past the end of the shared columns and return a longer view, so entries are copied only when the
+     * columns grow. A view reads only its first {@code size} entries, and growing copies into new columns,
+     * leaving the ones earlier views read untouched. An entry for a battery already held hides its earlier
+     * entry from views that include it, and its entry in the trigram index through {@link #replacing}.
+     * Appended only under the index's write lock.
+     */
+    static final class Recent {
+        final long[] ids;
+        final String[] names;
+        final String[] keys;
+        final String[] postcodes;
+        final int[] capacities;
+        // One more than the position of the entry that replaces each entry, or 0 while none does. Views that
+        // end before that position still see the entry, whichever value they read.
+        final int[] replacedAt;
+        // Position of the first entry for each battery that may be held by the trigram index
+        final Map<Long, Integer> replacing;
+        // Position of the last entry for each battery; read only by the writer
+        final Map<Long, Integer> lastById;
+        final int size;
+
+        private Recent(long[] ids, String[] names, String[] keys, String[] postcodes, int[] capacities,
+                       int[] replacedAt, Map<Long, Integer> replacing, Map<Long, Integer> lastById, int size) {
+            this.ids = ids;
+            this.names = names;
+            this.keys = keys;
+            this.postcodes = postcodes;
+            this.capacities = capacities;
+            this.replacedAt = replacedAt;
+            this.replacing = replacing;
+            this.lastById = lastById;
+            this.size = size;
+        }
+
+        static Recent empty() {
+            int capacity = 16;
+            return new Recent(new long[capacity], new String[capacity], new String[capacity], new String[capacity],
+                    new int[capacity], new int[capacity], new ConcurrentHashMap<>(), new HashMap<>(), 0);
+        }
+
+        /**
+         * Returns a view that also holds the given batteries, hiding their earlier entries. With
+         * {@code replaces}, they also hide the trigram index's entries for the same batteries.
+         */
+        Recent plus(List<Battery> added, boolean replaces) {
+            int needed = size + added.size();
+            Recent target = needed <= ids.length ? this : grown(Math.max(needed, ids.length * 2));
+            int at = size;
+            for (Battery battery : added) {
+                target.set(at++, battery.getId(), battery.getName(), normalize(battery.getName()),
+                        battery.getPostcode(), battery.getCapacity(), replaces);
+            }
+            return new Recent(target.ids, target.names, target.keys, target.postcodes, target.capacities,
+                    target.replacedAt, replacing, lastById, at);
+        }
+
+        /**
+         * Returns new columns holding the entries from the given position on, all of which hide the
+         * trigram index's entries for the same batteries.
+         */
+        Recent from(int start) {
+            Recent copy = empty().grown(Math.max(size - start, 16));
+            for (int i = start; i < size; i++) {
+                copy.set(i - start, ids[i], names[i], keys[i], postcodes[i], capacities[i], true);
+            }
+            return new Recent(copy.ids, copy.names, copy.keys, copy.postcodes, copy.capacities,
+                    copy.replacedAt, copy.replacing, copy.lastById, size - start);
+        }
+
+        private void set(int at, long id, String name, String key, String postcode, int capacity, boolean replaces) {
+            ids[at] = id;
+            names[at] = name;
+            keys[at] = key;
+            postcodes[at] = postcode;
+            capacities[at] = capacity;
+            replacedAt[at] = 0;
+            Integer previous = lastById.put(id, at);
+            if (previous != null) {
+                replacedAt[previous] = at + 1;
+            } else if (replaces) {
+                replacing.put(id, at);
+            }
+        }
+
+        private Recent grown(int capacity) {
+            return new Recent(Arrays.copyOf(ids, capacity), Arrays.copyOf(names, capacity),
+                    Arrays.copyOf(keys, capacity), Arrays.copyOf(postcodes, capacity),
+                    Arrays.copyOf(capacities, capacity), Arrays.copyOf(replacedAt, capacity),
+                    replacing, lastById, size);
+        }
+
+        boolean isVisible(int i) {
+            return replacedAt[i] == 0 || replacedAt[i] > size;
+        }
+
+        /** Whether this view holds a newer entry for a battery of the trigram index. */
+        boolean replaces(long id) {
+            Integer at = replacing.get(id);
+            return at != null && at < size;
+        }
+
+        /** Adds every matching entry, as recent batteries are few enough to scan. */
+        void search(String query, List<Match> matches) {
+            boolean prefixOnly = isPrefixOnly(query);
+            for (int i = 0; i < size; i++) {
+                String key = keys[i];
+                if ((prefixOnly ? key.startsWith(query) : key.contains(query)) && isVisible(i)) {
+                    matches.add(Match.of(query, key, ids[i], names[i], postcodes[i], capacities[i]));
+                }
+            }
+        }
+    }
+
+    /**
+     * Indexed batteries plus those registered or changed since the index was last built.
+     */
+    static final class Snapshot {
+        final Base base;
+        final Recent recent;
+
+        Snapshot(Base base, Recent recent) {
+            this.base = base;
+            this.recent = recent;
+        }
+
+        /**
+         * Returns a new snapshot that also holds the given batteries.
+         */
+        Snapshot plus(List<Battery> added) {
+            return plus(added, false);
+        }
+
+        /**
+         * Returns a new snapshot in which the given batteries hold their current name, postcode and capacity
+         * instead of their earlier entries.
+         */
+        Snapshot replace(List<Battery> updated) {
+            return plus(updated, true);
+        }
+
+        private Snapshot plus(List<Battery> added, boolean replaces) {
+            if (added.isEmpty()) {
+                return this;
+            }
+            List<Battery> byId = added.stream().sorted(Comparator.comparing(Battery::getId)).toList();
+            return new Snapshot(base, recent.plus(byId, replaces));
+        }
+
+        /**
+         * Returns a snapshot on the given rebuilt index, which holds the batteries of this snapshot's first
+         * {@code folded} recent entries.
+         */
+        Snapshot rebased(Base rebuilt, int folded) {
+            return new Snapshot(rebuilt, recent.from(folded));
+        }
+
+        void search(String query, int limit, List<Match> matches) {
+            base.search(query, limit, recent::replaces, matches);
+            recent.search(query, matches);
+        }
+
+        /** Every battery of the snapshot in its current form, for rebuilding the trigram index. */
+        Entries entries() {
+            Entries all = new Entries(base.ids.length + recent.size);
+            for (int i = 0; i < base.ids.length; i++) {
+                if (!recent.replaces(base.ids[i])) {
+                    all.add(base.ids[i], base.names[i], base.postcodes[i], base.capacities[i]);
+                }
+            }
+            for (int i = 0; i < recent.size; i++) {
+                if (recent.isVisible(i)) {
+                    all.add(recent.ids[i], recent.names[i], recent.postcodes[i], recent.capacities[i]);
+                }
+            }
+            return all;
+        }
+    }
+}
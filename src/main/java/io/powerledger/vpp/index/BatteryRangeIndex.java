@@ -0,0 +1,826 @@
+package io.powerledger.vpp.index;
+
+import io.powerledger.vpp.dto.BatteryChange;
+import io.powerledger.vpp.dto.BatteryRow;
+import io.powerledger.vpp.dto.CapacityAggregate;
+import io.powerledger.vpp.dto.PostcodeSpan;
+import io.powerledger.vpp.event.BatteriesRegisteredEvent;
+import io.powerledger.vpp.event.BatteriesUpdatedEvent;
+import io.powerledger.vpp.model.Battery;
+import io.powerledger.vpp.model.PostcodeConverter;
+import io.powerledger.vpp.repository.BatteryRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+
+/**
+ * In-process, postcode-ordered index of battery capacities.
+ * <p>
+ * Postcodes and capacities are held in primitive arrays sorted by postcode, together with a prefix
+ * sum of capacities, so an unfiltered range total is two binary searches and a subtraction.
+ * Capacity-filtered queries scan only the postcode slice, and names are read only when requested.
+ * <p>
+ * Snapshots are immutable and published through a volatile field, so readers never lock. Batteries
+ * registered since the last fold are merged into a second, small snapshot that queries combine with
+ * the base, so a registration copies only those. Once it holds more than {@value #MAX_RECENT}, a
+ * background thread merges it into a new base, and registrations keep going to the small snapshot
+ * until the new base is swapped in. A fleet sync folds both into a new base. Enabled with
+ * {@code vpp.index.in-memory.enabled}; until it is loaded, {@link #canServe} returns false and callers
+ * use the repository.
+ * <p>
+ * With {@code vpp.index.in-memory.snapshot-path} set, the index is also kept in a {@link FleetSnapshotFile}:
+ * each registration appends its batteries, and a restart reads the file and queries only the rows above
+ * its highest id instead of scanning the table. Blocks are only appended, so batteries changed by a fleet
+ * sync are written by replacing the whole file; the file is removed before the sync commits, so a crash
+ * before it is replaced leads to a scan rather than to stale capacities. The replacement is written on a
+ * background thread once the sync completes, and further syncs meanwhile are coalesced into one rewrite.
+ */
+@Component
+@Slf4j
+public class BatteryRangeIndex {
+
+    static final int MAX_RECENT = 10_000;
+
+    private final BatteryRepository batteryRepository;
+    private final boolean enabled;
+    private final FleetSnapshotFile snapshotFile;
+    private final Executor background;
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    private volatile View view;
+    // Whether a background fold is running; guarded by writeLock.
+    private boolean folding;
+    // Fleet syncs that removed the snapshot file and have not completed, removals so far, whether a
+    // rewrite is requested or running, and the registrations made while one is written; guarded by writeLock.
+    private final Set<BatteriesUpdatedEvent> syncsInFlight = Collections.newSetFromMap(new IdentityHashMap<>());
+    private long fileRemovals;
+    private boolean rewriteRequested;
+    private boolean rewriting;
+    private List<Battery> registeredDuringRewrite;
+
+    // Registrations and sync changes that arrive while the initial load is running; guarded by writeLock.
+    private List<Battery> pendingDuringLoad;
+    private List<Battery> pendingUpdatesDuringLoad;
+
+    @Autowired
+    public BatteryRangeIndex(BatteryRepository batteryRepository,
+                             @Value("${vpp.index.in-memory.enabled:false}") boolean enabled,
+                             @Value("${vpp.index.in-memory.snapshot-path:}") String snapshotPath) {
+        this(batteryRepository, enabled, snapshotPath, Executors.newVirtualThreadPerTaskExecutor());
+    }
+
+    BatteryRangeIndex(BatteryRepository batteryRepository, boolean enabled, String snapshotPath, Executor background) {
+        this.batteryRepository = batteryRepository;
+        this.enabled = enabled;
+        this.snapshotFile = snapshotPath.isBlank() ? null : new FleetSnapshotFile(Path.of(snapshotPath));
+        this.background = background;
+    }
+
+    /**
+     * Builds the index once the application has started, from the snapshot file and the rows added
+     * since it was written when possible, or else from the repository. A snapshot file that is missing,
+     * unreadable or disagrees with the table is rebuilt after the scan.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        if (!enabled) {
+            return;
+        }
+        writeLock.lock();
+        try {
+            pendingDuringLoad = new ArrayList<>();
+            pendingUpdatesDuringLoad = new ArrayList<>();
+        } finally {
+            writeLock.unlock();
+        }
+
+        long startTime = System.currentTimeMillis();
+        Loaded loaded = snapshotFile == null ? null : loadFromSnapshotFile();
+        if (loaded == null) {
+            List<BatteryRow> rows = batteryRepository.findAllRows();
+            loaded = new Loaded(Snapshot.fromRows(rows), rows, 0, false);
+        }
+
+        writeLock.lock();
+        try {
+            // Registrations committed before the scan are already loaded; keep only the rest.
+            Set<Long> pendingIds = pendingDuringLoad.stream()
+                    .map(Battery::getId)
+                    .collect(Collectors.toSet());
+            Set<Long> alreadyLoaded = loaded.scanned().stream()
+                    .map(BatteryRow::getId)
+                    .filter(pendingIds::contains)
+                    .collect(Collectors.toSet());
+            long highWaterId = loaded.highWaterId();
+            List<Battery> remaining = pendingDuringLoad.stream()
+                    .filter(b -> b.getId() > highWaterId && !alreadyLoaded.contains(b.getId()))
+                    .toList();
+
+            // Replacing by id gives the same result whether or not the scan already saw the change
+            List<Battery> updated = pendingUpdatesDuringLoad;
+            view = new View(loaded.snapshot().merge(remaining).replace(updated), Snapshot.EMPTY);
+            pendingDuringLoad = null;
+            pendingUpdatesDuringLoad = null;
+            // Compact while registrations wait, so none is appended to the file being replaced
+            if (snapshotFile != null && !(loaded.fileIsCurrent() && remaining.isEmpty() && updated.isEmpty())) {
+                writeSnapshotFile(view.base());
+            }
+        } finally {
+            writeLock.unlock();
+        }
+        log.info("Loaded in-memory battery index with {} entries in {} ms",
+                view.size(), System.currentTimeMillis() - startTime);
+    }
+
+    /**
+     * Merges newly registered batteries into the index after their transaction commits.
+     * Runs before result caches are invalidated, so a refilled cache never sees the old snapshot.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void onBatteriesRegistered(BatteriesRegisteredEvent event) {
+        if (!enabled) {
+            return;
+        }
+        View due = null;
+        writeLock.lock();
+        try {
+            if (pendingDuringLoad != null) {
+                pendingDuringLoad.addAll(event.batteries());
+            } else if (view != null) {
+                due = publish(view.plus(event.batteries()));
+                if (registeredDuringRewrite != null) {
+                    registeredDuringRewrite.addAll(event.batteries());
+                }
+                appendToSnapshotFile(event.batteries());
+            }
+        } finally {
+            writeLock.unlock();
+        }
+        foldInBackground(due);
+    }
+
+    /**
+     * Removes the snapshot file before a fleet sync that changes batteries commits, so that it is never
+     * read with their previous state.
+     */
+    @TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT, fallbackExecution = true)
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void beforeBatteriesUpdateCommitted(BatteriesUpdatedEvent event) {
+        if (!enabled || snapshotFile == null) {
+            return;
+        }
+        writeLock.lock();
+        try {
+            syncsInFlight.add(event);
+            fileRemovals++;
+            snapshotFile.delete();
+        } catch (IOException e) {
+            log.warn("Cannot remove fleet snapshot {}", snapshotFile.path(), e);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Replaces the batteries changed by a fleet sync after its transaction commits. Runs before result
+     * caches are invalidated, like {@link #onBatteriesRegistered}.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void onBatteriesUpdated(BatteriesUpdatedEvent event) {
+        if (!enabled) {
+            return;
+        }
+        List<Battery> updated = event.changes().stream().map(BatteryChange::current).toList();
+        writeLock.lock();
+        try {
+            if (pendingUpdatesDuringLoad != null) {
+                pendingUpdatesDuringLoad.addAll(updated);
+            } else if (view != null) {
+                publish(view.replace(updated));
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Requests a rewrite of the snapshot file once a fleet sync that removed it has committed or rolled
+     * back. Until it is written, a restart scans the table.
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMPLETION, fallbackExecution = true)
+    @Order(Ordered.LOWEST_PRECEDENCE)
+    public void afterBatteriesUpdateCompleted(BatteriesUpdatedEvent event) {
+        if (!enabled || snapshotFile == null) {
+            return;
+        }
+        boolean start;
+        writeLock.lock();
+        try {
+            // Rolled back before it started to commit, so the file is still current
+            if (!syncsInFlight.remove(event)) {
+                return;
+            }
+            rewriteRequested = true;
+            start = !rewriting;
+            rewriting = true;
+        } finally {
+            writeLock.unlock();
+        }
+        if (start) {
+            background.execute(this::rewriteSnapshotFile);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (background instanceof ExecutorService executor) {
+            executor.shutdown();
+        }
+    }
+
+    // Publishes the view with writeLock held, and returns it if its recent batteries are due to be folded
+    // into a new base, which the caller starts once it has released the lock.
+    private View publish(View next) {
+        view = next;
+        if (folding || next.recent().size() <= MAX_RECENT) {
+            return null;
+        }
+        folding = true;
+        return next;
+    }
+
+    private void foldInBackground(View from) {
+        if (from != null) {
+            background.execute(() -> fold(from));
+        }
+    }
+
+    private void fold(View from) {
+        long startTime = System.currentTimeMillis();
+        View due = null;
+        Snapshot folded = null;
+        try {
+            folded = from.base().merge(from.recent());
+        } catch (RuntimeException e) {
+            log.error("Failed to fold registrations into the in-memory battery index", e);
+        }
+        writeLock.lock();
+        try {
+            folding = false;
+            // A fleet sync meanwhile has already folded them into a newer base
+            if (folded != null && view.base() == from.base()) {
+                due = publish(view.rebased(folded, from.recent()));
+            }
+        } finally {
+            writeLock.unlock();
+        }
+        if (folded != null) {
+            log.debug("Folded {} registered batteries into the in-memory battery index in {} ms",
+                    from.recent().size(), System.currentTimeMillis() - startTime);
+        }
+        foldInBackground(due);
+    }
+
+    /**
+     * Rewrites the snapshot file from the index until no rewrite is requested. A copy is only installed if
+     * no fleet sync was running when the index was read and none removed the file since, so the file never
+     * holds a battery's state from before a committed sync. Registrations made while the copy is written
+     * are appended once it is installed.
+     */
+    private void rewriteSnapshotFile() {
+        while (true) {
+            View current;
+            long removals;
+            writeLock.lock();
+            try {
+                // A running sync requests another rewrite when it completes, and the load writes its own file
+                if (!rewriteRequested || !syncsInFlight.isEmpty() || view == null) {
+                    rewriting = false;
+                    return;
+                }
+                rewriteRequested = false;
+                current = view;
+                removals = fileRemovals;
+                registeredDuringRewrite = new ArrayList<>();
+            } finally {
+                writeLock.unlock();
+            }
+
+            long startTime = System.currentTimeMillis();
+            Path temporary = null;
+            try {
+                temporary = snapshotFile.writeTemporary(current.base().merge(current.recent()));
+            } catch (IOException | RuntimeException e) {
+                log.warn("Cannot write fleet snapshot {}", snapshotFile.path(), e);
+            }
+            writeLock.lock();
+            try {
+                List<Battery> registered = registeredDuringRewrite;
+                registeredDuringRewrite = null;
+                if (temporary != null && removals == fileRemovals) {
+                    snapshotFile.install(temporary);
+                    appendToSnapshotFile(registered);
+                    log.debug("Rewrote fleet snapshot {} with {} batteries in {} ms",
+                            snapshotFile.path(), current.size(), System.currentTimeMillis() - startTime);
+                }
+            } catch (IOException e) {
+                log.warn("Cannot write fleet snapshot {}", snapshotFile.path(), e);
+            } finally {
+                writeLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Whether the index is loaded and the bounds are 4-digit postcodes, for which numeric
+     * order matches the repository's string order.
+     */
+    public boolean canServe(String startPostcode, String endPostcode) {
+        return view != null && isPostcode(startPostcode) && isPostcode(endPostcode);
+    }
+
+    public boolean existsByPostcodeBetween(String startPostcode, String endPostcode) {
+        View current = view;
+        int from = Integer.parseInt(startPostcode);
+        int to = Integer.parseInt(endPostcode) + 1;
+        return current.base().countBetween(from, to) > 0 || current.recent().countBetween(from, to) > 0;
+    }
+
+    public CapacityAggregate aggregateCapacityInRange(String startPostcode, String endPostcode,
+                                                      int minCapacity, int maxCapacity) {
+        View current = view;
+        int from = Integer.parseInt(startPostcode);
+        int to = Integer.parseInt(endPostcode) + 1;
+        CapacityAggregate base = current.base().aggregate(from, to, minCapacity, maxCapacity);
+        if (current.recent().size() == 0) {
+            return base;
+        }
+        CapacityAggregate recent = current.recent().aggregate(from, to, minCapacity, maxCapacity);
+        return new CapacityAggregate(base.getBatteryCount() + recent.getBatteryCount(),
+                base.getTotalCapacity() + recent.getTotalCapacity());
+    }
+
+    /**
+     * Returns the names matching the range in postcode order, in a mutable list, so callers can
+     * sort them separately.
+     */
+    public List<String> findNamesInRange(String startPostcode, String endPostcode, int minCapacity, int maxCapacity) {
+        View current = view;
+        int from = Integer.parseInt(startPostcode);
+        int to = Integer.parseInt(endPostcode) + 1;
+        List<String> names = new ArrayList<>(current.countBetween(from, to));
+        current.forEachBetween(from, to, (layer, i) -> {
+            int capacity = layer.capacities[i];
+            if (capacity >= minCapacity && capacity <= maxCapacity) {
+                names.add(layer.names[i]);
+            }
+        });
+        return names;
+    }
+
+    /**
+     * Returns the ids and capacities of the range in postcode order. Without registrations in the range
+     * since the last fold, the slice is a view of the base snapshot's arrays, which are never modified,
+     * so callers can scan them without copying; otherwise it is a merged copy of the range.
+     */
+    public CapacitySlice sliceInRange(String startPostcode, String endPostcode) {
+        View current = view;
+        int from = Integer.parseInt(startPostcode);
+        int to = Integer.parseInt(endPostcode) + 1;
+        Snapshot base = current.base();
+        if (current.recent().countBetween(from, to) == 0) {
+            int first = base.lowerBound(from);
+            return new CapacitySlice(base.ids, base.capacities, first, Math.max(first, base.lowerBound(to)));
+        }
+        int size = current.countBetween(from, to);
+        long[] ids = new long[size];
+        int[] capacities = new int[size];
+        int[] next = new int[1];
+        current.forEachBetween(from, to, (layer, i) -> {
+            ids[next[0]] = layer.ids[i];
+            capacities[next[0]++] = layer.capacities[i];
+        });
+        return new CapacitySlice(ids, capacities, 0, size);
+    }
+
+    /**
+     * Returns the batteries inside any of the spans in postcode order, like
+     * {@link io.powerledger.vpp.repository.BatteryRepositoryCustom#findRowsInSpans}.
+     *
+     * @param spans Disjoint postcode spans, each with its own capacity bounds.
+     */
+    public List<BatteryRow> findRowsInSpans(List<PostcodeSpan> spans) {
+        View current = view;
+        List<BatteryRow> rows = new ArrayList<>();
+        for (PostcodeSpan span : spans.stream().sorted(Comparator.comparingInt(PostcodeSpan::startPostcode)).toList()) {
+            current.forEachBetween(span.startPostcode(), span.endPostcode() + 1, (layer, i) -> {
+                int capacity = layer.capacities[i];
+                if (capacity >= span.minCapacity() && capacity <= span.maxCapacity()) {
+                    rows.add(new BatteryRow(layer.ids[i], layer.names[i],
+                            PostcodeConverter.fromColumn(layer.postcodes[i]), capacity));
+                }
+            });
+        }
+        return rows;
+    }
+
+    /**
+     * Counts the batteries inside any of the spans, like
+     * {@link io.powerledger.vpp.repository.BatteryRepositoryCustom#countInSpans}.
+     *
+     * @param spans Disjoint postcode spans, each with its own capacity bounds.
+     */
+    public long countInSpans(List<PostcodeSpan> spans) {
+        View current = view;
+        long count = 0;
+        for (PostcodeSpan span : spans) {
+            int from = span.startPostcode();
+            int to = span.endPostcode() + 1;
+            count += current.base().aggregate(from, to, span.minCapacity(), span.maxCapacity()).getBatteryCount()
+                    + current.recent().aggregate(from, to, span.minCapacity(), span.maxCapacity()).getBatteryCount();
+        }
+        return count;
+    }
+
+    /**
+     * Reads the snapshot file and catches up with the rows added after it. Returns null, so the table
+     * is scanned, when the file cannot be used: missing, of another version, unreadable, or holding a
+     * different number of rows than the table up to its highest id, as after a registration whose
+     * block was lost.
+     */
+    private Loaded loadFromSnapshotFile() {
+        FleetSnapshotFile.Contents contents;
+        try {
+            contents = snapshotFile.read();
+        } catch (IOException | RuntimeException e) {
+            log.warn("Cannot read fleet snapshot {}; scanning the batteries table", snapshotFile.path(), e);
+            return null;
+        }
+        if (contents == null) {
+            return null;
+        }
+        long tableRows = batteryRepository.countByIdLessThanEqual(contents.highWaterId());
+        if (tableRows != contents.snapshot().size()) {
+            log.warn("Fleet snapshot {} holds {} batteries up to id {} but the table holds {}; scanning the batteries table",
+                    snapshotFile.path(), contents.snapshot().size(), contents.highWaterId(), tableRows);
+            return null;
+        }
+
+        List<BatteryRow> newer = batteryRepository.findRowsAfterId(contents.highWaterId());
+        Snapshot caughtUp = contents.snapshot().merge(newer.stream()
+                .map(row -> new Battery(row.getId(), row.getName(), row.getPostcode(), row.getCapacity()))
+                .toList());
+        log.info("Read {} batteries from fleet snapshot {} in {} blocks, and {} newer rows from the table",
+                contents.snapshot().size(), snapshotFile.path(), contents.blocks(), newer.size());
+        return new Loaded(caughtUp, newer, contents.highWaterId(), contents.blocks() == 1 && newer.isEmpty());
+    }
+
+    private void writeSnapshotFile(Snapshot current) {
+        try {
+            snapshotFile.write(current);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Cannot write fleet snapshot {}", snapshotFile.path(), e);
+        }
+    }
+
+    private void appendToSnapshotFile(List<Battery> batteries) {
+        if (snapshotFile == null || batteries.isEmpty()) {
+            return;
+        }
+        try {
+            snapshotFile.append(batteries);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Cannot append {} batteries to fleet snapshot {}", batteries.size(), snapshotFile.path(), e);
+        }
+    }
+
+    static boolean isPostcode(String postcode) {
+        if (postcode == null || postcode.length() != 4) {
+            return false;
+        }
+        for (int i = 0; i < 4; i++) {
+            char c = postcode.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Battery ids and capacities at positions {@code from} (inclusive) to {@code to} (exclusive) of
+     * shared arrays, which must not be modified.
+     */
+    public record CapacitySlice(long[] ids, int[] capacities, int from, int to) {
+
+        public int size() {
+            return to - from;
+        }
+    }
+
+    /**
+     * A snapshot built at load time, the rows read from the table for it, and the highest id taken from
+     * the snapshot file (0 without one). The file is current when it was read whole, in one block, and
+     * the table held nothing newer.
+     */
+    private record Loaded(Snapshot snapshot, List<BatteryRow> scanned, long highWaterId, boolean fileIsCurrent) {
+    }
+
+    /**
+     * The published state: a base snapshot and the batteries registered since it was built.
+     */
+    record View(Snapshot base, Snapshot recent) {
+
+        View plus(List<Battery> added) {
+            return new View(base, recent.merge(added));
+        }
+
+        /** Returns a view whose base holds every entry, with the updated batteries replaced. */
+        View replace(List<Battery> updated) {
+            return new View(base.merge(recent).replace(updated), Snapshot.EMPTY);
+        }
+
+        /** Returns a view on a new base that holds this view's base and the given recent batteries. */
+        View rebased(Snapshot folded, Snapshot foldedRecent) {
+            Set<Long> foldedIds = new HashSet<>(foldedRecent.size() * 2);
+            for (long id : foldedRecent.ids) {
+                foldedIds.add(id);
+            }
+            return new View(folded, recent.without(foldedIds));
+        }
+
+        int size() {
+            return base.size() + recent.size();
+        }
+
+        int countBetween(int fromPostcode, int toPostcode) {
+            return base.countBetween(fromPostcode, toPostcode) + recent.countBetween(fromPostcode, toPostcode);
+        }
+
+        /**
+         * Visits the entries with postcodes from {@code fromPostcode} up to {@code toPostcode} (exclusive)
+         * of both snapshots in postcode order, base entries first among equal postcodes.
+         */
+        void forEachBetween(int fromPostcode, int toPostcode, EntryVisitor visitor) {
+            int i = base.lowerBound(fromPostcode);
+            int baseTo = base.lowerBound(toPostcode);
+            int j = recent.lowerBound(fromPostcode);
+            int recentTo = recent.lowerBound(toPostcode);
+            while (i < baseTo || j < recentTo) {
+                if (j >= recentTo || (i < baseTo && base.postcodes[i] <= recent.postcodes[j])) {
+                    visitor.visit(base, i++);
+                } else {
+                    visitor.visit(recent, j++);
+                }
+            }
+        }
+    }
+
+    @FunctionalInterface
+    interface EntryVisitor {
+        void visit(Snapshot snapshot, int index);
+    }
+
+    /**
+     * Immutable sorted arrays; entries with equal postcodes keep insertion order.
+     */
+    static final class Snapshot {
+        static final Snapshot EMPTY = new Snapshot(new int[0], new int[0], new String[0], new long[0]);
+
+        final int[] postcodes;
+        final int[] capacities;
+        final String[] names;
+        final long[] ids;
+        final long[] prefixSums;
+
+        private Snapshot(int[] postcodes, int[] capacities, String[] names, long[] ids) {
+            this.postcodes = postcodes;
+            this.capacities = capacities;
+            this.names = names;
+            this.ids = ids;
+            this.prefixSums = new long[postcodes.length + 1];
+            for (int i = 0; i < capacities.length; i++) {
+                prefixSums[i + 1] = prefixSums[i] + capacities[i];
+            }
+        }
+
+        /**
+         * Returns a snapshot of the columns, sorting them by postcode unless they already are.
+         */
+        static Snapshot fromColumns(int[] postcodes, int[] capacities, String[] names, long[] ids) {
+            boolean sorted = true;
+            for (int i = 1; i < postcodes.length && sorted; i++) {
+                sorted = postcodes[i - 1] <= postcodes[i];
+            }
+            if (sorted) {
+                return new Snapshot(postcodes, capacities, names, ids);
+            }
+            long[] keys = new long[postcodes.length];
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = ((long) postcodes[i] << 32) | i;
+            }
+            Arrays.sort(keys);
+            int[] sortedPostcodes = new int[keys.length];
+            int[] sortedCapacities = new int[keys.length];
+            String[] sortedNames = new String[keys.length];
+            long[] sortedIds = new long[keys.length];
+            for (int i = 0; i < keys.length; i++) {
+                int from = (int) keys[i];
+                sortedPostcodes[i] = postcodes[from];
+                sortedCapacities[i] = capacities[from];
+                sortedNames[i] = names[from];
+                sortedIds[i] = ids[from];
+            }
+            return new Snapshot(sortedPostcodes, sortedCapacities, sortedNames, sortedIds);
+        }
+
+        static Snapshot fromRows(List<BatteryRow> rows) {
+            // Sort (postcode, row index) pairs packed into longs to avoid boxing.
+            long[] keys = new long[rows.size()];
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = ((long) Integer.parseInt(rows.get(i).getPostcode()) << 32) | i;
+            }
+            Arrays.sort(keys);
+
+            int[] postcodes = new int[keys.length];
+            int[] capacities = new int[keys.length];
+            String[] names = new String[keys.length];
+            long[] ids = new long[keys.length];
+            for (int i = 0; i < keys.length; i++) {
+                BatteryRow row = rows.get((int) keys[i]);
+                postcodes[i] = (int) (keys[i] >>> 32);
+                capacities[i] = row.getCapacity();
+                names[i] = row.getName();
+                ids[i] = row.getId();
+            }
+            return new Snapshot(postcodes, capacities, names, ids);
+        }
+
+        static Snapshot fromBatteries(List<Battery> batteries) {
+            int[] postcodes = new int[batteries.size()];
+            int[] capacities = new int[batteries.size()];
+            String[] names = new String[batteries.size()];
+            long[] ids = new long[batteries.size()];
+            for (int i = 0; i < ids.length; i++) {
+                Battery battery = batteries.get(i);
+                postcodes[i] = Integer.parseInt(battery.getPostcode());
+                capacities[i] = battery.getCapacity();
+                names[i] = battery.getName();
+                ids[i] = battery.getId();
+            }
+            return fromColumns(postcodes, capacities, names, ids);
+        }
+
+        /**
+         * Returns a new snapshot containing this one's entries plus the given batteries.
+         */
+        Snapshot merge(List<Battery> added) {
+            return added.isEmpty() ? this : merge(fromBatteries(added));
+        }
+
+        /**
+         * Returns a new snapshot containing this one's entries plus the other's, which follow this one's
+         * among equal postcodes.
+         */
+        Snapshot merge(Snapshot added) {
+            if (added.size() == 0) {
+                return this;
+            }
+            int size = postcodes.length + added.size();
+            int[] mergedPostcodes = new int[size];
+            int[] mergedCapacities = new int[size];
+            String[] mergedNames = new String[size];
+            long[] mergedIds = new long[size];
+
+            int i = 0;
+            int j = 0;
+            for (int k = 0; k < size; k++) {
+                if (j == added.size() || (i < postcodes.length && postcodes[i] <= added.postcodes[j])) {
+                    mergedPostcodes[k] = postcodes[i];
+                    mergedCapacities[k] = capacities[i];
+                    mergedNames[k] = names[i];
+                    mergedIds[k] = ids[i];
+                    i++;
+                } else {
+                    mergedPostcodes[k] = added.postcodes[j];
+                    mergedCapacities[k] = added.capacities[j];
+                    mergedNames[k] = added.names[j];
+                    mergedIds[k] = added.ids[j];
+                    j++;
+                }
+            }
+            return new Snapshot(mergedPostcodes, mergedCapacities, mergedNames, mergedIds);
+        }
+
+        /**
+         * Returns a new snapshot in which the entries with the ids of the given batteries hold their
+         * current postcode, capacity and name instead.
+         */
+        Snapshot replace(List<Battery> updated) {
+            if (updated.isEmpty()) {
+                return this;
+            }
+            Set<Long> updatedIds = new HashSet<>(updated.size() * 2);
+            updated.forEach(battery -> updatedIds.add(battery.getId()));
+            return without(updatedIds).merge(updated);
+        }
+
+        /**
+         * Returns a new snapshot without the entries with the given ids.
+         */
+        Snapshot without(Set<Long> removedIds) {
+            int size = 0;
+            int[] keptPostcodes = new int[postcodes.length];
+            int[] keptCapacities = new int[postcodes.length];
+            String[] keptNames = new String[postcodes.length];
+            long[] keptIds = new long[postcodes.length];
+            for (int i = 0; i < postcodes.length; i++) {
+                if (!removedIds.contains(ids[i])) {
+                    keptPostcodes[size] = postcodes[i];
+                    keptCapacities[size] = capacities[i];
+                    keptNames[size] = names[i];
+                    keptIds[size] = ids[i];
+                    size++;
+                }
+            }
+            return new Snapshot(Arrays.copyOf(keptPostcodes, size), Arrays.copyOf(keptCapacities, size),
+                    Arrays.copyOf(keptNames, size), Arrays.copyOf(keptIds, size));
+        }
+
+        int size() {
+            return postcodes.length;
+        }
+
+        /** Number of entries with postcodes from {@code fromPostcode} up to {@code toPostcode} (exclusive). */
+        int countBetween(int fromPostcode, int toPostcode) {
+            return Math.max(0, lowerBound(toPostcode) - lowerBound(fromPostcode));
+        }
+
+        /**
+         * Count and total capacity of the entries with postcodes from {@code fromPostcode} up to
+         * {@code toPostcode} (exclusive) and capacities within the bounds; unfiltered totals come from the
+         * prefix sums.
+         */
+        CapacityAggregate aggregate(int fromPostcode, int toPostcode, int minCapacity, int maxCapacity) {
+            int from = lowerBound(fromPostcode);
+            int to = lowerBound(toPostcode);
+            if (from >= to) {
+                return new CapacityAggregate(0L, 0L);
+            }
+            if (minCapacity == Integer.MIN_VALUE && maxCapacity == Integer.MAX_VALUE) {
+                return new CapacityAggregate((long) (to - from), prefixSums[to] - prefixSums[from]);
+            }
+            long count = 0;
+            long total = 0;
+            for (int i = from; i < to; i++) {
+                int capacity = capacities[i];
+                if (capacity >= minCapacity && capacity <= maxCapacity) {
+                    count++;
+                    total += capacity;
+                }
+            }
+            return new CapacityAggregate(count, total);
+        }
+
+        /** Index of the first entry with postcode >= the given one. */
+        int lowerBound(int postcode) {
+            int low = 0;
+            int high = postcodes.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (postcodes[mid] < postcode) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+    }
+}
@@ -0,0 +1,265 @@
+package io.powerledger.vpp.index;
+
+import io.powerledger.vpp.dto.BatteryChange;
+import io.powerledger.vpp.event.BatteriesRegisteredEvent;
+import io.powerledger.vpp.event.BatteriesUpdatedEvent;
+import io.powerledger.vpp.model.Battery;
+import io.powerledger.vpp.model.PostcodeConverter;
+import io.powerledger.vpp.repository.BatteryRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.IntCountsHistogram;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * In-process capacity distribution sketch per postcode.
+ * <p>
+ * Each postcode with batteries has an HDR histogram of its capacities with
+ * {@value #SIGNIFICANT_DIGITS} significant digits, so any quantile is within 1% of the exact value.
+ * A range query merges at most 10,000 sketches into one histogram, so its cost and memory do not
+ * depend on the number of batteries.
+ * <p>
+ * Sketches are never changed once published: registrations record into a copy of each affected
+ * postcode's sketch and swap it in, so readers never lock. A battery changed by a fleet sync has
+ * its previous capacity subtracted from its previous postcode's sketch and its current one
+ * recorded. Enabled with {@code vpp.index.distribution.enabled}; until it is loaded,
+ * {@link #isLoaded} returns false and callers read the rows instead.
+ */
+@Component
+@Slf4j
+public class CapacitySketchIndex {
+
+    public static final int SIGNIFICANT_DIGITS = 2;
+    private static final int POSTCODES = 10_000;
+
+    private final BatteryRepository batteryRepository;
+    private final boolean enabled;
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final AtomicReferenceArray<IntCountsHistogram> sketches = new AtomicReferenceArray<>(POSTCODES);
+
+    private volatile boolean loaded;
+
+    // Registrations that arrive while the initial load is running, and whether a sync changed batteries
+    // meanwhile, which the scan may or may not have seen; guarded by writeLock.
+    private List<Battery> pendingDuringLoad;
+    private boolean updatedDuringLoad;
+
+    public CapacitySketchIndex(BatteryRepository batteryRepository,
+                               @Value("${vpp.index.distribution.enabled:false}") boolean enabled) {
+        this.batteryRepository = batteryRepository;
+        this.enabled = enabled;
+    }
+
+    /**
+     * Builds the sketches from a cursor over the battery rows once the application has started. A sketch
+     * cannot tell whether the scan saw a battery before or after a change, so the scan is repeated if a
+     * fleet sync changes batteries while it runs.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        if (!enabled) {
+            return;
+        }
+        long startTime = System.currentTimeMillis();
+        long rows;
+        do {
+            rows = scan();
+        } while (!loaded);
+        log.info("Loaded capacity sketches for {} batteries in {} ms", rows, System.currentTimeMillis() - startTime);
+    }
+
+    /**
+     * Builds and publishes the sketches, unless a fleet sync changed batteries during the scan.
+     *
+     * @return Number of rows scanned.
+     */
+    private long scan() {
+        writeLock.lock();
+        try {
+            pendingDuringLoad = new ArrayList<>();
+            updatedDuringLoad = false;
+        } finally {
+            writeLock.unlock();
+        }
+
+        IntCountsHistogram[] built = new IntCountsHistogram[POSTCODES];
+        LoadedIds loadedIds = new LoadedIds();
+        long[] rows = new long[1];
+        batteryRepository.forEachCapacity("0000", "9999", (id, postcode, capacity) -> {
+            if (built[postcode] == null) {
+                built[postcode] = newSketch();
+            }
+            built[postcode].recordValue(capacity);
+            loadedIds.add(id);
+            rows[0]++;
+        });
+
+        writeLock.lock();
+        try {
+            if (updatedDuringLoad) {
+                log.info("A fleet sync changed batteries during the capacity sketch scan; scanning again");
+                return rows[0];
+            }
+            for (int postcode = 0; postcode < POSTCODES; postcode++) {
+                sketches.set(postcode, built[postcode]);
+            }
+            // Registrations committed before the scan are already counted; record only the rest.
+            record(pendingDuringLoad.stream().filter(battery -> !loadedIds.contains(battery.getId())).toList());
+            pendingDuringLoad = null;
+            loaded = true;
+        } finally {
+            writeLock.unlock();
+        }
+        return rows[0];
+    }
+
+    /**
+     * Records newly registered batteries after their transaction commits.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void onBatteriesRegistered(BatteriesRegisteredEvent event) {
+        if (!enabled) {
+            return;
+        }
+        writeLock.lock();
+        try {
+            if (pendingDuringLoad != null) {
+                pendingDuringLoad.addAll(event.batteries());
+            } else if (loaded) {
+                record(event.batteries());
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Moves the batteries changed by a fleet sync to their current postcode and capacity after its
+     * transaction commits.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void onBatteriesUpdated(BatteriesUpdatedEvent event) {
+        if (!enabled) {
+            return;
+        }
+        writeLock.lock();
+        try {
+            if (pendingDuringLoad != null) {
+                updatedDuringLoad = true;
+            } else if (loaded) {
+                replace(event.changes());
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Merges the sketches of every postcode in the range into a new histogram.
+     *
+     * @param startPostcode Starting 4-digit postcode (inclusive).
+     * @param endPostcode   Ending 4-digit postcode (inclusive).
+     * @return Histogram of the capacities in the range; empty if there are none.
+     */
+    public Histogram mergeRange(String startPostcode, String endPostcode) {
+        Histogram merged = newMergedHistogram();
+        int end = PostcodeConverter.toColumn(endPostcode);
+        for (int postcode = PostcodeConverter.toColumn(startPostcode); postcode <= end; postcode++) {
+            IntCountsHistogram sketch = sketches.get(postcode);
+            if (sketch != null) {
+                merged.add(sketch);
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * Empty histogram with the precision of the per-postcode sketches and 64-bit counts.
+     */
+    public static Histogram newMergedHistogram() {
+        return new Histogram(SIGNIFICANT_DIGITS);
+    }
+
+    private void record(List<Battery> batteries) {
+        Map<Integer, IntCountsHistogram> copies = new HashMap<>();
+        for (Battery battery : batteries) {
+            copyOf(copies, battery.getPostcode()).recordValue(battery.getCapacity());
+        }
+        copies.forEach(sketches::set);
+    }
+
+    private void replace(List<BatteryChange> changes) {
+        Map<Integer, IntCountsHistogram> removed = new HashMap<>();
+        List<Battery> moved = new ArrayList<>();
+        for (BatteryChange change : changes) {
+            Battery previous = change.previous();
+            Battery current = change.current();
+            if (!previous.getPostcode().equals(current.getPostcode()) || !previous.getCapacity().equals(current.getCapacity())) {
+                removed.computeIfAbsent((int) PostcodeConverter.toColumn(previous.getPostcode()), postcode -> newSketch())
+                        .recordValue(previous.getCapacity());
+                moved.add(current);
+            }
+        }
+
+        Map<Integer, IntCountsHistogram> copies = new HashMap<>();
+        removed.forEach((postcode, capacities) -> copyOf(copies, PostcodeConverter.fromColumn(postcode)).subtract(capacities));
+        moved.forEach(battery -> copyOf(copies, battery.getPostcode()).recordValue(battery.getCapacity()));
+        copies.forEach((postcode, sketch) -> sketches.set(postcode, sketch.getTotalCount() == 0 ? null : sketch));
+    }
+
+    /**
+     * The postcode's sketch in the copies being built, copying the published one on first use.
+     */
+    private IntCountsHistogram copyOf(Map<Integer, IntCountsHistogram> copies, String postcode) {
+        return copies.computeIfAbsent((int) PostcodeConverter.toColumn(postcode), column -> {
+            IntCountsHistogram current = sketches.get(column);
+            return current == null ? newSketch() : current.copy();
+        });
+    }
+
+    private static IntCountsHistogram newSketch() {
+        return new IntCountsHistogram(SIGNIFICANT_DIGITS);
+    }
+
+    /**
+     * Ids seen by the initial scan. Identity ids are dense, so a bit set is far smaller than a hash set.
+     */
+    private static final class LoadedIds {
+        private final BitSet ids = new BitSet();
+        private final Set<Long> overflow = new HashSet<>();
+
+        void add(long id) {
+            if (id >= 0 && id < Integer.MAX_VALUE) {
+                ids.set((int) id);
+            } else {
+                overflow.add(id);
+            }
+        }
+
+        boolean contains(Long id) {
+            return id != null && (id >= 0 && id < Integer.MAX_VALUE ? ids.get((int) (long) id) : overflow.contains(id));
+        }
+    }
+}
@@ -0,0 +1,275 @@
+package io.powerledger.vpp.index;
+
+import io.powerledger.vpp.model.Battery;
+import io.powerledger.vpp.model.PostcodeConverter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+/**
+ * Columnar file copy of a {@link BatteryRangeIndex.Snapshot}, read through memory-mapped buffers so a
+ * restart can rebuild the index without scanning the batteries table.
+ * <p>
+ * The file starts with a magic number and format version, followed by blocks. Each block holds the
+ * ids, postcodes, capacities and name end offsets of its rows as little-endian columns, then the names
+ * as UTF-8, under a CRC32C checksum. A compacted file has one block in postcode order; each committed
+ * registration appends a block. Reading stops at the first incomplete or corrupt block, such as one
+ * torn by a crash, and the caller catches up from the table.
+ */
+@Slf4j
+final class FleetSnapshotFile {
+
+    static final int MAGIC = 0x46505056; // "VPPF"
+    static final int VERSION = 1;
+
+    private static final int HEADER_BYTES = 8;
+    private static final int BLOCK_HEADER_BYTES = 16;
+    // id (long), postcode (short), capacity (int) and name end offset (int)
+    private static final int ROW_BYTES = 18;
+
+    private final Path path;
+
+    FleetSnapshotFile(Path path) {
+        this.path = path;
+    }
+
+    Path path() {
+        return path;
+    }
+
+    /**
+     * Snapshot read from the file, the largest id in it, and the number of blocks read.
+     */
+    record Contents(BatteryRangeIndex.Snapshot snapshot, long highWaterId, int blocks) {
+    }
+
+    /**
+     * Reads every complete block of the file.
+     *
+     * @return The file's contents, or null if it does not exist or has another format version.
+     */
+    Contents read() throws IOException {
+        if (!Files.exists(path)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            ByteBuffer header = readFully(channel, 0, HEADER_BYTES);
+            if (header == null || header.getInt() != MAGIC || header.getInt() != VERSION) {
+                log.warn("Ignoring fleet snapshot {}: not a version {} snapshot file", path, VERSION);
+                return null;
+            }
+
+            // Map and verify every block first, so the columns are allocated once at their final size
+            List<MappedByteBuffer> blocks = new ArrayList<>();
+            List<int[]> shapes = new ArrayList<>();
+            long position = HEADER_BYTES;
+            int rows = 0;
+            while (position < size) {
+                ByteBuffer blockHeader = readFully(channel, position, BLOCK_HEADER_BYTES);
+                if (blockHeader == null) {
+                    break;
+                }
+                int blockRows = blockHeader.getInt();
+                int nameBytes = blockHeader.getInt();
+                long checksum = blockHeader.getLong();
+                long length = (long) blockRows * ROW_BYTES + nameBytes;
+                if (blockRows < 0 || nameBytes < 0 || length > Integer.MAX_VALUE
+                        || position + BLOCK_HEADER_BYTES + length > size) {
+                    break;
+                }
+                MappedByteBuffer body = channel.map(FileChannel.MapMode.READ_ONLY, position + BLOCK_HEADER_BYTES, length);
+                CRC32C crc = new CRC32C();
+                crc.update(body.duplicate());
+                if (crc.getValue() != checksum) {
+                    break;
+                }
+                blocks.add(body);
+                shapes.add(new int[]{blockRows, nameBytes});
+                rows = Math.addExact(rows, blockRows);
+                position += BLOCK_HEADER_BYTES + length;
+            }
+            if (position < size) {
+                log.warn("Ignoring {} bytes after the last complete block of fleet snapshot {}", size - position, path);
+            }
+
+            long[] ids = new long[rows];
+            int[] postcodes = new int[rows];
+            int[] capacities = new int[rows];
+            String[] names = new String[rows];
+            int offset = 0;
+            for (int b = 0; b < blocks.size(); b++) {
+                decode(blocks.get(b).order(ByteOrder.LITTLE_ENDIAN), shapes.get(b)[0], shapes.get(b)[1],
+                        ids, postcodes, capacities, names, offset);
+                offset += shapes.get(b)[0];
+            }
+            long highWaterId = 0;
+            for (long id : ids) {
+                highWaterId = Math.max(highWaterId, id);
+            }
+            return new Contents(BatteryRangeIndex.Snapshot.fromColumns(postcodes, capacities, names, ids),
+                    highWaterId, blocks.size());
+        }
+    }
+
+    /**
+     * Replaces the file with one block holding the snapshot. The block is written to a temporary file,
+     * forced to disk and moved into place, so a crash leaves either the old file or the new one.
+     */
+    void write(BatteryRangeIndex.Snapshot snapshot) throws IOException {
+        install(writeTemporary(snapshot));
+    }
+
+    /**
+     * Writes the snapshot as one block to the temporary file next to this one and forces it to disk,
+     * for {@link #install} to move into place.
+     */
+    Path writeTemporary(BatteryRangeIndex.Snapshot snapshot) throws IOException {
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN)
+                    .putInt(MAGIC).putInt(VERSION).flip();
+            writeFully(channel, header);
+            writeFully(channel, encodeBlock(snapshot.ids, snapshot.postcodes, snapshot.capacities, snapshot.names));
+            channel.force(true);
+        }
+        return temporary;
+    }
+
+    /**
+     * Replaces the file with one written by {@link #writeTemporary}.
+     */
+    void install(Path temporary) throws IOException {
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Removes the file, if it exists, so the next load scans the table.
+     */
+    void delete() throws IOException {
+        Files.deleteIfExists(path);
+    }
+
+    /**
+     * Appends the batteries as one block. Does nothing if the file does not exist, since a block is
+     * only readable after a header; the next load then catches up from the table instead.
+     */
+    void append(List<Battery> batteries) throws IOException {
+        int size = batteries.size();
+        long[] ids = new long[size];
+        int[] postcodes = new int[size];
+        int[] capacities = new int[size];
+        String[] names = new String[size];
+        for (int i = 0; i < size; i++) {
+            Battery battery = batteries.get(i);
+            ids[i] = battery.getId();
+            postcodes[i] = PostcodeConverter.toColumn(battery.getPostcode());
+            capacities[i] = battery.getCapacity();
+            names[i] = battery.getName();
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            writeFully(channel, encodeBlock(ids, postcodes, capacities, names));
+        } catch (NoSuchFileException e) {
+            log.debug("Fleet snapshot {} does not exist; not appending {} batteries", path, size);
+        }
+    }
+
+    private static ByteBuffer encodeBlock(long[] ids, int[] postcodes, int[] capacities, String[] names) {
+        int rows = ids.length;
+        byte[][] encodedNames = new byte[rows][];
+        long nameBytes = 0;
+        for (int i = 0; i < rows; i++) {
+            encodedNames[i] = names[i].getBytes(StandardCharsets.UTF_8);
+            nameBytes += encodedNames[i].length;
+        }
+        long length = (long) rows * ROW_BYTES + nameBytes;
+        if (BLOCK_HEADER_BYTES + length > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Fleet snapshot block of " + rows + " rows exceeds 2 GB");
+        }
+
+        ByteBuffer block = ByteBuffer.allocate((int) (BLOCK_HEADER_BYTES + length)).order(ByteOrder.LITTLE_ENDIAN);
+        block.position(BLOCK_HEADER_BYTES);
+        for (long id : ids) {
+            block.putLong(id);
+        }
+        for (int postcode : postcodes) {
+            block.putShort((short) postcode);
+        }
+        for (int capacity : capacities) {
+            block.putInt(capacity);
+        }
+        int end = 0;
+        for (byte[] name : encodedNames) {
+            end += name.length;
+            block.putInt(end);
+        }
+        for (byte[] name : encodedNames) {
+            block.put(name);
+        }
+
+        CRC32C crc = new CRC32C();
+        crc.update(block.array(), BLOCK_HEADER_BYTES, (int) length);
+        block.putInt(0, rows).putInt(4, (int) nameBytes).putLong(8, crc.getValue());
+        return block.flip();
+    }
+
+    /**
+     * Copies one block's columns into the arrays at the given offset, in bulk where the column types match.
+     */
+    private static void decode(ByteBuffer body, int rows, int nameBytes, long[] ids, int[] postcodes,
+                               int[] capacities, String[] names, int offset) {
+        int position = 0;
+        body.slice(position, rows * 8).order(ByteOrder.LITTLE_ENDIAN).asLongBuffer().get(ids, offset, rows);
+        position += rows * 8;
+        for (int i = 0; i < rows; i++) {
+            postcodes[offset + i] = body.getShort(position + i * 2);
+        }
+        position += rows * 2;
+        body.slice(position, rows * 4).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer().get(capacities, offset, rows);
+        position += rows * 4;
+        int[] ends = new int[rows];
+        body.slice(position, rows * 4).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer().get(ends);
+        position += rows * 4;
+
+        byte[] utf8 = new byte[nameBytes];
+        body.get(position, utf8);
+        int start = 0;
+        for (int i = 0; i < rows; i++) {
+            names[offset + i] = new String(utf8, start, ends[i] - start, StandardCharsets.UTF_8);
+            start = ends[i];
+        }
+    }
+
+    /**
+     * Reads {@code length} bytes at a position, or returns null if the file ends first.
+     */
+    private static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                return null;
+            }
+        }
+        return buffer.flip();
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package io.powerledger.vpp.logging;
+
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.Appender;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import net.logstash.logback.appender.LogstashTcpSocketAppender;
+import net.logstash.logback.appender.listener.TcpAppenderListener;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.Iterator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Publishes queue depth and dropped events of the root logger's asynchronous appenders.
+ * <p>
+ * {@code logging.async.queue.size} and {@code logging.async.queue.remaining} are gauges of each
+ * {@link MeteredAsyncAppender} queue, and {@code logging.async.dropped} counts events dropped by those
+ * appenders and by the Logstash appender when its ring buffer is full. All are tagged {@code appender}.
+ */
+@Component
+public class LoggingMetrics implements MeterBinder {
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        if (!(LoggerFactory.getILoggerFactory() instanceof LoggerContext loggerContext)) {
+            return;
+        }
+        Logger root = loggerContext.getLogger(Logger.ROOT_LOGGER_NAME);
+        for (Iterator<Appender<ILoggingEvent>> appenders = root.iteratorForAppenders(); appenders.hasNext(); ) {
+            Appender<ILoggingEvent> appender = appenders.next();
+            if (appender instanceof MeteredAsyncAppender asyncAppender) {
+                bindAsyncAppender(registry, asyncAppender);
+            } else if (appender instanceof LogstashTcpSocketAppender logstashAppender) {
+                bindLogstashAppender(registry, logstashAppender);
+            }
+        }
+    }
+
+    private static void bindAsyncAppender(MeterRegistry registry, MeteredAsyncAppender appender) {
+        Gauge.builder("logging.async.queue.size", appender, MeteredAsyncAppender::getNumberOfElementsInQueue)
+                .tag("appender", appender.getName())
+                .description("Events waiting to be written")
+                .register(registry);
+        Gauge.builder("logging.async.queue.remaining", appender, MeteredAsyncAppender::getRemainingCapacity)
+                .tag("appender", appender.getName())
+                .description("Free slots in the appender queue")
+                .register(registry);
+        FunctionCounter.builder("logging.async.dropped", appender, MeteredAsyncAppender::getDroppedCount)
+                .tag("appender", appender.getName())
+                .description("Events dropped because the queue was nearly full")
+                .register(registry);
+    }
+
+    private static void bindLogstashAppender(MeterRegistry registry, LogstashTcpSocketAppender appender) {
+        LongAdder dropped = new LongAdder();
+        // The ring buffer only reports failed appends through listeners; drops before binding are not counted
+        appender.addListener(new TcpAppenderListener<>() {
+            @Override
+            public void eventAppendFailed(Appender<ILoggingEvent> source, ILoggingEvent event, Throwable reason) {
+                dropped.increment();
+            }
+        });
+        FunctionCounter.builder("logging.async.dropped", dropped, LongAdder::sum)
+                .tag("appender", appender.getName())
+                .description("Events dropped because the ring buffer was full")
+                .register(registry);
+    }
+}
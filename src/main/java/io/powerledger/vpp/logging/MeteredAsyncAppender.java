@@ -0,0 +1,42 @@
+package io.powerledger.vpp.logging;
+
+import ch.qos.logback.classic.AsyncAppender;
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Logback {@link AsyncAppender} that counts the events it drops.
+ * <p>
+ * Events are handed to a bounded queue and written by a worker thread. Once fewer than
+ * {@code discardingThreshold} slots remain, events at or below {@code discardLevel} are dropped;
+ * ERROR events are never dropped and block the caller if the queue is full. {@code neverBlock} must
+ * stay false, since drops on a full queue would not be counted.
+ */
+public class MeteredAsyncAppender extends AsyncAppender {
+
+    private final LongAdder dropped = new LongAdder();
+    private Level discardLevel = Level.INFO;
+
+    @Override
+    protected boolean isDiscardable(ILoggingEvent event) {
+        int level = event.getLevel().toInt();
+        boolean discardable = level <= discardLevel.toInt() && level < Level.ERROR_INT;
+        if (discardable) {
+            dropped.increment();
+        }
+        return discardable;
+    }
+
+    /**
+     * Highest level that may be dropped under pressure, e.g. INFO or WARN; ERROR is always kept.
+     */
+    public void setDiscardLevel(String discardLevel) {
+        this.discardLevel = Level.toLevel(discardLevel, Level.INFO);
+    }
+
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+}
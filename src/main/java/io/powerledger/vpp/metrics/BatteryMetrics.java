@@ -0,0 +1,134 @@
+package io.powerledger.vpp.metrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Names, tags and builders for the battery endpoint meters.
+ * <p>
+ * Every meter is tagged with the {@code endpoint} it serves, and timers and summaries publish
+ * percentile histograms so latency and size percentiles can be aggregated across instances in
+ * Prometheus. All registration endpoints persist through the same service call, so the persist
+ * phase and batch sizes of all registrations are tagged {@code register}; buffered registrations
+ * additionally record their wait in the write-behind queue as the queue phase of {@code register.async}.
+ * Fleet syncs record their persist phase and batch size under {@code sync}. Telemetry uploads record
+ * their in-memory append and their later batched persist under {@code telemetry.ingest}. Meters are
+ * looked up by id on each use; Micrometer returns the already registered instance.
+ */
+public final class BatteryMetrics {
+
+    /** Time spent in one phase of a request, tagged {@code endpoint} and {@code phase}. */
+    public static final String PHASE_TIME = "batteries.phase.time";
+    /** End-to-end service time of a range query, tagged {@code endpoint}. */
+    public static final String QUERY_RESPONSE_TIME = "batteries.query.response.time";
+    /** Rows per range query, tagged {@code endpoint} and {@code kind} ({@code matched} or {@code returned}). */
+    public static final String QUERY_ROWS = "batteries.query.rows";
+    /** Batteries per persisted batch, tagged {@code endpoint}. */
+    public static final String BATCH_SIZE = "batteries.registered.batch.size";
+
+    public static final String ENDPOINT_REGISTER = "register";
+    public static final String ENDPOINT_REGISTER_STREAM = "register.stream";
+    public static final String ENDPOINT_REGISTER_ASYNC = "register.async";
+    public static final String ENDPOINT_RANGE = "range";
+    public static final String ENDPOINT_RANGE_PAGE = "range.page";
+    public static final String ENDPOINT_RANGE_NAMES = "range.names";
+    public static final String ENDPOINT_RANGE_BATCH = "range.batch";
+    public static final String ENDPOINT_DISTRIBUTION = "distribution";
+    public static final String ENDPOINT_TELEMETRY_INGEST = "telemetry.ingest";
+    public static final String ENDPOINT_TELEMETRY_RANGE = "telemetry.range";
+    public static final String ENDPOINT_TELEMETRY_AVAILABLE = "telemetry.available";
+    public static final String ENDPOINT_DISPATCH_PLAN = "dispatch.plan";
+    public static final String ENDPOINT_SEARCH = "search";
+    public static final String ENDPOINT_NEAR = "near";
+    public static final String ENDPOINT_NEAREST = "nearest";
+    public static final String ENDPOINT_SUBSCRIBE = "subscribe";
+    public static final String ENDPOINT_SYNC = "sync";
+
+    // Controller handler method name to endpoint tag, for meters recorded outside the service layer
+    private static final Map<String, String> ENDPOINTS_BY_HANDLER = Map.ofEntries(
+            Map.entry("addBatteries", ENDPOINT_REGISTER),
+            Map.entry("addBatteriesStream", ENDPOINT_REGISTER_STREAM),
+            Map.entry("addBatteriesAsync", ENDPOINT_REGISTER_ASYNC),
+            Map.entry("getBatteriesInRange", ENDPOINT_RANGE),
+            Map.entry("getBatteriesPageInRange", ENDPOINT_RANGE_PAGE),
+            Map.entry("streamBatteryNames", ENDPOINT_RANGE_NAMES),
+            Map.entry("getBatteriesInRanges", ENDPOINT_RANGE_BATCH),
+            Map.entry("getCapacityDistribution", ENDPOINT_DISTRIBUTION),
+            Map.entry("addTelemetry", ENDPOINT_TELEMETRY_INGEST),
+            Map.entry("getTelemetryInRange", ENDPOINT_TELEMETRY_RANGE),
+            Map.entry("getAvailableCapacityInRange", ENDPOINT_TELEMETRY_AVAILABLE),
+            Map.entry("planDispatch", ENDPOINT_DISPATCH_PLAN),
+            Map.entry("searchBatteries", ENDPOINT_SEARCH),
+            Map.entry("getBatteriesNear", ENDPOINT_NEAR),
+            Map.entry("getNearestBatteries", ENDPOINT_NEAREST),
+            Map.entry("subscribeToRange", ENDPOINT_SUBSCRIBE),
+            Map.entry("syncBatteries", ENDPOINT_SYNC));
+
+    public static final String PHASE_AGGREGATE = "aggregate";
+    public static final String PHASE_DB_FETCH = "db.fetch";
+    public static final String PHASE_FILTER = "filter";
+    public static final String PHASE_SORT = "sort";
+    public static final String PHASE_STREAM = "stream";
+    public static final String PHASE_PARSE = "parse";
+    public static final String PHASE_PERSIST = "persist";
+    public static final String PHASE_QUEUE = "queue";
+    public static final String PHASE_APPEND = "append";
+    public static final String PHASE_SERIALIZE = "serialize";
+    public static final String PHASE_PLAN = "plan";
+    public static final String PHASE_LOCATE = "locate";
+
+    private BatteryMetrics() {
+    }
+
+    /**
+     * Endpoint tag for a battery controller handler method, or null for other handlers such as actuator endpoints.
+     */
+    public static String endpointOf(String handlerMethodName) {
+        return ENDPOINTS_BY_HANDLER.get(handlerMethodName);
+    }
+
+    public static Timer phaseTimer(MeterRegistry registry, String endpoint, String phase) {
+        return Timer.builder(PHASE_TIME)
+                .tag("endpoint", endpoint)
+                .tag("phase", phase)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    public static <T> T timePhase(MeterRegistry registry, String endpoint, String phase, Supplier<T> work) {
+        return phaseTimer(registry, endpoint, phase).record(work);
+    }
+
+    public static Timer queryResponseTimer(MeterRegistry registry, String endpoint) {
+        return Timer.builder(QUERY_RESPONSE_TIME)
+                .tag("endpoint", endpoint)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    public static void recordRows(MeterRegistry registry, String endpoint, long matched, long returned) {
+        rowsSummary(registry, endpoint, "matched").record(matched);
+        rowsSummary(registry, endpoint, "returned").record(returned);
+    }
+
+    public static DistributionSummary batchSizeSummary(MeterRegistry registry, String endpoint) {
+        return DistributionSummary.builder(BATCH_SIZE)
+                .tag("endpoint", endpoint)
+                .baseUnit("batteries")
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    private static DistributionSummary rowsSummary(MeterRegistry registry, String endpoint, String kind) {
+        return DistributionSummary.builder(QUERY_ROWS)
+                .tag("endpoint", endpoint)
+                .tag("kind", kind)
+                .baseUnit("rows")
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+}
@@ -0,0 +1,55 @@
+package io.powerledger.vpp.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.io.IOException;
+
+/**
+ * Records the serialise phase of battery endpoint response bodies for the timed message converters.
+ * Converters write to the response as their buffer fills, so for large bodies the phase also
+ * includes the time spent writing to the client.
+ */
+final class SerializePhase {
+
+    private SerializePhase() {
+    }
+
+    /**
+     * Runs the write, timing it if the current request is served by a battery endpoint.
+     */
+    static void record(MeterRegistry meterRegistry, Write write) throws IOException {
+        String endpoint = currentEndpoint();
+        if (endpoint == null) {
+            write.run();
+            return;
+        }
+        Timer.Sample sample = Timer.start(meterRegistry);
+        try {
+            write.run();
+        } finally {
+            sample.stop(BatteryMetrics.phaseTimer(meterRegistry, endpoint, BatteryMetrics.PHASE_SERIALIZE));
+        }
+    }
+
+    /**
+     * Endpoint tag of the battery handler serving the current request, or null if there is none.
+     */
+    private static String currentEndpoint() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        Object handler = attributes == null ? null
+                : attributes.getAttribute(HandlerMapping.BEST_MATCHING_HANDLER_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+        return handler instanceof HandlerMethod handlerMethod
+                ? BatteryMetrics.endpointOf(handlerMethod.getMethod().getName())
+                : null;
+    }
+
+    @FunctionalInterface
+    interface Write {
+        void run() throws IOException;
+    }
+}
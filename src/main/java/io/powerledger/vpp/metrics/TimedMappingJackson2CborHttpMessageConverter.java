@@ -0,0 +1,30 @@
+package io.powerledger.vpp.metrics;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+
+/**
+ * CBOR ({@code application/cbor}) converter that records the serialise phase of battery endpoint
+ * response bodies, like {@link TimedMappingJackson2HttpMessageConverter}.
+ */
+public class TimedMappingJackson2CborHttpMessageConverter extends MappingJackson2CborHttpMessageConverter {
+
+    private final MeterRegistry meterRegistry;
+
+    public TimedMappingJackson2CborHttpMessageConverter(ObjectMapper objectMapper, MeterRegistry meterRegistry) {
+        super(objectMapper);
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    protected void writeInternal(Object object, Type type, HttpOutputMessage outputMessage)
+            throws IOException, HttpMessageNotWritableException {
+        SerializePhase.record(meterRegistry, () -> super.writeInternal(object, type, outputMessage));
+    }
+}
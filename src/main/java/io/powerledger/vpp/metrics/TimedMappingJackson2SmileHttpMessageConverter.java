@@ -0,0 +1,30 @@
+package io.powerledger.vpp.metrics;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+
+/**
+ * Smile ({@code application/x-jackson-smile}) converter that records the serialise phase of battery
+ * endpoint response bodies, like {@link TimedMappingJackson2HttpMessageConverter}.
+ */
+public class TimedMappingJackson2SmileHttpMessageConverter extends MappingJackson2SmileHttpMessageConverter {
+
+    private final MeterRegistry meterRegistry;
+
+    public TimedMappingJackson2SmileHttpMessageConverter(ObjectMapper objectMapper, MeterRegistry meterRegistry) {
+        super(objectMapper);
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    protected void writeInternal(Object object, Type type, HttpOutputMessage outputMessage)
+            throws IOException, HttpMessageNotWritableException {
+        SerializePhase.record(meterRegistry, () -> super.writeInternal(object, type, outputMessage));
+    }
+}
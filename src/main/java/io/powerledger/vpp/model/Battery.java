@@ -1,5 +1,6 @@
 package io.powerledger.vpp.model;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import jakarta.persistence.*;
 import jakarta.validation.constraints.*;
 import lombok.AllArgsConstructor;
@@ -7,7 +8,9 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 
 @Entity
-@Table(name = "batteries")
+@Table(name = "batteries", indexes = {
+        @Index(name = "idx_batteries_postcode_capacity", columnList = "postcode, capacity")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -21,9 +24,20 @@ public class Battery {
 
     @NotBlank(message = "Postcode cannot be blank")
     @Pattern(regexp = "\\d{4}", message = "Postcode must be a 4-digit number")
+    @Convert(converter = PostcodeConverter.class)
     private String postcode;
 
     @NotNull(message = "Capacity cannot be null")
     @Positive(message = "Capacity must be a positive value")
     private Integer capacity;
+
+    // Partner-assigned natural key; written only by fleet syncs, which keep it unique in battery_external_ids
+    @Size(max = 255, message = "External id must be at most 255 characters")
+    @Column(name = "external_id", insertable = false, updatable = false)
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String externalId;
+
+    public Battery(Long id, String name, String postcode, Integer capacity) {
+        this(id, name, postcode, capacity, null);
+    }
 }
\ No newline at end of file
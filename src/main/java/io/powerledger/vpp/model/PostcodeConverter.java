@@ -0,0 +1,57 @@
+package io.powerledger.vpp.model;
+
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+
+/**
+ * Maps 4-digit postcode strings to the SMALLINT postcode column and back.
+ * Postcodes read from the database are taken from a shared table, so loading rows allocates no strings.
+ */
+@Converter
+public class PostcodeConverter implements AttributeConverter<String, Short> {
+
+    private static final String[] POSTCODES = new String[10_000];
+
+    static {
+        for (int i = 0; i < POSTCODES.length; i++) {
+            POSTCODES[i] = String.format("%04d", i);
+        }
+    }
+
+    @Override
+    public Short convertToDatabaseColumn(String postcode) {
+        return postcode == null ? null : toColumn(postcode);
+    }
+
+    @Override
+    public String convertToEntityAttribute(Short postcode) {
+        return postcode == null ? null : fromColumn(postcode);
+    }
+
+    /**
+     * 4-digit postcode of a numeric column value, from the shared table.
+     */
+    public static String fromColumn(int postcode) {
+        return POSTCODES[postcode];
+    }
+
+    /**
+     * Numeric column value of a 4-digit postcode.
+     *
+     * @throws IllegalArgumentException if the postcode is not 4 digits.
+     */
+    public static short toColumn(String postcode) {
+        if (postcode.length() != 4) {
+            throw new IllegalArgumentException("Postcode must be a 4-digit number: " + postcode);
+        }
+        int value = 0;
+        for (int i = 0; i < 4; i++) {
+            char c = postcode.charAt(i);
+            if (c < '0' || c > '9') {
+                throw new IllegalArgumentException("Postcode must be a 4-digit number: " + postcode);
+            }
+            value = value * 10 + (c - '0');
+        }
+        return (short) value;
+    }
+}
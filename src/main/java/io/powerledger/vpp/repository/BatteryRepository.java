@@ -1,11 +1,88 @@
 package io.powerledger.vpp.repository;
 
 
+import io.powerledger.vpp.dto.BatteryRow;
 import io.powerledger.vpp.model.Battery;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 
 import java.util.List;
+import java.util.stream.Stream;
 
-public interface BatteryRepository extends JpaRepository<Battery, Long> {
+public interface BatteryRepository extends JpaRepository<Battery, Long>, BatteryRepositoryCustom {
     List<Battery> findByPostcodeBetween(String start, String end);
+
+    boolean existsByPostcodeBetween(String start, String end);
+
+    /**
+     * Returns one keyset page of batteries in a postcode and capacity range, ordered by name then id,
+     * starting after the given (name, id) position.
+     */
+    @Query("""
+            SELECT new io.powerledger.vpp.dto.BatteryRow(b.id, b.name, b.postcode, b.capacity)
+            FROM Battery b
+            WHERE b.postcode BETWEEN :start AND :end
+              AND b.capacity BETWEEN :minCapacity AND :maxCapacity
+              AND (b.name > :afterName OR (b.name = :afterName AND b.id > :afterId))
+            ORDER BY b.name, b.id
+            """)
+    List<BatteryRow> findPageInRange(@Param("start") String start,
+                                     @Param("end") String end,
+                                     @Param("minCapacity") int minCapacity,
+                                     @Param("maxCapacity") int maxCapacity,
+                                     @Param("afterName") String afterName,
+                                     @Param("afterId") long afterId,
+                                     Limit limit);
+
+    /**
+     * Streams the sorted names of batteries in a postcode and capacity range from a database cursor.
+     * Must be consumed inside a transaction so the driver can fetch in batches.
+     */
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"))
+    @Query("""
+            SELECT b.name
+            FROM Battery b
+            WHERE b.postcode BETWEEN :start AND :end
+              AND b.capacity BETWEEN :minCapacity AND :maxCapacity
+            ORDER BY b.name
+            """)
+    Stream<String> streamNamesInRange(@Param("start") String start,
+                                      @Param("end") String end,
+                                      @Param("minCapacity") int minCapacity,
+                                      @Param("maxCapacity") int maxCapacity);
+
+    /**
+     * Returns batteries whose lower-cased name matches a LIKE pattern escaped with a backslash, names
+     * that start with the prefix pattern first, then by name and id. A pattern with a leading wildcard
+     * scans the table, so this serves name searches only while the in-memory name index is not loaded.
+     */
+    @Query("""
+            SELECT new io.powerledger.vpp.dto.BatteryRow(b.id, b.name, b.postcode, b.capacity)
+            FROM Battery b
+            WHERE LOWER(b.name) LIKE :pattern ESCAPE '\\'
+            ORDER BY CASE WHEN LOWER(b.name) LIKE :prefixPattern ESCAPE '\\' THEN 0 ELSE 1 END, LOWER(b.name), b.id
+            """)
+    List<BatteryRow> searchByName(@Param("pattern") String pattern,
+                                  @Param("prefixPattern") String prefixPattern,
+                                  Limit limit);
+
+    /**
+     * Returns the batteries with an id above the given one as detached rows, used to catch up an
+     * in-process index loaded from a snapshot file.
+     */
+    @Query("SELECT new io.powerledger.vpp.dto.BatteryRow(b.id, b.name, b.postcode, b.capacity) FROM Battery b WHERE b.id > :afterId")
+    List<BatteryRow> findRowsAfterId(@Param("afterId") long afterId);
+
+    long countByIdLessThanEqual(Long id);
+
+    /**
+     * Returns every battery as a detached row, used to build in-process indexes at startup.
+     */
+    @Query("SELECT new io.powerledger.vpp.dto.BatteryRow(b.id, b.name, b.postcode, b.capacity) FROM Battery b")
+    List<BatteryRow> findAllRows();
 }
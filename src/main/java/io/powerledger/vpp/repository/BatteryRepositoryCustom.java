@@ -0,0 +1,136 @@
+package io.powerledger.vpp.repository;
+
+import io.powerledger.vpp.dto.BatteryChange;
+import io.powerledger.vpp.dto.BatteryRow;
+import io.powerledger.vpp.dto.CapacityAggregate;
+import io.powerledger.vpp.dto.PostcodeSpan;
+import io.powerledger.vpp.dto.TelemetryBatch;
+import io.powerledger.vpp.model.Battery;
+
+import java.util.List;
+
+/**
+ * Repository operations implemented with plain JDBC where JPA cannot batch efficiently.
+ */
+public interface BatteryRepositoryCustom {
+
+    /**
+     * Inserts batteries using JDBC batches of {@code vpp.ingest.jdbc-batch.size} rows.
+     * Hibernate cannot batch inserts for IDENTITY ids, so large registrations bypass it.
+     *
+     * @param batteries Batteries to insert; their ids are set from the generated keys.
+     * @return The same batteries, with ids populated.
+     */
+    List<Battery> insertInBatches(List<Battery> batteries);
+
+    /**
+     * Inserts the batteries whose external id is not stored yet and updates those whose name, postcode
+     * or capacity differ from the stored row, in chunks of {@code vpp.ingest.sync.batch-size}. Each chunk
+     * takes two statements: one locks and reads the rows about to change, and one updates the changed rows
+     * and inserts the new ones. Rows already stored as sent are only read, never locked or written.
+     * Syncs are serialised with each other for the rest of the transaction.
+     *
+     * @param batteries Batteries with distinct external ids; ids are set on the inserted and changed ones.
+     * @return The inserted batteries, the changed batteries before and after, and the number unchanged.
+     */
+    UpsertResult upsertByExternalId(List<Battery> batteries);
+
+    /**
+     * Counts and sums the capacity of batteries in a postcode and capacity range without loading entities,
+     * from the (postcode, capacity) index. Runs in a read-only transaction, joining the caller's, with
+     * sequential scans turned off for the rest of it, since a range covering whole postcode bands matches
+     * every row of those bands and the planner would otherwise scan their tables instead of their indexes.
+     */
+    CapacityAggregate aggregateCapacityInRange(String start, String end, int minCapacity, int maxCapacity);
+
+    /**
+     * Returns only the names of batteries in a postcode and capacity range, sorted alphabetically.
+     * Sequential scans are turned off as in {@link #aggregateCapacityInRange}.
+     */
+    List<String> findNamesInRange(String start, String end, int minCapacity, int maxCapacity);
+
+    /**
+     * Returns the batteries inside any of the spans, ordered by postcode, in one statement.
+     * Spans must not overlap, or batteries in the overlap are returned once per span.
+     *
+     * @param spans Disjoint postcode spans, each with its own capacity bounds.
+     * @return Matching rows in ascending postcode order.
+     */
+    List<BatteryRow> findRowsInSpans(List<PostcodeSpan> spans);
+
+    /**
+     * Counts the batteries inside any of the spans, like {@link #findRowsInSpans}, without reading them.
+     *
+     * @param spans Disjoint postcode spans, each with its own capacity bounds.
+     * @return Number of matching batteries.
+     */
+    long countInSpans(List<PostcodeSpan> spans);
+
+    /**
+     * Adds the batteries to the per-postcode capacity rollups. Must run in the transaction that
+     * inserts them, so the rollups never disagree with committed rows.
+     *
+     * @param batteries Newly inserted batteries.
+     */
+    void addToRollups(List<Battery> batteries);
+
+    /**
+     * Recomputes the rollups of the given postcodes from the battery rows, removing those left without
+     * batteries, for changes that cannot be applied as increments. Must run in the transaction that made
+     * the changes; blocks registrations until it commits, as {@link #rebuildRollups} does.
+     *
+     * @param postcodes Postcodes whose batteries changed.
+     */
+    void refreshRollups(List<String> postcodes);
+
+    /**
+     * Counts and sums the capacity of all batteries in a postcode range by adding up at most
+     * 10,000 rollup buckets instead of reading battery rows.
+     */
+    CapacityAggregate aggregateCapacityFromRollups(String start, String end);
+
+    /**
+     * Number of postcodes whose rollup differs from the battery rows, including missing and extra buckets.
+     */
+    long countRollupDrift();
+
+    /**
+     * Recomputes every rollup from the battery rows, blocking registrations until it commits.
+     */
+    void rebuildRollups();
+
+    /**
+     * Streams the id, numeric postcode and capacity of every battery in a postcode range from a
+     * database cursor, so no rows are collected in memory.
+     *
+     * @param start   Starting postcode (inclusive).
+     * @param end     Ending postcode (inclusive).
+     * @param handler Receives each row.
+     */
+    void forEachCapacity(String start, String end, CapacityRowHandler handler);
+
+    /**
+     * Appends telemetry readings to {@code battery_telemetry} in one statement, passing each column as an array.
+     *
+     * @param batch Readings to insert.
+     */
+    void insertTelemetry(TelemetryBatch batch);
+
+    /**
+     * Outcome of {@link #upsertByExternalId}.
+     *
+     * @param inserted  Batteries that were not stored before, with their generated ids.
+     * @param updated   Stored batteries that the upsert changed.
+     * @param unchanged Number of batteries already stored as sent.
+     */
+    record UpsertResult(List<Battery> inserted, List<BatteryChange> updated, long unchanged) {
+    }
+
+    /**
+     * Receives the rows of {@link #forEachCapacity}.
+     */
+    @FunctionalInterface
+    interface CapacityRowHandler {
+        void accept(long id, int postcode, int capacity);
+    }
+}
@@ -0,0 +1,455 @@
+package io.powerledger.vpp.repository;
+
+import io.powerledger.vpp.dto.BatteryChange;
+import io.powerledger.vpp.dto.BatteryRow;
+import io.powerledger.vpp.dto.CapacityAggregate;
+import io.powerledger.vpp.dto.PostcodeSpan;
+import io.powerledger.vpp.dto.TelemetryBatch;
+import io.powerledger.vpp.model.Battery;
+import io.powerledger.vpp.model.PostcodeConverter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ToIntFunction;
+
+/**
+ * JDBC implementation of {@link BatteryRepositoryCustom}.
+ * With the PostgreSQL driver's {@code reWriteBatchedInserts} enabled, each batch is sent as
+ * multi-row INSERT statements and the generated ids are returned in insertion order. Span scans
+ * and fleet syncs pass their rows as arrays, so the statement text is the same for any number of rows.
+ */
+public class BatteryRepositoryImpl implements BatteryRepositoryCustom {
+
+    private static final String INSERT_SQL = "INSERT INTO batteries (name, postcode, capacity) VALUES (?, ?, ?)";
+
+    // Serialises fleet syncs, so no other sync inserts or changes a row this one found unchanged or locked
+    private static final String SYNC_LOCK_SQL = "SELECT pg_advisory_xact_lock(7301)";
+
+    private static final String SYNC_ROWS =
+            "unnest(?::varchar[], ?::varchar[], ?::smallint[], ?::integer[]) AS s(external_id, name, postcode, capacity)";
+
+    // Looked up once per sent battery. Left to plan a join, the planner can instead walk all of battery_external_ids
+    // for every chunk while the table has no statistics, as in a first sync, which then slows with the square of its
+    // size. The LIMIT keeps the subquery from being flattened into such a join.
+    private static final String STORED_KEY =
+            "SELECT k.battery_id, k.postcode FROM battery_external_ids k WHERE k.external_id = s.external_id LIMIT 1";
+
+    // Locked in id order, so concurrent writers of the same rows cannot deadlock with a sync
+    private static final String LOCK_CHANGED_SQL = """
+            SELECT b.id, b.external_id, b.name, b.postcode, b.capacity
+            FROM %s
+            CROSS JOIN LATERAL (%s) k
+            JOIN batteries b ON b.id = k.battery_id AND b.postcode = k.postcode
+            WHERE (b.name, b.postcode, b.capacity) IS DISTINCT FROM (s.name, s.postcode, s.capacity)
+            ORDER BY b.id
+            FOR UPDATE OF b
+            """.formatted(SYNC_ROWS, STORED_KEY);
+
+    // Changed rows are updated and new ones inserted, with battery_external_ids kept in step, in one statement. An
+    // update may move a row to another postcode band, which INSERT ... ON CONFLICT DO UPDATE cannot; nor can it use
+    // battery_external_ids as the conflict target. Every part sees the rows as they were before the statement.
+    private static final String UPSERT_SQL = """
+            WITH s AS MATERIALIZED (
+                SELECT * FROM %s
+            ), stored AS MATERIALIZED (
+                SELECT s.*, k.battery_id, k.postcode AS stored_postcode
+                FROM s
+                CROSS JOIN LATERAL (%s) k
+            ), updated AS (
+                UPDATE batteries b
+                SET name = t.name, postcode = t.postcode, capacity = t.capacity
+                FROM stored t
+                WHERE b.id = t.battery_id
+                  AND b.postcode = t.stored_postcode
+                  AND (b.name, b.postcode, b.capacity) IS DISTINCT FROM (t.name, t.postcode, t.capacity)
+                RETURNING b.id, b.external_id, b.postcode
+            ), moved AS (
+                UPDATE battery_external_ids k
+                SET postcode = u.postcode
+                FROM updated u
+                WHERE k.external_id = u.external_id
+                  AND k.postcode <> u.postcode
+            ), inserted AS (
+                INSERT INTO batteries (external_id, name, postcode, capacity)
+                SELECT s.external_id, s.name, s.postcode, s.capacity
+                FROM s
+                WHERE NOT EXISTS (SELECT 1 FROM stored t WHERE t.external_id = s.external_id)
+                RETURNING id, external_id, postcode
+            ), indexed AS (
+                INSERT INTO battery_external_ids (external_id, battery_id, postcode)
+                SELECT external_id, id, postcode FROM inserted
+            )
+            SELECT id, external_id FROM updated
+            UNION ALL
+            SELECT id, external_id FROM inserted
+            """.formatted(SYNC_ROWS, STORED_KEY);
+
+    // Lasts until the end of the transaction, so it applies only to the range scans that set it
+    private static final String NO_SEQUENTIAL_SCANS_SQL = "SET LOCAL enable_seqscan = off";
+
+    private static final String AGGREGATE_IN_RANGE_SQL = """
+            SELECT COUNT(*), SUM(capacity)
+            FROM batteries
+            WHERE postcode BETWEEN ? AND ?
+              AND capacity BETWEEN ? AND ?
+            """;
+
+    private static final String NAMES_IN_RANGE_SQL = """
+            SELECT name
+            FROM batteries
+            WHERE postcode BETWEEN ? AND ?
+              AND capacity BETWEEN ? AND ?
+            ORDER BY name
+            """;
+
+    private static final String SPANS_SQL = """
+            SELECT b.id, b.name, b.postcode, b.capacity
+            FROM unnest(?::smallint[], ?::smallint[], ?::integer[], ?::integer[])
+                     AS s(start_postcode, end_postcode, min_capacity, max_capacity)
+            JOIN batteries b ON b.postcode BETWEEN s.start_postcode AND s.end_postcode
+                            AND b.capacity BETWEEN s.min_capacity AND s.max_capacity
+            ORDER BY b.postcode
+            """;
+
+    private static final String COUNT_IN_SPANS_SQL = """
+            SELECT COUNT(*)
+            FROM unnest(?::smallint[], ?::smallint[], ?::integer[], ?::integer[])
+                     AS s(start_postcode, end_postcode, min_capacity, max_capacity)
+            JOIN batteries b ON b.postcode BETWEEN s.start_postcode AND s.end_postcode
+                            AND b.capacity BETWEEN s.min_capacity AND s.max_capacity
+            """;
+
+    // Buckets are locked in postcode order, so concurrent registrations cannot deadlock
+    private static final String ADD_TO_ROLLUPS_SQL = """
+            INSERT INTO postcode_capacity_rollups AS r
+                (postcode, battery_count, total_capacity, min_capacity, max_capacity)
+            SELECT postcode, COUNT(*), SUM(capacity), MIN(capacity), MAX(capacity)
+            FROM unnest(?::smallint[], ?::integer[]) AS b(postcode, capacity)
+            GROUP BY postcode
+            ORDER BY postcode
+            ON CONFLICT (postcode) DO UPDATE SET
+                battery_count = r.battery_count + EXCLUDED.battery_count,
+                total_capacity = r.total_capacity + EXCLUDED.total_capacity,
+                min_capacity = LEAST(r.min_capacity, EXCLUDED.min_capacity),
+                max_capacity = GREATEST(r.max_capacity, EXCLUDED.max_capacity)
+            """;
+
+    private static final String REFRESH_ROLLUPS_SQL = """
+            INSERT INTO postcode_capacity_rollups AS r
+                (postcode, battery_count, total_capacity, min_capacity, max_capacity)
+            SELECT postcode, COUNT(*), SUM(capacity), MIN(capacity), MAX(capacity)
+            FROM batteries
+            WHERE postcode = ANY (?::smallint[])
+            GROUP BY postcode
+            ORDER BY postcode
+            ON CONFLICT (postcode) DO UPDATE SET
+                battery_count = EXCLUDED.battery_count,
+                total_capacity = EXCLUDED.total_capacity,
+                min_capacity = EXCLUDED.min_capacity,
+                max_capacity = EXCLUDED.max_capacity
+            """;
+
+    private static final String DELETE_EMPTY_ROLLUPS_SQL = """
+            DELETE FROM postcode_capacity_rollups r
+            WHERE r.postcode = ANY (?::smallint[])
+              AND NOT EXISTS (SELECT 1 FROM batteries b WHERE b.postcode = r.postcode)
+            """;
+
+    private static final String ROLLUP_AGGREGATE_SQL = """
+            SELECT SUM(battery_count), SUM(total_capacity)
+            FROM postcode_capacity_rollups
+            WHERE postcode BETWEEN ? AND ?
+            """;
+
+    private static final String ROLLUP_DRIFT_SQL = """
+            SELECT COUNT(*)
+            FROM (SELECT postcode, COUNT(*) AS battery_count, SUM(capacity) AS total_capacity,
+                         MIN(capacity) AS min_capacity, MAX(capacity) AS max_capacity
+                  FROM batteries
+                  GROUP BY postcode) b
+            FULL JOIN postcode_capacity_rollups r USING (postcode)
+            WHERE b.battery_count IS DISTINCT FROM r.battery_count
+               OR b.total_capacity IS DISTINCT FROM r.total_capacity
+               OR b.min_capacity IS DISTINCT FROM r.min_capacity
+               OR b.max_capacity IS DISTINCT FROM r.max_capacity
+            """;
+
+    private static final String CAPACITIES_SQL = "SELECT id, postcode, capacity FROM batteries WHERE postcode BETWEEN ? AND ?";
+    private static final int CAPACITIES_FETCH_SIZE = 10_000;
+
+    private static final String INSERT_TELEMETRY_SQL = """
+            INSERT INTO battery_telemetry (battery_id, recorded_at, state_of_charge, power_watts)
+            SELECT battery_id, to_timestamp(recorded_at / 1000.0), state_of_charge, power_watts
+            FROM unnest(?::bigint[], ?::bigint[], ?::real[], ?::integer[])
+                     AS t(battery_id, recorded_at, state_of_charge, power_watts)
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int batchSize;
+    private final int syncBatchSize;
+
+    public BatteryRepositoryImpl(JdbcTemplate jdbcTemplate,
+                                 @Value("${vpp.ingest.jdbc-batch.size:1000}") int batchSize,
+                                 @Value("${vpp.ingest.sync.batch-size:10000}") int syncBatchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.batchSize = batchSize;
+        this.syncBatchSize = syncBatchSize;
+    }
+
+    @Override
+    @Transactional
+    public List<Battery> insertInBatches(List<Battery> batteries) {
+        for (int from = 0; from < batteries.size(); from += batchSize) {
+            List<Battery> batch = batteries.subList(from, Math.min(from + batchSize, batteries.size()));
+            KeyHolder keyHolder = new GeneratedKeyHolder();
+
+            jdbcTemplate.batchUpdate(
+                    connection -> connection.prepareStatement(INSERT_SQL, new String[]{"id"}),
+                    new BatchPreparedStatementSetter() {
+                        @Override
+                        public void setValues(PreparedStatement ps, int i) throws SQLException {
+                            Battery battery = batch.get(i);
+                            ps.setString(1, battery.getName());
+                            ps.setShort(2, PostcodeConverter.toColumn(battery.getPostcode()));
+                            ps.setInt(3, battery.getCapacity());
+                        }
+
+                        @Override
+                        public int getBatchSize() {
+                            return batch.size();
+                        }
+                    },
+                    keyHolder);
+
+            List<Map<String, Object>> keys = keyHolder.getKeyList();
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).setId(((Number) keys.get(i).get("id")).longValue());
+            }
+        }
+        return batteries;
+    }
+
+    @Override
+    @Transactional
+    public UpsertResult upsertByExternalId(List<Battery> batteries) {
+        jdbcTemplate.execute(SYNC_LOCK_SQL);
+        List<Battery> inserted = new ArrayList<>();
+        List<BatteryChange> updated = new ArrayList<>();
+        for (int from = 0; from < batteries.size(); from += syncBatchSize) {
+            List<Battery> chunk = batteries.subList(from, Math.min(from + syncBatchSize, batteries.size()));
+            SyncRows rows = SyncRows.of(chunk);
+
+            Map<String, Battery> previous = new HashMap<>();
+            jdbcTemplate.query(connection -> rows.prepare(connection, LOCK_CHANGED_SQL), (RowCallbackHandler) rs -> {
+                Battery battery = new Battery(rs.getLong(1), rs.getString(3),
+                        PostcodeConverter.fromColumn(rs.getShort(4)), rs.getInt(5), rs.getString(2));
+                previous.put(battery.getExternalId(), battery);
+            });
+
+            Map<String, Battery> sent = new HashMap<>(chunk.size() * 2);
+            chunk.forEach(battery -> sent.put(battery.getExternalId(), battery));
+            // Every row returned was either locked above as changed, or is new
+            jdbcTemplate.query(connection -> rows.prepare(connection, UPSERT_SQL), (RowCallbackHandler) rs -> {
+                Battery battery = sent.get(rs.getString(2));
+                battery.setId(rs.getLong(1));
+                Battery before = previous.get(battery.getExternalId());
+                if (before == null) {
+                    inserted.add(battery);
+                } else {
+                    updated.add(new BatteryChange(before, battery));
+                }
+            });
+        }
+        return new UpsertResult(inserted, updated, batteries.size() - inserted.size() - updated.size());
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public CapacityAggregate aggregateCapacityInRange(String start, String end, int minCapacity, int maxCapacity) {
+        jdbcTemplate.execute(NO_SEQUENTIAL_SCANS_SQL);
+        return jdbcTemplate.queryForObject(AGGREGATE_IN_RANGE_SQL,
+                (rs, rowNum) -> new CapacityAggregate(rs.getLong(1), rs.getLong(2)),
+                PostcodeConverter.toColumn(start), PostcodeConverter.toColumn(end), minCapacity, maxCapacity);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<String> findNamesInRange(String start, String end, int minCapacity, int maxCapacity) {
+        jdbcTemplate.execute(NO_SEQUENTIAL_SCANS_SQL);
+        return jdbcTemplate.queryForList(NAMES_IN_RANGE_SQL, String.class,
+                PostcodeConverter.toColumn(start), PostcodeConverter.toColumn(end), minCapacity, maxCapacity);
+    }
+
+    @Override
+    public List<BatteryRow> findRowsInSpans(List<PostcodeSpan> spans) {
+        PostcodeConverter postcodes = new PostcodeConverter();
+        return jdbcTemplate.query(connection -> prepareSpans(connection, SPANS_SQL, spans),
+                (rs, rowNum) -> new BatteryRow(rs.getLong(1), rs.getString(2),
+                        postcodes.convertToEntityAttribute(rs.getShort(3)), rs.getInt(4)));
+    }
+
+    @Override
+    public long countInSpans(List<PostcodeSpan> spans) {
+        List<Long> count = jdbcTemplate.query(connection -> prepareSpans(connection, COUNT_IN_SPANS_SQL, spans),
+                (rs, rowNum) -> rs.getLong(1));
+        return count.get(0);
+    }
+
+    private static PreparedStatement prepareSpans(Connection connection, String sql, List<PostcodeSpan> spans)
+            throws SQLException {
+        PreparedStatement ps = connection.prepareStatement(sql);
+        ps.setArray(1, connection.createArrayOf("smallint", column(spans, PostcodeSpan::startPostcode)));
+        ps.setArray(2, connection.createArrayOf("smallint", column(spans, PostcodeSpan::endPostcode)));
+        ps.setArray(3, connection.createArrayOf("integer", column(spans, PostcodeSpan::minCapacity)));
+        ps.setArray(4, connection.createArrayOf("integer", column(spans, PostcodeSpan::maxCapacity)));
+        return ps;
+    }
+
+    private static Integer[] column(List<PostcodeSpan> spans, ToIntFunction<PostcodeSpan> field) {
+        return spans.stream().map(field::applyAsInt).toArray(Integer[]::new);
+    }
+
+    @Override
+    public void addToRollups(List<Battery> batteries) {
+        if (batteries.isEmpty()) {
+            return;
+        }
+        Integer[] postcodes = new Integer[batteries.size()];
+        Integer[] capacities = new Integer[batteries.size()];
+        for (int i = 0; i < postcodes.length; i++) {
+            postcodes[i] = (int) PostcodeConverter.toColumn(batteries.get(i).getPostcode());
+            capacities[i] = batteries.get(i).getCapacity();
+        }
+        jdbcTemplate.update(connection -> {
+            PreparedStatement ps = connection.prepareStatement(ADD_TO_ROLLUPS_SQL);
+            ps.setArray(1, connection.createArrayOf("smallint", postcodes));
+            ps.setArray(2, connection.createArrayOf("integer", capacities));
+            return ps;
+        });
+    }
+
+    @Override
+    @Transactional
+    public void refreshRollups(List<String> postcodes) {
+        if (postcodes.isEmpty()) {
+            return;
+        }
+        Integer[] columns = postcodes.stream()
+                .map(postcode -> (int) PostcodeConverter.toColumn(postcode))
+                .distinct()
+                .toArray(Integer[]::new);
+        // As in rebuildRollups, registrations holding bucket locks commit first, so the recount includes their rows
+        jdbcTemplate.execute("LOCK TABLE postcode_capacity_rollups IN SHARE ROW EXCLUSIVE MODE");
+        for (String sql : List.of(REFRESH_ROLLUPS_SQL, DELETE_EMPTY_ROLLUPS_SQL)) {
+            jdbcTemplate.update(connection -> {
+                PreparedStatement ps = connection.prepareStatement(sql);
+                ps.setArray(1, connection.createArrayOf("smallint", columns));
+                return ps;
+            });
+        }
+    }
+
+    @Override
+    public CapacityAggregate aggregateCapacityFromRollups(String start, String end) {
+        return jdbcTemplate.queryForObject(ROLLUP_AGGREGATE_SQL,
+                (rs, rowNum) -> new CapacityAggregate(rs.getLong(1), rs.getLong(2)),
+                PostcodeConverter.toColumn(start), PostcodeConverter.toColumn(end));
+    }
+
+    @Override
+    public long countRollupDrift() {
+        Long drift = jdbcTemplate.queryForObject(ROLLUP_DRIFT_SQL, Long.class);
+        return drift == null ? 0 : drift;
+    }
+
+    @Override
+    @Transactional
+    public void rebuildRollups() {
+        // Registrations already holding bucket locks commit first; later ones wait for the rebuild
+        jdbcTemplate.execute("LOCK TABLE postcode_capacity_rollups IN SHARE ROW EXCLUSIVE MODE");
+        jdbcTemplate.update("DELETE FROM postcode_capacity_rollups");
+        jdbcTemplate.update("""
+                INSERT INTO postcode_capacity_rollups (postcode, battery_count, total_capacity, min_capacity, max_capacity)
+                SELECT postcode, COUNT(*), SUM(capacity), MIN(capacity), MAX(capacity)
+                FROM batteries
+                GROUP BY postcode
+                """);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public void forEachCapacity(String start, String end, CapacityRowHandler handler) {
+        // The driver only fetches in batches inside a transaction
+        jdbcTemplate.query(connection -> {
+                    PreparedStatement ps = connection.prepareStatement(CAPACITIES_SQL);
+                    ps.setFetchSize(CAPACITIES_FETCH_SIZE);
+                    ps.setShort(1, PostcodeConverter.toColumn(start));
+                    ps.setShort(2, PostcodeConverter.toColumn(end));
+                    return ps;
+                },
+                (RowCallbackHandler) rs -> handler.accept(rs.getLong(1), rs.getShort(2), rs.getInt(3)));
+    }
+
+    @Override
+    public void insertTelemetry(TelemetryBatch batch) {
+        int size = batch.size();
+        Long[] batteryIds = new Long[size];
+        Long[] timestamps = new Long[size];
+        Float[] stateOfCharge = new Float[size];
+        Integer[] powerWatts = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            batteryIds[i] = batch.batteryId(i);
+            timestamps[i] = batch.timestamp(i);
+            stateOfCharge[i] = batch.stateOfCharge(i);
+            powerWatts[i] = batch.powerWatts(i);
+        }
+        jdbcTemplate.update(connection -> {
+            PreparedStatement ps = connection.prepareStatement(INSERT_TELEMETRY_SQL);
+            ps.setArray(1, connection.createArrayOf("bigint", batteryIds));
+            ps.setArray(2, connection.createArrayOf("bigint", timestamps));
+            ps.setArray(3, connection.createArrayOf("float4", stateOfCharge));
+            ps.setArray(4, connection.createArrayOf("integer", powerWatts));
+            return ps;
+        });
+    }
+
+    /**
+     * Columns of one sync chunk, bound as the four arrays of {@code SYNC_ROWS}.
+     */
+    private record SyncRows(String[] externalIds, String[] names, Integer[] postcodes, Integer[] capacities) {
+
+        static SyncRows of(List<Battery> batteries) {
+            int size = batteries.size();
+            SyncRows rows = new SyncRows(new String[size], new String[size], new Integer[size], new Integer[size]);
+            for (int i = 0; i < size; i++) {
+                Battery battery = batteries.get(i);
+                rows.externalIds[i] = battery.getExternalId();
+                rows.names[i] = battery.getName();
+                rows.postcodes[i] = (int) PostcodeConverter.toColumn(battery.getPostcode());
+                rows.capacities[i] = battery.getCapacity();
+            }
+            return rows;
+        }
+
+        PreparedStatement prepare(Connection connection, String sql) throws SQLException {
+            PreparedStatement ps = connection.prepareStatement(sql);
+            ps.setArray(1, connection.createArrayOf("varchar", externalIds));
+            ps.setArray(2, connection.createArrayOf("varchar", names));
+            ps.setArray(3, connection.createArrayOf("smallint", postcodes));
+            ps.setArray(4, connection.createArrayOf("integer", capacities));
+            return ps;
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package io.powerledger.vpp.rollup;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.powerledger.vpp.repository.BatteryRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Periodically compares the per-postcode capacity rollups with the battery rows and rebuilds them
+ * when they have drifted, for example after rows were changed outside the application.
+ * Drifted postcodes are counted in {@code batteries.rollup.drift} and rebuilds in
+ * {@code batteries.rollup.rebuilds}. Scheduled with {@code vpp.rollup.verify-cron}; "-" disables it.
+ */
+@Component
+@Slf4j
+public class PostcodeRollupVerifier {
+
+    private final BatteryRepository batteryRepository;
+    private final Counter driftedPostcodes;
+    private final Counter rebuilds;
+
+    public PostcodeRollupVerifier(BatteryRepository batteryRepository, MeterRegistry meterRegistry) {
+        this.batteryRepository = batteryRepository;
+        this.driftedPostcodes = meterRegistry.counter("batteries.rollup.drift");
+        this.rebuilds = meterRegistry.counter("batteries.rollup.rebuilds");
+    }
+
+    /**
+     * Rebuilds the rollups if any postcode disagrees with the battery rows.
+     *
+     * @return Number of postcodes that had drifted.
+     */
+    @Scheduled(cron = "${vpp.rollup.verify-cron:-}")
+    public long verify() {
+        long drift = batteryRepository.countRollupDrift();
+        if (drift == 0) {
+            log.debug("Postcode capacity rollups are consistent");
+            return 0;
+        }
+        log.warn("Postcode capacity rollups drifted for {} postcodes, rebuilding", drift);
+        driftedPostcodes.increment(drift);
+        batteryRepository.rebuildRollups();
+        rebuilds.increment();
+        return drift;
+    }
+}
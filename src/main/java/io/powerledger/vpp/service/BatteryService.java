@@ -1,9 +1,17 @@
 package io.powerledger.vpp.service;
 
+import io.powerledger.vpp.dto.BatteryRangeQuery;
+import io.powerledger.vpp.dto.BatteryRow;
 import io.powerledger.vpp.dto.BatteryStatsResponse;
+import io.powerledger.vpp.dto.BatterySyncSummary;
+import io.powerledger.vpp.dto.CapacityAggregate;
+import io.powerledger.vpp.dto.CapacityDistributionResponse;
+import io.powerledger.vpp.dto.DispatchPlanRequest;
+import io.powerledger.vpp.dto.DispatchPlanResponse;
 import io.powerledger.vpp.model.Battery;
 
 import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * Service interface for battery-related operations.
@@ -18,6 +26,15 @@ public interface BatteryService {
      */
     List<Battery> saveBatteries(List<Battery> batteries);
 
+    /**
+     * Bring the stored fleet in line with a partner's full list of batteries, matched on their external ids.
+     * New batteries are inserted, changed ones updated, and unchanged ones left unwritten.
+     *
+     * @param batteries Batteries with distinct, non-blank external ids.
+     * @return Numbers of inserted, updated and unchanged batteries.
+     */
+    BatterySyncSummary syncBatteries(List<Battery> batteries);
+
     /**
      * Retrieve batteries within a given postcode range and optional capacity range.
      *
@@ -28,4 +45,106 @@ public interface BatteryService {
      * @return BatteryStatsResponse containing filtered battery names and statistics.
      */
     BatteryStatsResponse getBatteriesInRange(String startPostcode, String endPostcode, Long minCapacity, Long maxCapacity);
+
+    /**
+     * Retrieve one keyset page of battery names within a postcode and optional capacity range,
+     * together with the count-based statistics of the whole range.
+     *
+     * @param startPostcode Starting postcode (inclusive).
+     * @param endPostcode   Ending postcode (inclusive).
+     * @param minCapacity   Optional minimum capacity filter (nullable).
+     * @param maxCapacity   Optional maximum capacity filter (nullable).
+     * @param cursor        Cursor from the previous page, or null for the first page.
+     * @param limit         Maximum number of names to return.
+     * @return BatteryStatsResponse with a page of names, range statistics and the next cursor.
+     */
+    BatteryStatsResponse getBatteriesInRange(String startPostcode, String endPostcode, Long minCapacity, Long maxCapacity,
+                                             String cursor, int limit);
+
+    /**
+     * Retrieve the statistics of many postcode and optional capacity ranges together.
+     *
+     * @param ranges Ranges to evaluate.
+     * @return One BatteryStatsResponse per range, in request order; ranges without batteries have empty statistics.
+     */
+    List<BatteryStatsResponse> getBatteriesInRanges(List<BatteryRangeQuery> ranges);
+
+    /**
+     * Compute the approximate capacity distribution of the batteries in a postcode range.
+     *
+     * @param startPostcode Starting postcode (inclusive).
+     * @param endPostcode   Ending postcode (inclusive).
+     * @param percentiles   Percentiles to report, between 0 and 100.
+     * @param buckets       Number of equal-width histogram buckets.
+     * @return CapacityDistributionResponse with count, bounds, mean, percentiles and histogram.
+     */
+    CapacityDistributionResponse getCapacityDistribution(String startPostcode, String endPostcode,
+                                                         List<Double> percentiles, int buckets);
+
+    /**
+     * Select batteries of a postcode range whose combined capacity meets a dispatch target.
+     *
+     * @param request Postcode range, target capacity and objective.
+     * @return DispatchPlanResponse with the selected battery ids and planned capacity.
+     * @throws jakarta.persistence.EntityNotFoundException if the range has no batteries.
+     */
+    DispatchPlanResponse planDispatch(DispatchPlanRequest request);
+
+    /**
+     * Find batteries whose name contains the query, ignoring case.
+     *
+     * @param query Text to look for; queries shorter than three characters match name prefixes only.
+     * @param limit Maximum number of batteries to return.
+     * @return Matching batteries, those whose name starts with the query first, then by name and id.
+     */
+    List<BatteryRow> searchBatteries(String query, int limit);
+
+    /**
+     * Retrieve the batteries whose postcode centroid lies within a radius of a postcode's centroid.
+     *
+     * @param postcode    4-digit postcode at the centre.
+     * @param radiusKm    Radius, in km.
+     * @param minCapacity Optional minimum capacity filter (nullable).
+     * @param maxCapacity Optional maximum capacity filter (nullable).
+     * @return BatteryStatsResponse containing sorted battery names, capacity statistics, and the number of
+     * matching batteries left out because their postcode has no known centroid.
+     * @throws jakarta.persistence.EntityNotFoundException if the postcode has no known centroid or no battery matches.
+     */
+    BatteryStatsResponse getBatteriesNear(String postcode, double radiusKm, Long minCapacity, Long maxCapacity);
+
+    /**
+     * Retrieve the batteries nearest to a postcode's centroid, measured between postcode centroids.
+     *
+     * @param postcode    4-digit postcode at the centre.
+     * @param count       Maximum number of batteries to return.
+     * @param minCapacity Optional minimum capacity filter (nullable).
+     * @param maxCapacity Optional maximum capacity filter (nullable).
+     * @return BatteryStatsResponse with the names nearest first, equally distant ones by name, their capacity statistics,
+     * and the number of matching batteries left out because their postcode has no known centroid.
+     * @throws jakarta.persistence.EntityNotFoundException if the postcode has no known centroid or no battery matches.
+     */
+    BatteryStatsResponse getNearestBatteries(String postcode, int count, Long minCapacity, Long maxCapacity);
+
+    /**
+     * Compute the battery count and capacity totals of a postcode and optional capacity range.
+     *
+     * @param startPostcode Starting postcode (inclusive).
+     * @param endPostcode   Ending postcode (inclusive).
+     * @param minCapacity   Optional minimum capacity filter (nullable).
+     * @param maxCapacity   Optional maximum capacity filter (nullable).
+     * @return CapacityAggregate with count, total and average capacity.
+     */
+    CapacityAggregate getCapacityInRange(String startPostcode, String endPostcode, Long minCapacity, Long maxCapacity);
+
+    /**
+     * Stream the alphabetically sorted names of batteries in a range without collecting them.
+     *
+     * @param startPostcode Starting postcode (inclusive).
+     * @param endPostcode   Ending postcode (inclusive).
+     * @param minCapacity   Optional minimum capacity filter (nullable).
+     * @param maxCapacity   Optional maximum capacity filter (nullable).
+     * @param consumer      Receives each name in order.
+     */
+    void streamBatteryNamesInRange(String startPostcode, String endPostcode, Long minCapacity, Long maxCapacity,
+                                   Consumer<String> consumer);
 }
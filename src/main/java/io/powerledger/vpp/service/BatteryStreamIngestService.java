@@ -0,0 +1,21 @@
+package io.powerledger.vpp.service;
+
+import io.powerledger.vpp.dto.StreamIngestSummary;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Service interface for streamed bulk battery registration.
+ */
+public interface BatteryStreamIngestService {
+
+    /**
+     * Reads newline-delimited JSON batteries, validating and saving them in fixed-size chunks.
+     *
+     * @param ndjson Stream with one Battery JSON object per line.
+     * @return Accepted and rejected counts with per-line errors.
+     * @throws IOException if the stream cannot be read.
+     */
+    StreamIngestSummary ingest(InputStream ndjson) throws IOException;
+}
@@ -0,0 +1,27 @@
+package io.powerledger.vpp.service;
+
+import io.powerledger.vpp.dto.BatteryRangeQuery;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/**
+ * Service interface for pushing range statistics to subscribers as batteries are registered.
+ */
+public interface BatterySubscriptionService {
+
+    /**
+     * Opens a subscription to a postcode and optional capacity range. The emitter first sends a
+     * {@code snapshot} event with the range's {@link io.powerledger.vpp.dto.BatteryStatsResponse},
+     * then a {@code delta} event with a {@link io.powerledger.vpp.dto.BatteryStatsDelta} whenever
+     * registrations have touched the range.
+     *
+     * @param range Postcode and optional capacity range.
+     * @return Server-sent event emitter for the subscription.
+     * @throws io.powerledger.vpp.exception.SubscriptionLimitException if too many subscriptions are open.
+     */
+    SseEmitter subscribe(BatteryRangeQuery range);
+
+    /**
+     * Number of open subscriptions.
+     */
+    int getSubscriberCount();
+}
@@ -0,0 +1,45 @@
+package io.powerledger.vpp.service;
+
+import io.powerledger.vpp.dto.AvailableCapacityResponse;
+import io.powerledger.vpp.dto.TelemetryIngestSummary;
+import io.powerledger.vpp.dto.TelemetryRangeResponse;
+import io.powerledger.vpp.dto.TelemetryReading;
+
+import java.util.List;
+
+/**
+ * Service interface for battery state-of-charge and power telemetry.
+ */
+public interface BatteryTelemetryService {
+
+    /**
+     * Records readings in memory; they are persisted later in batches.
+     *
+     * @param readings Validated readings, keyed by battery id.
+     * @return Accepted and rejected counts; readings for unregistered batteries are rejected.
+     */
+    TelemetryIngestSummary ingest(List<TelemetryReading> readings);
+
+    /**
+     * Summarizes the latest readings and the readings of the last {@code windowSeconds} in a postcode range.
+     * Only the readings still held in memory, the last {@code vpp.telemetry.window-size} per battery, are averaged.
+     *
+     * @param startPostcode Starting postcode (inclusive).
+     * @param endPostcode   Ending postcode (inclusive).
+     * @param windowSeconds Length of the averaging window ending now.
+     * @return TelemetryRangeResponse with latest and windowed averages.
+     * @throws jakarta.persistence.EntityNotFoundException if no battery in the range has reported.
+     */
+    TelemetryRangeResponse getTelemetryInRange(String startPostcode, String endPostcode, long windowSeconds);
+
+    /**
+     * Energy currently available in a postcode range, from each reporting battery's capacity and latest
+     * state of charge, read from pre-aggregated counters.
+     *
+     * @param startPostcode Starting postcode (inclusive).
+     * @param endPostcode   Ending postcode (inclusive).
+     * @return AvailableCapacityResponse with reporting batteries, their capacity and available energy.
+     * @throws jakarta.persistence.EntityNotFoundException if no battery in the range has reported.
+     */
+    AvailableCapacityResponse getAvailableCapacityInRange(String startPostcode, String endPostcode);
+}
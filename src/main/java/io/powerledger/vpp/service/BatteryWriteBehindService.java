@@ -0,0 +1,35 @@
+package io.powerledger.vpp.service;
+
+import io.powerledger.vpp.dto.IngestTicket;
+import io.powerledger.vpp.model.Battery;
+
+import java.util.List;
+
+/**
+ * Service interface for asynchronous battery registration through a write-behind buffer.
+ */
+public interface BatteryWriteBehindService {
+
+    /**
+     * Whether registrations can be buffered; when false, callers save synchronously.
+     */
+    boolean isEnabled();
+
+    /**
+     * Buffers batteries for a later batched write.
+     *
+     * @param batteries Validated batteries to register.
+     * @return Pending ticket that can be polled with {@link #getTicket}.
+     * @throws io.powerledger.vpp.exception.IngestBufferFullException if the buffer has no room.
+     */
+    IngestTicket submit(List<Battery> batteries);
+
+    /**
+     * Looks up a ticket returned by {@link #submit}.
+     *
+     * @param ticketId Ticket id.
+     * @return Current status of the ticket.
+     * @throws jakarta.persistence.EntityNotFoundException if the ticket is unknown or has expired.
+     */
+    IngestTicket getTicket(String ticketId);
+}
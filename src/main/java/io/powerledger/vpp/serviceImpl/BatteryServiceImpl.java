@@ -1,18 +1,60 @@
 package io.powerledger.vpp.serviceImpl;
 
 import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.powerledger.vpp.cache.BatteryStatsCache;
+import io.powerledger.vpp.dispatch.DispatchPlanner;
+import io.powerledger.vpp.dto.BatteryChange;
+import io.powerledger.vpp.dto.BatteryNameCursor;
+import io.powerledger.vpp.dto.BatteryRangeQuery;
+import io.powerledger.vpp.dto.BatteryRow;
 import io.powerledger.vpp.dto.BatteryStatsResponse;
+import io.powerledger.vpp.dto.BatterySyncSummary;
+import io.powerledger.vpp.dto.CapacityAggregate;
+import io.powerledger.vpp.dto.CapacityDistributionResponse;
+import io.powerledger.vpp.dto.DispatchPlanRequest;
+import io.powerledger.vpp.dto.DispatchPlanResponse;
+import io.powerledger.vpp.dto.PostcodeSpan;
+import io.powerledger.vpp.event.BatteriesRegisteredEvent;
+import io.powerledger.vpp.event.BatteriesUpdatedEvent;
+import io.powerledger.vpp.exception.InvalidFleetSyncException;
+import io.powerledger.vpp.geo.PostcodeCentroidIndex;
+import io.powerledger.vpp.index.BatteryNameIndex;
+import io.powerledger.vpp.index.BatteryRangeIndex;
+import io.powerledger.vpp.index.BatteryRangeIndex.CapacitySlice;
+import io.powerledger.vpp.index.CapacitySketchIndex;
+import io.powerledger.vpp.metrics.BatteryMetrics;
 import io.powerledger.vpp.model.Battery;
+import io.powerledger.vpp.model.PostcodeConverter;
 import io.powerledger.vpp.repository.BatteryRepository;
+import io.powerledger.vpp.repository.BatteryRepositoryCustom.UpsertResult;
 import io.powerledger.vpp.service.BatteryService;
 import jakarta.persistence.EntityNotFoundException;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.HistogramIterationValue;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import static io.powerledger.vpp.metrics.BatteryMetrics.*;
 
 /**
  * Implementation of the BatteryService interface.
@@ -25,24 +67,115 @@ public class BatteryServiceImpl implements BatteryService {
 
     private final BatteryRepository batteryRepository;
     private final MeterRegistry meterRegistry;
+    private final BatteryRangeIndex batteryRangeIndex;
+    private final BatteryStatsCache batteryStatsCache;
+    private final ApplicationEventPublisher eventPublisher;
+    private final CapacitySketchIndex capacitySketchIndex;
+    private final BatteryNameIndex batteryNameIndex;
+    private final PostcodeCentroidIndex postcodeCentroidIndex;
+
+    @Value("${vpp.ingest.jdbc-batch.threshold:0}")
+    private int bulkInsertThreshold;
+
+    @Value("${vpp.rollup.enabled:false}")
+    private boolean rollupsEnabled;
+
+    @Value("${vpp.geo.nearest.initial-radius-km:25}")
+    private double nearestInitialRadiusKm;
 
     /**
      * Saves a list of batteries to the repository.
-     * Also increments a custom metric counter for battery registration.
+     * Lists of at least {@code vpp.ingest.jdbc-batch.threshold} batteries are inserted with JDBC
+     * batching instead of one INSERT per entity; a threshold of 0 disables the bulk path. The
+     * per-postcode capacity rollups are updated in the same transaction, as part of the persist phase.
+     * Also increments a custom metric counter for battery registration, records the batch size and
+     * persist time, and publishes a {@link BatteriesRegisteredEvent} so in-process indexes pick up the
+     * new batteries.
      *
      * @param batteries List of batteries to save.
      * @return List of persisted battery entities.
      */
     @Override
+    @Transactional
     public List<Battery> saveBatteries(List<Battery> batteries) {
         log.info("Saving {} batteries", batteries.size());
         meterRegistry.counter("batteries.registered.count").increment(batteries.size());
-        return batteryRepository.saveAll(batteries);
+        BatteryMetrics.batchSizeSummary(meterRegistry, ENDPOINT_REGISTER).record(batteries.size());
+        List<Battery> savedBatteries = timePhase(meterRegistry, ENDPOINT_REGISTER, PHASE_PERSIST, () -> {
+            List<Battery> saved = bulkInsertThreshold > 0 && batteries.size() >= bulkInsertThreshold
+                    ? batteryRepository.insertInBatches(batteries)
+                    : batteryRepository.saveAll(batteries);
+            batteryRepository.addToRollups(saved);
+            return saved;
+        });
+        eventPublisher.publishEvent(new BatteriesRegisteredEvent(savedBatteries));
+        return savedBatteries;
+    }
+
+    /**
+     * Upserts a partner's fleet on the batteries' external ids, in chunks of
+     * {@code vpp.ingest.sync.batch-size} with two statements each, so a re-sync of a million batteries
+     * takes a bounded number of round trips and writes only the rows that changed. The rollups of the
+     * inserted batteries are incremented, and the postcodes an update moved a battery into or out of, or
+     * changed a capacity in, are recounted, all in the same transaction.
+     * Inserted batteries are published in a {@link BatteriesRegisteredEvent} and counted as registered;
+     * changed ones in a {@link BatteriesUpdatedEvent} with their previous state.
+     *
+     * @param batteries Batteries with distinct, non-blank external ids.
+     * @return Numbers of inserted, updated and unchanged batteries.
+     * @throws InvalidFleetSyncException if an external id is missing or repeated.
+     */
+    @Override
+    @Transactional
+    public BatterySyncSummary syncBatteries(List<Battery> batteries) {
+        Set<String> externalIds = new HashSet<>(batteries.size() * 2);
+        for (Battery battery : batteries) {
+            String externalId = battery.getExternalId();
+            if (externalId == null || externalId.isBlank()) {
+                throw new InvalidFleetSyncException("Battery " + battery.getName() + " has no external id");
+            }
+            if (!externalIds.add(externalId)) {
+                throw new InvalidFleetSyncException("External id " + externalId + " appears more than once");
+            }
+        }
+
+        log.info("Syncing {} batteries", batteries.size());
+        BatteryMetrics.batchSizeSummary(meterRegistry, ENDPOINT_SYNC).record(batteries.size());
+        UpsertResult result = timePhase(meterRegistry, ENDPOINT_SYNC, PHASE_PERSIST, () -> {
+            UpsertResult upserted = batteryRepository.upsertByExternalId(batteries);
+            batteryRepository.addToRollups(upserted.inserted());
+            batteryRepository.refreshRollups(upserted.updated().stream()
+                    .filter(BatteryServiceImpl::changesRollups)
+                    .flatMap(change -> Stream.of(change.previous().getPostcode(), change.current().getPostcode()))
+                    .distinct()
+                    .toList());
+            return upserted;
+        });
+
+        if (!result.inserted().isEmpty()) {
+            meterRegistry.counter("batteries.registered.count").increment(result.inserted().size());
+            eventPublisher.publishEvent(new BatteriesRegisteredEvent(result.inserted()));
+        }
+        if (!result.updated().isEmpty()) {
+            eventPublisher.publishEvent(new BatteriesUpdatedEvent(result.updated()));
+        }
+        log.info("Synced {} batteries: {} inserted, {} updated, {} unchanged",
+                batteries.size(), result.inserted().size(), result.updated().size(), result.unchanged());
+        return new BatterySyncSummary(result.inserted().size(), result.updated().size(), result.unchanged());
+    }
+
+    // Renames leave the rollups as they are
+    private static boolean changesRollups(BatteryChange change) {
+        return !change.previous().getPostcode().equals(change.current().getPostcode())
+                || !change.previous().getCapacity().equals(change.current().getCapacity());
     }
 
     /**
      * Retrieves batteries within a specified postcode range and optional capacity bounds.
-     * Also tracks the execution time using Micrometer.
+     * Results are served from the range cache when possible. Otherwise capacity filtering, the
+     * total and the count are computed by the in-memory index when it is loaded, or else by the
+     * database; only the matching names are fetched, so no Battery entities are loaded.
+     * Also tracks the execution time of the call and of each phase using Micrometer.
      *
      * @param startPostcode Starting postcode (inclusive).
      * @param endPostcode   Ending postcode (inclusive).
@@ -52,40 +185,624 @@ public class BatteryServiceImpl implements BatteryService {
      */
     @Override
     public BatteryStatsResponse getBatteriesInRange(String startPostcode, String endPostcode, Long minCapacity, Long maxCapacity) {
-        log.info("Fetching batteries between postcodes {} and {} with capacity between {} and {}",
+        log.debug("Fetching batteries between postcodes {} and {} with capacity between {} and {}",
                 startPostcode, endPostcode, minCapacity, maxCapacity);
 
-        long startTime = System.currentTimeMillis();
+        Timer.Sample sample = Timer.start(meterRegistry);
 
-        List<Battery> batteries = batteryRepository.findByPostcodeBetween(startPostcode, endPostcode);
+        BatteryStatsResponse response = batteryStatsCache.get(
+                BatteryStatsCache.Key.of(startPostcode, endPostcode, minCapacity, maxCapacity),
+                () -> findBatteriesInRange(startPostcode, endPostcode, minCapacity, maxCapacity));
 
-        // If no batteries found, throw EntityNotFoundException
-        if (batteries.isEmpty()) {
+        sample.stop(queryResponseTimer(meterRegistry, ENDPOINT_RANGE));
+        return response;
+    }
+
+    /**
+     * Retrieves one keyset page of battery names together with the totals for the whole range.
+     * Names always come from the database, ordered by name and id, so only one page is read and
+     * serialised per request however wide the range is.
+     *
+     * @param startPostcode Starting postcode (inclusive).
+     * @param endPostcode   Ending postcode (inclusive).
+     * @param minCapacity   Minimum battery capacity (nullable).
+     * @param maxCapacity   Maximum battery capacity (nullable).
+     * @param cursor        Cursor returned with the previous page (nullable for the first page).
+     * @param limit         Maximum number of names in the page.
+     * @return BatteryStatsResponse with the page of names, range totals and the next cursor, if any.
+     */
+    @Override
+    public BatteryStatsResponse getBatteriesInRange(String startPostcode, String endPostcode, Long minCapacity, Long maxCapacity,
+                                                    String cursor, int limit) {
+        log.debug("Fetching page of {} batteries between postcodes {} and {} with capacity between {} and {}",
+                limit, startPostcode, endPostcode, minCapacity, maxCapacity);
+
+        Timer.Sample sample = Timer.start(meterRegistry);
+
+        BatteryStatsResponse response = batteryStatsCache.get(
+                new BatteryStatsCache.Key(startPostcode, endPostcode, minCapacity, maxCapacity, cursor, limit),
+                () -> findBatteriesPageInRange(startPostcode, endPostcode, minCapacity, maxCapacity, cursor, limit));
+
+        sample.stop(queryResponseTimer(meterRegistry, ENDPOINT_RANGE_PAGE));
+        return response;
+    }
+
+    /**
+     * Retrieves the statistics of many ranges together. When the in-memory index can serve every
+     * range, each is answered from the index. Otherwise overlapping ranges are merged into disjoint
+     * postcode spans, the batteries of all spans are read in postcode order by a single query, and
+     * each range is then sliced out of that result by binary search and filtered by capacity.
+     * Unlike the single-range query, a range without batteries yields empty statistics rather than
+     * an error, so one empty band does not fail the whole batch.
+     *
+     * @param ranges Ranges to evaluate.
+     * @return One BatteryStatsResponse per range, in request order.
+     */
+    @Override
+    public List<BatteryStatsResponse> getBatteriesInRanges(List<BatteryRangeQuery> ranges) {
+        log.debug("Fetching batteries for {} ranges", ranges.size());
+
+        Timer.Sample sample = Timer.start(meterRegistry);
+
+        boolean useIndex = ranges.stream()
+                .allMatch(range -> batteryRangeIndex.canServe(range.getStartPostcode(), range.getEndPostcode()));
+        List<BatteryStatsResponse> responses = useIndex
+                ? ranges.stream().map(this::findBatteriesInRangeFromIndex).toList()
+                : findBatteriesInSpans(ranges.stream().map(BatteryServiceImpl::toSpan).toList());
+
+        sample.stop(queryResponseTimer(meterRegistry, ENDPOINT_RANGE_BATCH));
+        return responses;
+    }
+
+    /**
+     * Computes the capacity distribution of a range. When the capacity sketches are loaded, the
+     * per-postcode sketches of the range are merged, which reads no rows; otherwise the capacities
+     * of the range are streamed from a database cursor into one histogram of the same precision.
+     * Either way memory does not grow with the number of batteries.
+     *
+     * @param startPostcode Starting postcode (inclusive).
+     * @param endPostcode   Ending postcode (inclusive).
+     * @param percentiles   Percentiles to report, between 0 and 100.
+     * @param buckets       Number of equal-width histogram buckets.
+     * @return CapacityDistributionResponse with count, bounds, mean, percentiles and histogram.
+     */
+    @Override
+    public CapacityDistributionResponse getCapacityDistribution(String startPostcode, String endPostcode,
+                                                                List<Double> percentiles, int buckets) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+
+        Histogram histogram;
+        if (capacitySketchIndex.isLoaded()) {
+            histogram = timePhase(meterRegistry, ENDPOINT_DISTRIBUTION, PHASE_AGGREGATE,
+                    () -> capacitySketchIndex.mergeRange(startPostcode, endPostcode));
+        } else {
+            histogram = CapacitySketchIndex.newMergedHistogram();
+            phaseTimer(meterRegistry, ENDPOINT_DISTRIBUTION, PHASE_DB_FETCH).record(() ->
+                    batteryRepository.forEachCapacity(startPostcode, endPostcode,
+                            (id, postcode, capacity) -> histogram.recordValue(capacity)));
+        }
+        if (histogram.getTotalCount() == 0) {
             throw new EntityNotFoundException("No batteries found for the specified range.");
         }
 
-        long endTime = System.currentTimeMillis();
-        meterRegistry.timer("batteries.query.response.time")
-                .record(endTime - startTime, TimeUnit.MILLISECONDS);
+        CapacityDistributionResponse response = toDistribution(histogram, percentiles, buckets);
+        sample.stop(queryResponseTimer(meterRegistry, ENDPOINT_DISTRIBUTION));
+        return response;
+    }
+
+    /**
+     * Plans a dispatch with {@link DispatchPlanner}. The ids and capacities of the range are read
+     * in place from the in-memory index when it can serve the range; otherwise they are streamed
+     * from a database cursor into primitive arrays, so no entities are loaded either way.
+     *
+     * @param request Postcode range, target capacity and objective.
+     * @return DispatchPlanResponse with the selected battery ids and planned capacity.
+     */
+    @Override
+    public DispatchPlanResponse planDispatch(DispatchPlanRequest request) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+
+        String startPostcode = request.getStartPostcode();
+        String endPostcode = request.getEndPostcode();
+        CapacitySlice slice;
+        if (batteryRangeIndex.canServe(startPostcode, endPostcode)) {
+            slice = batteryRangeIndex.sliceInRange(startPostcode, endPostcode);
+        } else {
+            DispatchPlanner.SliceCollector collector = new DispatchPlanner.SliceCollector();
+            phaseTimer(meterRegistry, ENDPOINT_DISPATCH_PLAN, PHASE_DB_FETCH).record(() ->
+                    batteryRepository.forEachCapacity(startPostcode, endPostcode, collector));
+            slice = collector.toSlice();
+        }
+        if (slice.size() == 0) {
+            throw new EntityNotFoundException("No batteries found for the specified range.");
+        }
+
+        DispatchPlanResponse plan = timePhase(meterRegistry, ENDPOINT_DISPATCH_PLAN, PHASE_PLAN,
+                () -> DispatchPlanner.plan(slice, request.getTargetCapacity(), request.getObjective()));
+        recordRows(meterRegistry, ENDPOINT_DISPATCH_PLAN, slice.size(), plan.getBatteryCount());
+
+        sample.stop(queryResponseTimer(meterRegistry, ENDPOINT_DISPATCH_PLAN));
+        return plan;
+    }
+
+    /**
+     * Searches battery names with the in-memory name index when it is loaded, or otherwise with a
+     * LIKE query that returns the same matches in the same order.
+     *
+     * @param query Text to look for; queries shorter than three characters match name prefixes only.
+     * @param limit Maximum number of batteries to return.
+     * @return Matching batteries, those whose name starts with the query first, then by name and id.
+     */
+    @Override
+    public List<BatteryRow> searchBatteries(String query, int limit) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+
+        List<BatteryRow> matches;
+        if (batteryNameIndex.isLoaded()) {
+            matches = timePhase(meterRegistry, ENDPOINT_SEARCH, PHASE_FILTER, () -> batteryNameIndex.search(query, limit));
+        } else {
+            String key = BatteryNameIndex.normalize(query);
+            String escaped = key.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+            String pattern = key.length() < BatteryNameIndex.GRAM ? escaped + "%" : "%" + escaped + "%";
+            matches = timePhase(meterRegistry, ENDPOINT_SEARCH, PHASE_DB_FETCH,
+                    () -> batteryRepository.searchByName(pattern, escaped + "%", Limit.of(limit)));
+        }
+
+        sample.stop(queryResponseTimer(meterRegistry, ENDPOINT_SEARCH));
+        return matches;
+    }
+
+    /**
+     * Retrieves the batteries within a radius. The postcodes in the radius are found in the centroid
+     * grid and merged into runs of consecutive postcodes; their batteries are then read from the
+     * in-memory index when it is loaded, or else by one database query over those spans.
+     *
+     * @param postcode    4-digit postcode at the centre.
+     * @param radiusKm    Radius, in km.
+     * @param minCapacity Minimum battery capacity (nullable).
+     * @param maxCapacity Maximum battery capacity (nullable).
+     * @return BatteryStatsResponse containing sorted battery names and capacity statistics.
+     */
+    @Override
+    public BatteryStatsResponse getBatteriesNear(String postcode, double radiusKm, Long minCapacity, Long maxCapacity) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+
+        PostcodeCentroidIndex.Neighbours neighbours = locate(ENDPOINT_NEAR, postcode, radiusKm);
+        List<BatteryRow> rows = findRowsNear(ENDPOINT_NEAR, postcode, neighbours.postcodes(), minCapacity, maxCapacity);
+        if (rows.isEmpty()) {
+            throw new EntityNotFoundException("No batteries found within the specified radius.");
+        }
+
+        List<String> names = new ArrayList<>(rows.size());
+        long totalCapacity = 0;
+        for (BatteryRow row : rows) {
+            names.add(row.getName());
+            totalCapacity += row.getCapacity();
+        }
+        phaseTimer(meterRegistry, ENDPOINT_NEAR, PHASE_SORT).record(() -> names.sort(null));
+        recordRows(meterRegistry, ENDPOINT_NEAR, rows.size(), names.size());
+
+        long unlocated = countUnlocated(ENDPOINT_NEAR, postcode, minCapacity, maxCapacity);
+
+        CapacityAggregate aggregate = new CapacityAggregate((long) names.size(), totalCapacity);
+        sample.stop(queryResponseTimer(meterRegistry, ENDPOINT_NEAR));
+        return new BatteryStatsResponse(names, aggregate.getTotalCapacity(), aggregate.getAverageCapacity(), null, unlocated);
+    }
+
+    /**
+     * Retrieves the nearest batteries. Postcodes are visited nearest first within a radius of
+     * {@code vpp.geo.nearest.initial-radius-km}, which doubles whenever its postcodes run out, and their
+     * batteries are read in chunks of postcodes that double in size, so a query reads little more than
+     * the postcodes it needs. Only the farthest postcode needed is ordered by name, to keep its first few.
+     *
+     * @param postcode    4-digit postcode at the centre.
+     * @param count       Maximum number of batteries to return.
+     * @param minCapacity Minimum battery capacity (nullable).
+     * @param maxCapacity Maximum battery capacity (nullable).
+     * @return BatteryStatsResponse with the names nearest first and their capacity statistics.
+     */
+    @Override
+    public BatteryStatsResponse getNearestBatteries(String postcode, int count, Long minCapacity, Long maxCapacity) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+
+        double radiusKm = nearestInitialRadiusKm;
+        PostcodeCentroidIndex.Neighbours neighbours = locate(ENDPOINT_NEAREST, postcode, radiusKm);
+        List<BatteryRow> nearest = new ArrayList<>();
+        long rowsRead = 0;
+        int next = 0;
+        int chunk = 1;
+        while (nearest.size() < count) {
+            if (next == neighbours.size()) {
+                if (neighbours.size() == postcodeCentroidIndex.size()) {
+                    break;
+                }
+                // Postcodes within the smaller radius come first in the larger one, in the same order
+                radiusKm = Math.max(1, radiusKm * 2);
+                neighbours = locate(ENDPOINT_NEAREST, postcode, radiusKm);
+                continue;
+            }
+            int[] postcodes = Arrays.copyOfRange(neighbours.postcodes(), next, Math.min(neighbours.size(), next + chunk));
+            List<BatteryRow> rows = findRowsNear(ENDPOINT_NEAREST, postcode, postcodes, minCapacity, maxCapacity);
+            rowsRead += rows.size();
+            next += postcodes.length;
+            chunk *= 2;
+
+            int wanted = count - nearest.size();
+            timePhase(meterRegistry, ENDPOINT_NEAREST, PHASE_SORT, () -> nearest.addAll(nearestFirst(rows, postcodes, wanted)));
+        }
+        if (nearest.isEmpty()) {
+            throw new EntityNotFoundException("No batteries found near the specified postcode.");
+        }
+        recordRows(meterRegistry, ENDPOINT_NEAREST, rowsRead, nearest.size());
+        long unlocated = countUnlocated(ENDPOINT_NEAREST, postcode, minCapacity, maxCapacity);
+
+        CapacityAggregate aggregate = new CapacityAggregate((long) nearest.size(),
+                nearest.stream().mapToLong(BatteryRow::getCapacity).sum());
+        sample.stop(queryResponseTimer(meterRegistry, ENDPOINT_NEAREST));
+        return new BatteryStatsResponse(nearest.stream().map(BatteryRow::getName).toList(),
+                aggregate.getTotalCapacity(), aggregate.getAverageCapacity(), null, unlocated);
+    }
+
+    /**
+     * Computes the count and capacity totals of a range without reading any names.
+     *
+     * @param startPostcode Starting postcode (inclusive).
+     * @param endPostcode   Ending postcode (inclusive).
+     * @param minCapacity   Minimum battery capacity (nullable).
+     * @param maxCapacity   Maximum battery capacity (nullable).
+     * @return Count and total capacity of the matching batteries.
+     */
+    @Override
+    public CapacityAggregate getCapacityInRange(String startPostcode, String endPostcode, Long minCapacity, Long maxCapacity) {
+        int min = toCapacityBound(minCapacity, Integer.MIN_VALUE);
+        int max = toCapacityBound(maxCapacity, Integer.MAX_VALUE);
+        boolean useIndex = batteryRangeIndex.canServe(startPostcode, endPostcode);
+        return timePhase(meterRegistry, ENDPOINT_RANGE_NAMES, PHASE_AGGREGATE,
+                () -> aggregateCapacityInRange(useIndex, startPostcode, endPostcode, min, max));
+    }
+
+    /**
+     * Streams the sorted names of a range to the consumer from a database cursor, inside a
+     * read-only transaction, so names are never collected in memory. The stream phase includes the
+     * consumer's time, since names are written out while the cursor is read.
+     *
+     * @param startPostcode Starting postcode (inclusive).
+     * @param endPostcode   Ending postcode (inclusive).
+     * @param minCapacity   Minimum battery capacity (nullable).
+     * @param maxCapacity   Maximum battery capacity (nullable).
+     * @param consumer      Receives each name in order.
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public void streamBatteryNamesInRange(String startPostcode, String endPostcode, Long minCapacity, Long maxCapacity,
+                                          Consumer<String> consumer) {
+        int min = toCapacityBound(minCapacity, Integer.MIN_VALUE);
+        int max = toCapacityBound(maxCapacity, Integer.MAX_VALUE);
+        phaseTimer(meterRegistry, ENDPOINT_RANGE_NAMES, PHASE_STREAM).record(() -> {
+            try (Stream<String> names = batteryRepository.streamNamesInRange(startPostcode, endPostcode, min, max)) {
+                names.forEach(consumer);
+            }
+        });
+    }
+
+    private BatteryStatsResponse findBatteriesPageInRange(String startPostcode, String endPostcode, Long minCapacity,
+                                                          Long maxCapacity, String cursor, int limit) {
+        int min = toCapacityBound(minCapacity, Integer.MIN_VALUE);
+        int max = toCapacityBound(maxCapacity, Integer.MAX_VALUE);
+        BatteryNameCursor after = cursor == null ? BatteryNameCursor.FIRST : BatteryNameCursor.decode(cursor);
+
+        boolean useIndex = batteryRangeIndex.canServe(startPostcode, endPostcode);
+        CapacityAggregate aggregate = timePhase(meterRegistry, ENDPOINT_RANGE_PAGE, PHASE_AGGREGATE,
+                () -> aggregateCapacityInRange(useIndex, startPostcode, endPostcode, min, max));
+
+        // Read one extra row to learn whether another page follows
+        List<BatteryRow> rows = aggregate.getBatteryCount() == 0
+                ? List.of()
+                : timePhase(meterRegistry, ENDPOINT_RANGE_PAGE, PHASE_DB_FETCH,
+                        () -> batteryRepository.findPageInRange(startPostcode, endPostcode, min, max,
+                                after.name(), after.id(), Limit.of(limit + 1)));
+
+        List<BatteryRow> page = rows.subList(0, Math.min(limit, rows.size()));
+        String nextCursor = null;
+        if (rows.size() > limit) {
+            BatteryRow last = page.get(page.size() - 1);
+            nextCursor = new BatteryNameCursor(last.getName(), last.getId()).encode();
+        }
+        recordRows(meterRegistry, ENDPOINT_RANGE_PAGE, aggregate.getBatteryCount(), page.size());
+
+        return new BatteryStatsResponse(page.stream().map(BatteryRow::getName).toList(),
+                aggregate.getTotalCapacity(), aggregate.getAverageCapacity(), nextCursor);
+    }
+
+    private BatteryStatsResponse findBatteriesInRange(String startPostcode, String endPostcode, Long minCapacity, Long maxCapacity) {
+        int min = toCapacityBound(minCapacity, Integer.MIN_VALUE);
+        int max = toCapacityBound(maxCapacity, Integer.MAX_VALUE);
+        boolean useIndex = batteryRangeIndex.canServe(startPostcode, endPostcode);
+
+        CapacityAggregate aggregate = timePhase(meterRegistry, ENDPOINT_RANGE, PHASE_AGGREGATE,
+                () -> aggregateCapacityInRange(useIndex, startPostcode, endPostcode, min, max));
+
+        List<String> sortedNames;
+        if (aggregate.getBatteryCount() == 0) {
+            sortedNames = List.of();
+        } else if (useIndex) {
+            List<String> names = timePhase(meterRegistry, ENDPOINT_RANGE, PHASE_FILTER,
+                    () -> batteryRangeIndex.findNamesInRange(startPostcode, endPostcode, min, max));
+            phaseTimer(meterRegistry, ENDPOINT_RANGE, PHASE_SORT).record(() -> names.sort(null));
+            sortedNames = names;
+        } else {
+            // The database filters and sorts in the same statement
+            sortedNames = timePhase(meterRegistry, ENDPOINT_RANGE, PHASE_DB_FETCH,
+                    () -> batteryRepository.findNamesInRange(startPostcode, endPostcode, min, max));
+        }
+        recordRows(meterRegistry, ENDPOINT_RANGE, aggregate.getBatteryCount(), sortedNames.size());
+
+        return new BatteryStatsResponse(sortedNames, aggregate.getTotalCapacity(), aggregate.getAverageCapacity());
+    }
+
+    private BatteryStatsResponse findBatteriesInRangeFromIndex(BatteryRangeQuery range) {
+        int min = toCapacityBound(range.getMinCapacity(), Integer.MIN_VALUE);
+        int max = toCapacityBound(range.getMaxCapacity(), Integer.MAX_VALUE);
+        CapacityAggregate aggregate = timePhase(meterRegistry, ENDPOINT_RANGE_BATCH, PHASE_AGGREGATE,
+                () -> batteryRangeIndex.aggregateCapacityInRange(range.getStartPostcode(), range.getEndPostcode(), min, max));
+        List<String> names = timePhase(meterRegistry, ENDPOINT_RANGE_BATCH, PHASE_FILTER,
+                () -> batteryRangeIndex.findNamesInRange(range.getStartPostcode(), range.getEndPostcode(), min, max));
+        phaseTimer(meterRegistry, ENDPOINT_RANGE_BATCH, PHASE_SORT).record(() -> names.sort(null));
+        recordRows(meterRegistry, ENDPOINT_RANGE_BATCH, aggregate.getBatteryCount(), names.size());
+
+        return new BatteryStatsResponse(names, aggregate.getTotalCapacity(), aggregate.getAverageCapacity());
+    }
+
+    private List<BatteryStatsResponse> findBatteriesInSpans(List<PostcodeSpan> ranges) {
+        List<PostcodeSpan> merged = mergeOverlapping(ranges);
+        List<BatteryRow> rows = merged.isEmpty()
+                ? List.of()
+                : timePhase(meterRegistry, ENDPOINT_RANGE_BATCH, PHASE_DB_FETCH,
+                        () -> batteryRepository.findRowsInSpans(merged));
+
+        // Rows arrive in postcode order, so each range is a contiguous slice
+        int[] postcodes = new int[rows.size()];
+        for (int i = 0; i < postcodes.length; i++) {
+            postcodes[i] = PostcodeConverter.toColumn(rows.get(i).getPostcode());
+        }
+
+        List<BatteryStatsResponse> responses = new ArrayList<>(ranges.size());
+        for (PostcodeSpan range : ranges) {
+            List<String> names = new ArrayList<>();
+            long totalCapacity = timePhase(meterRegistry, ENDPOINT_RANGE_BATCH, PHASE_FILTER,
+                    () -> collectInSpan(range, rows, postcodes, names));
+            phaseTimer(meterRegistry, ENDPOINT_RANGE_BATCH, PHASE_SORT).record(() -> names.sort(null));
+            recordRows(meterRegistry, ENDPOINT_RANGE_BATCH, names.size(), names.size());
+
+            CapacityAggregate aggregate = new CapacityAggregate((long) names.size(), totalCapacity);
+            responses.add(new BatteryStatsResponse(names, aggregate.getTotalCapacity(), aggregate.getAverageCapacity()));
+        }
+        return responses;
+    }
+
+    private PostcodeCentroidIndex.Neighbours locate(String endpoint, String postcode, double radiusKm) {
+        if (!postcodeCentroidIndex.contains(postcode)) {
+            throw new EntityNotFoundException("No location is known for postcode " + postcode + ".");
+        }
+        return timePhase(meterRegistry, endpoint, PHASE_LOCATE, () -> postcodeCentroidIndex.withinRadius(postcode, radiusKm));
+    }
+
+    /**
+     * Reads the batteries of the given postcodes in postcode order, from the index when it is loaded
+     * or else from the database.
+     */
+    private List<BatteryRow> findRowsNear(String endpoint, String postcode, int[] postcodes,
+                                          Long minCapacity, Long maxCapacity) {
+        List<PostcodeSpan> spans = toSpans(postcodes,
+                toCapacityBound(minCapacity, Integer.MIN_VALUE), toCapacityBound(maxCapacity, Integer.MAX_VALUE));
+        if (spans.isEmpty()) {
+            return List.of();
+        }
+        return batteryRangeIndex.canServe(postcode, postcode)
+                ? timePhase(meterRegistry, endpoint, PHASE_FILTER, () -> batteryRangeIndex.findRowsInSpans(spans))
+                : timePhase(meterRegistry, endpoint, PHASE_DB_FETCH, () -> batteryRepository.findRowsInSpans(spans));
+    }
+
+    /**
+     * Counts the batteries matching the capacity bounds whose postcode has no centroid, which radius
+     * and nearest-battery queries cannot place, from the index when it is loaded or else from the database.
+     */
+    private long countUnlocated(String endpoint, String postcode, Long minCapacity, Long maxCapacity) {
+        List<PostcodeSpan> spans = toSpans(postcodeCentroidIndex.postcodesWithoutCentroid(),
+                toCapacityBound(minCapacity, Integer.MIN_VALUE), toCapacityBound(maxCapacity, Integer.MAX_VALUE));
+        if (spans.isEmpty()) {
+            return 0;
+        }
+        return batteryRangeIndex.canServe(postcode, postcode)
+                ? timePhase(meterRegistry, endpoint, PHASE_AGGREGATE, () -> batteryRangeIndex.countInSpans(spans))
+                : timePhase(meterRegistry, endpoint, PHASE_AGGREGATE, () -> batteryRepository.countInSpans(spans));
+    }
 
-        List<Battery> filteredBatteries = batteries.stream()
-                .filter(b -> (minCapacity == null || b.getCapacity() >= minCapacity) &&
-                        (maxCapacity == null || b.getCapacity() <= maxCapacity))
+    /**
+     * Returns up to {@code limit} of the rows in the order of their postcode in {@code postcodes}, then
+     * by name and id. Rows are grouped by postcode, and only the postcode that crosses the limit is sorted.
+     */
+    static List<BatteryRow> nearestFirst(List<BatteryRow> rows, int[] postcodes, int limit) {
+        Map<String, List<BatteryRow>> rowsByPostcode = new HashMap<>();
+        for (BatteryRow row : rows) {
+            rowsByPostcode.computeIfAbsent(row.getPostcode(), key -> new ArrayList<>()).add(row);
+        }
+        Comparator<BatteryRow> byName = Comparator.comparing(BatteryRow::getName).thenComparingLong(BatteryRow::getId);
+        List<BatteryRow> nearest = new ArrayList<>(Math.min(limit, rows.size()));
+        for (int postcode : postcodes) {
+            List<BatteryRow> group = rowsByPostcode.getOrDefault(PostcodeConverter.fromColumn(postcode), List.of());
+            int wanted = limit - nearest.size();
+            if (group.size() <= wanted) {
+                group.sort(byName);
+                nearest.addAll(group);
+            } else {
+                // Keep the first names of the crossing postcode in a bounded max-heap
+                PriorityQueue<BatteryRow> first = new PriorityQueue<>(wanted + 1, byName.reversed());
+                for (BatteryRow row : group) {
+                    first.add(row);
+                    if (first.size() > wanted) {
+                        first.poll();
+                    }
+                }
+                List<BatteryRow> kept = new ArrayList<>(first);
+                kept.sort(byName);
+                nearest.addAll(kept);
+                break;
+            }
+        }
+        return nearest;
+    }
+
+    /**
+     * Merges postcodes into spans of consecutive postcodes with the same capacity bounds.
+     */
+    static List<PostcodeSpan> toSpans(int[] postcodes, int minCapacity, int maxCapacity) {
+        int[] sorted = postcodes.clone();
+        Arrays.sort(sorted);
+        List<PostcodeSpan> spans = new ArrayList<>();
+        int i = 0;
+        while (i < sorted.length) {
+            int start = sorted[i];
+            while (i + 1 < sorted.length && sorted[i + 1] == sorted[i] + 1) {
+                i++;
+            }
+            spans.add(new PostcodeSpan(start, sorted[i], minCapacity, maxCapacity));
+            i++;
+        }
+        return spans;
+    }
+
+    /**
+     * Adds the names of the rows inside the span to the list and returns their total capacity.
+     */
+    private static long collectInSpan(PostcodeSpan span, List<BatteryRow> rows, int[] postcodes, List<String> names) {
+        int from = lowerBound(postcodes, span.startPostcode());
+        int to = lowerBound(postcodes, span.endPostcode() + 1);
+        long totalCapacity = 0;
+        for (int i = from; i < to; i++) {
+            BatteryRow row = rows.get(i);
+            int capacity = row.getCapacity();
+            if (capacity >= span.minCapacity() && capacity <= span.maxCapacity()) {
+                names.add(row.getName());
+                totalCapacity += capacity;
+            }
+        }
+        return totalCapacity;
+    }
+
+    /**
+     * Merges overlapping spans so no battery is read twice; merged spans keep the loosest capacity
+     * bounds of their members, and each range applies its own bounds afterwards. Empty spans are dropped.
+     */
+    static List<PostcodeSpan> mergeOverlapping(List<PostcodeSpan> spans) {
+        List<PostcodeSpan> sorted = spans.stream()
+                .filter(span -> span.startPostcode() <= span.endPostcode())
+                .sorted(Comparator.comparingInt(PostcodeSpan::startPostcode))
                 .toList();
+        List<PostcodeSpan> merged = new ArrayList<>();
+        PostcodeSpan current = null;
+        for (PostcodeSpan span : sorted) {
+            if (current != null && span.startPostcode() <= current.endPostcode()) {
+                current = new PostcodeSpan(current.startPostcode(),
+                        Math.max(current.endPostcode(), span.endPostcode()),
+                        Math.min(current.minCapacity(), span.minCapacity()),
+                        Math.max(current.maxCapacity(), span.maxCapacity()));
+            } else {
+                if (current != null) {
+                    merged.add(current);
+                }
+                current = span;
+            }
+        }
+        if (current != null) {
+            merged.add(current);
+        }
+        return merged;
+    }
+
+    /** Index of the first postcode >= the given one. */
+    private static int lowerBound(int[] postcodes, int postcode) {
+        int low = 0;
+        int high = postcodes.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (postcodes[mid] < postcode) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static PostcodeSpan toSpan(BatteryRangeQuery range) {
+        return new PostcodeSpan(PostcodeConverter.toColumn(range.getStartPostcode()),
+                PostcodeConverter.toColumn(range.getEndPostcode()),
+                toCapacityBound(range.getMinCapacity(), Integer.MIN_VALUE),
+                toCapacityBound(range.getMaxCapacity(), Integer.MAX_VALUE));
+    }
+
+    /**
+     * Computes count and total from the index, the per-postcode rollups when enabled and no capacity
+     * filter applies, or the battery rows. Filtered totals are not taken from the rollups: nearly every
+     * bucket holds capacities on both sides of a bound, so its rows would have to be read anyway.
+     * Throws EntityNotFoundException when no battery at all exists in the postcode range.
+     */
+    private CapacityAggregate aggregateCapacityInRange(boolean useIndex, String startPostcode, String endPostcode, int min, int max) {
+        CapacityAggregate aggregate;
+        if (useIndex) {
+            aggregate = batteryRangeIndex.aggregateCapacityInRange(startPostcode, endPostcode, min, max);
+        } else if (rollupsEnabled && min == Integer.MIN_VALUE && max == Integer.MAX_VALUE) {
+            aggregate = batteryRepository.aggregateCapacityFromRollups(startPostcode, endPostcode);
+        } else {
+            aggregate = batteryRepository.aggregateCapacityInRange(startPostcode, endPostcode, min, max);
+        }
+
+        // If no batteries found, throw EntityNotFoundException
+        if (aggregate.getBatteryCount() == 0 && !existsByPostcodeBetween(useIndex, startPostcode, endPostcode)) {
+            throw new EntityNotFoundException("No batteries found for the specified range.");
+        }
+        return aggregate;
+    }
 
-        List<String> sortedNames = filteredBatteries.stream()
-                .map(Battery::getName)
-                .sorted()
-                .collect(Collectors.toList());
+    private boolean existsByPostcodeBetween(boolean useIndex, String startPostcode, String endPostcode) {
+        return useIndex
+                ? batteryRangeIndex.existsByPostcodeBetween(startPostcode, endPostcode)
+                : batteryRepository.existsByPostcodeBetween(startPostcode, endPostcode);
+    }
+
+    private static CapacityDistributionResponse toDistribution(Histogram histogram, List<Double> percentiles, int buckets) {
+        Map<String, Long> values = new LinkedHashMap<>();
+        for (double percentile : percentiles) {
+            values.put("p" + BigDecimal.valueOf(percentile).stripTrailingZeros().toPlainString(),
+                    histogram.getValueAtPercentile(percentile));
+        }
 
-        long totalCapacity = filteredBatteries.stream()
-                .mapToLong(Battery::getCapacity)
-                .sum();
+        long min = histogram.getMinValue();
+        long max = histogram.getMaxValue();
+        long width = Math.max(1, (max - min + buckets) / buckets);
+        List<CapacityDistributionResponse.Bucket> histogramBuckets = new ArrayList<>(buckets);
+        for (long from = min; from <= max; from += width) {
+            histogramBuckets.add(new CapacityDistributionResponse.Bucket(from, Math.min(from + width - 1, max), 0));
+        }
+        // Adjacent bounds can fall in one sketch sub-bucket, so assign each recorded value to exactly one bucket
+        for (HistogramIterationValue value : histogram.recordedValues()) {
+            CapacityDistributionResponse.Bucket bucket = histogramBuckets.get((int) ((value.getValueIteratedTo() - min) / width));
+            bucket.setCount(bucket.getCount() + value.getCountAtValueIteratedTo());
+        }
 
-        double averageCapacity = filteredBatteries.isEmpty()
-                ? 0
-                : (double) totalCapacity / filteredBatteries.size();
+        return new CapacityDistributionResponse(histogram.getTotalCount(), min, max, histogram.getMean(),
+                values, histogramBuckets);
+    }
 
-        return new BatteryStatsResponse(sortedNames, totalCapacity, averageCapacity);
+    /**
+     * Converts an optional capacity filter into an inclusive bound on the integer capacity column.
+     * Values outside the int range are clamped, which keeps the filter semantics unchanged.
+     */
+    private static int toCapacityBound(Long capacity, int defaultBound) {
+        if (capacity == null) {
+            return defaultBound;
+        }
+        return (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, capacity));
     }
 }
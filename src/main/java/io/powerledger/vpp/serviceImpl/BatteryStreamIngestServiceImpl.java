@@ -0,0 +1,239 @@
+package io.powerledger.vpp.serviceImpl;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.powerledger.vpp.dto.StreamIngestSummary;
+import io.powerledger.vpp.metrics.BatteryMetrics;
+import io.powerledger.vpp.model.Battery;
+import io.powerledger.vpp.service.BatteryService;
+import io.powerledger.vpp.service.BatteryStreamIngestService;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Implementation of the BatteryStreamIngestService interface.
+ * Only one line and one chunk of batteries are held at a time, so heap use does not grow
+ * with the size of the upload. Parsing and validation of each line is timed as the parse phase;
+ * chunks are persisted, and timed, by {@link BatteryService#saveBatteries}.
+ */
+@Service
+@Slf4j
+public class BatteryStreamIngestServiceImpl implements BatteryStreamIngestService {
+
+    private final BatteryService batteryService;
+    private final ObjectReader batteryReader;
+    private final Validator validator;
+    private final Timer parseTimer;
+    private final int chunkSize;
+    private final int maxReportedErrors;
+    private final int maxLineLength;
+
+    public BatteryStreamIngestServiceImpl(BatteryService batteryService,
+                                          ObjectMapper objectMapper,
+                                          Validator validator,
+                                          MeterRegistry meterRegistry,
+                                          @Value("${vpp.ingest.stream.chunk-size:1000}") int chunkSize,
+                                          @Value("${vpp.ingest.stream.max-reported-errors:100}") int maxReportedErrors,
+                                          @Value("${vpp.ingest.stream.max-line-length:8192}") int maxLineLength) {
+        this.batteryService = batteryService;
+        this.batteryReader = objectMapper.readerFor(Battery.class);
+        this.validator = validator;
+        this.parseTimer = BatteryMetrics.phaseTimer(meterRegistry,
+                BatteryMetrics.ENDPOINT_REGISTER_STREAM, BatteryMetrics.PHASE_PARSE);
+        this.chunkSize = chunkSize;
+        this.maxReportedErrors = maxReportedErrors;
+        this.maxLineLength = maxLineLength;
+    }
+
+    /**
+     * Parses each line with Jackson, validates it, and saves every full chunk in its own transaction.
+     * Malformed or invalid lines, and lines longer than {@code vpp.ingest.stream.max-line-length}
+     * characters, are rejected individually; a chunk that fails to save rejects all of its lines.
+     *
+     * @param ndjson Stream with one Battery JSON object per line.
+     * @return Accepted and rejected counts with per-line errors.
+     * @throws IOException if the stream cannot be read.
+     */
+    @Override
+    public StreamIngestSummary ingest(InputStream ndjson) throws IOException {
+        StreamIngestSummary summary = new StreamIngestSummary();
+        List<Battery> chunk = new ArrayList<>(chunkSize);
+        long chunkFirstLine = 0;
+        long lineNumber = 0;
+
+        try (BoundedLineReader reader = new BoundedLineReader(
+                new InputStreamReader(ndjson, StandardCharsets.UTF_8), maxLineLength)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (reader.lastLineTooLong()) {
+                    reject(summary, lineNumber, "Line is longer than " + maxLineLength + " characters");
+                    continue;
+                }
+                if (line.isBlank()) {
+                    continue;
+                }
+
+                Timer.Sample sample = Timer.start();
+                Battery battery = parse(line, lineNumber, summary);
+                sample.stop(parseTimer);
+                if (battery == null) {
+                    continue;
+                }
+                if (chunk.isEmpty()) {
+                    chunkFirstLine = lineNumber;
+                }
+                chunk.add(battery);
+
+                if (chunk.size() == chunkSize) {
+                    saveChunk(chunk, chunkFirstLine, summary);
+                    // The saved list is handed to event listeners, so start a new one rather than clearing it
+                    chunk = new ArrayList<>(chunkSize);
+                }
+            }
+        }
+        if (!chunk.isEmpty()) {
+            saveChunk(chunk, chunkFirstLine, summary);
+        }
+
+        log.info("Streamed registration finished: {} accepted, {} rejected", summary.getAccepted(), summary.getRejected());
+        return summary;
+    }
+
+    private Battery parse(String line, long lineNumber, StreamIngestSummary summary) {
+        Battery battery;
+        try {
+            battery = batteryReader.readValue(line);
+        } catch (JsonProcessingException e) {
+            reject(summary, lineNumber, "Malformed JSON: " + e.getOriginalMessage());
+            return null;
+        }
+
+        Set<ConstraintViolation<Battery>> violations = validator.validate(battery);
+        if (!violations.isEmpty()) {
+            reject(summary, lineNumber, violations.stream()
+                    .map(violation -> violation.getPropertyPath() + ": " + violation.getMessage())
+                    .sorted()
+                    .collect(Collectors.joining(", ")));
+            return null;
+        }
+
+        // Streamed batteries are always new registrations
+        battery.setId(null);
+        return battery;
+    }
+
+    private void saveChunk(List<Battery> chunk, long firstLine, StreamIngestSummary summary) {
+        try {
+            batteryService.saveBatteries(chunk);
+            summary.setAccepted(summary.getAccepted() + chunk.size());
+        } catch (RuntimeException e) {
+            log.error("Failed to save streamed chunk starting at line {}", firstLine, e);
+            summary.setRejected(summary.getRejected() + chunk.size());
+            // The cause may carry SQL and constraint text, so it is only logged
+            addError(summary, firstLine, "Chunk of " + chunk.size() + " batteries starting at this line failed to save");
+        }
+    }
+
+    private void reject(StreamIngestSummary summary, long lineNumber, String message) {
+        summary.setRejected(summary.getRejected() + 1);
+        addError(summary, lineNumber, message);
+    }
+
+    private void addError(StreamIngestSummary summary, long lineNumber, String message) {
+        if (summary.getErrors().size() < maxReportedErrors) {
+            summary.getErrors().add(new StreamIngestSummary.LineError(lineNumber, message));
+        } else {
+            summary.setErrorsTruncated(true);
+        }
+    }
+
+    /**
+     * Splits a character stream into lines like {@link java.io.BufferedReader#readLine()}, but holds at
+     * most maxLength characters of a line; the rest of a longer line is read and discarded, so a body
+     * without line breaks cannot exhaust the heap.
+     */
+    static final class BoundedLineReader implements AutoCloseable {
+
+        private final Reader reader;
+        private final int maxLength;
+        private final char[] buffer = new char[8192];
+        private final StringBuilder line = new StringBuilder();
+        private int position;
+        private int limit;
+        private boolean tooLong;
+
+        BoundedLineReader(Reader reader, int maxLength) {
+            this.reader = reader;
+            this.maxLength = maxLength;
+        }
+
+        /**
+         * @return The next line without its terminator, truncated if {@link #lastLineTooLong()}, or null
+         * at the end of the stream.
+         * @throws IOException if the stream cannot be read.
+         */
+        String readLine() throws IOException {
+            line.setLength(0);
+            tooLong = false;
+            boolean read = false;
+            while (true) {
+                if (position == limit) {
+                    int count = reader.read(buffer, 0, buffer.length);
+                    if (count < 0) {
+                        return read ? finish() : null;
+                    }
+                    position = 0;
+                    limit = count;
+                }
+                read = true;
+                int start = position;
+                while (position < limit && buffer[position] != '\n') {
+                    position++;
+                }
+                // One character beyond the limit is kept, in case it is the \r of a \r\n terminator
+                int kept = Math.min(position - start, maxLength + 1 - line.length());
+                line.append(buffer, start, kept);
+                tooLong |= kept < position - start;
+                if (position < limit) {
+                    position++;
+                    return finish();
+                }
+            }
+        }
+
+        boolean lastLineTooLong() {
+            return tooLong;
+        }
+
+        private String finish() {
+            int length = line.length();
+            if (length > 0 && line.charAt(length - 1) == '\r') {
+                line.setLength(length - 1);
+            }
+            tooLong |= line.length() > maxLength;
+            return line.toString();
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+    }
+}
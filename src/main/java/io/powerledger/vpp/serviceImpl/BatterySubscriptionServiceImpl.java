@@ -0,0 +1,515 @@
+package io.powerledger.vpp.serviceImpl;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.powerledger.vpp.dto.BatteryRangeQuery;
+import io.powerledger.vpp.dto.BatteryStatsDelta;
+import io.powerledger.vpp.dto.BatteryStatsResponse;
+import io.powerledger.vpp.event.BatteriesRegisteredEvent;
+import io.powerledger.vpp.event.BatteriesUpdatedEvent;
+import io.powerledger.vpp.exception.SubscriptionLimitException;
+import io.powerledger.vpp.model.Battery;
+import io.powerledger.vpp.service.BatteryService;
+import io.powerledger.vpp.service.BatterySubscriptionService;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Implementation of the BatterySubscriptionService interface.
+ * <p>
+ * Subscriptions are server-sent event streams on asynchronous servlet requests, so an idle
+ * subscriber holds a connection and a small object but no thread. Committed registrations are
+ * matched against every subscription and accumulated per subscription; every
+ * {@code vpp.subscriptions.coalesce-interval} the subscriptions with changes get one {@code delta}
+ * event each, sent on a virtual thread so a slow client delays only its own events. Registrations
+ * never wait for a client.
+ * <p>
+ * A snapshot can only be combined with deltas whose registrations it did not already include. A
+ * registration is applied as a delta only if it started committing after the subscription's
+ * snapshot was read; one that may overlap the read, or that accumulates more than
+ * {@value #MAX_PENDING_NAMES} names for a client that is not keeping up, makes the next event a fresh
+ * {@code snapshot} instead. So does a fleet sync that changes batteries in or out of the range, since
+ * deltas only add batteries. Idle subscriptions get a comment every {@code vpp.subscriptions.heartbeat-interval}
+ * so proxies keep them open and closed clients are noticed.
+ * <p>
+ * A fleet sync can make thousands of subscriptions due for a snapshot at once. Each flush reads every distinct
+ * range once and sends the result to all of its subscribers, and at most
+ * {@code vpp.subscriptions.max-concurrent-snapshots} snapshot reads run at a time, so they do not exhaust the
+ * connection pool.
+ * <p>
+ * Open subscriptions are published as {@code batteries.subscriptions.active} and sent events as
+ * {@code batteries.subscriptions.events}, tagged {@code type}. At most {@code vpp.subscriptions.max-subscribers}
+ * are open at once, each for at most {@code vpp.subscriptions.timeout}, after which clients reconnect.
+ */
+@Service
+@Slf4j
+public class BatterySubscriptionServiceImpl implements BatterySubscriptionService {
+
+    static final String EVENT_SNAPSHOT = "snapshot";
+    static final String EVENT_DELTA = "delta";
+    static final String EVENT_HEARTBEAT = "heartbeat";
+
+    // Added names held for one subscription before it is resynchronised with a snapshot instead
+    static final int MAX_PENDING_NAMES = 10_000;
+
+    // Set on the registering thread just before its transaction commits, so commits are known to follow it
+    private static final ThreadLocal<Long> COMMIT_STARTED_NANOS = new ThreadLocal<>();
+
+    private final BatteryService batteryService;
+    private final int maxSubscribers;
+    private final long timeoutMillis;
+    private final Executor sender;
+    private final Semaphore snapshotReads;
+
+    private final Set<Subscription> subscriptions = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger open = new AtomicInteger();
+    // Subscriptions with an event to send; each is queued at most once until its event has been sent
+    private final Queue<Subscription> due = new ConcurrentLinkedQueue<>();
+    private final Counter snapshots;
+    private final Counter deltas;
+    private final Counter heartbeats;
+
+    @Autowired
+    public BatterySubscriptionServiceImpl(BatteryService batteryService,
+                                          MeterRegistry meterRegistry,
+                                          @Value("${vpp.subscriptions.max-subscribers:10000}") int maxSubscribers,
+                                          @Value("${vpp.subscriptions.timeout:PT30M}") Duration timeout,
+                                          @Value("${vpp.subscriptions.max-concurrent-snapshots:8}") int maxConcurrentSnapshots) {
+        this(batteryService, meterRegistry, maxSubscribers, timeout, maxConcurrentSnapshots,
+                Executors.newVirtualThreadPerTaskExecutor());
+    }
+
+    BatterySubscriptionServiceImpl(BatteryService batteryService, MeterRegistry meterRegistry, int maxSubscribers,
+                                   Duration timeout, int maxConcurrentSnapshots, Executor sender) {
+        this.batteryService = batteryService;
+        this.maxSubscribers = maxSubscribers;
+        this.timeoutMillis = timeout.toMillis();
+        this.sender = sender;
+        this.snapshotReads = new Semaphore(maxConcurrentSnapshots);
+        this.snapshots = meterRegistry.counter("batteries.subscriptions.events", "type", EVENT_SNAPSHOT);
+        this.deltas = meterRegistry.counter("batteries.subscriptions.events", "type", EVENT_DELTA);
+        this.heartbeats = meterRegistry.counter("batteries.subscriptions.events", "type", EVENT_HEARTBEAT);
+        meterRegistry.gauge("batteries.subscriptions.active", open);
+    }
+
+    @Override
+    public SseEmitter subscribe(BatteryRangeQuery range) {
+        SseEmitter emitter = new SseEmitter(timeoutMillis);
+        subscribe(range, emitter);
+        return emitter;
+    }
+
+    /**
+     * Opens a subscription on the given emitter and sends its first snapshot on the calling thread.
+     */
+    void subscribe(BatteryRangeQuery range, SseEmitter emitter) {
+        if (open.incrementAndGet() > maxSubscribers) {
+            open.decrementAndGet();
+            throw new SubscriptionLimitException("Too many open subscriptions, retry later");
+        }
+        Subscription subscription = new Subscription(range, emitter);
+        subscriptions.add(subscription);
+        emitter.onCompletion(() -> close(subscription));
+        emitter.onTimeout(emitter::complete);
+        emitter.onError(error -> close(subscription));
+
+        // Registered before the snapshot is read, so registrations during the read are noticed
+        try {
+            deliver(subscription);
+        } catch (IOException e) {
+            close(subscription);
+            throw new UncheckedIOException(e);
+        } catch (RuntimeException e) {
+            close(subscription);
+            throw e;
+        }
+        log.debug("Opened subscription to postcodes {} to {}; {} open", range.getStartPostcode(), range.getEndPostcode(), open.get());
+    }
+
+    @Override
+    public int getSubscriberCount() {
+        return open.get();
+    }
+
+    /**
+     * Records when the registering transaction starts to commit. Runs before
+     * {@link #onBatteriesRegistered} when there is no transaction.
+     */
+    @TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT, fallbackExecution = true)
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void beforeBatteriesCommitted(BatteriesRegisteredEvent event) {
+        COMMIT_STARTED_NANOS.set(System.nanoTime());
+    }
+
+    /**
+     * Adds committed batteries to the pending delta of every subscription whose range they fall in,
+     * and queues those subscriptions for the next flush.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    @Order(Ordered.LOWEST_PRECEDENCE)
+    public void onBatteriesRegistered(BatteriesRegisteredEvent event) {
+        // Registering threads are pooled, so the value must not outlive its transaction
+        Long commitStarted = COMMIT_STARTED_NANOS.get();
+        COMMIT_STARTED_NANOS.remove();
+        if (subscriptions.isEmpty() || event.batteries().isEmpty()) {
+            return;
+        }
+        long committedAfter = commitStarted != null ? commitStarted : Long.MIN_VALUE;
+
+        Battery[] batteries = event.batteries().toArray(Battery[]::new);
+        Arrays.sort(batteries, Comparator.comparing(Battery::getPostcode));
+        String[] postcodes = new String[batteries.length];
+        for (int i = 0; i < batteries.length; i++) {
+            postcodes[i] = batteries[i].getPostcode();
+        }
+
+        int matched = 0;
+        for (Subscription subscription : subscriptions) {
+            BatteryRangeQuery range = subscription.range;
+            int index = Arrays.binarySearch(postcodes, range.getStartPostcode());
+            // binarySearch finds any equal postcode; step back to the first
+            int from = index >= 0 ? index : -index - 1;
+            while (from > 0 && postcodes[from - 1].equals(range.getStartPostcode())) {
+                from--;
+            }
+
+            List<String> names = null;
+            long capacity = 0;
+            for (int i = from; i < batteries.length && postcodes[i].compareTo(range.getEndPostcode()) <= 0; i++) {
+                Battery battery = batteries[i];
+                if (subscription.accepts(battery.getCapacity())) {
+                    if (names == null) {
+                        names = new ArrayList<>();
+                    }
+                    names.add(battery.getName());
+                    capacity += battery.getCapacity();
+                }
+            }
+            if (names != null) {
+                subscription.add(names, capacity, committedAfter, due);
+                matched++;
+            }
+        }
+        log.debug("Registration of {} batteries touched {} of {} subscriptions", batteries.length, matched, subscriptions.size());
+    }
+
+    /**
+     * Queues a fresh snapshot for every subscription whose postcode range holds the previous or current
+     * postcode of a battery changed by a fleet sync, once the sync commits.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    @Order(Ordered.LOWEST_PRECEDENCE)
+    public void onBatteriesUpdated(BatteriesUpdatedEvent event) {
+        if (subscriptions.isEmpty() || event.changes().isEmpty()) {
+            return;
+        }
+        String[] postcodes = event.changes().stream()
+                .flatMap(change -> Stream.of(change.previous().getPostcode(), change.current().getPostcode()))
+                .distinct()
+                .sorted()
+                .toArray(String[]::new);
+
+        int matched = 0;
+        for (Subscription subscription : subscriptions) {
+            BatteryRangeQuery range = subscription.range;
+            int index = Arrays.binarySearch(postcodes, range.getStartPostcode());
+            int from = index >= 0 ? index : -index - 1;
+            if (from < postcodes.length && postcodes[from].compareTo(range.getEndPostcode()) <= 0) {
+                subscription.resync(due);
+                matched++;
+            }
+        }
+        log.debug("Sync of {} batteries touched {} of {} subscriptions", event.changes().size(), matched, subscriptions.size());
+    }
+
+    /**
+     * Sends the pending event of every queued subscription, each on its own sender thread. Subscriptions
+     * due for a snapshot are grouped by range, and each range is read once for all of them.
+     */
+    @Scheduled(fixedDelayString = "${vpp.subscriptions.coalesce-interval:PT0.5S}")
+    public void flush() {
+        Map<BatteryRangeQuery, List<Subscription>> snapshotsByRange = new HashMap<>();
+        // Subscriptions requeued while this runs wait for the next flush
+        for (int queued = due.size(); queued > 0; queued--) {
+            Subscription subscription = due.poll();
+            if (subscription == null) {
+                break;
+            }
+            if (subscription.startSnapshot()) {
+                snapshotsByRange.computeIfAbsent(subscription.range, range -> new ArrayList<>()).add(subscription);
+            } else if (!send(() -> deliverOrClose(subscription))) {
+                return;
+            }
+        }
+        for (Map.Entry<BatteryRangeQuery, List<Subscription>> entry : snapshotsByRange.entrySet()) {
+            if (!send(() -> deliverSnapshots(entry.getKey(), entry.getValue()))) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Queues a heartbeat comment for every subscription without a pending event.
+     */
+    @Scheduled(fixedDelayString = "${vpp.subscriptions.heartbeat-interval:PT30S}",
+            initialDelayString = "${vpp.subscriptions.heartbeat-interval:PT30S}")
+    public void heartbeat() {
+        for (Subscription subscription : subscriptions) {
+            subscription.markDue(due);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        subscriptions.forEach(subscription -> subscription.emitter.complete());
+        if (sender instanceof ExecutorService executor) {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Runs a task on a sender thread.
+     *
+     * @return false if the sender has shut down.
+     */
+    private boolean send(Runnable task) {
+        try {
+            sender.execute(task);
+            return true;
+        } catch (RejectedExecutionException e) {
+            log.debug("Not sending subscription events during shutdown");
+            return false;
+        }
+    }
+
+    private void deliverOrClose(Subscription subscription) {
+        try {
+            deliver(subscription);
+        } catch (IOException | RuntimeException e) {
+            closeWithError(subscription, e);
+        }
+    }
+
+    /**
+     * Reads the range once and sends the snapshot to each subscription, each on its own sender thread so
+     * a slow client delays only its own event.
+     */
+    private void deliverSnapshots(BatteryRangeQuery range, List<Subscription> subscriptions) {
+        Snapshot snapshot;
+        try {
+            snapshot = readSnapshot(range);
+        } catch (RuntimeException e) {
+            subscriptions.forEach(subscription -> closeWithError(subscription, e));
+            return;
+        }
+        for (Subscription subscription : subscriptions) {
+            boolean sent = send(() -> {
+                try {
+                    sendSnapshot(subscription, snapshot);
+                    finishDelivery(subscription);
+                } catch (IOException | RuntimeException e) {
+                    closeWithError(subscription, e);
+                }
+            });
+            if (!sent) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Sends one event: a snapshot if the subscription needs one, otherwise its pending delta, or
+     * else a heartbeat. Requeues the subscription if more became pending meanwhile.
+     */
+    private void deliver(Subscription subscription) throws IOException {
+        boolean snapshot;
+        BatteryStatsDelta delta = null;
+        synchronized (subscription) {
+            snapshot = subscription.startSnapshot();
+            if (!snapshot && !subscription.addedNames.isEmpty()) {
+                delta = subscription.takeDelta();
+            }
+        }
+
+        if (snapshot) {
+            sendSnapshot(subscription, readSnapshot(subscription.range));
+        } else if (delta != null) {
+            subscription.emitter.send(SseEmitter.event().name(EVENT_DELTA).data(delta));
+            deltas.increment();
+        } else {
+            subscription.emitter.send(SseEmitter.event().comment(EVENT_HEARTBEAT));
+            heartbeats.increment();
+        }
+        finishDelivery(subscription);
+    }
+
+    /**
+     * Reads the statistics of a range, waiting while {@code vpp.subscriptions.max-concurrent-snapshots}
+     * other reads are running.
+     */
+    private Snapshot readSnapshot(BatteryRangeQuery range) {
+        snapshotReads.acquireUninterruptibly();
+        try {
+            // The batch query returns empty statistics for an empty range, and bypasses the range cache
+            BatteryStatsResponse response = batteryService.getBatteriesInRanges(List.of(range)).get(0);
+            return new Snapshot(response, System.nanoTime());
+        } finally {
+            snapshotReads.release();
+        }
+    }
+
+    private void sendSnapshot(Subscription subscription, Snapshot snapshot) throws IOException {
+        synchronized (subscription) {
+            subscription.batteryCount = snapshot.response().getBatteryNames().size();
+            subscription.totalCapacity = snapshot.response().getTotalCapacity();
+            subscription.snapshotReadNanos = snapshot.readNanos();
+        }
+        subscription.emitter.send(SseEmitter.event().name(EVENT_SNAPSHOT).data(snapshot.response()));
+        snapshots.increment();
+    }
+
+    private void finishDelivery(Subscription subscription) {
+        synchronized (subscription) {
+            subscription.due = false;
+            if (subscription.resync || !subscription.addedNames.isEmpty()) {
+                subscription.markDue(due);
+            }
+        }
+    }
+
+    private void closeWithError(Subscription subscription, Exception e) {
+        log.debug("Closing subscription to postcodes {} to {}: {}",
+                subscription.range.getStartPostcode(), subscription.range.getEndPostcode(), e.toString());
+        close(subscription);
+        subscription.emitter.completeWithError(e);
+    }
+
+    private void close(Subscription subscription) {
+        if (subscriptions.remove(subscription)) {
+            open.decrementAndGet();
+        }
+    }
+
+    /**
+     * Statistics of a range, and when they had been read.
+     */
+    private record Snapshot(BatteryStatsResponse response, long readNanos) {
+    }
+
+    /**
+     * One open subscription. The statistics are those last sent to the client plus the batteries
+     * added since; all mutable state is guarded by the subscription's monitor.
+     */
+    private static final class Subscription {
+
+        final BatteryRangeQuery range;
+        final SseEmitter emitter;
+
+        long batteryCount;
+        long totalCapacity;
+        final List<String> addedNames = new ArrayList<>();
+        long addedCapacity;
+        // Whether the next event must be a snapshot; true until the first one is sent
+        boolean resync = true;
+        // When the last snapshot had been read, or Long.MAX_VALUE while one is being read
+        long snapshotReadNanos = Long.MAX_VALUE;
+        // Whether the subscription is queued or its event is being sent; the first snapshot is sent by the subscriber
+        boolean due = true;
+
+        Subscription(BatteryRangeQuery range, SseEmitter emitter) {
+            this.range = range;
+            this.emitter = emitter;
+        }
+
+        boolean accepts(long capacity) {
+            return (range.getMinCapacity() == null || capacity >= range.getMinCapacity())
+                    && (range.getMaxCapacity() == null || capacity <= range.getMaxCapacity());
+        }
+
+        synchronized void add(List<String> names, long capacity, long committedAfter, Queue<Subscription> due) {
+            if (!resync) {
+                if (committedAfter < snapshotReadNanos || addedNames.size() + names.size() > MAX_PENDING_NAMES) {
+                    // The snapshot may already include these batteries, or the client is not keeping up
+                    resync = true;
+                    clearAdded();
+                } else {
+                    addedNames.addAll(names);
+                    addedCapacity += capacity;
+                }
+            }
+            markDue(due);
+        }
+
+        /**
+         * Claims the pending snapshot, if there is one. Registrations committing from now until the
+         * snapshot has been read may already be in it, so they resynchronise the subscription again.
+         */
+        synchronized boolean startSnapshot() {
+            if (!resync) {
+                return false;
+            }
+            resync = false;
+            snapshotReadNanos = Long.MAX_VALUE;
+            clearAdded();
+            return true;
+        }
+
+        synchronized void resync(Queue<Subscription> due) {
+            resync = true;
+            clearAdded();
+            markDue(due);
+        }
+
+        synchronized void markDue(Queue<Subscription> queue) {
+            if (!due) {
+                due = true;
+                queue.add(this);
+            }
+        }
+
+        BatteryStatsDelta takeDelta() {
+            batteryCount += addedNames.size();
+            totalCapacity += addedCapacity;
+            List<String> names = new ArrayList<>(addedNames);
+            names.sort(null);
+            clearAdded();
+            // Never empty, so the range now has at least one battery
+            return new BatteryStatsDelta(names, batteryCount, totalCapacity, (double) totalCapacity / batteryCount);
+        }
+
+        void clearAdded() {
+            addedNames.clear();
+            addedCapacity = 0;
+        }
+    }
+}
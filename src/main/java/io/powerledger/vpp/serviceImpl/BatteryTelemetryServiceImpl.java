@@ -0,0 +1,118 @@
+package io.powerledger.vpp.serviceImpl;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.powerledger.vpp.dto.AvailableCapacityResponse;
+import io.powerledger.vpp.dto.TelemetryIngestSummary;
+import io.powerledger.vpp.dto.TelemetryRangeResponse;
+import io.powerledger.vpp.dto.TelemetryReading;
+import io.powerledger.vpp.service.BatteryTelemetryService;
+import io.powerledger.vpp.telemetry.AvailableEnergyTotals;
+import io.powerledger.vpp.telemetry.TelemetryStore;
+import jakarta.persistence.EntityNotFoundException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.List;
+
+import static io.powerledger.vpp.metrics.BatteryMetrics.*;
+
+/**
+ * Implementation of the BatteryTelemetryService interface.
+ * Readings never pass through JPA: they are appended to the {@link TelemetryStore} ring buffers and
+ * persisted by {@link io.powerledger.vpp.telemetry.TelemetryFlusher}, and range queries are answered
+ * from memory; available energy comes from the {@link AvailableEnergyTotals} counters. Accepted and
+ * rejected readings are counted in {@code telemetry.readings.accepted} and
+ * {@code telemetry.readings.rejected}.
+ */
+@Service
+@Slf4j
+public class BatteryTelemetryServiceImpl implements BatteryTelemetryService {
+
+    private final TelemetryStore telemetryStore;
+    private final AvailableEnergyTotals availableEnergyTotals;
+    private final MeterRegistry meterRegistry;
+    private final Timer appendTimer;
+    private final Counter accepted;
+    private final Counter rejected;
+
+    public BatteryTelemetryServiceImpl(TelemetryStore telemetryStore,
+                                       AvailableEnergyTotals availableEnergyTotals,
+                                       MeterRegistry meterRegistry) {
+        this.telemetryStore = telemetryStore;
+        this.availableEnergyTotals = availableEnergyTotals;
+        this.meterRegistry = meterRegistry;
+        this.appendTimer = phaseTimer(meterRegistry, ENDPOINT_TELEMETRY_INGEST, PHASE_APPEND);
+        this.accepted = meterRegistry.counter("telemetry.readings.accepted");
+        this.rejected = meterRegistry.counter("telemetry.readings.rejected");
+    }
+
+    /**
+     * Appends each reading to its battery's ring buffer. Readings without a timestamp are stamped
+     * with the time the upload is processed.
+     */
+    @Override
+    public TelemetryIngestSummary ingest(List<TelemetryReading> readings) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        long receivedAt = System.currentTimeMillis();
+        long appended = 0;
+        for (TelemetryReading reading : readings) {
+            long timestamp = reading.getTimestamp() == null ? receivedAt : reading.getTimestamp().toEpochMilli();
+            if (telemetryStore.append(reading.getBatteryId(), timestamp, reading.getStateOfCharge(), reading.getPowerWatts())) {
+                appended++;
+            }
+        }
+        sample.stop(appendTimer);
+
+        long unknown = readings.size() - appended;
+        accepted.increment(appended);
+        if (unknown > 0) {
+            log.debug("Rejected {} telemetry readings for unregistered batteries", unknown);
+            rejected.increment(unknown);
+        }
+        return new TelemetryIngestSummary(appended, unknown);
+    }
+
+    @Override
+    public TelemetryRangeResponse getTelemetryInRange(String startPostcode, String endPostcode, long windowSeconds) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+
+        long windowStart = System.currentTimeMillis() - windowSeconds * 1000;
+        TelemetryStore.RangeTotals totals = timePhase(meterRegistry, ENDPOINT_TELEMETRY_RANGE, PHASE_AGGREGATE,
+                () -> telemetryStore.summarize(startPostcode, endPostcode, windowStart));
+        if (totals.getReportingBatteries() == 0) {
+            throw new EntityNotFoundException("No telemetry found for the specified range.");
+        }
+
+        long reporting = totals.getReportingBatteries();
+        long windowReadings = totals.getWindowReadings();
+        TelemetryRangeResponse response = new TelemetryRangeResponse(
+                reporting,
+                Instant.ofEpochMilli(totals.getLatestTimestamp()),
+                totals.getLatestStateOfChargeSum() / reporting,
+                totals.getLatestPowerSum(),
+                windowSeconds,
+                windowReadings,
+                windowReadings == 0 ? 0 : totals.getWindowStateOfChargeSum() / windowReadings,
+                windowReadings == 0 ? 0 : (double) totals.getWindowPowerSum() / windowReadings);
+
+        sample.stop(queryResponseTimer(meterRegistry, ENDPOINT_TELEMETRY_RANGE));
+        return response;
+    }
+
+    @Override
+    public AvailableCapacityResponse getAvailableCapacityInRange(String startPostcode, String endPostcode) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+
+        AvailableCapacityResponse response = timePhase(meterRegistry, ENDPOINT_TELEMETRY_AVAILABLE, PHASE_AGGREGATE,
+                () -> availableEnergyTotals.availableInRange(startPostcode, endPostcode));
+        if (response.getReportingBatteries() == 0) {
+            throw new EntityNotFoundException("No telemetry found for the specified range.");
+        }
+
+        sample.stop(queryResponseTimer(meterRegistry, ENDPOINT_TELEMETRY_AVAILABLE));
+        return response;
+    }
+}
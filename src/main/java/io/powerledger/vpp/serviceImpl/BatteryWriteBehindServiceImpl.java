@@ -0,0 +1,283 @@
+package io.powerledger.vpp.serviceImpl;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.powerledger.vpp.dto.IngestTicket;
+import io.powerledger.vpp.exception.IngestBufferFullException;
+import io.powerledger.vpp.metrics.BatteryMetrics;
+import io.powerledger.vpp.model.Battery;
+import io.powerledger.vpp.service.BatteryService;
+import io.powerledger.vpp.service.BatteryWriteBehindService;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityNotFoundException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Implementation of the BatteryWriteBehindService interface.
+ * <p>
+ * Submissions are queued and a single writer thread coalesces them into one
+ * {@link BatteryService#saveBatteries} call per batch, so many small registrations share one
+ * transaction and one connection. A batch is written once it holds {@code max-batch-size}
+ * batteries or {@code max-delay} after its first submission was queued, whichever comes first.
+ * The buffer is bounded by battery count; a submission that does not fit is rejected with
+ * {@link IngestBufferFullException}, as is any submission once shutdown has begun, since the writer
+ * only drains what is already queued. If a coalesced batch fails, its submissions are retried one by
+ * one so a single bad submission fails only its own ticket.
+ * <p>
+ * Time from enqueue to write is recorded as the queue phase of {@code register.async}; buffered
+ * batteries and rejections are published as {@code batteries.ingest.buffer.size} and
+ * {@code batteries.ingest.rejected}. Enabled with {@code vpp.ingest.write-behind.enabled}.
+ */
+@Service
+@Slf4j
+public class BatteryWriteBehindServiceImpl implements BatteryWriteBehindService {
+
+    private static final long POLL_INTERVAL_MILLIS = 100;
+    // Shown to clients polling a failed ticket; the exception, which may carry SQL and constraint text, is only logged
+    private static final String FAILURE_REASON = "The batteries could not be saved";
+
+    private final BatteryService batteryService;
+    private final boolean enabled;
+    private final int capacity;
+    private final int maxBatchSize;
+    private final long maxDelayNanos;
+    private final Duration shutdownTimeout;
+
+    private final BlockingQueue<Submission> queue = new LinkedBlockingQueue<>();
+    private final AtomicInteger buffered = new AtomicInteger();
+    private final Cache<String, IngestTicket> tickets;
+    private final Timer queueTimer;
+    private final Counter rejections;
+    // Held shared while a submission is queued and exclusively to close intake, so nothing is queued once
+    // the writer may have drained the queue and exited
+    private final ReadWriteLock intake = new ReentrantReadWriteLock();
+
+    private boolean closed;
+    private volatile boolean running;
+    private Thread writer;
+
+    public BatteryWriteBehindServiceImpl(BatteryService batteryService,
+                                         MeterRegistry meterRegistry,
+                                         @Value("${vpp.ingest.write-behind.enabled:false}") boolean enabled,
+                                         @Value("${vpp.ingest.write-behind.capacity:50000}") int capacity,
+                                         @Value("${vpp.ingest.write-behind.max-batch-size:5000}") int maxBatchSize,
+                                         @Value("${vpp.ingest.write-behind.max-delay:50ms}") Duration maxDelay,
+                                         @Value("${vpp.ingest.write-behind.ticket-ttl:10m}") Duration ticketTtl,
+                                         @Value("${vpp.ingest.write-behind.shutdown-timeout:30s}") Duration shutdownTimeout) {
+        this.batteryService = batteryService;
+        this.enabled = enabled;
+        this.capacity = capacity;
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelayNanos = maxDelay.toNanos();
+        this.shutdownTimeout = shutdownTimeout;
+        this.tickets = Caffeine.newBuilder()
+                .expireAfterWrite(ticketTtl)
+                .build();
+        this.queueTimer = BatteryMetrics.phaseTimer(meterRegistry,
+                BatteryMetrics.ENDPOINT_REGISTER_ASYNC, BatteryMetrics.PHASE_QUEUE);
+        this.rejections = meterRegistry.counter("batteries.ingest.rejected");
+        meterRegistry.gauge("batteries.ingest.buffer.size", buffered);
+    }
+
+    /**
+     * Starts the writer thread when write-behind is enabled.
+     */
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        running = true;
+        writer = Thread.ofPlatform().name("battery-write-behind").daemon().start(this::runWriter);
+    }
+
+    /**
+     * Stops the writer after it has written everything still buffered, waiting up to
+     * {@code vpp.ingest.write-behind.shutdown-timeout}.
+     */
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        intake.writeLock().lock();
+        try {
+            closed = true;
+            running = false;
+        } finally {
+            intake.writeLock().unlock();
+        }
+        if (writer == null) {
+            return;
+        }
+        writer.join(shutdownTimeout);
+        if (!queue.isEmpty()) {
+            List<String> unwritten = queue.stream().map(Submission::ticketId).toList();
+            log.warn("Write-behind writer stopped with {} batteries still buffered; tickets not written: {}",
+                    buffered.get(), unwritten);
+        }
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public IngestTicket submit(List<Battery> batteries) {
+        if (!enabled) {
+            throw new IllegalStateException("Write-behind registration is disabled");
+        }
+        intake.readLock().lock();
+        try {
+            if (closed) {
+                rejections.increment();
+                throw new IngestBufferFullException("Registration buffer is closed for shutdown, retry later");
+            }
+            if (!reserve(batteries.size())) {
+                rejections.increment();
+                throw new IngestBufferFullException("Registration buffer is full, retry later");
+            }
+
+            // Buffered batteries are always new registrations
+            batteries.forEach(battery -> battery.setId(null));
+            IngestTicket ticket = IngestTicket.pending(UUID.randomUUID().toString(), batteries.size());
+            tickets.put(ticket.getId(), ticket);
+            queue.add(new Submission(ticket.getId(), batteries, System.nanoTime()));
+            return ticket;
+        } finally {
+            intake.readLock().unlock();
+        }
+    }
+
+    @Override
+    public IngestTicket getTicket(String ticketId) {
+        IngestTicket ticket = tickets.getIfPresent(ticketId);
+        if (ticket == null) {
+            throw new EntityNotFoundException("No registration ticket found with id " + ticketId);
+        }
+        return ticket;
+    }
+
+    /**
+     * Waits up to the timeout for a submission, then coalesces it with the submissions queued
+     * behind it and writes them as one batch.
+     *
+     * @return false if nothing was queued within the timeout.
+     */
+    boolean writeNextBatch(long timeout, TimeUnit unit) throws InterruptedException {
+        Submission first = queue.poll(timeout, unit);
+        if (first == null) {
+            return false;
+        }
+        List<Submission> batch = new ArrayList<>();
+        batch.add(first);
+        int count = first.batteries().size();
+
+        long deadline = first.enqueuedAt() + maxDelayNanos;
+        while (count < maxBatchSize) {
+            long remaining = deadline - System.nanoTime();
+            // Past the deadline, still take whatever is already queued
+            Submission next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+            if (next == null) {
+                break;
+            }
+            batch.add(next);
+            count += next.batteries().size();
+        }
+
+        try {
+            write(batch, count);
+        } finally {
+            buffered.addAndGet(-count);
+        }
+        return true;
+    }
+
+    private void runWriter() {
+        while (running || !queue.isEmpty()) {
+            try {
+                writeNextBatch(POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                log.error("Write-behind writer failed", e);
+            }
+        }
+    }
+
+    private void write(List<Submission> batch, int count) {
+        long now = System.nanoTime();
+        batch.forEach(submission -> queueTimer.record(now - submission.enqueuedAt(), TimeUnit.NANOSECONDS));
+
+        List<Battery> batteries = new ArrayList<>(count);
+        batch.forEach(submission -> batteries.addAll(submission.batteries()));
+        try {
+            batteryService.saveBatteries(batteries);
+            batch.forEach(this::complete);
+            log.debug("Wrote {} buffered submissions with {} batteries", batch.size(), count);
+        } catch (RuntimeException e) {
+            if (batch.size() == 1) {
+                fail(batch.get(0), e);
+                return;
+            }
+            log.warn("Coalesced write of {} submissions failed, retrying them separately", batch.size(), e);
+            batch.forEach(this::writeAlone);
+        }
+    }
+
+    private void writeAlone(Submission submission) {
+        // Ids assigned inside the rolled-back transaction are not valid
+        submission.batteries().forEach(battery -> battery.setId(null));
+        try {
+            batteryService.saveBatteries(submission.batteries());
+            complete(submission);
+        } catch (RuntimeException e) {
+            fail(submission, e);
+        }
+    }
+
+    private void complete(Submission submission) {
+        List<Long> ids = submission.batteries().stream().map(Battery::getId).toList();
+        tickets.asMap().computeIfPresent(submission.ticketId(), (id, ticket) -> ticket.completed(ids));
+    }
+
+    private void fail(Submission submission, RuntimeException e) {
+        log.error("Failed to write buffered registration {}", submission.ticketId(), e);
+        tickets.asMap().computeIfPresent(submission.ticketId(), (id, ticket) -> ticket.failed(FAILURE_REASON));
+    }
+
+    /**
+     * Reserves room for the batteries. A submission larger than the whole buffer is accepted only
+     * when the buffer is empty, so it is delayed rather than rejected forever.
+     */
+    private boolean reserve(int size) {
+        while (true) {
+            int current = buffered.get();
+            if (current > 0 && current + size > capacity) {
+                return false;
+            }
+            if (buffered.compareAndSet(current, current + size)) {
+                return true;
+            }
+        }
+    }
+
+    private record Submission(String ticketId, List<Battery> batteries, long enqueuedAt) {
+    }
+}
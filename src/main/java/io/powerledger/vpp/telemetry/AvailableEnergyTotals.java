@@ -0,0 +1,60 @@
+package io.powerledger.vpp.telemetry;
+
+import io.powerledger.vpp.dto.AvailableCapacityResponse;
+import io.powerledger.vpp.model.PostcodeConverter;
+import org.springframework.stereotype.Component;
+
+/**
+ * Live, pre-aggregated energy available per postcode, maintained by the {@link TelemetryStore} as
+ * readings arrive: each reading adds the change in its battery's capacity times state of charge to
+ * the battery's postcode, and a battery's first reading adds it to the reporting count and capacity.
+ * Range queries read {@link StripedPostcodeTotals} counters instead of visiting batteries, so they
+ * take microseconds whatever the range width and never block updates.
+ */
+@Component
+public class AvailableEnergyTotals {
+
+    private final StripedPostcodeTotals reportingBatteries = new StripedPostcodeTotals();
+    private final StripedPostcodeTotals reportingCapacity = new StripedPostcodeTotals();
+    private final StripedPostcodeTotals availableEnergy = new StripedPostcodeTotals();
+
+    /**
+     * Records the first reading of a battery.
+     */
+    void addReportingBattery(int postcode, int capacity) {
+        reportingBatteries.add(postcode, 1);
+        reportingCapacity.add(postcode, capacity);
+    }
+
+    /**
+     * Withdraws a reporting battery from a postcode, as when a fleet sync moves it or changes its capacity.
+     */
+    void removeReportingBattery(int postcode, int capacity) {
+        reportingBatteries.add(postcode, -1);
+        reportingCapacity.add(postcode, -capacity);
+    }
+
+    /**
+     * Records a change in a battery's available energy, in Wh.
+     */
+    void addAvailableEnergy(int postcode, long delta) {
+        if (delta != 0) {
+            availableEnergy.add(postcode, delta);
+        }
+    }
+
+    /**
+     * Sums the counters of a postcode range.
+     *
+     * @param startPostcode Starting 4-digit postcode (inclusive).
+     * @param endPostcode   Ending 4-digit postcode (inclusive).
+     */
+    public AvailableCapacityResponse availableInRange(String startPostcode, String endPostcode) {
+        int start = PostcodeConverter.toColumn(startPostcode);
+        int end = PostcodeConverter.toColumn(endPostcode);
+        return new AvailableCapacityResponse(
+                reportingBatteries.sum(start, end),
+                reportingCapacity.sum(start, end),
+                availableEnergy.sum(start, end));
+    }
+}
@@ -0,0 +1,49 @@
+package io.powerledger.vpp.telemetry;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Running total per postcode that answers any postcode range by adding a few counters.
+ * <p>
+ * A Fenwick tree over the 10,000 postcodes whose nodes are {@link LongAdder}s: an update adds to at
+ * most 14 nodes, and a range sum reads at most 28, whatever the width of the range. LongAdder spreads
+ * concurrent updates to the same node over per-thread cells, so updates never lock or retry on a
+ * shared word. A sum taken during updates is not an atomic snapshot and may include only part of an
+ * in-flight update.
+ */
+final class StripedPostcodeTotals {
+
+    static final int POSTCODES = 10_000;
+
+    // 1-based Fenwick nodes; node i covers postcodes (i - lowbit(i), i]
+    private final LongAdder[] nodes = new LongAdder[POSTCODES + 1];
+
+    StripedPostcodeTotals() {
+        for (int i = 1; i <= POSTCODES; i++) {
+            nodes[i] = new LongAdder();
+        }
+    }
+
+    void add(int postcode, long delta) {
+        for (int i = postcode + 1; i <= POSTCODES; i += i & -i) {
+            nodes[i].add(delta);
+        }
+    }
+
+    /** Total of the postcodes from start to end, both inclusive; zero for a range that ends before it starts. */
+    long sum(int startPostcode, int endPostcode) {
+        if (startPostcode > endPostcode) {
+            return 0;
+        }
+        return prefix(endPostcode + 1) - prefix(startPostcode);
+    }
+
+    // Total of the first count postcodes
+    private long prefix(int count) {
+        long total = 0;
+        for (int i = count; i > 0; i -= i & -i) {
+            total += nodes[i].sum();
+        }
+        return total;
+    }
+}
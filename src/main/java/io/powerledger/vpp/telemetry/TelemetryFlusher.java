@@ -0,0 +1,91 @@
+package io.powerledger.vpp.telemetry;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.powerledger.vpp.dto.TelemetryBatch;
+import io.powerledger.vpp.metrics.BatteryMetrics;
+import io.powerledger.vpp.repository.BatteryRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Periodically persists the readings appended to the {@link TelemetryStore} since the previous flush,
+ * in inserts of about {@code vpp.telemetry.persist.batch-size} readings.
+ * <p>
+ * Telemetry is best effort: readings overwritten in a ring buffer before they were flushed, and
+ * readings in a batch that fails to insert, are counted in {@code telemetry.readings.dropped} rather
+ * than retried. Persisted readings are counted in {@code telemetry.readings.persisted} and each insert
+ * is timed as the persist phase of {@code telemetry.ingest}. Runs every
+ * {@code vpp.telemetry.persist.flush-interval} when {@code vpp.telemetry.persist.enabled}, and once more on shutdown.
+ */
+@Component
+@Slf4j
+public class TelemetryFlusher {
+
+    private final TelemetryStore telemetryStore;
+    private final BatteryRepository batteryRepository;
+    private final boolean enabled;
+    private final int batchSize;
+    private final TelemetryBatch batch;
+    private final Counter persisted;
+    private final Counter dropped;
+    private final Timer persistTimer;
+
+    public TelemetryFlusher(TelemetryStore telemetryStore,
+                            BatteryRepository batteryRepository,
+                            MeterRegistry meterRegistry,
+                            @Value("${vpp.telemetry.persist.enabled:false}") boolean enabled,
+                            @Value("${vpp.telemetry.persist.batch-size:10000}") int batchSize) {
+        this.telemetryStore = telemetryStore;
+        this.batteryRepository = batteryRepository;
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+        this.batch = new TelemetryBatch(batchSize);
+        this.persisted = meterRegistry.counter("telemetry.readings.persisted");
+        this.dropped = meterRegistry.counter("telemetry.readings.dropped");
+        this.persistTimer = BatteryMetrics.phaseTimer(meterRegistry,
+                BatteryMetrics.ENDPOINT_TELEMETRY_INGEST, BatteryMetrics.PHASE_PERSIST);
+    }
+
+    /**
+     * Persists every reading appended since the previous flush.
+     *
+     * @return Number of readings persisted.
+     */
+    @Scheduled(fixedDelayString = "${vpp.telemetry.persist.flush-interval:PT5S}",
+            initialDelayString = "${vpp.telemetry.persist.flush-interval:PT5S}")
+    public synchronized long flush() {
+        if (!enabled) {
+            return 0;
+        }
+        long[] written = new long[1];
+        long overwritten = telemetryStore.drain(batch, batchSize, readings -> written[0] += insert(readings));
+        if (overwritten > 0) {
+            log.warn("{} telemetry readings were overwritten before they were persisted", overwritten);
+            dropped.increment(overwritten);
+        }
+        log.debug("Persisted {} telemetry readings", written[0]);
+        return written[0];
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        flush();
+    }
+
+    private long insert(TelemetryBatch readings) {
+        try {
+            persistTimer.record(() -> batteryRepository.insertTelemetry(readings));
+            persisted.increment(readings.size());
+            return readings.size();
+        } catch (RuntimeException e) {
+            log.error("Failed to persist {} telemetry readings", readings.size(), e);
+            dropped.increment(readings.size());
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,460 @@
+package io.powerledger.vpp.telemetry;
+
+import io.powerledger.vpp.dto.BatteryChange;
+import io.powerledger.vpp.dto.TelemetryBatch;
+import io.powerledger.vpp.event.BatteriesRegisteredEvent;
+import io.powerledger.vpp.event.BatteriesUpdatedEvent;
+import io.powerledger.vpp.model.Battery;
+import io.powerledger.vpp.model.PostcodeConverter;
+import io.powerledger.vpp.repository.BatteryRepository;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * In-process, append-only store of battery state-of-charge and power readings.
+ * <p>
+ * Each battery keeps its last {@code vpp.telemetry.window-size} readings in a ring buffer. Batteries are
+ * addressed directly by id, which comes from an identity sequence and is therefore dense, in segments of
+ * {@value #SEGMENT_SIZE} batteries whose timestamps and values are primitive arrays, so appending a
+ * reading allocates nothing. Each segment is its own lock, so concurrent uploads rarely contend.
+ * <p>
+ * Registered batteries are loaded at startup and added as they are registered, and batteries changed by a
+ * fleet sync take their current postcode and capacity; readings for any other id are rejected. Range
+ * queries visit the batteries of each postcode in the range, and readings appended since the previous
+ * {@link #drain} are handed out in batches for persistence. Each append also passes the change in the
+ * battery's available energy to {@link AvailableEnergyTotals}. Enabled with {@code vpp.telemetry.enabled}.
+ */
+@Component
+@Slf4j
+public class TelemetryStore {
+
+    static final int SEGMENT_SIZE = 1 << 10;
+    private static final int POSTCODES = 10_000;
+    private static final short UNREGISTERED = -1;
+
+    private final BatteryRepository batteryRepository;
+    private final AvailableEnergyTotals availableEnergyTotals;
+    private final boolean enabled;
+    private final int windowSize;
+    private final ReentrantLock writeLock = new ReentrantLock();
+    // Battery ids of each postcode, replaced on registration; guarded by writeLock for writes
+    private final AtomicReferenceArray<int[]> idsByPostcode = new AtomicReferenceArray<>(POSTCODES);
+
+    // Grown under writeLock; segments are never replaced once created
+    private volatile Segment[] segments = new Segment[0];
+    private volatile boolean loaded;
+
+    public TelemetryStore(BatteryRepository batteryRepository,
+                          AvailableEnergyTotals availableEnergyTotals,
+                          @Value("${vpp.telemetry.enabled:false}") boolean enabled,
+                          @Value("${vpp.telemetry.window-size:24}") int windowSize) {
+        this.batteryRepository = batteryRepository;
+        this.availableEnergyTotals = availableEnergyTotals;
+        this.enabled = enabled;
+        this.windowSize = windowSize;
+    }
+
+    /**
+     * Registers every stored battery once the application has started.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        if (!enabled) {
+            return;
+        }
+        long startTime = System.currentTimeMillis();
+        IdList[] loadedIds = new IdList[POSTCODES];
+        long[] rows = new long[1];
+        batteryRepository.forEachCapacity("0000", "9999", (id, postcode, capacity) -> {
+            if (loadedIds[postcode] == null) {
+                loadedIds[postcode] = new IdList();
+            }
+            loadedIds[postcode].add(id, capacity);
+            rows[0]++;
+        });
+
+        writeLock.lock();
+        try {
+            for (int postcode = 0; postcode < POSTCODES; postcode++) {
+                if (loadedIds[postcode] != null) {
+                    IdList loadedPostcode = loadedIds[postcode];
+                    register(postcode, loadedPostcode.ids, loadedPostcode.capacities, loadedPostcode.size);
+                }
+            }
+            loaded = true;
+        } finally {
+            writeLock.unlock();
+        }
+        log.info("Registered {} batteries for telemetry in {} ms", rows[0], System.currentTimeMillis() - startTime);
+    }
+
+    /**
+     * Accepts readings for newly registered batteries once their transaction commits. Batteries
+     * registered while the initial load is running may also be in the load; registering twice has no effect.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void onBatteriesRegistered(BatteriesRegisteredEvent event) {
+        if (!enabled) {
+            return;
+        }
+        writeLock.lock();
+        try {
+            for (Battery battery : event.batteries()) {
+                register(PostcodeConverter.toColumn(battery.getPostcode()),
+                        new long[]{battery.getId()}, new int[]{battery.getCapacity()}, 1);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Gives the batteries changed by a fleet sync their current postcode and capacity once its transaction
+     * commits, moving their contribution to the available-energy totals with them. The change is applied
+     * to the stored state rather than the event's previous one, so it is correct whether or not the
+     * initial load has seen the battery; one it has not registered yet is registered, and the load skips it.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void onBatteriesUpdated(BatteriesUpdatedEvent event) {
+        if (!enabled) {
+            return;
+        }
+        writeLock.lock();
+        try {
+            Map<Integer, Set<Integer>> leaving = new HashMap<>();
+            for (BatteryChange change : event.changes()) {
+                Battery battery = change.current();
+                int postcode = PostcodeConverter.toColumn(battery.getPostcode());
+                int previousPostcode = update(battery.getId(), postcode, battery.getCapacity());
+                if (previousPostcode == UNREGISTERED) {
+                    register(postcode, new long[]{battery.getId()}, new int[]{battery.getCapacity()}, 1);
+                } else if (previousPostcode != postcode) {
+                    leaving.computeIfAbsent(previousPostcode, p -> new HashSet<>()).add(battery.getId().intValue());
+                    addToPostcode(postcode, battery.getId().intValue());
+                }
+            }
+            leaving.forEach((postcode, ids) -> idsByPostcode.set(postcode,
+                    Arrays.stream(idsByPostcode.get(postcode)).filter(id -> !ids.contains(id)).toArray()));
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Appends a reading to the battery's ring buffer, overwriting its oldest reading once full.
+     *
+     * @return false if the battery is not registered.
+     */
+    public boolean append(long batteryId, long timestampMillis, float stateOfCharge, int powerWatts) {
+        Segment segment = segmentOf(batteryId);
+        if (segment == null) {
+            return false;
+        }
+        int battery = (int) batteryId & (SEGMENT_SIZE - 1);
+        int postcode;
+        int capacity;
+        boolean firstReading;
+        long energyDelta;
+        synchronized (segment) {
+            postcode = segment.postcodes[battery];
+            if (postcode == UNREGISTERED) {
+                return false;
+            }
+            long written = segment.written[battery];
+            int slot = battery * windowSize + (int) (written % windowSize);
+            segment.timestamps[slot] = timestampMillis;
+            segment.stateOfCharge[slot] = stateOfCharge;
+            segment.powerWatts[slot] = powerWatts;
+            segment.written[battery] = written + 1;
+
+            capacity = segment.capacities[battery];
+            int available = Math.round(capacity * stateOfCharge / 100);
+            energyDelta = available - segment.availableEnergy[battery];
+            segment.availableEnergy[battery] = available;
+            firstReading = written == 0;
+        }
+        // Changes commute, so the totals are updated outside the segment lock
+        if (firstReading) {
+            availableEnergyTotals.addReportingBattery(postcode, capacity);
+        }
+        availableEnergyTotals.addAvailableEnergy(postcode, energyDelta);
+        return true;
+    }
+
+    /**
+     * Sums the latest reading of every battery in the range, and every held reading taken at or after
+     * the window start.
+     *
+     * @param startPostcode     Starting 4-digit postcode (inclusive).
+     * @param endPostcode       Ending 4-digit postcode (inclusive).
+     * @param windowStartMillis Epoch milliseconds of the oldest reading to include in the window sums.
+     */
+    public RangeTotals summarize(String startPostcode, String endPostcode, long windowStartMillis) {
+        RangeTotals totals = new RangeTotals();
+        int end = PostcodeConverter.toColumn(endPostcode);
+        for (int postcode = PostcodeConverter.toColumn(startPostcode); postcode <= end; postcode++) {
+            int[] ids = idsByPostcode.get(postcode);
+            if (ids == null) {
+                continue;
+            }
+            // Read after the ids, so the segments of every listed battery are present
+            Segment[] current = segments;
+            for (int id : ids) {
+                Segment segment = current[id / SEGMENT_SIZE];
+                int battery = id & (SEGMENT_SIZE - 1);
+                synchronized (segment) {
+                    summarizeBattery(segment, battery, windowStartMillis, totals);
+                }
+            }
+        }
+        return totals;
+    }
+
+    /**
+     * Copies every reading appended since the previous drain into the batch, handing the batch to the
+     * sink and clearing it whenever it holds at least {@code batchSize} readings, and once more at the end
+     * if it is not empty. The sink is never called while a segment is locked.
+     *
+     * @return Readings that were overwritten before they could be drained.
+     */
+    public long drain(TelemetryBatch batch, int batchSize, Consumer<TelemetryBatch> sink) {
+        long overwritten = 0;
+        for (Segment segment : segments) {
+            if (segment == null) {
+                continue;
+            }
+            synchronized (segment) {
+                overwritten += drainSegment(segment, batch);
+            }
+            if (batch.size() >= batchSize) {
+                sink.accept(batch);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            sink.accept(batch);
+            batch.clear();
+        }
+        return overwritten;
+    }
+
+    private void summarizeBattery(Segment segment, int battery, long windowStartMillis, RangeTotals totals) {
+        long written = segment.written[battery];
+        if (written == 0) {
+            return;
+        }
+        int base = battery * windowSize;
+        int latest = base + (int) ((written - 1) % windowSize);
+        totals.reportingBatteries++;
+        totals.latestStateOfChargeSum += segment.stateOfCharge[latest];
+        totals.latestPowerSum += segment.powerWatts[latest];
+        totals.latestTimestamp = Math.max(totals.latestTimestamp, segment.timestamps[latest]);
+
+        int held = (int) Math.min(written, windowSize);
+        for (int slot = base; slot < base + held; slot++) {
+            if (segment.timestamps[slot] >= windowStartMillis) {
+                totals.windowReadings++;
+                totals.windowStateOfChargeSum += segment.stateOfCharge[slot];
+                totals.windowPowerSum += segment.powerWatts[slot];
+            }
+        }
+    }
+
+    private long drainSegment(Segment segment, TelemetryBatch batch) {
+        long overwritten = 0;
+        long firstId = (long) segment.index * SEGMENT_SIZE;
+        for (int battery = 0; battery < SEGMENT_SIZE; battery++) {
+            long written = segment.written[battery];
+            long pending = written - segment.drained[battery];
+            if (pending == 0) {
+                continue;
+            }
+            if (pending > windowSize) {
+                overwritten += pending - windowSize;
+                pending = windowSize;
+            }
+            int base = battery * windowSize;
+            for (long n = written - pending; n < written; n++) {
+                int slot = base + (int) (n % windowSize);
+                batch.add(firstId + battery, segment.timestamps[slot], segment.stateOfCharge[slot], segment.powerWatts[slot]);
+            }
+            segment.drained[battery] = written;
+        }
+        return overwritten;
+    }
+
+    private Segment segmentOf(long batteryId) {
+        Segment[] current = segments;
+        long index = batteryId / SEGMENT_SIZE;
+        return batteryId >= 0 && index < current.length ? current[(int) index] : null;
+    }
+
+    // Called with writeLock held
+    private void register(int postcode, long[] ids, int[] capacities, int count) {
+        int[] existing = idsByPostcode.get(postcode);
+        int[] updated = existing == null ? new int[count] : Arrays.copyOf(existing, existing.length + count);
+        int size = existing == null ? 0 : existing.length;
+        for (int i = 0; i < count; i++) {
+            long id = ids[i];
+            if (id < 0 || id > Integer.MAX_VALUE) {
+                log.warn("Battery id {} is outside the telemetry id range and will not accept readings", id);
+                continue;
+            }
+            Segment segment = ensureSegment((int) (id / SEGMENT_SIZE));
+            int battery = (int) id & (SEGMENT_SIZE - 1);
+            synchronized (segment) {
+                if (segment.postcodes[battery] != UNREGISTERED) {
+                    continue;
+                }
+                segment.postcodes[battery] = (short) postcode;
+                segment.capacities[battery] = capacities[i];
+            }
+            updated[size++] = (int) id;
+        }
+        if (size > (existing == null ? 0 : existing.length)) {
+            idsByPostcode.set(postcode, size == updated.length ? updated : Arrays.copyOf(updated, size));
+        }
+    }
+
+    /**
+     * Sets a registered battery's postcode and capacity, moving its reporting count, capacity and available
+     * energy between the postcodes' totals if it has reported.
+     *
+     * @return The battery's previous postcode, or {@link #UNREGISTERED} if it is not registered.
+     */
+    // Called with writeLock held
+    private int update(long id, int postcode, int capacity) {
+        Segment segment = segmentOf(id);
+        if (segment == null) {
+            return UNREGISTERED;
+        }
+        int battery = (int) id & (SEGMENT_SIZE - 1);
+        int previousPostcode;
+        int previousCapacity;
+        int previousAvailable;
+        int available;
+        boolean reporting;
+        synchronized (segment) {
+            previousPostcode = segment.postcodes[battery];
+            previousCapacity = segment.capacities[battery];
+            if (previousPostcode == UNREGISTERED || (previousPostcode == postcode && previousCapacity == capacity)) {
+                return previousPostcode;
+            }
+            long written = segment.written[battery];
+            reporting = written > 0;
+            previousAvailable = segment.availableEnergy[battery];
+            available = reporting
+                    ? Math.round(capacity * segment.stateOfCharge[battery * windowSize + (int) ((written - 1) % windowSize)] / 100)
+                    : 0;
+            segment.postcodes[battery] = (short) postcode;
+            segment.capacities[battery] = capacity;
+            segment.availableEnergy[battery] = available;
+        }
+        // Like appends, which may be in flight for the previous postcode, the changes commute
+        if (reporting) {
+            availableEnergyTotals.removeReportingBattery(previousPostcode, previousCapacity);
+            availableEnergyTotals.addAvailableEnergy(previousPostcode, -previousAvailable);
+            availableEnergyTotals.addReportingBattery(postcode, capacity);
+            availableEnergyTotals.addAvailableEnergy(postcode, available);
+        }
+        return previousPostcode;
+    }
+
+    // Called with writeLock held
+    private void addToPostcode(int postcode, int id) {
+        int[] existing = idsByPostcode.get(postcode);
+        int[] updated = existing == null ? new int[1] : Arrays.copyOf(existing, existing.length + 1);
+        updated[updated.length - 1] = id;
+        idsByPostcode.set(postcode, updated);
+    }
+
+    // Called with writeLock held
+    private Segment ensureSegment(int index) {
+        Segment[] current = segments;
+        if (index >= current.length) {
+            current = Arrays.copyOf(current, Math.max(index + 1, current.length * 2));
+        }
+        if (current[index] == null) {
+            current[index] = new Segment(index, windowSize);
+        }
+        segments = current;
+        return current[index];
+    }
+
+    /**
+     * Sums over the batteries of a range; averages are left to the caller.
+     */
+    @Getter
+    public static final class RangeTotals {
+        private long reportingBatteries;
+        private long latestTimestamp = Long.MIN_VALUE;
+        private double latestStateOfChargeSum;
+        private long latestPowerSum;
+        private long windowReadings;
+        private double windowStateOfChargeSum;
+        private long windowPowerSum;
+    }
+
+    /**
+     * Ring buffers of {@value #SEGMENT_SIZE} consecutive battery ids; battery {@code b}'s readings
+     * occupy slots {@code b * windowSize} to {@code (b + 1) * windowSize - 1}.
+     */
+    private static final class Segment {
+        final int index;
+        final short[] postcodes = new short[SEGMENT_SIZE];
+        final int[] capacities = new int[SEGMENT_SIZE];
+        // Capacity times latest state of charge, in Wh
+        final int[] availableEnergy = new int[SEGMENT_SIZE];
+        final long[] timestamps;
+        final float[] stateOfCharge;
+        final int[] powerWatts;
+        // Readings appended, and readings handed to drain, per battery
+        final long[] written = new long[SEGMENT_SIZE];
+        final long[] drained = new long[SEGMENT_SIZE];
+
+        Segment(int index, int windowSize) {
+            this.index = index;
+            Arrays.fill(postcodes, UNREGISTERED);
+            this.timestamps = new long[SEGMENT_SIZE * windowSize];
+            this.stateOfCharge = new float[SEGMENT_SIZE * windowSize];
+            this.powerWatts = new int[SEGMENT_SIZE * windowSize];
+        }
+    }
+
+    private static final class IdList {
+        long[] ids = new long[16];
+        int[] capacities = new int[16];
+        int size;
+
+        void add(long id, int capacity) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+                capacities = Arrays.copyOf(capacities, size * 2);
+            }
+            ids[size] = id;
+            capacities[size++] = capacity;
+        }
+    }
+}
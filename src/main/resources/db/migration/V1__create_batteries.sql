@@ -0,0 +1,9 @@
+-- Schema previously created by Hibernate's ddl-auto; a no-op on databases that already have it.
+CREATE TABLE IF NOT EXISTS batteries (
+    id       BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    name     VARCHAR(255),
+    postcode VARCHAR(255),
+    capacity INTEGER
+);
+
+CREATE INDEX IF NOT EXISTS idx_batteries_postcode_capacity ON batteries (postcode, capacity);
@@ -0,0 +1,10 @@
+-- Postcodes are 4-digit numbers; storing them as SMALLINT shrinks the (postcode, capacity) index and makes
+-- range scans compare integers instead of collation-sensitive strings.
+-- Rewrites the table and rebuilds its indexes; statistics are refreshed so the planner keeps using the index.
+ALTER TABLE batteries
+    ALTER COLUMN postcode TYPE SMALLINT USING postcode::SMALLINT;
+
+ALTER TABLE batteries
+    ADD CONSTRAINT chk_batteries_postcode CHECK (postcode BETWEEN 0 AND 9999);
+
+ANALYZE batteries;
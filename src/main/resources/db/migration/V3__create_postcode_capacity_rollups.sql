@@ -0,0 +1,14 @@
+-- Per-postcode capacity totals, kept current by registrations in the same transaction, so range totals
+-- sum at most 10,000 buckets instead of every battery row. Batteries are never deleted, so min and max only widen.
+CREATE TABLE postcode_capacity_rollups (
+    postcode       SMALLINT PRIMARY KEY CHECK (postcode BETWEEN 0 AND 9999),
+    battery_count  BIGINT  NOT NULL,
+    total_capacity BIGINT  NOT NULL,
+    min_capacity   INTEGER NOT NULL,
+    max_capacity   INTEGER NOT NULL
+);
+
+INSERT INTO postcode_capacity_rollups (postcode, battery_count, total_capacity, min_capacity, max_capacity)
+SELECT postcode, COUNT(*), SUM(capacity), MIN(capacity), MAX(capacity)
+FROM batteries
+GROUP BY postcode;
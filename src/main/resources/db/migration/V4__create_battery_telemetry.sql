@@ -0,0 +1,10 @@
+-- State-of-charge and power readings, appended in batches from the in-memory telemetry store.
+-- Append-only and written at fleet rate, so there is no foreign key and only a BRIN index on time.
+CREATE TABLE battery_telemetry (
+    battery_id      BIGINT      NOT NULL,
+    recorded_at     TIMESTAMPTZ NOT NULL,
+    state_of_charge REAL        NOT NULL,
+    power_watts     INTEGER     NOT NULL
+);
+
+CREATE INDEX idx_battery_telemetry_recorded_at ON battery_telemetry USING brin (recorded_at);
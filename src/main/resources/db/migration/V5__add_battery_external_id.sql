@@ -0,0 +1,7 @@
+-- Partner-assigned battery id, the natural key that fleet re-syncs upsert on. Nullable, as batteries registered
+-- through the other endpoints have none; unique indexes treat NULLs as distinct, so only assigned ids can conflict.
+-- Adding a nullable column without a default does not rewrite the table.
+ALTER TABLE batteries
+    ADD COLUMN external_id VARCHAR(255);
+
+CREATE UNIQUE INDEX uk_batteries_external_id ON batteries (external_id);
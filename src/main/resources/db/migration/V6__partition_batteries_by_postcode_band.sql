@@ -0,0 +1,55 @@
+-- Range-partitions batteries into ten bands by the leading postcode digit (0xxx to 9xxx), so range queries scan
+-- only the bands they overlap, and each band's indexes, vacuums and statistics cover a tenth of the fleet.
+-- The CHECK on postcode leaves no value outside the bands, so there is no default partition.
+-- Unique indexes of a partitioned table must include the partition key, so the primary key becomes
+-- (id, postcode); ids still come from one identity sequence.
+--
+-- Copies every row once; indexes are built after the copy, which is faster than maintaining them row by row.
+ALTER TABLE batteries RENAME TO batteries_unpartitioned;
+
+CREATE TABLE batteries (
+    id          BIGINT GENERATED BY DEFAULT AS IDENTITY,
+    name        VARCHAR(255),
+    postcode    SMALLINT NOT NULL CONSTRAINT chk_batteries_postcode CHECK (postcode BETWEEN 0 AND 9999),
+    capacity    INTEGER,
+    external_id VARCHAR(255)
+) PARTITION BY RANGE (postcode);
+
+DO $$
+BEGIN
+    FOR band IN 0..9 LOOP
+        EXECUTE format('CREATE TABLE batteries_%sxxx PARTITION OF batteries FOR VALUES FROM (%s) TO (%s)',
+                       band, band * 1000, (band + 1) * 1000);
+    END LOOP;
+END $$;
+
+INSERT INTO batteries (id, name, postcode, capacity, external_id)
+SELECT id, name, postcode, capacity, external_id
+FROM batteries_unpartitioned;
+
+SELECT setval(pg_get_serial_sequence('batteries', 'id'), COALESCE(MAX(id), 0) + 1, false)
+FROM batteries;
+
+DROP TABLE batteries_unpartitioned;
+
+-- Created on the parent, so every band, including bands attached later, gets the same indexes
+ALTER TABLE batteries
+    ADD CONSTRAINT batteries_pkey PRIMARY KEY (id, postcode);
+
+CREATE INDEX idx_batteries_postcode_capacity ON batteries (postcode, capacity);
+
+ANALYZE batteries;
+
+-- Holds the unique index on external ids that the partitioned table cannot, and the band of each battery, so a
+-- fleet sync finds a battery with one probe here and one probe of its band's primary key rather than one probe per
+-- band. Kept in step by fleet syncs, the only writers of external ids.
+CREATE TABLE battery_external_ids (
+    external_id VARCHAR(255) PRIMARY KEY,
+    battery_id  BIGINT   NOT NULL,
+    postcode    SMALLINT NOT NULL
+);
+
+INSERT INTO battery_external_ids (external_id, battery_id, postcode)
+SELECT external_id, id, postcode
+FROM batteries
+WHERE external_id IS NOT NULL;
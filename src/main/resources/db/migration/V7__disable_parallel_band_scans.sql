@@ -0,0 +1,11 @@
+-- A query covering whole postcode bands matches every row of those bands, and the planner costs a parallel
+-- sequential scan of them as shared among workers, so it picks that over the bands' far smaller
+-- (postcode, capacity) indexes. The workers only compete with the service's other queries for cores, and a
+-- single-process scan of the band indexes is the faster plan. The setting is per table, so a band attached
+-- later needs it too.
+DO $$
+BEGIN
+    FOR band IN 0..9 LOOP
+        EXECUTE format('ALTER TABLE batteries_%sxxx SET (parallel_workers = 0)', band);
+    END LOOP;
+END $$;
@@ -0,0 +1,128 @@
+package io.powerledger.vpp.cache;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.powerledger.vpp.dto.BatteryChange;
+import io.powerledger.vpp.dto.BatteryStatsResponse;
+import io.powerledger.vpp.event.BatteriesRegisteredEvent;
+import io.powerledger.vpp.event.BatteriesUpdatedEvent;
+import io.powerledger.vpp.model.Battery;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Unit tests for {@link BatteryStatsCache}.
+ */
+class BatteryStatsCacheTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private BatteryStatsCache batteryStatsCache;
+    private AtomicInteger loads;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        batteryStatsCache = new BatteryStatsCache(meterRegistry, true, 100, Duration.ofMinutes(5));
+        loads = new AtomicInteger();
+    }
+
+    /**
+     * Test that a repeated query is answered from the cache and counted as a hit.
+     */
+    @Test
+    void shouldServeRepeatedQueryFromCache() {
+        BatteryStatsCache.Key key = BatteryStatsCache.Key.of("6000", "6100", null, null);
+
+        batteryStatsCache.get(key, loader());
+        batteryStatsCache.get(key, loader());
+
+        assertThat(loads).hasValue(1);
+        assertThat(meterRegistry.get("cache.gets").tag("result", "hit").functionCounter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("cache.gets").tag("result", "miss").functionCounter().count()).isEqualTo(1);
+    }
+
+    /**
+     * Test that a registration evicts only ranges that contain one of its postcodes.
+     */
+    @Test
+    void shouldEvictOnlyOverlappingRanges() {
+        BatteryStatsCache.Key perth = BatteryStatsCache.Key.of("6000", "6100", null, null);
+        BatteryStatsCache.Key sydney = BatteryStatsCache.Key.of("2000", "2999", null, null);
+        batteryStatsCache.get(perth, loader());
+        batteryStatsCache.get(sydney, loader());
+
+        batteryStatsCache.onBatteriesRegistered(new BatteriesRegisteredEvent(List.of(
+                new Battery(1L, "Midland", "6057", 50500))));
+        batteryStatsCache.get(perth, loader());
+        batteryStatsCache.get(sydney, loader());
+
+        assertThat(loads).hasValue(3);
+        assertThat(meterRegistry.get("batteries.cache.range.invalidated").counter().count()).isEqualTo(1);
+    }
+
+    /**
+     * Test that an update evicts the ranges containing either the previous or the current postcode of a battery.
+     */
+    @Test
+    void shouldEvictRangesOfPreviousAndCurrentPostcodes() {
+        BatteryStatsCache.Key perth = BatteryStatsCache.Key.of("6000", "6100", null, null);
+        BatteryStatsCache.Key darwin = BatteryStatsCache.Key.of("0800", "0899", null, null);
+        BatteryStatsCache.Key sydney = BatteryStatsCache.Key.of("2000", "2999", null, null);
+        batteryStatsCache.get(perth, loader());
+        batteryStatsCache.get(darwin, loader());
+        batteryStatsCache.get(sydney, loader());
+
+        batteryStatsCache.onBatteriesUpdated(new BatteriesUpdatedEvent(List.of(new BatteryChange(
+                new Battery(1L, "Bagot", "0820", 27000), new Battery(1L, "Bagot", "6057", 27000)))));
+        batteryStatsCache.get(perth, loader());
+        batteryStatsCache.get(darwin, loader());
+        batteryStatsCache.get(sydney, loader());
+
+        assertThat(loads).hasValue(5);
+        assertThat(meterRegistry.get("batteries.cache.range.invalidated").counter().count()).isEqualTo(2);
+    }
+
+    /**
+     * Test that a result computed while a registration was committed is returned but not stored.
+     */
+    @Test
+    void shouldNotStoreResultLoadedAcrossInvalidation() {
+        BatteryStatsCache.Key key = BatteryStatsCache.Key.of("6000", "6100", null, null);
+
+        batteryStatsCache.get(key, () -> {
+            batteryStatsCache.onBatteriesRegistered(new BatteriesRegisteredEvent(List.of(
+                    new Battery(1L, "Hay Street", "6000", 23500))));
+            return loader().get();
+        });
+        batteryStatsCache.get(key, loader());
+
+        assertThat(loads).hasValue(2);
+    }
+
+    /**
+     * Test that a disabled cache always delegates to the loader.
+     */
+    @Test
+    void shouldAlwaysLoadWhenDisabled() {
+        BatteryStatsCache disabled = new BatteryStatsCache(meterRegistry, false, 100, Duration.ofMinutes(5));
+        BatteryStatsCache.Key key = BatteryStatsCache.Key.of("6000", "6100", null, null);
+
+        disabled.get(key, loader());
+        disabled.get(key, loader());
+
+        assertThat(loads).hasValue(2);
+    }
+
+    private Supplier<BatteryStatsResponse> loader() {
+        return () -> {
+            loads.incrementAndGet();
+            return new BatteryStatsResponse(List.of("Battery A"), 10000, 10000.0);
+        };
+    }
+}
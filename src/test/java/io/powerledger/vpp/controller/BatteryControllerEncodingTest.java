@@ -0,0 +1,126 @@
+package io.powerledger.vpp.controller;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.powerledger.vpp.dto.BatteryStatsResponse;
+import io.powerledger.vpp.metrics.BatteryMetrics;
+import io.powerledger.vpp.metrics.TimedMappingJackson2CborHttpMessageConverter;
+import io.powerledger.vpp.metrics.TimedMappingJackson2HttpMessageConverter;
+import io.powerledger.vpp.metrics.TimedMappingJackson2SmileHttpMessageConverter;
+import io.powerledger.vpp.model.Battery;
+import io.powerledger.vpp.service.BatteryService;
+import io.powerledger.vpp.service.BatteryStreamIngestService;
+import io.powerledger.vpp.service.BatterySubscriptionService;
+import io.powerledger.vpp.service.BatteryWriteBehindService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Tests that the battery endpoints negotiate JSON, Smile and CBOR bodies with the timed converters,
+ * in the order Spring MVC registers them.
+ */
+class BatteryControllerEncodingTest {
+
+    private static final MediaType SMILE = MediaType.valueOf("application/x-jackson-smile");
+    private static final TypeReference<Map<String, Object>> STATS_MAP = new TypeReference<>() {
+    };
+
+    private final ObjectMapper smileMapper = Jackson2ObjectMapperBuilder.smile().factory(new SmileFactory()).build();
+    private final ObjectMapper cborMapper = Jackson2ObjectMapperBuilder.cbor().factory(new CBORFactory()).build();
+
+    private BatteryService batteryService;
+    private SimpleMeterRegistry meterRegistry;
+    private MockMvc mockMvc;
+
+    private final BatteryStatsResponse stats = new BatteryStatsResponse(List.of("Cannington", "Hay Street"), 37000, 18500.0);
+
+    @BeforeEach
+    void setUp() {
+        batteryService = mock(BatteryService.class);
+        meterRegistry = new SimpleMeterRegistry();
+        BatteryController controller = new BatteryController(batteryService, mock(BatteryStreamIngestService.class),
+                mock(BatteryWriteBehindService.class), mock(BatterySubscriptionService.class), new ObjectMapper());
+        mockMvc = MockMvcBuilders.standaloneSetup(controller)
+                .setMessageConverters(
+                        new TimedMappingJackson2HttpMessageConverter(Jackson2ObjectMapperBuilder.json().build(), meterRegistry),
+                        new TimedMappingJackson2SmileHttpMessageConverter(smileMapper, meterRegistry),
+                        new TimedMappingJackson2CborHttpMessageConverter(cborMapper, meterRegistry))
+                .build();
+        when(batteryService.getBatteriesInRange("6000", "6200", null, null)).thenReturn(stats);
+    }
+
+    /**
+     * Test that JSON is returned when the client accepts any type.
+     */
+    @Test
+    void shouldDefaultToJson() throws Exception {
+        mockMvc.perform(get("/api/v1/batteries?startPostcode=6000&endPostcode=6200").accept(MediaType.ALL))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andExpect(content().json("{\"batteryNames\":[\"Cannington\",\"Hay Street\"],\"totalCapacity\":37000}"));
+    }
+
+    /**
+     * Test that a range query is encoded as Smile or CBOR when accepted, and the serialise phase is timed.
+     */
+    @Test
+    void shouldEncodeRangeStatisticsAsSmileOrCbor() throws Exception {
+        MvcResult smile = mockMvc.perform(get("/api/v1/batteries?startPostcode=6000&endPostcode=6200").accept(SMILE))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(SMILE))
+                .andReturn();
+        assertThat(smileMapper.readValue(smile.getResponse().getContentAsByteArray(), STATS_MAP))
+                .isEqualTo(Map.of("batteryNames", List.of("Cannington", "Hay Street"), "totalCapacity", 37000, "averageCapacity", 18500.0));
+
+        MvcResult cbor = mockMvc.perform(get("/api/v1/batteries?startPostcode=6000&endPostcode=6200").accept(MediaType.APPLICATION_CBOR))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_CBOR))
+                .andReturn();
+        assertThat(cborMapper.readValue(cbor.getResponse().getContentAsByteArray(), STATS_MAP))
+                .isEqualTo(Map.of("batteryNames", List.of("Cannington", "Hay Street"), "totalCapacity", 37000, "averageCapacity", 18500.0));
+
+        assertThat(meterRegistry.get(BatteryMetrics.PHASE_TIME)
+                .tag("endpoint", BatteryMetrics.ENDPOINT_RANGE)
+                .tag("phase", BatteryMetrics.PHASE_SERIALIZE)
+                .timer().count()).isEqualTo(2);
+    }
+
+    /**
+     * Test that batteries can be registered with a Smile body and the saved batteries returned as Smile.
+     */
+    @Test
+    void shouldRegisterBatteriesFromSmileBody() throws Exception {
+        List<Battery> batteries = List.of(new Battery(null, "Midland", "6056", 50500));
+        when(batteryService.saveBatteries(anyList())).thenReturn(List.of(new Battery(7L, "Midland", "6056", 50500)));
+
+        MvcResult result = mockMvc.perform(post("/api/v1/batteries")
+                        .contentType(SMILE)
+                        .accept(SMILE)
+                        .content(smileMapper.writeValueAsBytes(batteries)))
+                .andExpect(status().isOk())
+                .andReturn();
+
+        verify(batteryService).saveBatteries(batteries);
+        Battery[] saved = smileMapper.readValue(result.getResponse().getContentAsByteArray(), Battery[].class);
+        assertThat(saved).containsExactly(new Battery(7L, "Midland", "6056", 50500));
+    }
+}
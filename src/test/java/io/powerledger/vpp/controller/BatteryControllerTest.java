@@ -1,18 +1,41 @@
 package io.powerledger.vpp.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.powerledger.vpp.dto.BatteryRangeQuery;
+import io.powerledger.vpp.dto.BatteryStatsBatchRequest;
+import io.powerledger.vpp.dto.BatteryRow;
 import io.powerledger.vpp.dto.BatteryStatsResponse;
+import io.powerledger.vpp.dto.BatterySyncSummary;
+import io.powerledger.vpp.dto.CapacityAggregate;
+import io.powerledger.vpp.dto.CapacityDistributionResponse;
+import io.powerledger.vpp.dto.IngestTicket;
+import io.powerledger.vpp.dto.StreamIngestSummary;
 import io.powerledger.vpp.model.Battery;
 import io.powerledger.vpp.service.BatteryService;
+import io.powerledger.vpp.service.BatteryStreamIngestService;
+import io.powerledger.vpp.service.BatterySubscriptionService;
+import io.powerledger.vpp.service.BatteryWriteBehindService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
 
 /**
@@ -23,6 +46,18 @@ class BatteryControllerTest {
     @Mock
     private BatteryService batteryService;
 
+    @Mock
+    private BatteryStreamIngestService batteryStreamIngestService;
+
+    @Mock
+    private BatteryWriteBehindService batteryWriteBehindService;
+
+    @Mock
+    private BatterySubscriptionService batterySubscriptionService;
+
+    @Spy
+    private ObjectMapper objectMapper = new ObjectMapper();
+
     @InjectMocks
     private BatteryController batteryController;
 
@@ -58,6 +93,78 @@ class BatteryControllerTest {
         verify(batteryService, times(1)).saveBatteries(batteryList);
     }
 
+    /**
+     * Test that a fleet sync is delegated to the service and its summary returned.
+     */
+    @Test
+    void shouldSyncBatteriesAndReturnSummary() {
+        List<Battery> batteryList = List.of(
+                new Battery(null, "Battery A", "6000", 10000, "P-1"),
+                new Battery(null, "Battery B", "6100", 20000, "P-2"));
+        BatterySyncSummary summary = new BatterySyncSummary(1, 0, 1);
+        when(batteryService.syncBatteries(batteryList)).thenReturn(summary);
+
+        ResponseEntity<BatterySyncSummary> response = batteryController.syncBatteries(batteryList);
+
+        assertThat(response.getStatusCode().value()).isEqualTo(200);
+        assertThat(response.getBody()).isEqualTo(summary);
+        verify(batteryService, times(1)).syncBatteries(batteryList);
+    }
+
+    /**
+     * Test that an asynchronous registration is buffered and answered with 202 and the ticket location.
+     */
+    @Test
+    void shouldAcceptBufferedBatteriesWithTicket() {
+        List<Battery> batteryList = List.of(battery1, battery2);
+        IngestTicket ticket = IngestTicket.pending("ticket-1", 2);
+        when(batteryWriteBehindService.isEnabled()).thenReturn(true);
+        when(batteryWriteBehindService.submit(batteryList)).thenReturn(ticket);
+
+        ResponseEntity<?> response = batteryController.addBatteriesAsync(List.of("respond-async"), batteryList);
+
+        assertThat(response.getStatusCode().value()).isEqualTo(202);
+        assertThat(response.getHeaders().getLocation()).hasToString("/api/v1/batteries/tickets/ticket-1");
+        assertThat(response.getBody()).isSameAs(ticket);
+        verify(batteryService, never()).saveBatteries(anyList());
+    }
+
+    /**
+     * Test that respond-async is recognised among other preferences and parameters of the Prefer header,
+     * and that a Prefer header without it leads to a synchronous save.
+     */
+    @Test
+    void shouldBufferOnlyWhenPreferHeaderIncludesRespondAsync() {
+        List<Battery> batteryList = List.of(battery1, battery2);
+        when(batteryWriteBehindService.isEnabled()).thenReturn(true);
+        when(batteryWriteBehindService.submit(batteryList)).thenReturn(IngestTicket.pending("ticket-1", 2));
+        when(batteryService.saveBatteries(batteryList)).thenReturn(batteryList);
+
+        assertThat(batteryController.addBatteriesAsync(List.of("return=minimal, respond-async ; x=1, wait=5"), batteryList)
+                .getStatusCode().value()).isEqualTo(202);
+        assertThat(batteryController.addBatteriesAsync(List.of("wait=5", "Respond-Async"), batteryList)
+                .getStatusCode().value()).isEqualTo(202);
+        assertThat(batteryController.addBatteriesAsync(List.of("return=minimal, wait=5"), batteryList)
+                .getStatusCode().value()).isEqualTo(200);
+        verify(batteryWriteBehindService, times(2)).submit(batteryList);
+        verify(batteryService).saveBatteries(batteryList);
+    }
+
+    /**
+     * Test that an asynchronous registration is saved synchronously when write-behind is disabled.
+     */
+    @Test
+    void shouldSaveSynchronouslyWhenWriteBehindIsDisabled() {
+        List<Battery> batteryList = List.of(battery1, battery2);
+        when(batteryService.saveBatteries(batteryList)).thenReturn(batteryList);
+
+        ResponseEntity<?> response = batteryController.addBatteriesAsync(List.of("respond-async"), batteryList);
+
+        assertThat(response.getStatusCode().value()).isEqualTo(200);
+        assertThat(response.getBody()).isEqualTo(batteryList);
+        verify(batteryWriteBehindService, never()).submit(anyList());
+    }
+
     /**
      * Test that the controller returns battery statistics correctly
      * when queried with a postcode range and optional capacity filters.
@@ -86,4 +193,136 @@ class BatteryControllerTest {
         // Verify interaction with the service
         verify(batteryService, times(1)).getBatteriesInRange("6000", "6200", null, null);
     }
+
+    /**
+     * Test that a batch request returns one result per range in request order.
+     */
+    @Test
+    void shouldReturnBatteryStatsForBatchOfRanges() {
+        List<BatteryRangeQuery> ranges = List.of(
+                new BatteryRangeQuery("6000", "6100", null, null),
+                new BatteryRangeQuery("6200", "6200", 10000L, null));
+        List<BatteryStatsResponse> results = List.of(
+                new BatteryStatsResponse(List.of("Battery A"), 10000, 10000.0),
+                new BatteryStatsResponse(List.of(), 0, 0));
+        when(batteryService.getBatteriesInRanges(ranges)).thenReturn(results);
+
+        ResponseEntity<List<BatteryStatsResponse>> response =
+                batteryController.getBatteriesInRanges(new BatteryStatsBatchRequest(ranges));
+
+        assertThat(response.getStatusCode().value()).isEqualTo(200);
+        assertThat(response.getBody()).isEqualTo(results);
+    }
+
+    /**
+     * Test that the distribution endpoint passes the requested percentiles and bucket count to the service.
+     */
+    @Test
+    void shouldReturnCapacityDistribution() {
+        CapacityDistributionResponse distribution = new CapacityDistributionResponse(2, 10000, 20000, 15000.0,
+                Map.of("p50", 10000L), List.of(new CapacityDistributionResponse.Bucket(10000, 20000, 2)));
+        when(batteryService.getCapacityDistribution("6000", "6200", List.of(50.0), 1)).thenReturn(distribution);
+
+        ResponseEntity<CapacityDistributionResponse> response =
+                batteryController.getCapacityDistribution("6000", "6200", List.of(50.0), 1);
+
+        assertThat(response.getStatusCode().value()).isEqualTo(200);
+        assertThat(response.getBody()).isEqualTo(distribution);
+    }
+
+    /**
+     * Test that the streaming endpoint hands the request body to the ingest service
+     * and returns its summary.
+     */
+    @Test
+    void shouldReturnSummaryForStreamedBatteries() throws IOException {
+        InputStream body = new ByteArrayInputStream(new byte[0]);
+        StreamIngestSummary summary = new StreamIngestSummary();
+        summary.setAccepted(2);
+
+        when(batteryStreamIngestService.ingest(body)).thenReturn(summary);
+
+        ResponseEntity<StreamIngestSummary> response = batteryController.addBatteriesStream(body);
+
+        assertThat(response.getStatusCode().value()).isEqualTo(200);
+        assertThat(response.getBody()).isSameAs(summary);
+        verify(batteryStreamIngestService, times(1)).ingest(body);
+    }
+
+    /**
+     * Test that a limit selects the paginated query and the next cursor is returned.
+     */
+    @Test
+    void shouldReturnPageOfBatteryNamesWithCursor() {
+        BatteryStatsResponse mockResponse = new BatteryStatsResponse(List.of("Battery A"), 30000, 15000.0, "next");
+        when(batteryService.getBatteriesInRange("6000", "6200", null, null, null, 1)).thenReturn(mockResponse);
+
+        ResponseEntity<BatteryStatsResponse> response = batteryController.getBatteriesPageInRange("6000", "6200", null, null, null, 1);
+
+        assertThat(response.getStatusCode().value()).isEqualTo(200);
+        assertThat(response.getBody().getBatteryNames()).containsExactly("Battery A");
+        assertThat(response.getBody().getNextCursor()).isEqualTo("next");
+    }
+
+    /**
+     * Test that streamed names are written one JSON string per line with totals in the headers.
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    void shouldStreamBatteryNamesAsNdjson() throws IOException {
+        when(batteryService.getCapacityInRange("6000", "6200", null, null)).thenReturn(new CapacityAggregate(2L, 30000L));
+        doAnswer(invocation -> {
+            Consumer<String> consumer = invocation.getArgument(4);
+            consumer.accept("Battery A");
+            consumer.accept("Battery \"B\"");
+            return null;
+        }).when(batteryService).streamBatteryNamesInRange(eq("6000"), eq("6200"), isNull(), isNull(), any(Consumer.class));
+
+        ResponseEntity<StreamingResponseBody> response = batteryController.streamBatteryNames("6000", "6200", null, null);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        response.getBody().writeTo(out);
+
+        assertThat(response.getHeaders().getFirst("X-Total-Count")).isEqualTo("2");
+        assertThat(response.getHeaders().getFirst("X-Average-Capacity")).isEqualTo("15000.0");
+        assertThat(out.toString(StandardCharsets.UTF_8)).isEqualTo("\"Battery A\"\n\"Battery \\\"B\\\"\"\n");
+    }
+
+    /**
+     * Test that a name search delegates to the service with the limit.
+     */
+    @Test
+    void shouldReturnBatteriesMatchingName() {
+        List<BatteryRow> matches = List.of(new BatteryRow(1L, "Battery A", "6000", 10000));
+        when(batteryService.searchBatteries("batt", 5)).thenReturn(matches);
+
+        ResponseEntity<List<BatteryRow>> response = batteryController.searchBatteries("batt", 5);
+
+        assertThat(response.getStatusCode().value()).isEqualTo(200);
+        assertThat(response.getBody()).isEqualTo(matches);
+    }
+
+    /**
+     * Test that radius and nearest-battery queries delegate to the service.
+     */
+    @Test
+    void shouldReturnBatteriesNearPostcode() {
+        BatteryStatsResponse near = new BatteryStatsResponse(List.of("Battery A", "Battery B"), 25000, 12500.0);
+        BatteryStatsResponse nearest = new BatteryStatsResponse(List.of("Battery B"), 15000, 15000.0);
+        when(batteryService.getBatteriesNear("6000", 25.0, null, null)).thenReturn(near);
+        when(batteryService.getNearestBatteries("6000", 1, 10000L, null)).thenReturn(nearest);
+
+        assertThat(batteryController.getBatteriesNear("6000", 25.0, null, null).getBody()).isEqualTo(near);
+        assertThat(batteryController.getNearestBatteries("6000", 1, 10000L, null).getBody()).isEqualTo(nearest);
+    }
+
+    /**
+     * Test that a subscription passes the range to the subscription service and returns its emitter.
+     */
+    @Test
+    void shouldSubscribeToRange() {
+        SseEmitter emitter = new SseEmitter();
+        when(batterySubscriptionService.subscribe(new BatteryRangeQuery("6000", "6099", 10000L, null))).thenReturn(emitter);
+
+        assertThat(batteryController.subscribeToRange("6000", "6099", 10000L, null)).isSameAs(emitter);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,78 @@
+package io.powerledger.vpp.controller;
+
+import io.powerledger.vpp.dto.AvailableCapacityResponse;
+import io.powerledger.vpp.dto.TelemetryIngestSummary;
+import io.powerledger.vpp.dto.TelemetryRangeResponse;
+import io.powerledger.vpp.dto.TelemetryReading;
+import io.powerledger.vpp.service.BatteryTelemetryService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.http.ResponseEntity;
+
+import java.time.Instant;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for {@link BatteryTelemetryController}.
+ */
+class BatteryTelemetryControllerTest {
+
+    @Mock
+    private BatteryTelemetryService batteryTelemetryService;
+
+    @InjectMocks
+    private BatteryTelemetryController batteryTelemetryController;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+    }
+
+    /**
+     * Test that uploads are answered with 202 and the ingest summary.
+     */
+    @Test
+    void shouldAcceptTelemetryReadings() {
+        List<TelemetryReading> readings = List.of(new TelemetryReading(1L, null, 50f, 1000));
+        when(batteryTelemetryService.ingest(readings)).thenReturn(new TelemetryIngestSummary(1, 0));
+
+        ResponseEntity<TelemetryIngestSummary> response = batteryTelemetryController.addTelemetry(readings);
+
+        assertThat(response.getStatusCode().value()).isEqualTo(202);
+        assertThat(response.getBody().getAccepted()).isEqualTo(1);
+    }
+
+    /**
+     * Test that the range query delegates to the service with the window.
+     */
+    @Test
+    void shouldReturnTelemetryForPostcodeRange() {
+        TelemetryRangeResponse summary = new TelemetryRangeResponse(2, Instant.EPOCH, 40.0, 200, 60, 2, 40.0, 100.0);
+        when(batteryTelemetryService.getTelemetryInRange("6000", "6199", 60)).thenReturn(summary);
+
+        ResponseEntity<TelemetryRangeResponse> response = batteryTelemetryController.getTelemetryInRange("6000", "6199", 60);
+
+        assertThat(response.getStatusCode().value()).isEqualTo(200);
+        assertThat(response.getBody()).isEqualTo(summary);
+    }
+
+    /**
+     * Test that the available capacity query delegates to the service.
+     */
+    @Test
+    void shouldReturnAvailableCapacityForPostcodeRange() {
+        AvailableCapacityResponse available = new AvailableCapacityResponse(2, 30000, 10000);
+        when(batteryTelemetryService.getAvailableCapacityInRange("6000", "6199")).thenReturn(available);
+
+        ResponseEntity<AvailableCapacityResponse> response = batteryTelemetryController.getAvailableCapacityInRange("6000", "6199");
+
+        assertThat(response.getStatusCode().value()).isEqualTo(200);
+        assertThat(response.getBody()).isEqualTo(available);
+    }
+}
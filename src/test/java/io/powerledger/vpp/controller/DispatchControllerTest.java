@@ -0,0 +1,46 @@
+package io.powerledger.vpp.controller;
+
+import io.powerledger.vpp.dto.DispatchPlanRequest;
+import io.powerledger.vpp.dto.DispatchPlanResponse;
+import io.powerledger.vpp.service.BatteryService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.http.ResponseEntity;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit tests for {@link DispatchController}.
+ */
+class DispatchControllerTest {
+
+    @Mock
+    private BatteryService batteryService;
+
+    @InjectMocks
+    private DispatchController dispatchController;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+    }
+
+    /**
+     * Test that a plan request delegates to the service and returns its plan.
+     */
+    @Test
+    void shouldReturnDispatchPlan() {
+        DispatchPlanRequest request = new DispatchPlanRequest("6000", "6999", 25000L, DispatchPlanRequest.Objective.MIN_COUNT);
+        DispatchPlanResponse plan = new DispatchPlanResponse(25000, true, 30000, 5000, 1, new long[]{7L});
+        when(batteryService.planDispatch(request)).thenReturn(plan);
+
+        ResponseEntity<DispatchPlanResponse> response = dispatchController.planDispatch(request);
+
+        assertThat(response.getStatusCode().value()).isEqualTo(200);
+        assertThat(response.getBody()).isEqualTo(plan);
+    }
+}
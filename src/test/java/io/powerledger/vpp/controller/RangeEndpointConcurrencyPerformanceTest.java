@@ -0,0 +1,170 @@
+package io.powerledger.vpp.controller;
+
+import io.powerledger.vpp.Application;
+import io.powerledger.vpp.model.Battery;
+import io.powerledger.vpp.repository.BatteryRepository;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Compares throughput and latency of the range endpoint with Tomcat on platform threads against
+ * virtual threads, at 100 to 10,000 concurrent clients, on PostgreSQL with the result cache disabled.
+ * Excluded from the default build; run with {@code mvn test -Pperformance}. Needs an open-file limit
+ * above twice the highest client count, since clients and server share the JVM.
+ */
+@Tag("performance")
+@Testcontainers
+class RangeEndpointConcurrencyPerformanceTest {
+
+    private static final int FLEET_SIZE = 100_000;
+    private static final int RANGE_WIDTH = 10;
+    private static final int[] CLIENT_COUNTS = {100, 1_000, 10_000};
+    private static final Duration WARM_UP = Duration.ofSeconds(5);
+    private static final Duration RUN_TIME = Duration.ofSeconds(15);
+
+    @Container
+    static final PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:15-alpine")
+            .withDatabaseName("testdb")
+            .withUsername("testuser")
+            .withPassword("testpass");
+
+    /**
+     * Runs every client count against a fresh application in each mode and prints one row per run.
+     */
+    @Test
+    void shouldCompareThreadModes() throws Exception {
+        boolean seeded = false;
+        for (boolean virtualThreads : new boolean[]{false, true}) {
+            try (ConfigurableApplicationContext context = start(virtualThreads)) {
+                if (!seeded) {
+                    seed(context.getBean(BatteryRepository.class));
+                    seeded = true;
+                }
+                String baseUrl = "http://localhost:" + context.getEnvironment().getProperty("local.server.port");
+
+                run(baseUrl, 100, WARM_UP);
+                for (int clients : CLIENT_COUNTS) {
+                    Result result = run(baseUrl, clients, RUN_TIME);
+                    System.out.printf("%-8s clients=%,6d  %,8.0f req/s  p50=%6.1f ms  p99=%7.1f ms  errors=%d%n",
+                            virtualThreads ? "virtual" : "platform", clients, result.throughput(),
+                            result.p50Millis(), result.p99Millis(), result.errors());
+                    assertThat(result.requests()).isPositive();
+                }
+            }
+        }
+    }
+
+    private static ConfigurableApplicationContext start(boolean virtualThreads) {
+        // Command-line arguments, so they take precedence over application-local.yml
+        return new SpringApplicationBuilder(Application.class).run(
+                "--server.port=0",
+                "--spring.datasource.url=" + postgres.getJdbcUrl(),
+                "--spring.datasource.username=" + postgres.getUsername(),
+                "--spring.datasource.password=" + postgres.getPassword(),
+                "--spring.threads.virtual.enabled=" + virtualThreads,
+                "--spring.jpa.show-sql=false",
+                "--vpp.cache.range.enabled=false",
+                "--logging.level.io.powerledger.vpp=WARN");
+    }
+
+    private static void seed(BatteryRepository batteryRepository) {
+        SplittableRandom random = new SplittableRandom(42);
+        List<Battery> fleet = new ArrayList<>(FLEET_SIZE);
+        for (int i = 0; i < FLEET_SIZE; i++) {
+            fleet.add(new Battery(null, "Battery " + i, String.format("%04d", random.nextInt(10_000)),
+                    random.nextInt(1_000, 100_001)));
+        }
+        batteryRepository.insertInBatches(fleet);
+    }
+
+    /**
+     * Each client sends range queries back to back until the run time elapses. Clients share one
+     * HttpClient, which keeps a pooled connection per concurrent request.
+     */
+    private static Result run(String baseUrl, int clients, Duration runTime) throws Exception {
+        long deadline = System.nanoTime() + runTime.toNanos();
+        AtomicLong errors = new AtomicLong();
+        List<Future<long[]>> futures = new ArrayList<>(clients);
+
+        // The executor is closed first, so every client has finished before the HttpClient closes
+        try (HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(30)).build();
+             ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int c = 0; c < clients; c++) {
+                SplittableRandom random = new SplittableRandom(c);
+                futures.add(executor.submit(() -> {
+                    long[] latencies = new long[256];
+                    int count = 0;
+                    while (System.nanoTime() < deadline) {
+                        int start = random.nextInt(10_000 - RANGE_WIDTH);
+                        HttpRequest request = HttpRequest.newBuilder(URI.create(String.format(
+                                        "%s/api/v1/batteries?startPostcode=%04d&endPostcode=%04d",
+                                        baseUrl, start, start + RANGE_WIDTH - 1)))
+                                .timeout(Duration.ofSeconds(60))
+                                .build();
+                        long sent = System.nanoTime();
+                        try {
+                            HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+                            if (response.statusCode() != 200) {
+                                errors.incrementAndGet();
+                            }
+                        } catch (IOException e) {
+                            errors.incrementAndGet();
+                        }
+                        if (count == latencies.length) {
+                            latencies = Arrays.copyOf(latencies, count * 2);
+                        }
+                        latencies[count++] = System.nanoTime() - sent;
+                    }
+                    return Arrays.copyOf(latencies, count);
+                }));
+            }
+        }
+
+        long[] all = futures.stream().map(RangeEndpointConcurrencyPerformanceTest::join)
+                .flatMapToLong(Arrays::stream).sorted().toArray();
+        // Throughput counts successful responses only; latency percentiles include failed requests
+        return new Result(all.length, errors.get(), (all.length - errors.get()) / (runTime.toNanos() / 1e9),
+                percentileMillis(all, 0.50), percentileMillis(all, 0.99));
+    }
+
+    private static long[] join(Future<long[]> future) {
+        try {
+            return future.get();
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static double percentileMillis(long[] sortedNanos, double percentile) {
+        if (sortedNanos.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.min(sortedNanos.length - 1, Math.ceil(percentile * sortedNanos.length) - 1);
+        return sortedNanos[Math.max(0, index)] / 1e6;
+    }
+
+    private record Result(long requests, long errors, double throughput, double p50Millis, double p99Millis) {
+    }
+}
@@ -0,0 +1,131 @@
+package io.powerledger.vpp.dispatch;
+
+import io.powerledger.vpp.dto.DispatchPlanRequest.Objective;
+import io.powerledger.vpp.dto.DispatchPlanResponse;
+import io.powerledger.vpp.index.BatteryRangeIndex.CapacitySlice;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Unit tests for {@link DispatchPlanner}.
+ */
+class DispatchPlannerTest {
+
+    // Ids 11..16 at positions 1..6; position 0 lies outside the slice
+    private static final CapacitySlice SLICE = new CapacitySlice(
+            new long[]{10, 11, 12, 13, 14, 15, 16},
+            new int[]{99_000, 5000, 30_000, 12_000, 8000, 20_000, 7000},
+            1, 7);
+
+    /**
+     * Test that the fewest batteries are taken, and the smallest one swapped for the smallest that still meets the target.
+     */
+    @Test
+    void shouldPlanFewestBatteriesWithSmallOvershoot() {
+        DispatchPlanResponse plan = DispatchPlanner.plan(SLICE, 41_000, Objective.MIN_COUNT);
+
+        // 30,000 + 20,000 meets the target with two; 30,000 + 12,000 is the smallest such pair
+        assertThat(plan.isTargetMet()).isTrue();
+        assertThat(plan.getBatteryIds()).containsExactly(12L, 13L);
+        assertThat(plan.getBatteryCount()).isEqualTo(2);
+        assertThat(plan.getPlannedCapacity()).isEqualTo(42_000);
+        assertThat(plan.getOvershoot()).isEqualTo(1000);
+    }
+
+    /**
+     * Test that first-fit decreasing fills the target from the largest batteries and closes the gap with the smallest skipped one.
+     */
+    @Test
+    void shouldPlanSmallOvershoot() {
+        DispatchPlanResponse plan = DispatchPlanner.plan(SLICE, 41_000, Objective.MIN_OVERSHOOT);
+
+        // 30,000 and 8,000 fit; 5,000, the smallest of those that did not, closes the remaining 3,000
+        assertThat(plan.isTargetMet()).isTrue();
+        assertThat(plan.getBatteryIds()).containsExactly(12L, 14L, 11L);
+        assertThat(plan.getPlannedCapacity()).isEqualTo(43_000);
+
+        DispatchPlanResponse exact = DispatchPlanner.plan(SLICE, 50_000, Objective.MIN_OVERSHOOT);
+        assertThat(exact.getOvershoot()).isZero();
+        assertThat(exact.getBatteryIds()).containsExactly(12L, 15L);
+    }
+
+    /**
+     * Test that a target above the range's capacity yields every battery in the range and is reported as not met.
+     */
+    @Test
+    void shouldReturnWholeRangeWhenTargetCannotBeMet() {
+        for (Objective objective : Objective.values()) {
+            DispatchPlanResponse plan = DispatchPlanner.plan(SLICE, 100_000, objective);
+
+            assertThat(plan.isTargetMet()).isFalse();
+            assertThat(plan.getBatteryIds()).containsExactlyInAnyOrder(11L, 12L, 13L, 14L, 15L, 16L);
+            assertThat(plan.getOvershoot()).isEqualTo(82_000 - 100_000);
+        }
+    }
+
+    /**
+     * Test that the minimum-count plan meets random targets with as few batteries as the largest-first prefix,
+     * for capacities in exact bands and for capacities far wider than the bands.
+     */
+    @Test
+    void shouldUseMinimumCountForRandomTargets() {
+        SplittableRandom random = new SplittableRandom(11);
+        for (int maxCapacity : new int[]{2000, 100_000, Integer.MAX_VALUE}) {
+            int[] capacities = random.ints(5000, 1, maxCapacity).toArray();
+            CapacitySlice slice = sliceOf(capacities);
+            int[] descending = Arrays.stream(capacities).boxed().sorted((a, b) -> Integer.compare(b, a)).mapToInt(Integer::intValue).toArray();
+            long total = Arrays.stream(capacities).asLongStream().sum();
+
+            for (int t = 0; t < 50; t++) {
+                long target = random.nextLong(1, total + 1);
+                int needed = 0;
+                for (long sum = 0; sum < target; needed++) {
+                    sum += descending[needed];
+                }
+
+                DispatchPlanResponse plan = DispatchPlanner.plan(slice, target, Objective.MIN_COUNT);
+
+                assertThat(plan.getBatteryCount()).isEqualTo(needed);
+                assertPlanCapacity(plan, capacities, target);
+            }
+        }
+    }
+
+    /**
+     * Test that first-fit decreasing meets random targets with an overshoot below the largest capacity.
+     */
+    @Test
+    void shouldKeepOvershootBelowLargestCapacityForRandomTargets() {
+        SplittableRandom random = new SplittableRandom(13);
+        int[] capacities = random.ints(5000, 1000, 100_001).toArray();
+        CapacitySlice slice = sliceOf(capacities);
+        long total = Arrays.stream(capacities).asLongStream().sum();
+
+        for (int t = 0; t < 50; t++) {
+            long target = random.nextLong(1, total + 1);
+
+            DispatchPlanResponse plan = DispatchPlanner.plan(slice, target, Objective.MIN_OVERSHOOT);
+
+            assertThat(plan.getOvershoot()).isBetween(0L, 100_000L);
+            assertPlanCapacity(plan, capacities, target);
+        }
+    }
+
+    private static CapacitySlice sliceOf(int[] capacities) {
+        long[] ids = new long[capacities.length];
+        Arrays.setAll(ids, i -> i);
+        return new CapacitySlice(ids, capacities, 0, capacities.length);
+    }
+
+    private static void assertPlanCapacity(DispatchPlanResponse plan, int[] capacities, long target) {
+        assertThat(plan.isTargetMet()).isTrue();
+        assertThat(plan.getBatteryIds()).doesNotHaveDuplicates().hasSize(plan.getBatteryCount());
+        assertThat(Arrays.stream(plan.getBatteryIds()).map(id -> capacities[(int) id]).sum())
+                .isEqualTo(plan.getPlannedCapacity())
+                .isGreaterThanOrEqualTo(target);
+    }
+}
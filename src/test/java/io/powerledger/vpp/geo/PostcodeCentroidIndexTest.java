@@ -0,0 +1,103 @@
+package io.powerledger.vpp.geo;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.ClassPathResource;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+
+/**
+ * Unit tests for {@link PostcodeCentroidIndex}.
+ */
+class PostcodeCentroidIndexTest {
+
+    private static PostcodeCentroidIndex indexOf(String csv, double cellDegrees) {
+        return new PostcodeCentroidIndex(new ByteArrayResource(csv.getBytes(StandardCharsets.UTF_8)), cellDegrees);
+    }
+
+    /**
+     * Test that the bundled centroid file loads, that Perth, Fremantle and Mandurah are found at their distances,
+     * and that every other postcode is listed as having no centroid.
+     */
+    @Test
+    void shouldFindPostcodesWithinRadiusNearestFirst() {
+        PostcodeCentroidIndex index = new PostcodeCentroidIndex(new ClassPathResource("geo/postcode-centroids.csv"), 0.5);
+
+        PostcodeCentroidIndex.Neighbours neighbours = index.withinRadius("6160", 15);
+
+        assertThat(index.contains("6000")).isTrue();
+        assertThat(index.contains("6001")).isFalse();
+        assertThat(index.postcodesWithoutCentroid()).hasSize(10_000 - index.size()).isSorted()
+                .contains(0, 6001, 9999).doesNotContain(6000, 6160);
+        assertThat(neighbours.postcodes()[0]).isEqualTo(6160);
+        assertThat(neighbours.distancesKm()[0]).isZero();
+        assertThat(neighbours.postcodes()).contains(6011, 6010, 6151).doesNotContain(6000, 6210);
+        assertThat(neighbours.distancesKm()).isSorted();
+        assertThat(index.withinRadius("6160", 60).postcodes()).contains(6000, 6210).doesNotContain(6230, 2000);
+    }
+
+    /**
+     * Test that the haversine distance between Sydney and Melbourne is about 714 km.
+     */
+    @Test
+    void shouldMeasureGreatCircleDistance() {
+        assertThat(PostcodeCentroidIndex.distanceKm(-33.8688, 151.2093, -37.8136, 144.9631)).isCloseTo(713.4, within(1.0));
+    }
+
+    /**
+     * Test that the grid returns exactly the postcodes a full scan finds, for random centroids and radii.
+     */
+    @Test
+    void shouldMatchFullScan() {
+        SplittableRandom random = new SplittableRandom(7);
+        double[][] points = new double[2][2_000];
+        StringBuilder csv = new StringBuilder("postcode,latitude,longitude\n");
+        for (int postcode = 0; postcode < 2_000; postcode++) {
+            points[0][postcode] = random.nextDouble(-44, -10);
+            points[1][postcode] = random.nextDouble(113, 154);
+            csv.append(String.format("%04d,%f,%f%n", postcode, points[0][postcode], points[1][postcode]));
+        }
+        PostcodeCentroidIndex index = indexOf(csv.toString(), 0.25);
+
+        for (int query = 0; query < 50; query++) {
+            int centre = random.nextInt(2_000);
+            double radiusKm = random.nextDouble(1, 1_500);
+            // Parse the coordinates back as the index did, from the formatted text
+            double latitude = Double.parseDouble(String.format("%f", points[0][centre]));
+            double longitude = Double.parseDouble(String.format("%f", points[1][centre]));
+            int[] expected = IntStream.range(0, 2_000)
+                    .filter(p -> PostcodeCentroidIndex.distanceKm(latitude, longitude,
+                            Double.parseDouble(String.format("%f", points[0][p])),
+                            Double.parseDouble(String.format("%f", points[1][p]))) <= radiusKm)
+                    .toArray();
+
+            int[] found = index.withinRadius(String.format("%04d", centre), radiusKm).postcodes().clone();
+            Arrays.sort(found);
+            assertThat(found).containsExactly(expected);
+        }
+    }
+
+    /**
+     * Test that malformed lines fail the load with their line number, and unknown postcodes are rejected.
+     */
+    @Test
+    void shouldRejectInvalidCentroids() {
+        assertThatThrownBy(() -> indexOf("# comment\n6000,-31.9,115.8\n6000,-32.0,115.7\n", 0.5))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("line 3");
+        assertThatThrownBy(() -> indexOf("6000,-91,115.8\n", 0.5))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("line 1");
+
+        PostcodeCentroidIndex index = indexOf("6000,-31.9,115.8\n", 0.5);
+        assertThatThrownBy(() -> index.withinRadius("6001", 10)).isInstanceOf(IllegalArgumentException.class);
+        assertThat(index.size()).isEqualTo(1);
+    }
+}
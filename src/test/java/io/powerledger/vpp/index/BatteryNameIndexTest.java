@@ -0,0 +1,182 @@
+package io.powerledger.vpp.index;
+
+import io.powerledger.vpp.dto.BatteryChange;
+import io.powerledger.vpp.dto.BatteryRow;
+import io.powerledger.vpp.event.BatteriesRegisteredEvent;
+import io.powerledger.vpp.event.BatteriesUpdatedEvent;
+import io.powerledger.vpp.model.Battery;
+import io.powerledger.vpp.repository.BatteryRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit tests for {@link BatteryNameIndex}.
+ */
+class BatteryNameIndexTest {
+
+    private final List<Runnable> rebuilds = new ArrayList<>();
+    private BatteryNameIndex batteryNameIndex;
+
+    @BeforeEach
+    void setUp() {
+        BatteryRepository batteryRepository = mock(BatteryRepository.class);
+        when(batteryRepository.findAllRows()).thenReturn(List.of(
+                new BatteryRow(7L, "Hay Street", "6000", 23500),
+                new BatteryRow(2L, "Cannington", "6107", 13500),
+                new BatteryRow(3L, "Haymarket", "2000", 40000),
+                new BatteryRow(4L, "Midland Hay Depot", "6056", 50500),
+                new BatteryRow(5L, "hay street", "6000", 10000),
+                new BatteryRow(6L, "Bentley", "6102", 85000)
+        ));
+        batteryNameIndex = new BatteryNameIndex(batteryRepository, true, rebuilds::add);
+        batteryNameIndex.load();
+    }
+
+    /**
+     * Test that prefix matches come first, then other substring matches, each by name and then id, ignoring case.
+     */
+    @Test
+    void shouldReturnPrefixMatchesBeforeSubstringMatches() {
+        List<BatteryRow> matches = batteryNameIndex.search(" HAY ", 10);
+
+        assertThat(matches).extracting(BatteryRow::getId).containsExactly(5L, 7L, 3L, 4L);
+        assertThat(matches.get(3)).isEqualTo(new BatteryRow(4L, "Midland Hay Depot", "6056", 50500));
+        assertThat(batteryNameIndex.search("hay", 2)).extracting(BatteryRow::getId).containsExactly(5L, 7L);
+    }
+
+    /**
+     * Test that substring queries must match every trigram in sequence, not just contain them.
+     */
+    @Test
+    void shouldVerifyCandidatesFromTrigrams() {
+        assertThat(batteryNameIndex.search("ningto", 10)).extracting(BatteryRow::getName).containsExactly("Cannington");
+        assertThat(batteryNameIndex.search("street", 10)).extracting(BatteryRow::getId).containsExactly(5L, 7L);
+        assertThat(batteryNameIndex.search("tonning", 10)).isEmpty();
+        assertThat(batteryNameIndex.search("xyz", 10)).isEmpty();
+    }
+
+    /**
+     * Test that queries shorter than a trigram match name prefixes only.
+     */
+    @Test
+    void shouldMatchOnlyPrefixesForShortQueries() {
+        assertThat(batteryNameIndex.search("ha", 10)).extracting(BatteryRow::getId).containsExactly(5L, 7L, 3L);
+        assertThat(batteryNameIndex.search("ey", 10)).isEmpty();
+    }
+
+    /**
+     * Test that registered batteries are searchable, both while held outside the trigram index and after it is rebuilt.
+     */
+    @Test
+    void shouldSearchRegisteredBatteries() {
+        batteryNameIndex.onBatteriesRegistered(new BatteriesRegisteredEvent(List.of(
+                new Battery(8L, "Hay Park", "6000", 5000))));
+
+        assertThat(batteryNameIndex.search("hay", 10)).extracting(BatteryRow::getId).containsExactly(8L, 5L, 7L, 3L, 4L);
+
+        List<Battery> many = new ArrayList<>();
+        for (long id = 100; id < 100 + BatteryNameIndex.MAX_RECENT; id++) {
+            many.add(new Battery(id, "Kewdale " + id, "6105", 1000));
+        }
+        batteryNameIndex.onBatteriesRegistered(new BatteriesRegisteredEvent(many));
+        assertThat(rebuilds).hasSize(1);
+        rebuilds.remove(0).run();
+
+        assertThat(batteryNameIndex.search("hay p", 10)).extracting(BatteryRow::getId).containsExactly(8L);
+        assertThat(batteryNameIndex.search("dale 10099", 10)).extracting(BatteryRow::getId).containsExactly(10099L);
+        assertThat(batteryNameIndex.search("kewdale", 3)).extracting(BatteryRow::getId).containsExactly(100L, 1000L, 10000L);
+    }
+
+    /**
+     * Test that batteries registered while the trigram index is rebuilt in the background stay searchable once it is swapped in.
+     */
+    @Test
+    void shouldKeepRegistrationsMadeDuringRebuild() {
+        List<Battery> many = new ArrayList<>();
+        for (long id = 100; id <= 100 + BatteryNameIndex.MAX_RECENT; id++) {
+            many.add(new Battery(id, "Kewdale " + id, "6105", 1000));
+        }
+        batteryNameIndex.onBatteriesRegistered(new BatteriesRegisteredEvent(many));
+        batteryNameIndex.onBatteriesRegistered(new BatteriesRegisteredEvent(List.of(
+                new Battery(20000L, "Hay Park", "6000", 5000))));
+
+        assertThat(rebuilds).hasSize(1);
+        assertThat(batteryNameIndex.search("hay p", 10)).extracting(BatteryRow::getId).containsExactly(20000L);
+
+        rebuilds.remove(0).run();
+        batteryNameIndex.onBatteriesRegistered(new BatteriesRegisteredEvent(List.of(
+                new Battery(20001L, "Hay Park East", "6000", 5000))));
+
+        assertThat(rebuilds).isEmpty();
+        assertThat(batteryNameIndex.search("hay p", 10)).extracting(BatteryRow::getId).containsExactly(20000L, 20001L);
+        assertThat(batteryNameIndex.search("dale 10100", 10)).extracting(BatteryRow::getId).containsExactly(10100L);
+        assertThat(batteryNameIndex.search("hay", 10)).extracting(BatteryRow::getId).containsExactly(20000L, 20001L, 5L, 7L, 3L, 4L);
+    }
+
+    /**
+     * Test that renamed batteries, including ones registered after the load, are found by their new name only.
+     */
+    @Test
+    void shouldSearchUpdatedBatteriesByNewName() {
+        batteryNameIndex.onBatteriesRegistered(new BatteriesRegisteredEvent(List.of(
+                new Battery(8L, "Hay Park", "6000", 5000))));
+
+        batteryNameIndex.onBatteriesUpdated(new BatteriesUpdatedEvent(List.of(
+                new BatteryChange(new Battery(7L, "Hay Street", "6000", 23500), new Battery(7L, "Murray Street", "6000", 23500)),
+                new BatteryChange(new Battery(8L, "Hay Park", "6000", 5000), new Battery(8L, "Hay Park", "6001", 6000)))));
+
+        assertThat(batteryNameIndex.search("hay", 10)).extracting(BatteryRow::getId).containsExactly(8L, 5L, 3L, 4L);
+        assertThat(batteryNameIndex.search("hay park", 10)).containsExactly(new BatteryRow(8L, "Hay Park", "6001", 6000));
+        assertThat(batteryNameIndex.search("street", 10)).extracting(BatteryRow::getId).containsExactly(5L, 7L);
+        assertThat(batteryNameIndex.search("murray", 10)).containsExactly(new BatteryRow(7L, "Murray Street", "6000", 23500));
+    }
+
+    /**
+     * Test that sync changes are applied without a rebuild, and that a later rebuild keeps only their current form.
+     */
+    @Test
+    void shouldFoldUpdatedBatteriesIntoRebuiltIndex() {
+        batteryNameIndex.onBatteriesUpdated(new BatteriesUpdatedEvent(List.of(
+                new BatteryChange(new Battery(7L, "Hay Street", "6000", 23500), new Battery(7L, "Murray Street", "6000", 23500)))));
+        batteryNameIndex.onBatteriesUpdated(new BatteriesUpdatedEvent(List.of(
+                new BatteryChange(new Battery(7L, "Murray Street", "6000", 23500), new Battery(7L, "Wellington Street", "6000", 23500)))));
+
+        assertThat(rebuilds).isEmpty();
+        assertThat(batteryNameIndex.search("hay", 1)).extracting(BatteryRow::getId).containsExactly(5L);
+        assertThat(batteryNameIndex.search("street", 10)).extracting(BatteryRow::getName).containsExactly("hay street", "Wellington Street");
+
+        List<Battery> many = new ArrayList<>();
+        for (long id = 100; id < 100 + BatteryNameIndex.MAX_RECENT; id++) {
+            many.add(new Battery(id, "Kewdale " + id, "6105", 1000));
+        }
+        batteryNameIndex.onBatteriesRegistered(new BatteriesRegisteredEvent(many));
+        batteryNameIndex.onBatteriesUpdated(new BatteriesUpdatedEvent(List.of(
+                new BatteryChange(new Battery(3L, "Haymarket", "2000", 40000), new Battery(3L, "Haymarket", "2000", 45000)))));
+        assertThat(rebuilds).hasSize(1);
+        batteryNameIndex.onBatteriesUpdated(new BatteriesUpdatedEvent(List.of(
+                new BatteryChange(new Battery(3L, "Haymarket", "2000", 45000), new Battery(3L, "Haymarket", "2000", 50000)))));
+        rebuilds.remove(0).run();
+
+        assertThat(batteryNameIndex.search("street", 10)).extracting(BatteryRow::getName).containsExactly("hay street", "Wellington Street");
+        assertThat(batteryNameIndex.search("haymarket", 10)).containsExactly(new BatteryRow(3L, "Haymarket", "2000", 50000));
+        assertThat(batteryNameIndex.search("murray", 10)).isEmpty();
+    }
+
+    /**
+     * Test that the index stays unloaded when disabled, so callers fall back to the repository.
+     */
+    @Test
+    void shouldNotLoadWhenDisabled() {
+        BatteryNameIndex disabled = new BatteryNameIndex(mock(BatteryRepository.class), false);
+        disabled.load();
+
+        assertThat(disabled.isLoaded()).isFalse();
+    }
+}
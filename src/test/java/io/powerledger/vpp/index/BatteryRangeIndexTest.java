@@ -0,0 +1,320 @@
+package io.powerledger.vpp.index;
+
+import io.powerledger.vpp.dto.BatteryChange;
+import io.powerledger.vpp.dto.BatteryRow;
+import io.powerledger.vpp.dto.CapacityAggregate;
+import io.powerledger.vpp.dto.PostcodeSpan;
+import io.powerledger.vpp.event.BatteriesRegisteredEvent;
+import io.powerledger.vpp.event.BatteriesUpdatedEvent;
+import io.powerledger.vpp.model.Battery;
+import io.powerledger.vpp.repository.BatteryRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for {@link BatteryRangeIndex}.
+ */
+class BatteryRangeIndexTest {
+
+    private final List<Runnable> backgroundTasks = new ArrayList<>();
+    private BatteryRepository batteryRepository;
+    private BatteryRangeIndex batteryRangeIndex;
+
+    @BeforeEach
+    void setUp() {
+        batteryRepository = mock(BatteryRepository.class);
+        when(batteryRepository.findAllRows()).thenReturn(List.of(
+                new BatteryRow(1L, "Carmel", "6076", 36000),
+                new BatteryRow(2L, "Bentley", "6102", 85000),
+                new BatteryRow(3L, "Hay Street", "6000", 23500),
+                new BatteryRow(4L, "Bagot", "0820", 27000)
+        ));
+        batteryRangeIndex = new BatteryRangeIndex(batteryRepository, true, "", backgroundTasks::add);
+        batteryRangeIndex.load();
+    }
+
+    /**
+     * Test that unfiltered totals come from the prefix sums over the postcode slice.
+     */
+    @Test
+    void shouldAggregateCapacityForPostcodeRange() {
+        CapacityAggregate aggregate = batteryRangeIndex.aggregateCapacityInRange("6000", "6100", Integer.MIN_VALUE, Integer.MAX_VALUE);
+
+        assertThat(aggregate.getBatteryCount()).isEqualTo(2);
+        assertThat(aggregate.getTotalCapacity()).isEqualTo(59500);
+        assertThat(batteryRangeIndex.findNamesInRange("0000", "9999", Integer.MIN_VALUE, Integer.MAX_VALUE))
+                .containsExactlyInAnyOrder("Bagot", "Bentley", "Carmel", "Hay Street");
+    }
+
+    /**
+     * Test that capacity bounds are applied inclusively.
+     */
+    @Test
+    void shouldApplyCapacityFilters() {
+        CapacityAggregate aggregate = batteryRangeIndex.aggregateCapacityInRange("0000", "9999", 27000, 85000);
+
+        assertThat(aggregate.getBatteryCount()).isEqualTo(3);
+        assertThat(aggregate.getTotalCapacity()).isEqualTo(148000);
+        assertThat(batteryRangeIndex.findNamesInRange("0000", "9999", 27000, 85000))
+                .containsExactlyInAnyOrder("Bagot", "Bentley", "Carmel");
+    }
+
+    /**
+     * Test that registered batteries are merged into the index.
+     */
+    @Test
+    void shouldMergeRegisteredBatteries() {
+        batteryRangeIndex.onBatteriesRegistered(new BatteriesRegisteredEvent(List.of(
+                new Battery(5L, "Midland", "6057", 50500))));
+
+        assertThat(batteryRangeIndex.aggregateCapacityInRange("6050", "6080", Integer.MIN_VALUE, Integer.MAX_VALUE).getTotalCapacity())
+                .isEqualTo(86500);
+        assertThat(batteryRangeIndex.existsByPostcodeBetween("7000", "7999")).isFalse();
+    }
+
+    /**
+     * Test that an updated battery is moved to its new postcode with its new name and capacity.
+     */
+    @Test
+    void shouldReplaceUpdatedBatteries() {
+        batteryRangeIndex.onBatteriesUpdated(new BatteriesUpdatedEvent(List.of(new BatteryChange(
+                new Battery(1L, "Carmel", "6076", 36000), new Battery(1L, "Carmel East", "6105", 40000)))));
+
+        assertThat(batteryRangeIndex.existsByPostcodeBetween("6070", "6080")).isFalse();
+        assertThat(batteryRangeIndex.findRowsInSpans(List.of(new PostcodeSpan(6100, 6200, Integer.MIN_VALUE, Integer.MAX_VALUE))))
+                .containsExactly(new BatteryRow(2L, "Bentley", "6102", 85000), new BatteryRow(1L, "Carmel East", "6105", 40000));
+        assertThat(batteryRangeIndex.aggregateCapacityInRange("0000", "9999", Integer.MIN_VALUE, Integer.MAX_VALUE))
+                .extracting(CapacityAggregate::getBatteryCount, CapacityAggregate::getTotalCapacity)
+                .containsExactly(4L, 175500L);
+    }
+
+    /**
+     * Test that a slice covers the ids and capacities of the range, including batteries registered after the load.
+     */
+    @Test
+    void shouldSliceIdsAndCapacitiesOfRange() {
+        batteryRangeIndex.onBatteriesRegistered(new BatteriesRegisteredEvent(List.of(
+                new Battery(5L, "Midland", "6057", 50500))));
+
+        BatteryRangeIndex.CapacitySlice slice = batteryRangeIndex.sliceInRange("6000", "6100");
+
+        assertThat(slice.size()).isEqualTo(3);
+        assertThat(Arrays.copyOfRange(slice.ids(), slice.from(), slice.to())).containsExactly(3L, 5L, 1L);
+        assertThat(Arrays.copyOfRange(slice.capacities(), slice.from(), slice.to())).containsExactly(23500, 50500, 36000);
+        assertThat(batteryRangeIndex.sliceInRange("7000", "7999").size()).isZero();
+    }
+
+    /**
+     * Test that registrations are queried from the recent snapshot until a background fold merges them
+     * into the base, keeping registrations made while it runs.
+     */
+    @Test
+    void shouldFoldRegistrationsInBackground() {
+        batteryRangeIndex.onBatteriesRegistered(new BatteriesRegisteredEvent(manyBatteries(100, BatteryRangeIndex.MAX_RECENT + 1)));
+
+        assertThat(backgroundTasks).hasSize(1);
+        assertThat(batteryRangeIndex.aggregateCapacityInRange("5000", "5000", Integer.MIN_VALUE, Integer.MAX_VALUE).getBatteryCount())
+                .isEqualTo(BatteryRangeIndex.MAX_RECENT + 1);
+
+        batteryRangeIndex.onBatteriesRegistered(new BatteriesRegisteredEvent(List.of(
+                new Battery(20000L, "Midland", "6057", 50500))));
+        backgroundTasks.remove(0).run();
+        batteryRangeIndex.onBatteriesRegistered(new BatteriesRegisteredEvent(List.of(
+                new Battery(20001L, "Guildford", "6055", 8000))));
+
+        assertThat(backgroundTasks).isEmpty();
+        assertThat(batteryRangeIndex.aggregateCapacityInRange("0000", "9999", Integer.MIN_VALUE, Integer.MAX_VALUE))
+                .extracting(CapacityAggregate::getBatteryCount, CapacityAggregate::getTotalCapacity)
+                .containsExactly(BatteryRangeIndex.MAX_RECENT + 7L, 171500L + 1000L * (BatteryRangeIndex.MAX_RECENT + 1) + 58500L);
+        assertThat(batteryRangeIndex.findNamesInRange("6000", "6100", Integer.MIN_VALUE, Integer.MAX_VALUE))
+                .containsExactly("Hay Street", "Guildford", "Midland", "Carmel");
+        BatteryRangeIndex.CapacitySlice folded = batteryRangeIndex.sliceInRange("5000", "5000");
+        assertThat(folded.size()).isEqualTo(BatteryRangeIndex.MAX_RECENT + 1);
+        assertThat(folded.ids()).hasSizeGreaterThan(folded.size());
+    }
+
+    /**
+     * Test that a fold finishing after a fleet sync is discarded, since the sync already folded its batteries.
+     */
+    @Test
+    void shouldDiscardFoldOvertakenBySync() {
+        batteryRangeIndex.onBatteriesRegistered(new BatteriesRegisteredEvent(manyBatteries(100, BatteryRangeIndex.MAX_RECENT + 1)));
+        batteryRangeIndex.onBatteriesUpdated(new BatteriesUpdatedEvent(List.of(new BatteryChange(
+                new Battery(100L, "Battery 100", "5000", 1000), new Battery(100L, "Battery 100", "5001", 2000)))));
+
+        backgroundTasks.remove(0).run();
+
+        assertThat(batteryRangeIndex.aggregateCapacityInRange("5000", "5001", Integer.MIN_VALUE, Integer.MAX_VALUE))
+                .extracting(CapacityAggregate::getBatteryCount, CapacityAggregate::getTotalCapacity)
+                .containsExactly(BatteryRangeIndex.MAX_RECENT + 1L, 1000L * BatteryRangeIndex.MAX_RECENT + 2000L);
+        assertThat(batteryRangeIndex.findRowsInSpans(List.of(new PostcodeSpan(5001, 5001, Integer.MIN_VALUE, Integer.MAX_VALUE))))
+                .containsExactly(new BatteryRow(100L, "Battery 100", "5001", 2000));
+    }
+
+    /**
+     * Test that the index declines bounds that are not 4-digit postcodes, or when it is disabled.
+     */
+    @Test
+    void shouldOnlyServeFourDigitPostcodesWhenEnabled() {
+        assertThat(batteryRangeIndex.canServe("6000", "6100")).isTrue();
+        assertThat(batteryRangeIndex.canServe("600", "6100")).isFalse();
+        assertThat(new BatteryRangeIndex(batteryRepository, false, "").canServe("6000", "6100")).isFalse();
+    }
+
+    /**
+     * Test that rows in several spans come back in postcode order, and are counted, each span applying its own capacity bounds.
+     */
+    @Test
+    void shouldFindRowsInSpans() {
+        List<PostcodeSpan> spans = List.of(
+                new PostcodeSpan(6100, 6200, Integer.MIN_VALUE, Integer.MAX_VALUE),
+                new PostcodeSpan(0, 6076, 30000, Integer.MAX_VALUE));
+        List<BatteryRow> rows = batteryRangeIndex.findRowsInSpans(spans);
+
+        assertThat(rows).containsExactly(
+                new BatteryRow(1L, "Carmel", "6076", 36000),
+                new BatteryRow(2L, "Bentley", "6102", 85000));
+        assertThat(batteryRangeIndex.countInSpans(spans)).isEqualTo(2);
+    }
+
+    /**
+     * Test that a restart reads the snapshot file, including appended registrations, and queries only
+     * the rows newer than it instead of scanning the table.
+     */
+    @Test
+    void shouldWarmStartFromSnapshotFile(@TempDir Path directory) {
+        String snapshotPath = directory.resolve("fleet.snapshot").toString();
+        BatteryRangeIndex first = new BatteryRangeIndex(batteryRepository, true, snapshotPath);
+        first.load();
+        first.onBatteriesRegistered(new BatteriesRegisteredEvent(List.of(new Battery(5L, "Midland", "6057", 50500))));
+        when(batteryRepository.countByIdLessThanEqual(5L)).thenReturn(5L);
+        when(batteryRepository.findRowsAfterId(5L)).thenReturn(List.of(new BatteryRow(6L, "Bassendean", "6054", 12000)));
+
+        BatteryRangeIndex restarted = new BatteryRangeIndex(batteryRepository, true, snapshotPath);
+        restarted.load();
+
+        // Once for the index built in setUp and once for the first load, which wrote the file
+        verify(batteryRepository, times(2)).findAllRows();
+        assertThat(restarted.aggregateCapacityInRange("0000", "9999", Integer.MIN_VALUE, Integer.MAX_VALUE))
+                .extracting(CapacityAggregate::getBatteryCount, CapacityAggregate::getTotalCapacity)
+                .containsExactly(6L, 234000L);
+        assertThat(restarted.findNamesInRange("6050", "6060", Integer.MIN_VALUE, Integer.MAX_VALUE))
+                .containsExactly("Bassendean", "Midland");
+    }
+
+    /**
+     * Test that a snapshot file holding a different number of rows than the table is replaced by a scan.
+     */
+    @Test
+    void shouldScanTableWhenSnapshotFileDisagrees(@TempDir Path directory) {
+        String snapshotPath = directory.resolve("fleet.snapshot").toString();
+        new BatteryRangeIndex(batteryRepository, true, snapshotPath).load();
+        when(batteryRepository.countByIdLessThanEqual(4L)).thenReturn(5L);
+
+        BatteryRangeIndex restarted = new BatteryRangeIndex(batteryRepository, true, snapshotPath);
+        restarted.load();
+
+        verify(batteryRepository, times(3)).findAllRows();
+        verify(batteryRepository, never()).findRowsAfterId(anyLong());
+        assertThat(restarted.aggregateCapacityInRange("0000", "9999", Integer.MIN_VALUE, Integer.MAX_VALUE).getBatteryCount())
+                .isEqualTo(4);
+    }
+
+    /**
+     * Test that updates rewrite the snapshot file in the background, so a restart reads the new values
+     * without scanning the table.
+     */
+    @Test
+    void shouldRewriteSnapshotFileAfterUpdates(@TempDir Path directory) {
+        Path snapshot = directory.resolve("fleet.snapshot");
+        String snapshotPath = snapshot.toString();
+        BatteryRangeIndex first = new BatteryRangeIndex(batteryRepository, true, snapshotPath, backgroundTasks::add);
+        first.load();
+        BatteriesUpdatedEvent event = new BatteriesUpdatedEvent(List.of(new BatteryChange(
+                new Battery(2L, "Bentley", "6102", 85000), new Battery(2L, "Bentley", "6102", 90000))));
+        first.beforeBatteriesUpdateCommitted(event);
+        first.onBatteriesUpdated(event);
+        first.afterBatteriesUpdateCompleted(event);
+
+        assertThat(snapshot).doesNotExist();
+        assertThat(backgroundTasks).hasSize(1);
+        backgroundTasks.remove(0).run();
+        first.onBatteriesRegistered(new BatteriesRegisteredEvent(List.of(new Battery(5L, "Midland", "6057", 50500))));
+        when(batteryRepository.countByIdLessThanEqual(5L)).thenReturn(5L);
+
+        BatteryRangeIndex restarted = new BatteryRangeIndex(batteryRepository, true, snapshotPath);
+        restarted.load();
+
+        verify(batteryRepository, times(2)).findAllRows();
+        assertThat(restarted.aggregateCapacityInRange("6102", "6102", Integer.MIN_VALUE, Integer.MAX_VALUE).getTotalCapacity())
+                .isEqualTo(90000);
+        assertThat(restarted.existsByPostcodeBetween("6057", "6057")).isTrue();
+    }
+
+    /**
+     * Test that a rewrite waits for a sync that started meanwhile, and then writes the changes of both.
+     */
+    @Test
+    void shouldCoalesceRewritesOfOverlappingSyncs(@TempDir Path directory) {
+        Path snapshot = directory.resolve("fleet.snapshot");
+        BatteryRangeIndex first = new BatteryRangeIndex(batteryRepository, true, snapshot.toString(), backgroundTasks::add);
+        first.load();
+        BatteriesUpdatedEvent bentley = new BatteriesUpdatedEvent(List.of(new BatteryChange(
+                new Battery(2L, "Bentley", "6102", 85000), new Battery(2L, "Bentley", "6102", 90000))));
+        BatteriesUpdatedEvent carmel = new BatteriesUpdatedEvent(List.of(new BatteryChange(
+                new Battery(1L, "Carmel", "6076", 36000), new Battery(1L, "Carmel", "6076", 40000))));
+        first.beforeBatteriesUpdateCommitted(bentley);
+        first.onBatteriesUpdated(bentley);
+        first.afterBatteriesUpdateCompleted(bentley);
+        first.beforeBatteriesUpdateCommitted(carmel);
+
+        backgroundTasks.remove(0).run();
+        assertThat(snapshot).doesNotExist();
+
+        first.onBatteriesUpdated(carmel);
+        first.afterBatteriesUpdateCompleted(carmel);
+        assertThat(backgroundTasks).hasSize(1);
+        backgroundTasks.remove(0).run();
+        when(batteryRepository.countByIdLessThanEqual(4L)).thenReturn(4L);
+
+        BatteryRangeIndex restarted = new BatteryRangeIndex(batteryRepository, true, snapshot.toString());
+        restarted.load();
+
+        verify(batteryRepository, times(2)).findAllRows();
+        assertThat(restarted.aggregateCapacityInRange("0000", "9999", Integer.MIN_VALUE, Integer.MAX_VALUE).getTotalCapacity())
+                .isEqualTo(180500);
+    }
+
+    /**
+     * Test that a snapshot file removed before an update commits, and not rewritten, leads to a scan on restart.
+     */
+    @Test
+    void shouldScanTableWhenUpdateLeftNoSnapshotFile(@TempDir Path directory) {
+        String snapshotPath = directory.resolve("fleet.snapshot").toString();
+        BatteryRangeIndex first = new BatteryRangeIndex(batteryRepository, true, snapshotPath);
+        first.load();
+        first.beforeBatteriesUpdateCommitted(new BatteriesUpdatedEvent(List.of(new BatteryChange(
+                new Battery(2L, "Bentley", "6102", 85000), new Battery(2L, "Bentley", "6102", 90000)))));
+
+        new BatteryRangeIndex(batteryRepository, true, snapshotPath).load();
+
+        verify(batteryRepository, times(3)).findAllRows();
+    }
+
+    private static List<Battery> manyBatteries(long firstId, int count) {
+        List<Battery> batteries = new ArrayList<>(count);
+        for (long id = firstId; id < firstId + count; id++) {
+            batteries.add(new Battery(id, "Battery " + id, "5000", 1000));
+        }
+        return batteries;
+    }
+}
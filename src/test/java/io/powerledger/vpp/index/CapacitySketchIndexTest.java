@@ -0,0 +1,143 @@
+package io.powerledger.vpp.index;
+
+import io.powerledger.vpp.dto.BatteryChange;
+import io.powerledger.vpp.event.BatteriesRegisteredEvent;
+import io.powerledger.vpp.event.BatteriesUpdatedEvent;
+import io.powerledger.vpp.model.Battery;
+import io.powerledger.vpp.repository.BatteryRepository;
+import io.powerledger.vpp.repository.BatteryRepositoryCustom.CapacityRowHandler;
+import org.HdrHistogram.Histogram;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for {@link CapacitySketchIndex}.
+ */
+class CapacitySketchIndexTest {
+
+    private BatteryRepository batteryRepository;
+    private CapacitySketchIndex capacitySketchIndex;
+
+    @BeforeEach
+    void setUp() {
+        batteryRepository = mock(BatteryRepository.class);
+        doAnswer(invocation -> {
+            CapacityRowHandler handler = invocation.getArgument(2);
+            handler.accept(1L, 6076, 36000);
+            handler.accept(2L, 6102, 85000);
+            handler.accept(3L, 6000, 23500);
+            handler.accept(4L, 820, 27000);
+            return null;
+        }).when(batteryRepository).forEachCapacity(eq("0000"), eq("9999"), any());
+        capacitySketchIndex = new CapacitySketchIndex(batteryRepository, true);
+        capacitySketchIndex.load();
+    }
+
+    /**
+     * Test that a range merges only the sketches of its postcodes.
+     */
+    @Test
+    void shouldMergeSketchesInPostcodeRange() {
+        Histogram histogram = capacitySketchIndex.mergeRange("6000", "6100");
+
+        assertThat(capacitySketchIndex.isLoaded()).isTrue();
+        assertThat(histogram.getTotalCount()).isEqualTo(2);
+        assertThat(histogram.getMinValue()).isCloseTo(23500, within(235L));
+        assertThat(histogram.getMaxValue()).isCloseTo(36000, within(360L));
+        assertThat(capacitySketchIndex.mergeRange("0000", "9999").getTotalCount()).isEqualTo(4);
+        assertThat(capacitySketchIndex.mergeRange("7000", "7999").getTotalCount()).isZero();
+    }
+
+    /**
+     * Test that percentiles of a large range stay within 1% of the exact values.
+     */
+    @Test
+    void shouldKeepPercentilesWithinOnePercent() {
+        List<Battery> batteries = new ArrayList<>();
+        for (int capacity = 1; capacity <= 100_000; capacity++) {
+            batteries.add(new Battery((long) capacity + 10, "Battery " + capacity,
+                    String.valueOf(1000 + capacity % 500), capacity));
+        }
+        capacitySketchIndex.onBatteriesRegistered(new BatteriesRegisteredEvent(batteries));
+
+        Histogram histogram = capacitySketchIndex.mergeRange("1000", "1499");
+
+        assertThat(histogram.getTotalCount()).isEqualTo(100_000);
+        assertThat(histogram.getValueAtPercentile(50)).isCloseTo(50_000, within(500L));
+        assertThat(histogram.getValueAtPercentile(99)).isCloseTo(99_000, within(990L));
+    }
+
+    /**
+     * Test that registrations replace sketches without changing histograms already returned.
+     */
+    @Test
+    void shouldRecordRegisteredBatteriesInNewSketches() {
+        Histogram before = capacitySketchIndex.mergeRange("6000", "6000");
+
+        capacitySketchIndex.onBatteriesRegistered(new BatteriesRegisteredEvent(List.of(
+                new Battery(5L, "Perth", "6000", 50500))));
+
+        assertThat(before.getTotalCount()).isEqualTo(1);
+        assertThat(capacitySketchIndex.mergeRange("6000", "6000").getTotalCount()).isEqualTo(2);
+    }
+
+    /**
+     * Test that an updated battery's previous capacity leaves its old sketch and its current one enters the new sketch.
+     */
+    @Test
+    void shouldMoveUpdatedBatteriesBetweenSketches() {
+        capacitySketchIndex.onBatteriesUpdated(new BatteriesUpdatedEvent(List.of(new BatteryChange(
+                new Battery(4L, "Bagot", "0820", 27000), new Battery(4L, "Bagot", "6000", 60000)))));
+
+        Histogram perth = capacitySketchIndex.mergeRange("6000", "6000");
+        assertThat(perth.getTotalCount()).isEqualTo(2);
+        assertThat(perth.getMaxValue()).isCloseTo(60000, within(600L));
+        assertThat(capacitySketchIndex.mergeRange("0800", "0899").getTotalCount()).isZero();
+        assertThat(capacitySketchIndex.mergeRange("0000", "9999").getTotalCount()).isEqualTo(4);
+    }
+
+    /**
+     * Test that a fleet sync during the load makes it scan again, since the scan may have seen either state.
+     */
+    @Test
+    void shouldScanAgainWhenBatteriesUpdatedDuringLoad() {
+        CapacitySketchIndex index = new CapacitySketchIndex(batteryRepository, true);
+        List<Integer> capacities = new ArrayList<>(List.of(27000, 30000));
+        doAnswer(invocation -> {
+            int capacity = capacities.remove(0);
+            invocation.<CapacityRowHandler>getArgument(2).accept(4L, 820, capacity);
+            if (capacity == 27000) {
+                index.onBatteriesUpdated(new BatteriesUpdatedEvent(List.of(new BatteryChange(
+                        new Battery(4L, "Bagot", "0820", 27000), new Battery(4L, "Bagot", "0820", 30000)))));
+            }
+            return null;
+        }).when(batteryRepository).forEachCapacity(eq("0000"), eq("9999"), any());
+
+        index.load();
+
+        Histogram histogram = index.mergeRange("0000", "9999");
+        assertThat(histogram.getTotalCount()).isEqualTo(1);
+        assertThat(histogram.getMinValue()).isCloseTo(30000, within(300L));
+    }
+
+    /**
+     * Test that a disabled index never loads, so callers read the rows instead.
+     */
+    @Test
+    void shouldNotLoadWhenDisabled() {
+        CapacitySketchIndex disabled = new CapacitySketchIndex(batteryRepository, false);
+        disabled.load();
+
+        assertThat(disabled.isLoaded()).isFalse();
+        verify(batteryRepository, times(1)).forEachCapacity(any(), any(), any());
+    }
+}
@@ -0,0 +1,105 @@
+package io.powerledger.vpp.index;
+
+import io.powerledger.vpp.dto.BatteryRow;
+import io.powerledger.vpp.model.Battery;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Unit tests for {@link FleetSnapshotFile}.
+ */
+class FleetSnapshotFileTest {
+
+    @TempDir
+    private Path directory;
+
+    private static BatteryRangeIndex.Snapshot snapshotOf(BatteryRow... rows) {
+        return BatteryRangeIndex.Snapshot.fromRows(List.of(rows));
+    }
+
+    /**
+     * Test that a written snapshot reads back with the same columns, including non-ASCII names.
+     */
+    @Test
+    void shouldReadBackWrittenSnapshot() throws IOException {
+        FleetSnapshotFile file = new FleetSnapshotFile(directory.resolve("fleet.snapshot"));
+        file.write(snapshotOf(
+                new BatteryRow(1L, "Carmel", "6076", 36000),
+                new BatteryRow(7L, "Bagot Ünit", "0820", 27000),
+                new BatteryRow(3L, "Hay Street", "6000", 23500)));
+
+        FleetSnapshotFile.Contents contents = file.read();
+
+        assertThat(contents.blocks()).isEqualTo(1);
+        assertThat(contents.highWaterId()).isEqualTo(7);
+        assertThat(contents.snapshot().postcodes).containsExactly(820, 6000, 6076);
+        assertThat(contents.snapshot().ids).containsExactly(7L, 3L, 1L);
+        assertThat(contents.snapshot().capacities).containsExactly(27000, 23500, 36000);
+        assertThat(contents.snapshot().names).containsExactly("Bagot Ünit", "Hay Street", "Carmel");
+        assertThat(contents.snapshot().prefixSums[3]).isEqualTo(86500);
+    }
+
+    /**
+     * Test that appended blocks are read after the compacted one and merged into postcode order.
+     */
+    @Test
+    void shouldReadAppendedBlocks() throws IOException {
+        FleetSnapshotFile file = new FleetSnapshotFile(directory.resolve("fleet.snapshot"));
+        file.write(snapshotOf(new BatteryRow(1L, "Carmel", "6076", 36000)));
+        file.append(List.of(new Battery(2L, "Bentley", "6102", 85000), new Battery(3L, "Hay Street", "6000", 23500)));
+        file.append(List.of(new Battery(4L, "Midland", "6057", 50500)));
+
+        FleetSnapshotFile.Contents contents = file.read();
+
+        assertThat(contents.blocks()).isEqualTo(3);
+        assertThat(contents.highWaterId()).isEqualTo(4);
+        assertThat(contents.snapshot().ids).containsExactly(3L, 4L, 1L, 2L);
+    }
+
+    /**
+     * Test that reading stops before a block torn by a crash or altered on disk.
+     */
+    @Test
+    void shouldStopAtIncompleteOrCorruptBlock() throws IOException {
+        Path path = directory.resolve("fleet.snapshot");
+        FleetSnapshotFile file = new FleetSnapshotFile(path);
+        file.write(snapshotOf(new BatteryRow(1L, "Carmel", "6076", 36000)));
+        long compacted = Files.size(path);
+        file.append(List.of(new Battery(2L, "Bentley", "6102", 85000)));
+        byte[] bytes = Files.readAllBytes(path);
+
+        Files.write(path, Arrays.copyOf(bytes, bytes.length - 3));
+        assertThat(file.read().snapshot().ids).containsExactly(1L);
+
+        bytes[(int) compacted + 20] ^= 1;
+        Files.write(path, bytes);
+        assertThat(file.read().snapshot().ids).containsExactly(1L);
+        assertThat(file.read().highWaterId()).isEqualTo(1);
+    }
+
+    /**
+     * Test that a missing file or a file of another format version is not read, and that appending
+     * to a missing file does not create one.
+     */
+    @Test
+    void shouldIgnoreMissingOrForeignFile() throws IOException {
+        Path path = directory.resolve("fleet.snapshot");
+        FleetSnapshotFile file = new FleetSnapshotFile(path);
+
+        file.append(List.of(new Battery(2L, "Bentley", "6102", 85000)));
+        assertThat(file.read()).isNull();
+        assertThat(path).doesNotExist();
+
+        Files.write(path, new byte[]{'V', 'P', 'P', 'F', 99, 0, 0, 0}, StandardOpenOption.CREATE);
+        assertThat(file.read()).isNull();
+    }
+}
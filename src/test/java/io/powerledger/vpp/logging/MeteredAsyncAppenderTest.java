@@ -0,0 +1,82 @@
+package io.powerledger.vpp.logging;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Unit tests for {@link MeteredAsyncAppender}.
+ */
+class MeteredAsyncAppenderTest {
+
+    private LoggerContext loggerContext;
+    private Logger logger;
+    private ListAppender<ILoggingEvent> written;
+    private MeteredAsyncAppender asyncAppender;
+
+    @BeforeEach
+    void setUp() {
+        loggerContext = (LoggerContext) LoggerFactory.getILoggerFactory();
+        logger = loggerContext.getLogger(MeteredAsyncAppenderTest.class);
+
+        written = new ListAppender<>();
+        written.setContext(loggerContext);
+        written.start();
+
+        // A threshold above the queue size puts the queue permanently under pressure
+        asyncAppender = new MeteredAsyncAppender();
+        asyncAppender.setContext(loggerContext);
+        asyncAppender.setQueueSize(4);
+        asyncAppender.setDiscardingThreshold(5);
+        asyncAppender.addAppender(written);
+    }
+
+    @AfterEach
+    void tearDown() {
+        asyncAppender.stop();
+    }
+
+    /**
+     * Test that events at or below the discard level are dropped and counted while ERROR is always kept.
+     */
+    @Test
+    void shouldDropAndCountEventsUpToDiscardLevel() {
+        asyncAppender.setDiscardLevel("WARN");
+        asyncAppender.start();
+
+        append(Level.DEBUG, Level.INFO, Level.WARN, Level.ERROR);
+        asyncAppender.stop();
+
+        assertThat(asyncAppender.getDroppedCount()).isEqualTo(3);
+        assertThat(written.list).extracting(ILoggingEvent::getLevel).containsExactly(Level.ERROR);
+    }
+
+    /**
+     * Test that the default policy keeps WARN.
+     */
+    @Test
+    void shouldKeepWarningsByDefault() {
+        asyncAppender.start();
+
+        append(Level.INFO, Level.WARN);
+        asyncAppender.stop();
+
+        assertThat(asyncAppender.getDroppedCount()).isEqualTo(1);
+        assertThat(written.list).extracting(ILoggingEvent::getLevel).containsExactly(Level.WARN);
+    }
+
+    private void append(Level... levels) {
+        for (Level level : levels) {
+            asyncAppender.doAppend(new LoggingEvent(Logger.FQCN, logger, level, "event at " + level, null, null));
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package io.powerledger.vpp.model;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Unit tests for {@link PostcodeConverter}.
+ */
+class PostcodeConverterTest {
+
+    private final PostcodeConverter converter = new PostcodeConverter();
+
+    /**
+     * Test that postcodes with leading zeros survive the round trip through the numeric column.
+     */
+    @Test
+    void shouldRoundTripPostcodesWithLeadingZeros() {
+        assertThat(converter.convertToDatabaseColumn("0800")).isEqualTo((short) 800);
+        assertThat(converter.convertToEntityAttribute((short) 800)).isEqualTo("0800");
+        assertThat(converter.convertToEntityAttribute(converter.convertToDatabaseColumn("6000"))).isEqualTo("6000");
+    }
+
+    /**
+     * Test that null passes through in both directions.
+     */
+    @Test
+    void shouldPassNullThrough() {
+        assertThat(converter.convertToDatabaseColumn(null)).isNull();
+        assertThat(converter.convertToEntityAttribute(null)).isNull();
+    }
+
+    /**
+     * Test that values that are not 4-digit postcodes are rejected.
+     */
+    @Test
+    void shouldRejectInvalidPostcodes() {
+        assertThatThrownBy(() -> PostcodeConverter.toColumn("600")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> PostcodeConverter.toColumn("60a0")).isInstanceOf(IllegalArgumentException.class);
+    }
+}
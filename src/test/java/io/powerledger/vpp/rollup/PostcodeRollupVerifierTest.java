@@ -0,0 +1,53 @@
+package io.powerledger.vpp.rollup;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.powerledger.vpp.repository.BatteryRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for {@link PostcodeRollupVerifier}.
+ */
+class PostcodeRollupVerifierTest {
+
+    private BatteryRepository batteryRepository;
+    private SimpleMeterRegistry meterRegistry;
+    private PostcodeRollupVerifier verifier;
+
+    @BeforeEach
+    void setUp() {
+        batteryRepository = mock(BatteryRepository.class);
+        meterRegistry = new SimpleMeterRegistry();
+        verifier = new PostcodeRollupVerifier(batteryRepository, meterRegistry);
+    }
+
+    /**
+     * Test that consistent rollups are left untouched.
+     */
+    @Test
+    void shouldNotRebuildConsistentRollups() {
+        when(batteryRepository.countRollupDrift()).thenReturn(0L);
+
+        assertThat(verifier.verify()).isZero();
+
+        verify(batteryRepository, never()).rebuildRollups();
+        assertThat(meterRegistry.counter("batteries.rollup.rebuilds").count()).isZero();
+    }
+
+    /**
+     * Test that drifted rollups are rebuilt and the drift is counted.
+     */
+    @Test
+    void shouldRebuildDriftedRollups() {
+        when(batteryRepository.countRollupDrift()).thenReturn(3L);
+
+        assertThat(verifier.verify()).isEqualTo(3);
+
+        verify(batteryRepository, times(1)).rebuildRollups();
+        assertThat(meterRegistry.counter("batteries.rollup.drift").count()).isEqualTo(3);
+        assertThat(meterRegistry.counter("batteries.rollup.rebuilds").count()).isEqualTo(1);
+    }
+}
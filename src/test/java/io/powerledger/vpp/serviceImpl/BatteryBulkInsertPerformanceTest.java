@@ -0,0 +1,87 @@
+package io.powerledger.vpp.serviceImpl;
+
+import io.powerledger.vpp.model.Battery;
+import io.powerledger.vpp.repository.BatteryRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Compares registration throughput of JPA saveAll against JDBC batch inserts on PostgreSQL.
+ * Excluded from the default build; run with {@code mvn test -Pperformance}.
+ */
+@Tag("performance")
+@DataJpaTest(properties = "spring.datasource.hikari.data-source-properties.reWriteBatchedInserts=true")
+@Testcontainers
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class BatteryBulkInsertPerformanceTest {
+
+    @Container
+    static final PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:15-alpine")
+            .withDatabaseName("testdb")
+            .withUsername("testuser")
+            .withPassword("testpass");
+
+    @DynamicPropertySource
+    static void configure(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+    }
+
+    @Autowired
+    private BatteryRepository batteryRepository;
+
+    @AfterEach
+    void cleanUp() {
+        batteryRepository.deleteAllInBatch();
+    }
+
+    /**
+     * Inserts the same fleet size through both paths and prints rows per second for each.
+     */
+    @ParameterizedTest
+    @ValueSource(ints = {10_000, 100_000})
+    void shouldInsertFasterWithJdbcBatches(int fleetSize) {
+        double saveAllRate = measure("saveAll", fleetSize, batteryRepository::saveAll);
+        batteryRepository.deleteAllInBatch();
+        double batchedRate = measure("insertInBatches", fleetSize, batteryRepository::insertInBatches);
+
+        assertThat(batteryRepository.count()).isEqualTo(fleetSize);
+        assertThat(batchedRate).isGreaterThan(saveAllRate);
+    }
+
+    private double measure(String path, int fleetSize, Function<List<Battery>, List<Battery>> insert) {
+        List<Battery> fleet = new ArrayList<>(fleetSize);
+        for (int i = 0; i < fleetSize; i++) {
+            fleet.add(new Battery(null, "Battery " + i, String.format("%04d", i % 10_000), 5_000 + i % 95_000));
+        }
+
+        long start = System.nanoTime();
+        List<Battery> saved = insert.apply(fleet);
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        assertThat(saved).allSatisfy(battery -> assertThat(battery.getId()).isNotNull());
+        double rate = fleetSize / seconds;
+        System.out.printf("%s: %,d batteries in %.2f s (%,.0f rows/s)%n", path, fleetSize, seconds, rate);
+        return rate;
+    }
+}
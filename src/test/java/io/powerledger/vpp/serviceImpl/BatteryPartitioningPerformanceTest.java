@@ -0,0 +1,220 @@
+package io.powerledger.vpp.serviceImpl;
+
+import io.powerledger.vpp.model.Battery;
+import io.powerledger.vpp.repository.BatteryRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.testcontainers.containers.PostgreSQLContainer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Compares the postcode-partitioned batteries table with the flat table it replaced, at 10M batteries by
+ * default. Prints each repository query's plan and median latency on both, index sizes, and the time to
+ * vacuum after a tenth of one band is updated. The flat copy, batteries_flat, has the indexes of the previous
+ * schema. Then times a fleet sync of 1M new batteries into the partitioned table, and a re-sync of the same
+ * batteries unchanged. Excluded from the default build; run with {@code mvn test -Pperformance}, adding
+ * {@code -Dvpp.perf.fleet-size=...} or {@code -Dvpp.perf.sync-size=...} for other sizes and
+ * {@code -Dvpp.perf.datasource.url=...} (with {@code .username} and {@code .password}) to use a local
+ * PostgreSQL instead of a container. The batteries table of that database is emptied afterwards, so point it
+ * at a scratch database.
+ */
+@Tag("performance")
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class BatteryPartitioningPerformanceTest {
+
+    private static final int FLEET_SIZE = Integer.getInteger("vpp.perf.fleet-size", 10_000_000);
+    private static final int SYNC_SIZE = Integer.getInteger("vpp.perf.sync-size", 1_000_000);
+    private static final int WARM_UP_RUNS = 3;
+    private static final int MEASURED_RUNS = 11;
+
+    // The statements BatteryRepository runs, with %s for the table, and whether it turns off sequential scans for them
+    private static final List<RangeQuery> QUERIES = List.of(
+            new RangeQuery("total, 100 postcodes", true,
+                    "SELECT COUNT(*), SUM(capacity) FROM %s WHERE postcode BETWEEN 6000 AND 6099 AND capacity BETWEEN 0 AND 2147483647"),
+            new RangeQuery("total, 2 bands", true,
+                    "SELECT COUNT(*), SUM(capacity) FROM %s WHERE postcode BETWEEN 2000 AND 3999 AND capacity BETWEEN 0 AND 2147483647"),
+            new RangeQuery("names, 1 band, capacity filter", true,
+                    "SELECT name FROM %s WHERE postcode BETWEEN 6000 AND 6999 AND capacity BETWEEN 50000 AND 51000 ORDER BY name"),
+            new RangeQuery("exists, 1 postcode", false,
+                    "SELECT 1 FROM %s WHERE postcode BETWEEN 6107 AND 6107 LIMIT 1"),
+            new RangeQuery("rows after id", false,
+                    "SELECT id, name, postcode, capacity FROM %s WHERE id > " + (FLEET_SIZE - 1_000)));
+
+    private static PostgreSQLContainer<?> postgres;
+
+    @DynamicPropertySource
+    static void configure(DynamicPropertyRegistry registry) {
+        String localUrl = System.getProperty("vpp.perf.datasource.url");
+        if (localUrl != null) {
+            registry.add("spring.datasource.url", () -> localUrl);
+            registry.add("spring.datasource.username", () -> System.getProperty("vpp.perf.datasource.username", "postgres"));
+            registry.add("spring.datasource.password", () -> System.getProperty("vpp.perf.datasource.password", ""));
+            return;
+        }
+        postgres = new PostgreSQLContainer<>("postgres:15-alpine")
+                .withDatabaseName("testdb")
+                .withUsername("testuser")
+                .withPassword("testpass");
+        postgres.start();
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+    }
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private BatteryRepository batteryRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @AfterEach
+    void cleanUp() {
+        jdbcTemplate.execute("DROP TABLE IF EXISTS batteries_flat");
+        jdbcTemplate.execute("TRUNCATE batteries, battery_external_ids RESTART IDENTITY");
+    }
+
+    /**
+     * Seeds both tables with the same fleet, then prints one plan and one latency row per query and table.
+     */
+    @Test
+    void shouldScanOnlyOverlappingBands() {
+        seed();
+        System.out.printf("%,d batteries; (postcode, capacity) index: flat %s, largest band %s%n", FLEET_SIZE,
+                size("SELECT pg_relation_size('batteries_flat_postcode_capacity')"),
+                size("""
+                        SELECT MAX(pg_relation_size(i.inhrelid))
+                        FROM pg_inherits i
+                        WHERE i.inhparent = 'idx_batteries_postcode_capacity'::regclass
+                        """));
+
+        for (RangeQuery query : QUERIES) {
+            double flat = medianMillis(query, "batteries_flat");
+            double partitioned = medianMillis(query, "batteries");
+            System.out.printf("%-32s flat %9.2f ms  partitioned %9.2f ms%n", query.name(), flat, partitioned);
+            System.out.println(explain(query, "batteries_flat"));
+            System.out.println(explain(query, "batteries"));
+        }
+
+        assertThat(explain(QUERIES.get(0), "batteries"))
+                .contains("batteries_6xxx")
+                .doesNotContain("batteries_5xxx", "batteries_7xxx");
+        assertThat(explain(QUERIES.get(1), "batteries"))
+                .contains("batteries_2xxx", "batteries_3xxx")
+                .doesNotContain("batteries_1xxx", "batteries_4xxx");
+
+        // An update of 100 of band 6's 1,000 postcodes leaves the same number of dead rows in both tables
+        String touchBand = "UPDATE %s SET capacity = capacity + 1 WHERE postcode BETWEEN 6000 AND 6099";
+        jdbcTemplate.update(touchBand.formatted("batteries_flat"));
+        jdbcTemplate.update(touchBand.formatted("batteries"));
+        System.out.printf("VACUUM after updating 10%% of band 6 (1%% of the fleet): flat %.0f ms, band partition %.0f ms%n",
+                millis("VACUUM batteries_flat"), millis("VACUUM batteries_6xxx"));
+
+        // Syncs run as BatteryServiceImpl.syncBatteries runs them, in one transaction each
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        long start = System.nanoTime();
+        int inserted = transaction.execute(status -> batteryRepository.upsertByExternalId(syncedFleet()).inserted().size());
+        double insertSeconds = (System.nanoTime() - start) / 1e9;
+        start = System.nanoTime();
+        long unchanged = transaction.execute(status -> batteryRepository.upsertByExternalId(syncedFleet()).unchanged());
+        double resyncSeconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("Sync of %,d new batteries %.1f s, re-sync of them unchanged %.1f s%n",
+                SYNC_SIZE, insertSeconds, resyncSeconds);
+
+        assertThat(inserted).isEqualTo(SYNC_SIZE);
+        assertThat(unchanged).isEqualTo(SYNC_SIZE);
+    }
+
+    /** The batteries of a fleet sync, spread over every band like the seeded fleet. */
+    private static List<Battery> syncedFleet() {
+        List<Battery> batteries = new ArrayList<>(SYNC_SIZE);
+        for (long i = 1; i <= SYNC_SIZE; i++) {
+            batteries.add(new Battery(null, "Synced " + i, "%04d".formatted(i * 7919 % 10000),
+                    (int) (5000 + i * 104729 % 95000), "SYNC-" + i));
+        }
+        return batteries;
+    }
+
+    private void seed() {
+        long start = System.nanoTime();
+        // Ids from 1, which the rows after id query relies on
+        jdbcTemplate.execute("TRUNCATE batteries RESTART IDENTITY");
+        jdbcTemplate.update("""
+                INSERT INTO batteries (name, postcode, capacity)
+                SELECT 'Battery ' || i, (i * 7919::bigint) % 10000, 5000 + (i * 104729::bigint) % 95000
+                FROM generate_series(1, ?) AS i
+                """, FLEET_SIZE);
+        // The layout before partitioning, with its indexes built after the load
+        jdbcTemplate.execute("CREATE TABLE batteries_flat AS SELECT * FROM batteries ORDER BY id");
+        jdbcTemplate.execute("ALTER TABLE batteries_flat ADD PRIMARY KEY (id)");
+        jdbcTemplate.execute("CREATE INDEX batteries_flat_postcode_capacity ON batteries_flat (postcode, capacity)");
+        jdbcTemplate.execute("CREATE UNIQUE INDEX batteries_flat_external_id ON batteries_flat (external_id)");
+        jdbcTemplate.execute("VACUUM ANALYZE batteries_flat");
+        jdbcTemplate.execute("VACUUM ANALYZE batteries");
+        System.out.printf("Seeded both tables in %.1f s%n", (System.nanoTime() - start) / 1e9);
+    }
+
+    private double medianMillis(RangeQuery query, String table) {
+        for (int i = 0; i < WARM_UP_RUNS; i++) {
+            run(query, () -> jdbcTemplate.queryForList(query.sql().formatted(table)));
+        }
+        double[] runs = new double[MEASURED_RUNS];
+        for (int i = 0; i < MEASURED_RUNS; i++) {
+            long start = System.nanoTime();
+            run(query, () -> jdbcTemplate.queryForList(query.sql().formatted(table)));
+            runs[i] = (System.nanoTime() - start) / 1e6;
+        }
+        Arrays.sort(runs);
+        return runs[MEASURED_RUNS / 2];
+    }
+
+    // Runs the statement as BatteryRepositoryImpl does, in a transaction without sequential scans if it turns them off
+    private <T> T run(RangeQuery query, Supplier<T> statement) {
+        if (!query.withoutSequentialScans()) {
+            return statement.get();
+        }
+        return new TransactionTemplate(transactionManager).execute(status -> {
+            jdbcTemplate.execute("SET LOCAL enable_seqscan = off");
+            return statement.get();
+        });
+    }
+
+    private double millis(String sql) {
+        long start = System.nanoTime();
+        jdbcTemplate.execute(sql);
+        return (System.nanoTime() - start) / 1e6;
+    }
+
+    private String explain(RangeQuery query, String table) {
+        return run(query, () -> String.join("\n", jdbcTemplate.queryForList(
+                "EXPLAIN (ANALYZE, BUFFERS, COSTS OFF) " + query.sql().formatted(table), String.class)));
+    }
+
+    private String size(String sql) {
+        return jdbcTemplate.queryForObject("SELECT pg_size_pretty((" + sql + ")::bigint)", String.class);
+    }
+
+    private record RangeQuery(String name, boolean withoutSequentialScans, String sql) {
+    }
+}
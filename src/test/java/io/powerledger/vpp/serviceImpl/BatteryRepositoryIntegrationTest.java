@@ -1,18 +1,26 @@
 package io.powerledger.vpp.serviceImpl;
 
+import io.powerledger.vpp.dto.BatteryChange;
+import io.powerledger.vpp.dto.BatteryRow;
+import io.powerledger.vpp.dto.PostcodeSpan;
+import io.powerledger.vpp.dto.TelemetryBatch;
 import io.powerledger.vpp.model.Battery;
 import io.powerledger.vpp.repository.BatteryRepository;
+import io.powerledger.vpp.repository.BatteryRepositoryCustom.UpsertResult;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.Limit;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.context.DynamicPropertyRegistry;
 import org.springframework.test.context.DynamicPropertySource;
 import org.testcontainers.containers.PostgreSQLContainer;
 import org.testcontainers.junit.jupiter.Container;
 import org.testcontainers.junit.jupiter.Testcontainers;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -20,7 +28,7 @@ import static org.assertj.core.api.Assertions.assertThat;
 /**
  * Integration test for BatteryRepository to ensure that it performs correct database operations.
  */
-@DataJpaTest
+@DataJpaTest(properties = "vpp.ingest.sync.batch-size=2")
 @Testcontainers
 @AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
 class BatteryRepositoryIntegrationTest {
@@ -43,6 +51,9 @@ class BatteryRepositoryIntegrationTest {
     @Autowired
     private BatteryRepository batteryRepository;
 
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
     // Sample battery data setup before each test
     @BeforeEach
     void setup() {
@@ -69,4 +80,237 @@ class BatteryRepositoryIntegrationTest {
         // Verifying the batteries' capacities to ensure correct records were returned
         assertThat(batteries).extracting("capacity").containsExactlyInAnyOrder(10000, 20000, 30000);
     }
+
+    /**
+     * Test that count and total capacity are computed in the database with capacity bounds applied.
+     */
+    @Test
+    void shouldAggregateCapacityWithinPostcodeAndCapacityRange() {
+        var aggregate = batteryRepository.aggregateCapacityInRange("6000", "6100", 15000, Integer.MAX_VALUE);
+
+        assertThat(aggregate.getBatteryCount()).isEqualTo(2);
+        assertThat(aggregate.getTotalCapacity()).isEqualTo(50000);
+        assertThat(aggregate.getAverageCapacity()).isEqualTo(25000.0);
+    }
+
+    /**
+     * Test that the names-only projection applies the filters and sorts alphabetically.
+     */
+    @Test
+    void shouldReturnSortedNamesWithinPostcodeAndCapacityRange() {
+        var names = batteryRepository.findNamesInRange("6000", "6100", Integer.MIN_VALUE, 20000);
+
+        assertThat(names).containsExactly("Battery A", "Battery B");
+    }
+
+    /**
+     * Test that keyset pages follow name order and continue after the given (name, id) position.
+     */
+    @Test
+    void shouldReturnKeysetPagesOrderedByName() {
+        var firstPage = batteryRepository.findPageInRange("6000", "6100", Integer.MIN_VALUE, Integer.MAX_VALUE,
+                "", 0L, Limit.of(2));
+        var last = firstPage.get(1);
+        var secondPage = batteryRepository.findPageInRange("6000", "6100", Integer.MIN_VALUE, Integer.MAX_VALUE,
+                last.getName(), last.getId(), Limit.of(2));
+
+        assertThat(firstPage).extracting("name").containsExactly("Battery A", "Battery B");
+        assertThat(secondPage).extracting("name").containsExactly("Battery C");
+    }
+
+    /**
+     * Test that postcode ranges compare numerically and postcodes keep their leading zeros.
+     */
+    @Test
+    void shouldCompareStoredPostcodesNumerically() {
+        batteryRepository.saveAll(List.of(
+                new Battery(null, "Darwin", "0800", 5000),
+                new Battery(null, "Batch Darwin", "0810", 6000)));
+        batteryRepository.insertInBatches(List.of(new Battery(null, "Alice Springs", "0870", 7000)));
+
+        var batteries = batteryRepository.findByPostcodeBetween("0800", "0999");
+
+        assertThat(batteries).extracting("postcode").containsExactlyInAnyOrder("0800", "0810", "0870");
+    }
+
+    /**
+     * Test that span scans return and count each matching battery once, in postcode order, applying each span's capacity bounds.
+     */
+    @Test
+    void shouldReturnRowsInSpansOrderedByPostcode() {
+        var spans = List.of(
+                new PostcodeSpan(6050, 6100, Integer.MIN_VALUE, Integer.MAX_VALUE),
+                new PostcodeSpan(6000, 6000, 15000, Integer.MAX_VALUE));
+        var rows = batteryRepository.findRowsInSpans(spans);
+
+        assertThat(rows).extracting("name").containsExactly("Battery B", "Battery C");
+        assertThat(rows).extracting("postcode").containsExactly("6050", "6100");
+        assertThat(batteryRepository.countInSpans(spans)).isEqualTo(2);
+    }
+
+    /**
+     * Test that range totals from the rollups include every registration and match the battery rows.
+     */
+    @Test
+    void shouldAggregateCapacityFromRollups() {
+        batteryRepository.addToRollups(batteryRepository.findAll());
+        batteryRepository.saveAll(List.of(new Battery(null, "Battery D", "6050", 40000)))
+                .forEach(battery -> batteryRepository.addToRollups(List.of(battery)));
+
+        var all = batteryRepository.aggregateCapacityFromRollups("6000", "6100");
+        var upper = batteryRepository.aggregateCapacityFromRollups("6050", "6999");
+
+        assertThat(all.getBatteryCount()).isEqualTo(4);
+        assertThat(all.getTotalCapacity()).isEqualTo(100000);
+        assertThat(upper.getBatteryCount()).isEqualTo(3);
+        assertThat(upper.getTotalCapacity()).isEqualTo(90000);
+        assertThat(batteryRepository.countRollupDrift()).isZero();
+    }
+
+    /**
+     * Test that drift is detected and removed by a rebuild.
+     */
+    @Test
+    void shouldDetectAndRebuildDriftedRollups() {
+        assertThat(batteryRepository.countRollupDrift()).isEqualTo(3);
+
+        batteryRepository.rebuildRollups();
+
+        assertThat(batteryRepository.countRollupDrift()).isZero();
+        assertThat(batteryRepository.aggregateCapacityFromRollups("6000", "6100").getTotalCapacity()).isEqualTo(60000);
+    }
+
+    /**
+     * Test that capacity streaming visits every battery in the postcode range with its numeric postcode.
+     */
+    @Test
+    void shouldStreamCapacitiesWithinPostcodeRange() {
+        List<String> visited = new ArrayList<>();
+        batteryRepository.forEachCapacity("6000", "6050",
+                (id, postcode, capacity) -> visited.add(postcode + ":" + capacity));
+
+        assertThat(visited).containsExactlyInAnyOrder("6000:10000", "6050:20000");
+    }
+
+    /**
+     * Test that telemetry columns are inserted as rows with millisecond timestamps.
+     */
+    @Test
+    void shouldInsertTelemetryBatch() {
+        TelemetryBatch batch = new TelemetryBatch(2);
+        batch.add(1L, 1_700_000_000_123L, 55.5f, -2500);
+        batch.add(2L, 1_700_000_005_000L, 60f, 3000);
+
+        batteryRepository.insertTelemetry(batch);
+
+        var rows = jdbcTemplate.queryForList(
+                "SELECT battery_id, (extract(epoch FROM recorded_at) * 1000)::bigint AS millis, state_of_charge, power_watts"
+                        + " FROM battery_telemetry ORDER BY battery_id");
+        assertThat(rows).extracting(row -> row.get("millis")).containsExactly(1_700_000_000_123L, 1_700_000_005_000L);
+        assertThat(rows).extracting(row -> row.get("state_of_charge")).containsExactly(55.5f, 60f);
+        assertThat(rows).extracting(row -> row.get("power_watts")).containsExactly(-2500, 3000);
+    }
+
+    /**
+     * Test that name searches ignore case, treat LIKE wildcards literally, and list prefix matches first.
+     */
+    @Test
+    void shouldSearchNamesWithPrefixMatchesFirst() {
+        batteryRepository.saveAll(List.of(
+                new Battery(null, "Big Battery", "6200", 40000),
+                new Battery(null, "Battery_Z", "6300", 50000)));
+
+        assertThat(batteryRepository.searchByName("%battery%", "battery%", Limit.of(10)))
+                .extracting(BatteryRow::getName)
+                .containsExactly("Battery A", "Battery B", "Battery C", "Battery_Z", "Big Battery");
+        assertThat(batteryRepository.searchByName("%y\\_%", "y\\_%", Limit.of(10)))
+                .extracting(BatteryRow::getName)
+                .containsExactly("Battery_Z");
+        assertThat(batteryRepository.searchByName("%battery%", "battery%", Limit.of(2))).hasSize(2);
+    }
+
+    /**
+     * Test that rows above an id and the count up to an id split the table at that id.
+     */
+    @Test
+    void shouldSplitRowsAtId() {
+        List<Long> ids = batteryRepository.findAll().stream().map(Battery::getId).sorted().toList();
+        long middle = ids.get(1);
+
+        assertThat(batteryRepository.countByIdLessThanEqual(middle)).isEqualTo(2);
+        assertThat(batteryRepository.findRowsAfterId(middle))
+                .extracting(BatteryRow::getName)
+                .containsExactly("Battery C");
+        assertThat(batteryRepository.findRowsAfterId(ids.get(2))).isEmpty();
+    }
+
+    /**
+     * Test that a sync inserts new external ids and updates changed batteries, including one moved to
+     * another postcode band, returning their previous state, while a battery sent unchanged keeps its
+     * row version, so it was not written.
+     */
+    @Test
+    void shouldUpsertByExternalIdWritingOnlyChangedRows() {
+        UpsertResult first = batteryRepository.upsertByExternalId(List.of(
+                new Battery(null, "Midland", "6056", 50500, "P-1"),
+                new Battery(null, "Kalamunda", "6076", 10000, "P-2"),
+                new Battery(null, "Armadale", "6112", 25000, "P-3")));
+        assertThat(first.inserted()).extracting(Battery::getExternalId).containsExactly("P-1", "P-2", "P-3");
+        assertThat(first.updated()).isEmpty();
+        String unchangedVersion = rowVersion("P-1");
+        String changedVersion = rowVersion("P-2");
+
+        UpsertResult second = batteryRepository.upsertByExternalId(List.of(
+                new Battery(null, "Midland", "6056", 50500, "P-1"),
+                new Battery(null, "Kalamunda", "6076", 12000, "P-2"),
+                new Battery(null, "Armadale North", "5111", 25000, "P-3"),
+                new Battery(null, "Byford", "6122", 8000, "P-4")));
+
+        assertThat(second.unchanged()).isEqualTo(1);
+        assertThat(second.inserted()).extracting(Battery::getExternalId).containsExactly("P-4");
+        assertThat(second.inserted().get(0).getId()).isNotNull();
+        assertThat(second.updated()).extracting(change -> change.current().getExternalId()).containsExactlyInAnyOrder("P-2", "P-3");
+        BatteryChange moved = second.updated().stream()
+                .filter(change -> change.current().getExternalId().equals("P-3"))
+                .findFirst().orElseThrow();
+        assertThat(moved.previous()).isEqualTo(new Battery(moved.current().getId(), "Armadale", "6112", 25000, "P-3"));
+        assertThat(rowVersion("P-1")).isEqualTo(unchangedVersion);
+        assertThat(rowVersion("P-2")).isNotEqualTo(changedVersion);
+        assertThat(batteryRepository.findByPostcodeBetween("5111", "5111")).extracting(Battery::getName).containsExactly("Armadale North");
+        assertThat(batteryRepository.existsByPostcodeBetween("6112", "6112")).isFalse();
+        assertThat(jdbcTemplate.queryForObject("SELECT postcode FROM battery_external_ids WHERE external_id = 'P-3'", Integer.class))
+                .isEqualTo(5111);
+    }
+
+    /**
+     * Test that refreshing the rollups of changed postcodes recounts them and removes those left empty.
+     */
+    @Test
+    void shouldRefreshRollupsOfChangedPostcodes() {
+        batteryRepository.rebuildRollups();
+        jdbcTemplate.update("UPDATE batteries SET postcode = 6101, capacity = 35000 WHERE name = 'Battery C'");
+        assertThat(batteryRepository.countRollupDrift()).isEqualTo(2);
+
+        batteryRepository.refreshRollups(List.of("6100", "6101"));
+
+        assertThat(batteryRepository.countRollupDrift()).isZero();
+        assertThat(batteryRepository.aggregateCapacityFromRollups("6100", "6100").getBatteryCount()).isZero();
+        assertThat(batteryRepository.aggregateCapacityFromRollups("6101", "6101").getTotalCapacity()).isEqualTo(35000);
+    }
+
+    /**
+     * Test that a postcode range query scans only the partitions of the postcode bands it overlaps.
+     */
+    @Test
+    void shouldScanOnlyPartitionsOfQueriedBands() {
+        String plan = String.join("\n", jdbcTemplate.queryForList(
+                "EXPLAIN SELECT name FROM batteries WHERE postcode BETWEEN 6000 AND 7100", String.class));
+
+        assertThat(plan).contains("batteries_6xxx", "batteries_7xxx").doesNotContain("batteries_5xxx", "batteries_8xxx");
+    }
+
+    // Physical location of the row's current version, which changes whenever the row is written
+    private String rowVersion(String externalId) {
+        return jdbcTemplate.queryForObject("SELECT ctid::text FROM batteries WHERE external_id = ?", String.class, externalId);
+    }
 }
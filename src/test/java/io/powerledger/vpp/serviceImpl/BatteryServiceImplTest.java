@@ -1,20 +1,52 @@
 package io.powerledger.vpp.serviceImpl;
 
-import io.micrometer.core.instrument.Counter;
-import io.micrometer.core.instrument.MeterRegistry;
-import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.powerledger.vpp.cache.BatteryStatsCache;
+import io.powerledger.vpp.dto.BatteryChange;
+import io.powerledger.vpp.dto.BatteryNameCursor;
+import io.powerledger.vpp.dto.BatteryRangeQuery;
+import io.powerledger.vpp.dto.BatteryRow;
 import io.powerledger.vpp.dto.BatteryStatsResponse;
+import io.powerledger.vpp.dto.BatterySyncSummary;
+import io.powerledger.vpp.dto.CapacityAggregate;
+import io.powerledger.vpp.dto.CapacityDistributionResponse;
+import io.powerledger.vpp.dto.DispatchPlanRequest;
+import io.powerledger.vpp.dto.DispatchPlanResponse;
+import io.powerledger.vpp.dto.PostcodeSpan;
+import io.powerledger.vpp.event.BatteriesRegisteredEvent;
+import io.powerledger.vpp.event.BatteriesUpdatedEvent;
+import io.powerledger.vpp.exception.InvalidCursorException;
+import io.powerledger.vpp.exception.InvalidFleetSyncException;
+import io.powerledger.vpp.geo.PostcodeCentroidIndex;
+import io.powerledger.vpp.index.BatteryNameIndex;
+import io.powerledger.vpp.index.BatteryRangeIndex;
+import io.powerledger.vpp.index.BatteryRangeIndex.CapacitySlice;
+import io.powerledger.vpp.index.CapacitySketchIndex;
 import io.powerledger.vpp.model.Battery;
 import io.powerledger.vpp.repository.BatteryRepository;
+import io.powerledger.vpp.repository.BatteryRepositoryCustom.CapacityRowHandler;
+import io.powerledger.vpp.repository.BatteryRepositoryCustom.UpsertResult;
+import org.HdrHistogram.Histogram;
+import jakarta.persistence.EntityNotFoundException;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Limit;
+import org.springframework.test.util.ReflectionTestUtils;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
+import static io.powerledger.vpp.metrics.BatteryMetrics.*;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
 import static org.mockito.Mockito.*;
 
 /**
@@ -25,8 +57,26 @@ class BatteryServiceImplTest {
     @Mock
     private BatteryRepository batteryRepository;
 
+    @Spy
+    private SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Mock
+    private BatteryRangeIndex batteryRangeIndex;
+
+    @Mock
+    private BatteryStatsCache batteryStatsCache;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @Mock
+    private CapacitySketchIndex capacitySketchIndex;
+
+    @Mock
+    private BatteryNameIndex batteryNameIndex;
+
     @Mock
-    private MeterRegistry meterRegistry;
+    private PostcodeCentroidIndex postcodeCentroidIndex;
 
     @InjectMocks
     private BatteryServiceImpl batteryService;
@@ -42,22 +92,18 @@ class BatteryServiceImplTest {
         battery2 = new Battery(2L, "Battery B", "6100", 15000);
         battery3 = new Battery(3L, "Battery C", "6200", 20000);
 
-        // Mocking MeterRegistry's Timer to ensure it's used correctly in the service methods.
-        Timer mockTimer = mock(Timer.class);
-        when(meterRegistry.timer(anyString(), any(String[].class))).thenReturn(mockTimer);
+        // The cache is exercised in its own test; here every lookup computes the result.
+        when(batteryStatsCache.get(any(), any())).thenAnswer(invocation ->
+                invocation.<Supplier<BatteryStatsResponse>>getArgument(1).get());
     }
 
     /**
-     * Test that batteries are saved correctly, and a counter for registered batteries is incremented.
+     * Test that batteries are saved correctly, and the registration counter, batch size and persist time are recorded.
      */
     @Test
     void shouldSaveBatteriesAndIncrementCounter() {
         List<Battery> batteryList = List.of(battery1, battery2);
 
-        // Mocking MeterRegistry's counter to track battery registrations.
-        Counter mockCounter = mock(Counter.class);
-        when(meterRegistry.counter("batteries.registered.count")).thenReturn(mockCounter);
-
         // Mocking the repository's save behavior.
         when(batteryRepository.saveAll(batteryList)).thenReturn(batteryList);
 
@@ -69,8 +115,89 @@ class BatteryServiceImplTest {
 
         // Verifying interactions with the repository and MeterRegistry.
         verify(batteryRepository, times(1)).saveAll(batteryList);
-        verify(meterRegistry, times(1)).counter("batteries.registered.count");
-        verify(mockCounter, times(1)).increment(batteryList.size());
+        verify(batteryRepository, times(1)).addToRollups(batteryList);
+        assertThat(meterRegistry.get("batteries.registered.count").counter().count()).isEqualTo(2);
+        assertThat(meterRegistry.get(BATCH_SIZE).tag("endpoint", ENDPOINT_REGISTER).summary().totalAmount()).isEqualTo(2);
+        assertThat(phaseCount(ENDPOINT_REGISTER, PHASE_PERSIST)).isEqualTo(1);
+        verify(eventPublisher, times(1)).publishEvent(new BatteriesRegisteredEvent(batteryList));
+    }
+
+    /**
+     * Test that registrations at or above the bulk threshold use JDBC batch inserts instead of saveAll.
+     */
+    @Test
+    void shouldInsertInBatchesWhenAboveBulkThreshold() {
+        List<Battery> batteryList = List.of(battery1, battery2, battery3);
+        ReflectionTestUtils.setField(batteryService, "bulkInsertThreshold", 3);
+        when(batteryRepository.insertInBatches(batteryList)).thenReturn(batteryList);
+
+        List<Battery> saved = batteryService.saveBatteries(batteryList);
+
+        assertThat(saved).isEqualTo(batteryList);
+        verify(batteryRepository, times(1)).insertInBatches(batteryList);
+        verify(batteryRepository, never()).saveAll(anyList());
+    }
+
+    /**
+     * Test that a sync upserts on external id, adds inserted batteries to the rollups, refreshes only the
+     * postcodes whose capacity moved, and publishes registration and update events.
+     */
+    @Test
+    void shouldSyncBatteriesAndPublishChanges() {
+        Battery inserted = new Battery(4L, "Midland", "6056", 50500, "P-4");
+        Battery moved = new Battery(1L, "Battery A", "6001", 10000, "P-1");
+        Battery renamed = new Battery(2L, "Battery B2", "6100", 15000, "P-2");
+        List<BatteryChange> changes = List.of(
+                new BatteryChange(new Battery(1L, "Battery A", "6000", 10000, "P-1"), moved),
+                new BatteryChange(new Battery(2L, "Battery B", "6100", 15000, "P-2"), renamed));
+        List<Battery> batteries = List.of(
+                new Battery(null, "Midland", "6056", 50500, "P-4"),
+                new Battery(null, "Battery A", "6001", 10000, "P-1"),
+                new Battery(null, "Battery B2", "6100", 15000, "P-2"),
+                new Battery(null, "Battery C", "6200", 20000, "P-3"));
+        when(batteryRepository.upsertByExternalId(batteries)).thenReturn(new UpsertResult(List.of(inserted), changes, 1));
+
+        BatterySyncSummary summary = batteryService.syncBatteries(batteries);
+
+        assertThat(summary).isEqualTo(new BatterySyncSummary(1, 2, 1));
+        verify(batteryRepository).addToRollups(List.of(inserted));
+        verify(batteryRepository).refreshRollups(List.of("6000", "6001"));
+        verify(eventPublisher).publishEvent(new BatteriesRegisteredEvent(List.of(inserted)));
+        verify(eventPublisher).publishEvent(new BatteriesUpdatedEvent(changes));
+        assertThat(meterRegistry.get("batteries.registered.count").counter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get(BATCH_SIZE).tag("endpoint", ENDPOINT_SYNC).summary().totalAmount()).isEqualTo(4);
+        assertThat(phaseCount(ENDPOINT_SYNC, PHASE_PERSIST)).isEqualTo(1);
+    }
+
+    /**
+     * Test that a sync publishes nothing when every battery is unchanged.
+     */
+    @Test
+    void shouldNotPublishWhenSyncChangesNothing() {
+        List<Battery> batteries = List.of(new Battery(null, "Battery A", "6000", 10000, "P-1"));
+        when(batteryRepository.upsertByExternalId(batteries)).thenReturn(new UpsertResult(List.of(), List.of(), 1));
+
+        assertThat(batteryService.syncBatteries(batteries)).isEqualTo(new BatterySyncSummary(0, 0, 1));
+
+        verify(batteryRepository).refreshRollups(List.of());
+        verifyNoInteractions(eventPublisher);
+    }
+
+    /**
+     * Test that a sync is rejected before touching the database when an external id is missing or repeated.
+     */
+    @Test
+    void shouldRejectSyncWithMissingOrDuplicateExternalIds() {
+        assertThatThrownBy(() -> batteryService.syncBatteries(List.of(new Battery(null, "Battery A", "6000", 10000, " "))))
+                .isInstanceOf(InvalidFleetSyncException.class)
+                .hasMessageContaining("Battery A");
+        assertThatThrownBy(() -> batteryService.syncBatteries(List.of(
+                new Battery(null, "Battery A", "6000", 10000, "P-1"),
+                new Battery(null, "Battery B", "6100", 15000, "P-1"))))
+                .isInstanceOf(InvalidFleetSyncException.class)
+                .hasMessageContaining("P-1");
+
+        verify(batteryRepository, never()).upsertByExternalId(anyList());
     }
 
     /**
@@ -78,8 +205,10 @@ class BatteryServiceImplTest {
      */
     @Test
     void shouldReturnBatteryStatsWithoutCapacityFilters() {
-        List<Battery> batteryList = List.of(battery1, battery2, battery3);
-        when(batteryRepository.findByPostcodeBetween("6000", "6200")).thenReturn(batteryList);
+        when(batteryRepository.aggregateCapacityInRange("6000", "6200", Integer.MIN_VALUE, Integer.MAX_VALUE))
+                .thenReturn(new CapacityAggregate(3L, 45000L));
+        when(batteryRepository.findNamesInRange("6000", "6200", Integer.MIN_VALUE, Integer.MAX_VALUE))
+                .thenReturn(List.of("Battery A", "Battery B", "Battery C"));
 
         BatteryStatsResponse result = batteryService.getBatteriesInRange("6000", "6200", null, null);
 
@@ -89,18 +218,24 @@ class BatteryServiceImplTest {
         assertThat(result.getTotalCapacity()).isEqualTo(45000);
         assertThat(result.getAverageCapacity()).isEqualTo(15000.0);
 
-        // Verifying repository interaction and timing metric.
-        verify(batteryRepository, times(1)).findByPostcodeBetween("6000", "6200");
-        verify(meterRegistry, times(1)).timer("batteries.query.response.time");
+        // Verifying that no entities are loaded and the timing metrics are recorded.
+        verify(batteryRepository, never()).findByPostcodeBetween(anyString(), anyString());
+        assertThat(phaseCount(ENDPOINT_RANGE, PHASE_AGGREGATE)).isEqualTo(1);
+        assertThat(phaseCount(ENDPOINT_RANGE, PHASE_DB_FETCH)).isEqualTo(1);
+        assertThat(meterRegistry.get(QUERY_ROWS).tags("endpoint", ENDPOINT_RANGE, "kind", "returned").summary().totalAmount())
+                .isEqualTo(3);
+        assertThat(meterRegistry.get(QUERY_RESPONSE_TIME).tag("endpoint", ENDPOINT_RANGE).timer().count()).isEqualTo(1);
     }
 
     /**
-     * Test that battery stats are filtered correctly by minimum capacity.
+     * Test that the minimum capacity filter is pushed down to the repository.
      */
     @Test
     void shouldReturnBatteryStatsWithMinCapacityFilter() {
-        List<Battery> batteryList = List.of(battery1, battery2, battery3);
-        when(batteryRepository.findByPostcodeBetween("6000", "6200")).thenReturn(batteryList);
+        when(batteryRepository.aggregateCapacityInRange("6000", "6200", 15000, Integer.MAX_VALUE))
+                .thenReturn(new CapacityAggregate(2L, 35000L));
+        when(batteryRepository.findNamesInRange("6000", "6200", 15000, Integer.MAX_VALUE))
+                .thenReturn(List.of("Battery B", "Battery C"));
 
         BatteryStatsResponse result = batteryService.getBatteriesInRange("6000", "6200", 15000L, null);
 
@@ -110,18 +245,18 @@ class BatteryServiceImplTest {
         assertThat(result.getTotalCapacity()).isEqualTo(35000);
         assertThat(result.getAverageCapacity()).isEqualTo(17500.0);
 
-        // Verifying repository interaction and timing metric.
-        verify(batteryRepository, times(1)).findByPostcodeBetween("6000", "6200");
-        verify(meterRegistry, times(1)).timer("batteries.query.response.time");
+        assertThat(meterRegistry.get(QUERY_RESPONSE_TIME).tag("endpoint", ENDPOINT_RANGE).timer().count()).isEqualTo(1);
     }
 
     /**
-     * Test that battery stats are filtered correctly by maximum capacity.
+     * Test that the maximum capacity filter is pushed down to the repository.
      */
     @Test
     void shouldReturnBatteryStatsWithMaxCapacityFilter() {
-        List<Battery> batteryList = List.of(battery1, battery2, battery3);
-        when(batteryRepository.findByPostcodeBetween("6000", "6200")).thenReturn(batteryList);
+        when(batteryRepository.aggregateCapacityInRange("6000", "6200", Integer.MIN_VALUE, 15000))
+                .thenReturn(new CapacityAggregate(2L, 25000L));
+        when(batteryRepository.findNamesInRange("6000", "6200", Integer.MIN_VALUE, 15000))
+                .thenReturn(List.of("Battery A", "Battery B"));
 
         BatteryStatsResponse result = batteryService.getBatteriesInRange("6000", "6200", null, 15000L);
 
@@ -131,9 +266,7 @@ class BatteryServiceImplTest {
         assertThat(result.getTotalCapacity()).isEqualTo(25000);
         assertThat(result.getAverageCapacity()).isEqualTo(12500.0);
 
-        // Verifying repository interaction and timing metric.
-        verify(batteryRepository, times(1)).findByPostcodeBetween("6000", "6200");
-        verify(meterRegistry, times(1)).timer("batteries.query.response.time");
+        assertThat(meterRegistry.get(QUERY_RESPONSE_TIME).tag("endpoint", ENDPOINT_RANGE).timer().count()).isEqualTo(1);
     }
 
     /**
@@ -141,8 +274,10 @@ class BatteryServiceImplTest {
      */
     @Test
     void shouldReturnBatteryStatsWithMinAndMaxCapacityFilters() {
-        List<Battery> batteryList = List.of(battery1, battery2, battery3);
-        when(batteryRepository.findByPostcodeBetween("6000", "6200")).thenReturn(batteryList);
+        when(batteryRepository.aggregateCapacityInRange("6000", "6200", 12000, 20000))
+                .thenReturn(new CapacityAggregate(2L, 35000L));
+        when(batteryRepository.findNamesInRange("6000", "6200", 12000, 20000))
+                .thenReturn(List.of("Battery B", "Battery C"));
 
         BatteryStatsResponse result = batteryService.getBatteriesInRange("6000", "6200", 12000L, 20000L);
 
@@ -152,8 +287,421 @@ class BatteryServiceImplTest {
         assertThat(result.getTotalCapacity()).isEqualTo(35000);
         assertThat(result.getAverageCapacity()).isEqualTo(17500.0);
 
-        // Verifying repository interaction and timing metric.
-        verify(batteryRepository, times(1)).findByPostcodeBetween("6000", "6200");
-        verify(meterRegistry, times(1)).timer("batteries.query.response.time");
+        assertThat(meterRegistry.get(QUERY_RESPONSE_TIME).tag("endpoint", ENDPOINT_RANGE).timer().count()).isEqualTo(1);
+    }
+
+    /**
+     * Test that an empty result is returned when batteries exist in the postcode range
+     * but none match the capacity filters.
+     */
+    @Test
+    void shouldReturnEmptyStatsWhenCapacityFiltersExcludeAllBatteries() {
+        when(batteryRepository.aggregateCapacityInRange("6000", "6200", 50000, Integer.MAX_VALUE))
+                .thenReturn(new CapacityAggregate(0L, null));
+        when(batteryRepository.existsByPostcodeBetween("6000", "6200")).thenReturn(true);
+
+        BatteryStatsResponse result = batteryService.getBatteriesInRange("6000", "6200", 50000L, null);
+
+        assertThat(result.getBatteryNames()).isEmpty();
+        assertThat(result.getTotalCapacity()).isZero();
+        assertThat(result.getAverageCapacity()).isZero();
+        verify(batteryRepository, never()).findNamesInRange(anyString(), anyString(), anyInt(), anyInt());
+    }
+
+    /**
+     * Test that an EntityNotFoundException is thrown when no battery exists in the postcode range.
+     */
+    @Test
+    void shouldThrowWhenNoBatteriesInPostcodeRange() {
+        when(batteryRepository.aggregateCapacityInRange("7000", "7100", Integer.MIN_VALUE, Integer.MAX_VALUE))
+                .thenReturn(new CapacityAggregate(0L, null));
+        when(batteryRepository.existsByPostcodeBetween("7000", "7100")).thenReturn(false);
+
+        assertThatThrownBy(() -> batteryService.getBatteriesInRange("7000", "7100", null, null))
+                .isInstanceOf(EntityNotFoundException.class);
+    }
+
+    /**
+     * Test that range stats are served by the in-memory index, without repository calls, once it is loaded.
+     */
+    @Test
+    void shouldServeBatteryStatsFromIndexWhenLoaded() {
+        when(batteryRangeIndex.canServe("6000", "6200")).thenReturn(true);
+        when(batteryRangeIndex.aggregateCapacityInRange("6000", "6200", Integer.MIN_VALUE, Integer.MAX_VALUE))
+                .thenReturn(new CapacityAggregate(3L, 45000L));
+        when(batteryRangeIndex.findNamesInRange("6000", "6200", Integer.MIN_VALUE, Integer.MAX_VALUE))
+                .thenReturn(new ArrayList<>(List.of("Battery C", "Battery A", "Battery B")));
+
+        BatteryStatsResponse result = batteryService.getBatteriesInRange("6000", "6200", null, null);
+
+        assertThat(result.getBatteryNames()).containsExactly("Battery A", "Battery B", "Battery C");
+        assertThat(result.getTotalCapacity()).isEqualTo(45000);
+        assertThat(phaseCount(ENDPOINT_RANGE, PHASE_FILTER)).isEqualTo(1);
+        assertThat(phaseCount(ENDPOINT_RANGE, PHASE_SORT)).isEqualTo(1);
+        verifyNoInteractions(batteryRepository);
+    }
+
+    /**
+     * Test that a page returns at most limit names and a cursor pointing at the last one.
+     */
+    @Test
+    void shouldReturnKeysetPageWithNextCursor() {
+        when(batteryRepository.aggregateCapacityInRange("6000", "6200", Integer.MIN_VALUE, Integer.MAX_VALUE))
+                .thenReturn(new CapacityAggregate(3L, 45000L));
+        when(batteryRepository.findPageInRange("6000", "6200", Integer.MIN_VALUE, Integer.MAX_VALUE, "", 0L, Limit.of(3)))
+                .thenReturn(List.of(
+                        new BatteryRow(1L, "Battery A", "6000", 10000),
+                        new BatteryRow(2L, "Battery B", "6100", 15000),
+                        new BatteryRow(3L, "Battery C", "6200", 20000)));
+
+        BatteryStatsResponse result = batteryService.getBatteriesInRange("6000", "6200", null, null, null, 2);
+
+        assertThat(result.getBatteryNames()).containsExactly("Battery A", "Battery B");
+        assertThat(result.getTotalCapacity()).isEqualTo(45000);
+        assertThat(BatteryNameCursor.decode(result.getNextCursor())).isEqualTo(new BatteryNameCursor("Battery B", 2L));
+    }
+
+    /**
+     * Test that the cursor is decoded into the keyset position and the last page has no cursor.
+     */
+    @Test
+    void shouldContinueFromCursorAndEndWithoutNextCursor() {
+        String cursor = new BatteryNameCursor("Battery B", 2L).encode();
+        when(batteryRepository.aggregateCapacityInRange("6000", "6200", Integer.MIN_VALUE, Integer.MAX_VALUE))
+                .thenReturn(new CapacityAggregate(3L, 45000L));
+        when(batteryRepository.findPageInRange("6000", "6200", Integer.MIN_VALUE, Integer.MAX_VALUE, "Battery B", 2L, Limit.of(3)))
+                .thenReturn(List.of(new BatteryRow(3L, "Battery C", "6200", 20000)));
+
+        BatteryStatsResponse result = batteryService.getBatteriesInRange("6000", "6200", null, null, cursor, 2);
+
+        assertThat(result.getBatteryNames()).containsExactly("Battery C");
+        assertThat(result.getNextCursor()).isNull();
+    }
+
+    /**
+     * Test that a malformed cursor is rejected.
+     */
+    @Test
+    void shouldRejectInvalidCursor() {
+        assertThatThrownBy(() -> batteryService.getBatteriesInRange("6000", "6200", null, null, "not-a-cursor", 2))
+                .isInstanceOf(InvalidCursorException.class);
+    }
+
+    /**
+     * Test that streamed names are passed to the consumer in repository order.
+     */
+    @Test
+    void shouldStreamNamesToConsumer() {
+        when(batteryRepository.streamNamesInRange("6000", "6200", Integer.MIN_VALUE, Integer.MAX_VALUE))
+                .thenReturn(Stream.of("Battery A", "Battery B"));
+        List<String> names = new ArrayList<>();
+
+        batteryService.streamBatteryNamesInRange("6000", "6200", null, null, names::add);
+
+        assertThat(names).containsExactly("Battery A", "Battery B");
+    }
+
+    /**
+     * Test that unfiltered range totals come from the per-postcode rollups when they are enabled,
+     * while capacity-filtered totals still read the battery rows.
+     */
+    @Test
+    void shouldAggregateUnfilteredRangesFromRollupsWhenEnabled() {
+        ReflectionTestUtils.setField(batteryService, "rollupsEnabled", true);
+        when(batteryRepository.aggregateCapacityFromRollups("6000", "6200")).thenReturn(new CapacityAggregate(3L, 45000L));
+        when(batteryRepository.aggregateCapacityInRange("6000", "6200", 12000, Integer.MAX_VALUE))
+                .thenReturn(new CapacityAggregate(2L, 35000L));
+
+        CapacityAggregate unfiltered = batteryService.getCapacityInRange("6000", "6200", null, null);
+        CapacityAggregate filtered = batteryService.getCapacityInRange("6000", "6200", 12000L, null);
+
+        assertThat(unfiltered.getTotalCapacity()).isEqualTo(45000);
+        assertThat(filtered.getTotalCapacity()).isEqualTo(35000);
+        verify(batteryRepository, times(1)).aggregateCapacityFromRollups(anyString(), anyString());
+        verify(batteryRepository, never()).aggregateCapacityInRange("6000", "6200", Integer.MIN_VALUE, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Test that a batch of ranges is answered from one span query, with empty statistics for empty ranges.
+     */
+    @Test
+    void shouldReturnStatsForBatchOfRangesFromOneQuery() {
+        when(batteryRepository.findRowsInSpans(List.of(
+                new PostcodeSpan(6000, 6200, Integer.MIN_VALUE, Integer.MAX_VALUE),
+                new PostcodeSpan(7000, 7000, Integer.MIN_VALUE, Integer.MAX_VALUE))))
+                .thenReturn(List.of(
+                        new BatteryRow(3L, "Battery C", "6000", 20000),
+                        new BatteryRow(1L, "Battery A", "6000", 10000),
+                        new BatteryRow(2L, "Battery B", "6100", 15000)));
+
+        List<BatteryStatsResponse> results = batteryService.getBatteriesInRanges(List.of(
+                new BatteryRangeQuery("6000", "6200", null, null),
+                new BatteryRangeQuery("6050", "6150", null, null),
+                new BatteryRangeQuery("6000", "6100", 12000L, null),
+                new BatteryRangeQuery("7000", "7000", null, null)));
+
+        assertThat(results).extracting(BatteryStatsResponse::getBatteryNames).containsExactly(
+                List.of("Battery A", "Battery B", "Battery C"),
+                List.of("Battery B"),
+                List.of("Battery B", "Battery C"),
+                List.of());
+        assertThat(results.get(2).getTotalCapacity()).isEqualTo(35000);
+        assertThat(results.get(2).getAverageCapacity()).isEqualTo(17500.0);
+        assertThat(results.get(3).getAverageCapacity()).isZero();
+        verify(batteryRepository, times(1)).findRowsInSpans(anyList());
+        assertThat(phaseCount(ENDPOINT_RANGE_BATCH, PHASE_DB_FETCH)).isEqualTo(1);
+        assertThat(meterRegistry.get(QUERY_RESPONSE_TIME).tag("endpoint", ENDPOINT_RANGE_BATCH).timer().count()).isEqualTo(1);
+    }
+
+    /**
+     * Test that overlapping spans merge with the loosest capacity bounds, while disjoint and empty spans do not.
+     */
+    @Test
+    void shouldMergeOverlappingSpans() {
+        List<PostcodeSpan> merged = BatteryServiceImpl.mergeOverlapping(List.of(
+                new PostcodeSpan(6100, 6300, 100, 200),
+                new PostcodeSpan(6000, 6100, 50, 150),
+                new PostcodeSpan(6301, 6400, 0, 10),
+                new PostcodeSpan(7000, 6999, 0, 10)));
+
+        assertThat(merged).containsExactly(
+                new PostcodeSpan(6000, 6300, 50, 200),
+                new PostcodeSpan(6301, 6400, 0, 10));
+    }
+
+    /**
+     * Test that the distribution is computed from streamed capacities when the sketches are not loaded.
+     */
+    @Test
+    void shouldComputeDistributionFromStreamedCapacities() {
+        doAnswer(invocation -> {
+            CapacityRowHandler handler = invocation.getArgument(2);
+            for (int i = 1; i <= 100; i++) {
+                handler.accept(i, 6000, i * 100);
+            }
+            return null;
+        }).when(batteryRepository).forEachCapacity(eq("6000"), eq("6200"), any());
+
+        CapacityDistributionResponse response = batteryService.getCapacityDistribution("6000", "6200", List.of(50.0, 99.9), 4);
+
+        assertThat(response.getBatteryCount()).isEqualTo(100);
+        assertThat(response.getMinCapacity()).isEqualTo(100);
+        assertThat(response.getMeanCapacity()).isCloseTo(5050.0, within(50.0));
+        assertThat(response.getPercentiles()).containsOnlyKeys("p50", "p99.9");
+        assertThat(response.getPercentiles().get("p50")).isCloseTo(5000L, within(50L));
+        assertThat(response.getHistogram()).hasSize(4);
+        assertThat(response.getHistogram()).extracting(CapacityDistributionResponse.Bucket::getCount)
+                .containsExactly(25L, 25L, 25L, 25L);
+        assertThat(phaseCount(ENDPOINT_DISTRIBUTION, PHASE_DB_FETCH)).isEqualTo(1);
+        assertThat(meterRegistry.get(QUERY_RESPONSE_TIME).tag("endpoint", ENDPOINT_DISTRIBUTION).timer().count()).isEqualTo(1);
+    }
+
+    /**
+     * Test that the distribution is merged from the sketches without reading rows when they are loaded.
+     */
+    @Test
+    void shouldComputeDistributionFromSketchesWhenLoaded() {
+        Histogram merged = CapacitySketchIndex.newMergedHistogram();
+        merged.recordValue(10000);
+        merged.recordValue(20000);
+        when(capacitySketchIndex.isLoaded()).thenReturn(true);
+        when(capacitySketchIndex.mergeRange("6000", "6200")).thenReturn(merged);
+
+        CapacityDistributionResponse response = batteryService.getCapacityDistribution("6000", "6200", List.of(50.0), 1);
+
+        assertThat(response.getBatteryCount()).isEqualTo(2);
+        assertThat(response.getHistogram()).singleElement()
+                .extracting(CapacityDistributionResponse.Bucket::getCount).isEqualTo(2L);
+        verify(batteryRepository, never()).forEachCapacity(any(), any(), any());
+        assertThat(phaseCount(ENDPOINT_DISTRIBUTION, PHASE_AGGREGATE)).isEqualTo(1);
+    }
+
+    /**
+     * Test that a distribution of a range without batteries is reported as not found.
+     */
+    @Test
+    void shouldThrowWhenNoBatteriesForDistribution() {
+        assertThatThrownBy(() -> batteryService.getCapacityDistribution("7000", "7999", List.of(50.0), 10))
+                .isInstanceOf(EntityNotFoundException.class);
+    }
+
+    /**
+     * Test that a dispatch plan reads the range in place from the index when it can serve the range.
+     */
+    @Test
+    void shouldPlanDispatchFromIndexWhenLoaded() {
+        when(batteryRangeIndex.canServe("6000", "6200")).thenReturn(true);
+        when(batteryRangeIndex.sliceInRange("6000", "6200")).thenReturn(
+                new CapacitySlice(new long[]{1, 2, 3}, new int[]{10000, 15000, 20000}, 0, 3));
+
+        DispatchPlanResponse plan = batteryService.planDispatch(
+                new DispatchPlanRequest("6000", "6200", 25000L, DispatchPlanRequest.Objective.MIN_COUNT));
+
+        assertThat(plan.getBatteryIds()).containsExactly(3L, 1L);
+        assertThat(plan.getPlannedCapacity()).isEqualTo(30000);
+        verify(batteryRepository, never()).forEachCapacity(any(), any(), any());
+        assertThat(phaseCount(ENDPOINT_DISPATCH_PLAN, PHASE_PLAN)).isEqualTo(1);
+        assertThat(meterRegistry.get(QUERY_RESPONSE_TIME).tag("endpoint", ENDPOINT_DISPATCH_PLAN).timer().count()).isEqualTo(1);
+    }
+
+    /**
+     * Test that a dispatch plan streams the range from the repository when the index cannot serve it.
+     */
+    @Test
+    void shouldPlanDispatchFromStreamedCapacities() {
+        doAnswer(invocation -> {
+            CapacityRowHandler handler = invocation.getArgument(2);
+            for (int i = 1; i <= 2000; i++) {
+                handler.accept(i, 6000, i);
+            }
+            return null;
+        }).when(batteryRepository).forEachCapacity(eq("6000"), eq("6200"), any());
+
+        DispatchPlanResponse plan = batteryService.planDispatch(
+                new DispatchPlanRequest("6000", "6200", 3999L, DispatchPlanRequest.Objective.MIN_OVERSHOOT));
+
+        assertThat(plan.getBatteryIds()).containsExactly(2000L, 1999L);
+        assertThat(plan.getOvershoot()).isZero();
+        assertThat(phaseCount(ENDPOINT_DISPATCH_PLAN, PHASE_DB_FETCH)).isEqualTo(1);
+    }
+
+    /**
+     * Test that planning a dispatch from a range without batteries is reported as not found.
+     */
+    @Test
+    void shouldThrowWhenNoBatteriesForDispatch() {
+        assertThatThrownBy(() -> batteryService.planDispatch(
+                new DispatchPlanRequest("7000", "7999", 1000L, DispatchPlanRequest.Objective.MIN_COUNT)))
+                .isInstanceOf(EntityNotFoundException.class);
+    }
+
+    /**
+     * Test that name searches are served by the name index when it is loaded.
+     */
+    @Test
+    void shouldSearchNamesFromIndexWhenLoaded() {
+        List<BatteryRow> matches = List.of(new BatteryRow(1L, "Battery A", "6000", 10000));
+        when(batteryNameIndex.isLoaded()).thenReturn(true);
+        when(batteryNameIndex.search("batt", 5)).thenReturn(matches);
+
+        assertThat(batteryService.searchBatteries("batt", 5)).isEqualTo(matches);
+        verify(batteryRepository, never()).searchByName(any(), any(), any());
+        assertThat(phaseCount(ENDPOINT_SEARCH, PHASE_FILTER)).isEqualTo(1);
+        assertThat(meterRegistry.get(QUERY_RESPONSE_TIME).tag("endpoint", ENDPOINT_SEARCH).timer().count()).isEqualTo(1);
+    }
+
+    /**
+     * Test that without the name index, searches use an escaped LIKE pattern: substring for longer queries,
+     * prefix for shorter ones.
+     */
+    @Test
+    void shouldSearchNamesWithEscapedPatternWhenIndexNotLoaded() {
+        batteryService.searchBatteries(" 50%_A ", 5);
+        batteryService.searchBatteries("B_", 10);
+
+        verify(batteryRepository).searchByName("%50\\%\\_a%", "50\\%\\_a%", Limit.of(5));
+        verify(batteryRepository).searchByName("b\\_%", "b\\_%", Limit.of(10));
+        assertThat(phaseCount(ENDPOINT_SEARCH, PHASE_DB_FETCH)).isEqualTo(2);
+    }
+
+    /**
+     * Test that a radius query reads the spans of the neighbouring postcodes from the database when the
+     * index is not loaded, and returns sorted names with their totals and the number of batteries without a centroid.
+     */
+    @Test
+    void shouldReturnBatteriesWithinRadius() {
+        when(postcodeCentroidIndex.contains("6000")).thenReturn(true);
+        when(postcodeCentroidIndex.postcodesWithoutCentroid()).thenReturn(new int[]{6001, 6002, 6200});
+        when(batteryRepository.countInSpans(List.of(
+                new PostcodeSpan(6001, 6002, 12000, Integer.MAX_VALUE),
+                new PostcodeSpan(6200, 6200, 12000, Integer.MAX_VALUE)))).thenReturn(3L);
+        when(postcodeCentroidIndex.withinRadius("6000", 10.0)).thenReturn(
+                new PostcodeCentroidIndex.Neighbours(new int[]{6000, 6003, 6004, 6100}, new double[]{0, 1, 2, 5}));
+        List<PostcodeSpan> spans = List.of(
+                new PostcodeSpan(6000, 6000, 12000, Integer.MAX_VALUE),
+                new PostcodeSpan(6003, 6004, 12000, Integer.MAX_VALUE),
+                new PostcodeSpan(6100, 6100, 12000, Integer.MAX_VALUE));
+        when(batteryRepository.findRowsInSpans(spans)).thenReturn(List.of(
+                new BatteryRow(4L, "Battery D", "6003", 13000),
+                new BatteryRow(2L, "Battery B", "6100", 15000)));
+
+        BatteryStatsResponse response = batteryService.getBatteriesNear("6000", 10.0, 12000L, null);
+
+        assertThat(response.getBatteryNames()).containsExactly("Battery B", "Battery D");
+        assertThat(response.getTotalCapacity()).isEqualTo(28000);
+        assertThat(response.getAverageCapacity()).isEqualTo(14000.0);
+        assertThat(response.getUnlocatedBatteryCount()).isEqualTo(3L);
+        assertThat(phaseCount(ENDPOINT_NEAR, PHASE_LOCATE)).isEqualTo(1);
+        assertThat(phaseCount(ENDPOINT_NEAR, PHASE_DB_FETCH)).isEqualTo(1);
+    }
+
+    /**
+     * Test that a nearest-battery query reads postcodes nearest first, widens the radius when they run
+     * out, reads from the index when loaded, and orders equally distant batteries by name.
+     */
+    @Test
+    void shouldWidenRadiusForNearestBatteries() {
+        ReflectionTestUtils.setField(batteryService, "nearestInitialRadiusKm", 25.0);
+        when(batteryRangeIndex.canServe("6000", "6000")).thenReturn(true);
+        when(postcodeCentroidIndex.contains("6000")).thenReturn(true);
+        when(postcodeCentroidIndex.postcodesWithoutCentroid()).thenReturn(new int[]{9000});
+        when(batteryRangeIndex.countInSpans(List.of(new PostcodeSpan(9000, 9000, Integer.MIN_VALUE, Integer.MAX_VALUE))))
+                .thenReturn(2L);
+        when(postcodeCentroidIndex.size()).thenReturn(10);
+        when(postcodeCentroidIndex.withinRadius("6000", 25.0)).thenReturn(
+                new PostcodeCentroidIndex.Neighbours(new int[]{6000}, new double[]{0}));
+        when(postcodeCentroidIndex.withinRadius("6000", 50.0)).thenReturn(
+                new PostcodeCentroidIndex.Neighbours(new int[]{6000, 6210, 6003}, new double[]{0, 48, 49}));
+        when(batteryRangeIndex.findRowsInSpans(List.of(new PostcodeSpan(6000, 6000, Integer.MIN_VALUE, Integer.MAX_VALUE))))
+                .thenReturn(List.of(new BatteryRow(1L, "Battery Z", "6000", 10000)));
+        when(batteryRangeIndex.findRowsInSpans(List.of(
+                new PostcodeSpan(6003, 6003, Integer.MIN_VALUE, Integer.MAX_VALUE),
+                new PostcodeSpan(6210, 6210, Integer.MIN_VALUE, Integer.MAX_VALUE))))
+                .thenReturn(List.of(
+                        new BatteryRow(4L, "Battery A", "6003", 40000),
+                        new BatteryRow(3L, "Battery C", "6210", 30000),
+                        new BatteryRow(2L, "Battery B", "6210", 20000)));
+
+        BatteryStatsResponse response = batteryService.getNearestBatteries("6000", 3, null, null);
+
+        assertThat(response.getBatteryNames()).containsExactly("Battery Z", "Battery B", "Battery C");
+        assertThat(response.getTotalCapacity()).isEqualTo(60000);
+        assertThat(response.getUnlocatedBatteryCount()).isEqualTo(2L);
+        assertThat(phaseCount(ENDPOINT_NEAREST, PHASE_LOCATE)).isEqualTo(2);
+        verify(batteryRepository, never()).findRowsInSpans(any());
+        verify(batteryRepository, never()).countInSpans(any());
+    }
+
+    /**
+     * Test that only the first names of the postcode that crosses the limit are kept.
+     */
+    @Test
+    void shouldKeepNearestPostcodesFirst() {
+        List<BatteryRow> rows = new ArrayList<>(List.of(
+                new BatteryRow(1L, "D", "6100", 1),
+                new BatteryRow(2L, "C", "6000", 1),
+                new BatteryRow(3L, "B", "6100", 1),
+                new BatteryRow(4L, "A", "6100", 1),
+                new BatteryRow(5L, "E", "6000", 1)));
+
+        assertThat(BatteryServiceImpl.nearestFirst(rows, new int[]{6000, 6100}, 4))
+                .extracting(BatteryRow::getId).containsExactly(2L, 5L, 4L, 3L);
+        assertThat(BatteryServiceImpl.nearestFirst(rows, new int[]{6100, 6000}, 10))
+                .extracting(BatteryRow::getId).containsExactly(4L, 3L, 1L, 2L, 5L);
+    }
+
+    /**
+     * Test that postcodes without a known centroid are reported as not found.
+     */
+    @Test
+    void shouldThrowWhenPostcodeHasNoCentroid() {
+        assertThatThrownBy(() -> batteryService.getBatteriesNear("9999", 10.0, null, null))
+                .isInstanceOf(EntityNotFoundException.class)
+                .hasMessageContaining("9999");
+        verify(postcodeCentroidIndex, never()).withinRadius(any(), anyDouble());
+    }
+
+    private long phaseCount(String endpoint, String phase) {
+        return meterRegistry.get(PHASE_TIME).tags("endpoint", endpoint, "phase", phase).timer().count();
     }
 }
\ No newline at end of file
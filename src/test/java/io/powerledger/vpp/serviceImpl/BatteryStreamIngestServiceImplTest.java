@@ -0,0 +1,116 @@
+package io.powerledger.vpp.serviceImpl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.powerledger.vpp.dto.StreamIngestSummary;
+import io.powerledger.vpp.model.Battery;
+import io.powerledger.vpp.service.BatteryService;
+import jakarta.validation.Validation;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for {@link BatteryStreamIngestServiceImpl}.
+ */
+class BatteryStreamIngestServiceImplTest {
+
+    private BatteryService batteryService;
+    private BatteryStreamIngestServiceImpl ingestService;
+
+    @BeforeEach
+    void setUp() {
+        batteryService = mock(BatteryService.class);
+        ingestService = new BatteryStreamIngestServiceImpl(batteryService, new ObjectMapper(),
+                Validation.buildDefaultValidatorFactory().getValidator(), new SimpleMeterRegistry(), 2, 100, 80);
+    }
+
+    /**
+     * Test that valid lines are saved in chunks of the configured size.
+     */
+    @Test
+    void shouldSaveValidLinesInChunks() throws IOException {
+        StreamIngestSummary summary = ingestService.ingest(ndjson(
+                "{\"name\":\"Cannington\",\"postcode\":\"6107\",\"capacity\":13500}",
+                "{\"name\":\"Midland\",\"postcode\":\"6057\",\"capacity\":50500}",
+                "",
+                "{\"name\":\"Hay Street\",\"postcode\":\"6000\",\"capacity\":23500}"));
+
+        assertThat(summary.getAccepted()).isEqualTo(3);
+        assertThat(summary.getRejected()).isZero();
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<Battery>> chunks = ArgumentCaptor.forClass(List.class);
+        verify(batteryService, times(2)).saveBatteries(chunks.capture());
+        assertThat(chunks.getAllValues()).extracting(List::size).containsExactly(2, 1);
+    }
+
+    /**
+     * Test that malformed and invalid lines are rejected with their line numbers while the rest are saved.
+     */
+    @Test
+    void shouldRejectMalformedAndInvalidLines() throws IOException {
+        StreamIngestSummary summary = ingestService.ingest(ndjson(
+                "{\"name\":\"Cannington\",\"postcode\":\"6107\",\"capacity\":13500}",
+                "{\"name\":\"Broken\",",
+                "{\"name\":\"Midland\",\"postcode\":\"605\",\"capacity\":50500}"));
+
+        assertThat(summary.getAccepted()).isEqualTo(1);
+        assertThat(summary.getRejected()).isEqualTo(2);
+        assertThat(summary.getErrors()).extracting(StreamIngestSummary.LineError::getLine).containsExactly(2L, 3L);
+        assertThat(summary.getErrors().get(1).getMessage()).contains("Postcode must be a 4-digit number");
+    }
+
+    /**
+     * Test that a chunk that fails to save is counted as rejected without aborting the stream.
+     */
+    @Test
+    void shouldRejectChunkWhenSaveFails() throws IOException {
+        when(batteryService.saveBatteries(anyList()))
+                .thenThrow(new IllegalStateException("database unavailable"))
+                .thenReturn(List.of());
+
+        StreamIngestSummary summary = ingestService.ingest(ndjson(
+                "{\"name\":\"Cannington\",\"postcode\":\"6107\",\"capacity\":13500}",
+                "{\"name\":\"Midland\",\"postcode\":\"6057\",\"capacity\":50500}",
+                "{\"name\":\"Hay Street\",\"postcode\":\"6000\",\"capacity\":23500}"));
+
+        assertThat(summary.getAccepted()).isEqualTo(1);
+        assertThat(summary.getRejected()).isEqualTo(2);
+        assertThat(summary.getErrors()).singleElement()
+                .satisfies(error -> assertThat(error.getLine()).isEqualTo(1))
+                .satisfies(error -> assertThat(error.getMessage()).doesNotContain("database unavailable"));
+    }
+
+    /**
+     * Test that a line longer than the limit is rejected without being buffered whole, and that the
+     * lines after it, including CRLF-terminated ones, are still read.
+     */
+    @Test
+    void shouldRejectLinesLongerThanLimit() throws IOException {
+        String longName = "x".repeat(100_000);
+        StreamIngestSummary summary = ingestService.ingest(ndjson(
+                "{\"name\":\"" + longName + "\",\"postcode\":\"6107\",\"capacity\":13500}",
+                "{\"name\":\"Midland\",\"postcode\":\"6057\",\"capacity\":50500}\r",
+                "{\"name\":\"Hay Street\",\"postcode\":\"6000\",\"capacity\":23500}"));
+
+        assertThat(summary.getAccepted()).isEqualTo(2);
+        assertThat(summary.getRejected()).isEqualTo(1);
+        assertThat(summary.getErrors()).singleElement()
+                .satisfies(error -> assertThat(error.getLine()).isEqualTo(1))
+                .satisfies(error -> assertThat(error.getMessage()).isEqualTo("Line is longer than 80 characters"));
+    }
+
+    private static ByteArrayInputStream ndjson(String... lines) {
+        return new ByteArrayInputStream(String.join("\n", lines).getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,266 @@
+package io.powerledger.vpp.serviceImpl;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.powerledger.vpp.dto.BatteryChange;
+import io.powerledger.vpp.dto.BatteryRangeQuery;
+import io.powerledger.vpp.dto.BatteryStatsDelta;
+import io.powerledger.vpp.dto.BatteryStatsResponse;
+import io.powerledger.vpp.event.BatteriesRegisteredEvent;
+import io.powerledger.vpp.event.BatteriesUpdatedEvent;
+import io.powerledger.vpp.exception.SubscriptionLimitException;
+import io.powerledger.vpp.model.Battery;
+import io.powerledger.vpp.service.BatteryService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for {@link BatterySubscriptionServiceImpl}. Events are sent on the calling thread and
+ * captured from mocked emitters; registrations are delivered by calling the event listeners directly.
+ */
+class BatterySubscriptionServiceImplTest {
+
+    private static final BatteryRangeQuery RANGE = new BatteryRangeQuery("6000", "6099", 10000L, null);
+
+    private BatteryService batteryService;
+    private SimpleMeterRegistry meterRegistry;
+    private BatterySubscriptionServiceImpl subscriptionService;
+
+    @BeforeEach
+    void setUp() {
+        batteryService = mock(BatteryService.class);
+        meterRegistry = new SimpleMeterRegistry();
+        when(batteryService.getBatteriesInRanges(List.of(RANGE)))
+                .thenReturn(List.of(new BatteryStatsResponse(new ArrayList<>(List.of("Cannington", "Midland")), 30000, 15000.0)));
+        subscriptionService = new BatterySubscriptionServiceImpl(batteryService, meterRegistry, 2,
+                Duration.ofMinutes(1), 2, Runnable::run);
+    }
+
+    /**
+     * Test that a subscriber receives the range snapshot, then one delta covering every matching
+     * battery registered before the flush, with the range's new totals.
+     */
+    @Test
+    void shouldSendSnapshotThenCoalescedDelta() throws IOException {
+        SseEmitter emitter = mock(SseEmitter.class);
+        subscriptionService.subscribe(RANGE, emitter);
+
+        register(new Battery(1L, "Perth", "6000", 20000),
+                new Battery(2L, "Albany", "6330", 20000),
+                new Battery(3L, "Small", "6050", 5000));
+        register(new Battery(4L, "Hay Street", "6099", 10000));
+        subscriptionService.flush();
+
+        List<SentEvent> events = sentEvents(emitter);
+        assertThat(events).extracting(SentEvent::name).containsExactly("snapshot", "delta");
+        assertThat(((BatteryStatsResponse) events.get(0).data()).getBatteryNames()).containsExactly("Cannington", "Midland");
+        assertThat(events.get(1).data()).isEqualTo(new BatteryStatsDelta(List.of("Hay Street", "Perth"), 4, 60000, 15000.0));
+        assertThat(meterRegistry.get("batteries.subscriptions.events").tag("type", "delta").counter().count()).isEqualTo(1);
+        verify(batteryService, times(1)).getBatteriesInRanges(anyList());
+    }
+
+    /**
+     * Test that registrations outside the subscribed range send nothing on flush.
+     */
+    @Test
+    void shouldIgnoreRegistrationsOutsideRange() throws IOException {
+        SseEmitter emitter = mock(SseEmitter.class);
+        subscriptionService.subscribe(RANGE, emitter);
+
+        register(new Battery(1L, "Albany", "6330", 20000), new Battery(2L, "Small", "6000", 9999));
+        subscriptionService.flush();
+
+        assertThat(sentEvents(emitter)).extracting(SentEvent::name).containsExactly("snapshot");
+    }
+
+    /**
+     * Test that a registration which started committing before the snapshot was read is not applied
+     * as a delta, since the snapshot may already include it; a fresh snapshot is sent instead.
+     */
+    @Test
+    void shouldResendSnapshotWhenRegistrationMayOverlapIt() throws IOException {
+        BatteriesRegisteredEvent event = new BatteriesRegisteredEvent(List.of(new Battery(1L, "Perth", "6000", 20000)));
+        subscriptionService.beforeBatteriesCommitted(event);
+        SseEmitter emitter = mock(SseEmitter.class);
+        subscriptionService.subscribe(RANGE, emitter);
+
+        subscriptionService.onBatteriesRegistered(event);
+        subscriptionService.flush();
+
+        assertThat(sentEvents(emitter)).extracting(SentEvent::name).containsExactly("snapshot", "snapshot");
+        verify(batteryService, times(2)).getBatteriesInRanges(anyList());
+    }
+
+    /**
+     * Test that a fleet sync moving a battery out of a subscribed range sends a fresh snapshot rather
+     * than a delta, and one leaving other postcodes unchanged sends nothing.
+     */
+    @Test
+    void shouldResendSnapshotWhenSyncChangesRange() throws IOException {
+        SseEmitter emitter = mock(SseEmitter.class);
+        subscriptionService.subscribe(RANGE, emitter);
+
+        subscriptionService.onBatteriesUpdated(new BatteriesUpdatedEvent(List.of(new BatteryChange(
+                new Battery(1L, "Albany", "6330", 20000), new Battery(1L, "Albany", "6331", 25000)))));
+        subscriptionService.flush();
+        subscriptionService.onBatteriesUpdated(new BatteriesUpdatedEvent(List.of(new BatteryChange(
+                new Battery(2L, "Midland", "6056", 20000), new Battery(2L, "Midland", "6330", 20000)))));
+        subscriptionService.flush();
+
+        assertThat(sentEvents(emitter)).extracting(SentEvent::name).containsExactly("snapshot", "snapshot");
+        verify(batteryService, times(2)).getBatteriesInRanges(anyList());
+    }
+
+    /**
+     * Test that idle subscriptions get a heartbeat comment, and nothing is sent without a heartbeat or changes.
+     */
+    @Test
+    void shouldSendHeartbeatToIdleSubscriptions() throws IOException {
+        SseEmitter emitter = mock(SseEmitter.class);
+        subscriptionService.subscribe(RANGE, emitter);
+        subscriptionService.flush();
+        assertThat(sentEvents(emitter)).hasSize(1);
+
+        subscriptionService.heartbeat();
+        subscriptionService.flush();
+
+        assertThat(sentEvents(emitter)).extracting(SentEvent::name).containsExactly("snapshot", ":heartbeat");
+    }
+
+    /**
+     * Test that subscriptions beyond the limit are rejected until one closes.
+     */
+    @Test
+    void shouldRejectSubscriptionsOverLimit() {
+        SseEmitter first = mock(SseEmitter.class);
+        subscriptionService.subscribe(RANGE, first);
+        subscriptionService.subscribe(RANGE, mock(SseEmitter.class));
+
+        assertThatThrownBy(() -> subscriptionService.subscribe(RANGE, mock(SseEmitter.class)))
+                .isInstanceOf(SubscriptionLimitException.class);
+        assertThat(meterRegistry.get("batteries.subscriptions.active").gauge().value()).isEqualTo(2);
+
+        ArgumentCaptor<Runnable> onCompletion = ArgumentCaptor.forClass(Runnable.class);
+        verify(first).onCompletion(onCompletion.capture());
+        onCompletion.getValue().run();
+
+        subscriptionService.subscribe(RANGE, mock(SseEmitter.class));
+        assertThat(subscriptionService.getSubscriberCount()).isEqualTo(2);
+    }
+
+    /**
+     * Test that a subscription whose client has gone is closed when sending to it fails.
+     */
+    @Test
+    void shouldCloseSubscriptionWhenSendFails() throws IOException {
+        SseEmitter emitter = mock(SseEmitter.class);
+        subscriptionService.subscribe(RANGE, emitter);
+        IOException broken = new IOException("Broken pipe");
+        doThrow(broken).when(emitter).send(any(SseEmitter.SseEventBuilder.class));
+
+        register(new Battery(1L, "Perth", "6000", 20000));
+        subscriptionService.flush();
+
+        verify(emitter).completeWithError(broken);
+        assertThat(subscriptionService.getSubscriberCount()).isZero();
+
+        // Later registrations no longer reach it
+        register(new Battery(2L, "Midland", "6056", 20000));
+        subscriptionService.flush();
+        verify(emitter, times(2)).send(any(SseEmitter.SseEventBuilder.class));
+    }
+
+    /**
+     * Test that a fleet sync making many subscriptions due reads each distinct range once per flush, and
+     * never runs more snapshot reads at once than the limit.
+     */
+    @Test
+    void shouldLimitConcurrentSnapshotReadsAfterSync() throws Exception {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        AtomicInteger reads = new AtomicInteger();
+        BatteryService slowService = mock(BatteryService.class);
+        when(slowService.getBatteriesInRanges(anyList())).thenAnswer(invocation -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            reads.incrementAndGet();
+            Thread.sleep(20);
+            running.decrementAndGet();
+            return List.of(new BatteryStatsResponse(new ArrayList<>(List.of("Cannington")), 10000, 10000.0));
+        });
+        try (ExecutorService sender = Executors.newVirtualThreadPerTaskExecutor()) {
+            BatterySubscriptionServiceImpl service = new BatterySubscriptionServiceImpl(slowService, meterRegistry,
+                    200, Duration.ofMinutes(1), 3, sender);
+            List<SseEmitter> emitters = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                // 50 distinct ranges, two subscribers each, all holding postcode 6000
+                SseEmitter emitter = mock(SseEmitter.class);
+                service.subscribe(new BatteryRangeQuery("6000", String.valueOf(6000 + i % 50), null, null), emitter);
+                emitters.add(emitter);
+            }
+            reads.set(0);
+
+            service.onBatteriesUpdated(new BatteriesUpdatedEvent(List.of(new BatteryChange(
+                    new Battery(1L, "Cannington", "6000", 10000), new Battery(1L, "Cannington", "6000", 12000)))));
+            service.flush();
+
+            for (SseEmitter emitter : emitters) {
+                verify(emitter, timeout(5000).times(2)).send(any(SseEmitter.SseEventBuilder.class));
+            }
+        }
+        assertThat(reads.get()).isEqualTo(50);
+        assertThat(maxRunning.get()).isLessThanOrEqualTo(3);
+        assertThat(meterRegistry.get("batteries.subscriptions.events").tag("type", "snapshot").counter().count())
+                .isEqualTo(200);
+    }
+
+    private void register(Battery... batteries) {
+        BatteriesRegisteredEvent event = new BatteriesRegisteredEvent(List.of(batteries));
+        subscriptionService.beforeBatteriesCommitted(event);
+        subscriptionService.onBatteriesRegistered(event);
+    }
+
+    /**
+     * Event name, or the comment text for comments, and data object of every event sent to the emitter.
+     */
+    private static List<SentEvent> sentEvents(SseEmitter emitter) throws IOException {
+        ArgumentCaptor<SseEmitter.SseEventBuilder> sent = ArgumentCaptor.forClass(SseEmitter.SseEventBuilder.class);
+        verify(emitter, atLeast(0)).send(sent.capture());
+        List<SentEvent> events = new ArrayList<>();
+        for (SseEmitter.SseEventBuilder builder : sent.getAllValues()) {
+            String name = null;
+            Object data = null;
+            for (ResponseBodyEmitter.DataWithMediaType part : builder.build()) {
+                if (part.getData() instanceof String text) {
+                    if (text.startsWith("event:")) {
+                        name = text.substring("event:".length(), text.indexOf('\n'));
+                    } else if (text.startsWith(":")) {
+                        name = text.strip();
+                    }
+                } else {
+                    data = part.getData();
+                }
+            }
+            events.add(new SentEvent(name, data));
+        }
+        return events;
+    }
+
+    private record SentEvent(String name, Object data) {
+    }
+}
@@ -0,0 +1,125 @@
+package io.powerledger.vpp.serviceImpl;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.powerledger.vpp.dto.AvailableCapacityResponse;
+import io.powerledger.vpp.dto.TelemetryIngestSummary;
+import io.powerledger.vpp.dto.TelemetryRangeResponse;
+import io.powerledger.vpp.dto.TelemetryReading;
+import io.powerledger.vpp.event.BatteriesRegisteredEvent;
+import io.powerledger.vpp.model.Battery;
+import io.powerledger.vpp.repository.BatteryRepository;
+import io.powerledger.vpp.telemetry.AvailableEnergyTotals;
+import io.powerledger.vpp.telemetry.TelemetryStore;
+import jakarta.persistence.EntityNotFoundException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.List;
+
+import static io.powerledger.vpp.metrics.BatteryMetrics.*;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Unit tests for {@link BatteryTelemetryServiceImpl}, backed by a real {@link TelemetryStore}.
+ */
+class BatteryTelemetryServiceImplTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private BatteryTelemetryServiceImpl telemetryService;
+
+    @BeforeEach
+    void setUp() {
+        AvailableEnergyTotals availableEnergyTotals = new AvailableEnergyTotals();
+        TelemetryStore telemetryStore = new TelemetryStore(mock(BatteryRepository.class), availableEnergyTotals, true, 4);
+        telemetryStore.load();
+        telemetryStore.onBatteriesRegistered(new BatteriesRegisteredEvent(List.of(
+                new Battery(1L, "Cannington", "6107", 10000),
+                new Battery(2L, "Midland", "6056", 20000))));
+        meterRegistry = new SimpleMeterRegistry();
+        telemetryService = new BatteryTelemetryServiceImpl(telemetryStore, availableEnergyTotals, meterRegistry);
+    }
+
+    /**
+     * Test that readings for registered batteries are accepted and the rest rejected and counted.
+     */
+    @Test
+    void shouldIngestReadingsForRegisteredBatteries() {
+        TelemetryIngestSummary summary = telemetryService.ingest(List.of(
+                new TelemetryReading(1L, null, 50f, 1000),
+                new TelemetryReading(2L, Instant.now(), 70f, -500),
+                new TelemetryReading(3L, null, 70f, 0)));
+
+        assertThat(summary.getAccepted()).isEqualTo(2);
+        assertThat(summary.getRejected()).isEqualTo(1);
+        assertThat(meterRegistry.counter("telemetry.readings.rejected").count()).isEqualTo(1);
+        assertThat(meterRegistry.get(PHASE_TIME).tags("endpoint", ENDPOINT_TELEMETRY_INGEST, "phase", PHASE_APPEND)
+                .timer().count()).isEqualTo(1);
+    }
+
+    /**
+     * Test that latest values average across batteries and window values exclude readings older than the window.
+     */
+    @Test
+    void shouldSummarizeRangeOverWindow() {
+        Instant now = Instant.now();
+        telemetryService.ingest(List.of(
+                new TelemetryReading(1L, now.minusSeconds(600), 10f, 100),
+                new TelemetryReading(1L, now.minusSeconds(10), 30f, 300),
+                new TelemetryReading(2L, now.minusSeconds(5), 50f, -100)));
+
+        TelemetryRangeResponse response = telemetryService.getTelemetryInRange("6000", "6199", 60);
+
+        assertThat(response.getReportingBatteries()).isEqualTo(2);
+        assertThat(response.getLatestTimestamp()).isEqualTo(Instant.ofEpochMilli(now.minusSeconds(5).toEpochMilli()));
+        assertThat(response.getLatestAverageStateOfCharge()).isEqualTo(40.0);
+        assertThat(response.getLatestTotalPowerWatts()).isEqualTo(200);
+        assertThat(response.getWindowReadings()).isEqualTo(2);
+        assertThat(response.getWindowAveragePowerWatts()).isEqualTo(100.0);
+        assertThat(meterRegistry.get(QUERY_RESPONSE_TIME).tag("endpoint", ENDPOINT_TELEMETRY_RANGE).timer().count()).isEqualTo(1);
+    }
+
+    /**
+     * Test that a range without reporting batteries is reported as not found.
+     */
+    @Test
+    void shouldThrowWhenNoTelemetryInRange() {
+        assertThatThrownBy(() -> telemetryService.getTelemetryInRange("6000", "6199", 60))
+                .isInstanceOf(EntityNotFoundException.class);
+    }
+
+    /**
+     * Test that available capacity sums each reporting battery's latest state of charge times its capacity.
+     */
+    @Test
+    void shouldReturnAvailableCapacityInRange() {
+        telemetryService.ingest(List.of(
+                new TelemetryReading(1L, null, 10f, 100),
+                new TelemetryReading(1L, null, 50f, 100),
+                new TelemetryReading(2L, null, 25f, -100)));
+
+        AvailableCapacityResponse response = telemetryService.getAvailableCapacityInRange("6000", "6199");
+
+        assertThat(response.getReportingBatteries()).isEqualTo(2);
+        assertThat(response.getReportingCapacity()).isEqualTo(30000);
+        assertThat(response.getAvailableEnergy()).isEqualTo(5000 + 5000);
+        assertThat(meterRegistry.get(QUERY_RESPONSE_TIME).tag("endpoint", ENDPOINT_TELEMETRY_AVAILABLE).timer().count()).isEqualTo(1);
+        assertThatThrownBy(() -> telemetryService.getAvailableCapacityInRange("6200", "6299"))
+                .isInstanceOf(EntityNotFoundException.class);
+    }
+
+    /**
+     * Test that a reversed range has no available capacity, like the database-backed range endpoints.
+     */
+    @Test
+    void shouldThrowForReversedAvailableCapacityRange() {
+        telemetryService.ingest(List.of(
+                new TelemetryReading(1L, null, 50f, 100),
+                new TelemetryReading(2L, null, 25f, -100)));
+
+        assertThatThrownBy(() -> telemetryService.getAvailableCapacityInRange("6199", "6000"))
+                .isInstanceOf(EntityNotFoundException.class);
+    }
+}
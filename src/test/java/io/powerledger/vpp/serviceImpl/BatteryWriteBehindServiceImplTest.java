@@ -0,0 +1,150 @@
+package io.powerledger.vpp.serviceImpl;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.powerledger.vpp.dto.IngestTicket;
+import io.powerledger.vpp.exception.IngestBufferFullException;
+import io.powerledger.vpp.metrics.BatteryMetrics;
+import io.powerledger.vpp.model.Battery;
+import io.powerledger.vpp.service.BatteryService;
+import jakarta.persistence.EntityNotFoundException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for {@link BatteryWriteBehindServiceImpl}. The writer loop is driven directly
+ * through {@code writeNextBatch} instead of the background thread.
+ */
+class BatteryWriteBehindServiceImplTest {
+
+    private BatteryService batteryService;
+    private SimpleMeterRegistry meterRegistry;
+    private BatteryWriteBehindServiceImpl writeBehindService;
+    private final AtomicLong nextId = new AtomicLong(1);
+
+    @BeforeEach
+    void setUp() {
+        batteryService = mock(BatteryService.class);
+        meterRegistry = new SimpleMeterRegistry();
+        // Assign ids the way the repository does
+        when(batteryService.saveBatteries(anyList())).thenAnswer(invocation -> {
+            List<Battery> batteries = invocation.getArgument(0);
+            batteries.forEach(battery -> battery.setId(nextId.getAndIncrement()));
+            return batteries;
+        });
+        writeBehindService = new BatteryWriteBehindServiceImpl(batteryService, meterRegistry, true, 3, 10,
+                Duration.ZERO, Duration.ofMinutes(1), Duration.ofSeconds(1));
+    }
+
+    /**
+     * Test that queued submissions are written in one call and their tickets completed with the generated ids.
+     */
+    @Test
+    void shouldCoalesceSubmissionsIntoOneWrite() throws InterruptedException {
+        IngestTicket first = writeBehindService.submit(batteries("Cannington", "Midland"));
+        IngestTicket second = writeBehindService.submit(batteries("Hay Street"));
+        assertThat(writeBehindService.getTicket(first.getId()).getStatus()).isEqualTo(IngestTicket.Status.PENDING);
+
+        assertThat(writeBehindService.writeNextBatch(1, TimeUnit.SECONDS)).isTrue();
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<Battery>> written = ArgumentCaptor.forClass(List.class);
+        verify(batteryService, times(1)).saveBatteries(written.capture());
+        assertThat(written.getValue()).extracting(Battery::getName).containsExactly("Cannington", "Midland", "Hay Street");
+
+        assertThat(writeBehindService.getTicket(first.getId()).getStatus()).isEqualTo(IngestTicket.Status.COMPLETED);
+        assertThat(writeBehindService.getTicket(first.getId()).getBatteryIds()).containsExactly(1L, 2L);
+        assertThat(writeBehindService.getTicket(second.getId()).getBatteryIds()).containsExactly(3L);
+        assertThat(meterRegistry.get(BatteryMetrics.PHASE_TIME).tag("phase", BatteryMetrics.PHASE_QUEUE).timer().count())
+                .isEqualTo(2);
+        assertThat(meterRegistry.get("batteries.ingest.buffer.size").gauge().value()).isZero();
+    }
+
+    /**
+     * Test that submissions beyond the buffer capacity are rejected until the buffer drains.
+     */
+    @Test
+    void shouldRejectSubmissionsWhenBufferIsFull() throws InterruptedException {
+        writeBehindService.submit(batteries("Cannington", "Midland"));
+
+        assertThatThrownBy(() -> writeBehindService.submit(batteries("Hay Street", "Armadale")))
+                .isInstanceOf(IngestBufferFullException.class);
+        assertThat(meterRegistry.counter("batteries.ingest.rejected").count()).isEqualTo(1);
+
+        writeBehindService.writeNextBatch(1, TimeUnit.SECONDS);
+        assertThat(writeBehindService.submit(batteries("Hay Street", "Armadale")).getStatus())
+                .isEqualTo(IngestTicket.Status.PENDING);
+    }
+
+    /**
+     * Test that a failed coalesced write is retried per submission, failing only the bad one.
+     */
+    @Test
+    void shouldRetrySubmissionsSeparatelyWhenCoalescedWriteFails() throws InterruptedException {
+        List<Battery> bad = batteries("Broken");
+        when(batteryService.saveBatteries(anyList())).thenAnswer(invocation -> {
+            List<Battery> batteries = invocation.getArgument(0);
+            if (batteries.contains(bad.get(0))) {
+                throw new IllegalStateException("constraint violated");
+            }
+            batteries.forEach(battery -> battery.setId(nextId.getAndIncrement()));
+            return batteries;
+        });
+        IngestTicket good = writeBehindService.submit(batteries("Cannington"));
+        IngestTicket failed = writeBehindService.submit(bad);
+
+        writeBehindService.writeNextBatch(1, TimeUnit.SECONDS);
+
+        verify(batteryService, times(3)).saveBatteries(anyList());
+        assertThat(writeBehindService.getTicket(good.getId()).getStatus()).isEqualTo(IngestTicket.Status.COMPLETED);
+        assertThat(writeBehindService.getTicket(failed.getId()).getStatus()).isEqualTo(IngestTicket.Status.FAILED);
+        assertThat(writeBehindService.getTicket(failed.getId()).getError()).isEqualTo("The batteries could not be saved");
+    }
+
+    /**
+     * Test that submissions are rejected once shutdown has begun, while those queued before it are still written.
+     */
+    @Test
+    void shouldRejectSubmissionsAfterStop() throws InterruptedException {
+        IngestTicket queued = writeBehindService.submit(batteries("Cannington"));
+
+        writeBehindService.stop();
+
+        assertThatThrownBy(() -> writeBehindService.submit(batteries("Hay Street")))
+                .isInstanceOf(IngestBufferFullException.class)
+                .hasMessageContaining("shutdown");
+        assertThat(meterRegistry.counter("batteries.ingest.rejected").count()).isEqualTo(1);
+
+        writeBehindService.writeNextBatch(1, TimeUnit.SECONDS);
+        assertThat(writeBehindService.getTicket(queued.getId()).getStatus()).isEqualTo(IngestTicket.Status.COMPLETED);
+        verify(batteryService, times(1)).saveBatteries(anyList());
+    }
+
+    /**
+     * Test that unknown tickets are reported as not found.
+     */
+    @Test
+    void shouldThrowForUnknownTicket() {
+        assertThatThrownBy(() -> writeBehindService.getTicket("missing"))
+                .isInstanceOf(EntityNotFoundException.class);
+    }
+
+    private static List<Battery> batteries(String... names) {
+        List<Battery> batteries = new ArrayList<>();
+        for (String name : names) {
+            batteries.add(new Battery(null, name, "6000", 10000));
+        }
+        return batteries;
+    }
+}
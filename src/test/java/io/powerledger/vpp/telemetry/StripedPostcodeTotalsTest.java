@@ -0,0 +1,73 @@
+package io.powerledger.vpp.telemetry;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Unit tests for {@link StripedPostcodeTotals}.
+ */
+class StripedPostcodeTotalsTest {
+
+    /**
+     * Test that range sums match a direct sum of the postcodes, including the first and last postcodes.
+     */
+    @Test
+    void shouldSumPostcodeRanges() {
+        StripedPostcodeTotals totals = new StripedPostcodeTotals();
+        long[] expected = new long[StripedPostcodeTotals.POSTCODES];
+        for (int postcode = 0; postcode < expected.length; postcode += 7) {
+            totals.add(postcode, postcode);
+            expected[postcode] += postcode;
+        }
+        totals.add(9999, -5);
+        expected[9999] -= 5;
+
+        int[][] ranges = {{0, 0}, {0, 9999}, {6000, 6199}, {7, 7}, {8, 13}, {9990, 9999}};
+        for (int[] range : ranges) {
+            long direct = 0;
+            for (int postcode = range[0]; postcode <= range[1]; postcode++) {
+                direct += expected[postcode];
+            }
+            assertThat(totals.sum(range[0], range[1])).as("%d..%d", range[0], range[1]).isEqualTo(direct);
+        }
+    }
+
+    /**
+     * Test that a range that ends before it starts sums to zero rather than to a negative difference.
+     */
+    @Test
+    void shouldSumReversedRangeToZero() {
+        StripedPostcodeTotals totals = new StripedPostcodeTotals();
+        totals.add(6000, 3);
+        totals.add(6100, 4);
+
+        assertThat(totals.sum(6200, 6000)).isZero();
+        assertThat(totals.sum(6001, 6000)).isZero();
+    }
+
+    /**
+     * Test that concurrent updates to the same postcodes are all counted.
+     */
+    @Test
+    void shouldCountConcurrentUpdates() throws InterruptedException {
+        StripedPostcodeTotals totals = new StripedPostcodeTotals();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        for (int t = 0; t < 4; t++) {
+            executor.execute(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    totals.add(6000 + i % 100, 1);
+                }
+            });
+        }
+        executor.shutdown();
+        assertThat(executor.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+
+        assertThat(totals.sum(6000, 6099)).isEqualTo(40_000);
+        assertThat(totals.sum(6000, 6000)).isEqualTo(400);
+    }
+}
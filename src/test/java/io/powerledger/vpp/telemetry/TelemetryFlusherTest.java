@@ -0,0 +1,71 @@
+package io.powerledger.vpp.telemetry;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.powerledger.vpp.dto.TelemetryBatch;
+import io.powerledger.vpp.repository.BatteryRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for {@link TelemetryFlusher}.
+ */
+class TelemetryFlusherTest {
+
+    private TelemetryStore telemetryStore;
+    private BatteryRepository batteryRepository;
+    private SimpleMeterRegistry meterRegistry;
+    private TelemetryFlusher telemetryFlusher;
+
+    @BeforeEach
+    void setUp() {
+        telemetryStore = mock(TelemetryStore.class);
+        batteryRepository = mock(BatteryRepository.class);
+        meterRegistry = new SimpleMeterRegistry();
+        telemetryFlusher = new TelemetryFlusher(telemetryStore, batteryRepository, meterRegistry, true, 2);
+        // Two batches, with one reading overwritten before the drain
+        when(telemetryStore.drain(any(), anyInt(), any())).thenAnswer(invocation -> {
+            TelemetryBatch batch = invocation.getArgument(0);
+            Consumer<TelemetryBatch> sink = invocation.getArgument(2);
+            batch.add(1L, 1000, 50f, 10);
+            batch.add(2L, 1000, 60f, 20);
+            sink.accept(batch);
+            batch.clear();
+            batch.add(3L, 1000, 70f, 30);
+            sink.accept(batch);
+            return 1L;
+        });
+    }
+
+    /**
+     * Test that drained batches are inserted and persisted and overwritten readings are counted.
+     */
+    @Test
+    void shouldPersistDrainedBatches() {
+        assertThat(telemetryFlusher.flush()).isEqualTo(3);
+
+        verify(batteryRepository, times(2)).insertTelemetry(any());
+        assertThat(meterRegistry.counter("telemetry.readings.persisted").count()).isEqualTo(3);
+        assertThat(meterRegistry.counter("telemetry.readings.dropped").count()).isEqualTo(1);
+    }
+
+    /**
+     * Test that a failed insert drops only its own batch.
+     */
+    @Test
+    void shouldCountFailedBatchAsDropped() {
+        doThrow(new IllegalStateException("database unavailable"))
+                .doNothing()
+                .when(batteryRepository).insertTelemetry(any());
+
+        assertThat(telemetryFlusher.flush()).isEqualTo(1);
+
+        assertThat(meterRegistry.counter("telemetry.readings.dropped").count()).isEqualTo(3);
+    }
+}
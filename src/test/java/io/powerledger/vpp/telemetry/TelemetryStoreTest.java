@@ -0,0 +1,165 @@
+package io.powerledger.vpp.telemetry;
+
+import io.powerledger.vpp.dto.AvailableCapacityResponse;
+import io.powerledger.vpp.dto.BatteryChange;
+import io.powerledger.vpp.dto.TelemetryBatch;
+import io.powerledger.vpp.event.BatteriesRegisteredEvent;
+import io.powerledger.vpp.event.BatteriesUpdatedEvent;
+import io.powerledger.vpp.model.Battery;
+import io.powerledger.vpp.repository.BatteryRepository;
+import io.powerledger.vpp.repository.BatteryRepositoryCustom.CapacityRowHandler;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for {@link TelemetryStore}.
+ */
+class TelemetryStoreTest {
+
+    private AvailableEnergyTotals availableEnergyTotals;
+    private TelemetryStore telemetryStore;
+
+    @BeforeEach
+    void setUp() {
+        BatteryRepository batteryRepository = mock(BatteryRepository.class);
+        doAnswer(invocation -> {
+            CapacityRowHandler handler = invocation.getArgument(2);
+            handler.accept(1L, 6000, 10000);
+            handler.accept(2L, 6100, 20000);
+            handler.accept(3000L, 6100, 30000);
+            return null;
+        }).when(batteryRepository).forEachCapacity(eq("0000"), eq("9999"), any());
+        availableEnergyTotals = new AvailableEnergyTotals();
+        telemetryStore = new TelemetryStore(batteryRepository, availableEnergyTotals, true, 3);
+        telemetryStore.load();
+    }
+
+    /**
+     * Test that only registered batteries accept readings, including batteries registered after the load.
+     */
+    @Test
+    void shouldAcceptReadingsOnlyForRegisteredBatteries() {
+        assertThat(telemetryStore.append(1L, 1000, 50f, 100)).isTrue();
+        assertThat(telemetryStore.append(3000L, 1000, 50f, 100)).isTrue();
+        assertThat(telemetryStore.append(4L, 1000, 50f, 100)).isFalse();
+        assertThat(telemetryStore.append(99_999L, 1000, 50f, 100)).isFalse();
+
+        telemetryStore.onBatteriesRegistered(new BatteriesRegisteredEvent(List.of(new Battery(4L, "Midland", "6056", 5000))));
+
+        assertThat(telemetryStore.append(4L, 1000, 50f, 100)).isTrue();
+        assertThat(telemetryStore.summarize("6056", "6056", 0).getReportingBatteries()).isEqualTo(1);
+    }
+
+    /**
+     * Test that range totals use each battery's latest reading and only the held readings inside the window.
+     */
+    @Test
+    void shouldSummarizeLatestAndWindowReadings() {
+        telemetryStore.append(2L, 1000, 20f, 500);
+        telemetryStore.append(2L, 2000, 40f, -500);
+        telemetryStore.append(3000L, 3000, 80f, 1000);
+        telemetryStore.append(1L, 5000, 90f, 7);
+
+        TelemetryStore.RangeTotals totals = telemetryStore.summarize("6100", "6100", 2000);
+
+        assertThat(totals.getReportingBatteries()).isEqualTo(2);
+        assertThat(totals.getLatestTimestamp()).isEqualTo(3000);
+        assertThat(totals.getLatestStateOfChargeSum()).isEqualTo(120.0);
+        assertThat(totals.getLatestPowerSum()).isEqualTo(500);
+        assertThat(totals.getWindowReadings()).isEqualTo(2);
+        assertThat(totals.getWindowPowerSum()).isEqualTo(500);
+        assertThat(telemetryStore.summarize("7000", "9999", 0).getReportingBatteries()).isZero();
+    }
+
+    /**
+     * Test that the ring buffer keeps only the newest readings.
+     */
+    @Test
+    void shouldOverwriteOldestReadingsWhenRingIsFull() {
+        for (int i = 1; i <= 5; i++) {
+            telemetryStore.append(1L, i * 1000L, i * 10f, i);
+        }
+
+        TelemetryStore.RangeTotals totals = telemetryStore.summarize("6000", "6000", 0);
+
+        assertThat(totals.getWindowReadings()).isEqualTo(3);
+        assertThat(totals.getWindowPowerSum()).isEqualTo(3 + 4 + 5);
+        assertThat(totals.getLatestStateOfChargeSum()).isEqualTo(50.0);
+    }
+
+    /**
+     * Test that a drain hands out each reading once, in batches, and counts readings overwritten before it.
+     */
+    @Test
+    void shouldDrainReadingsAppendedSincePreviousDrain() {
+        for (int i = 1; i <= 5; i++) {
+            telemetryStore.append(1L, i * 1000L, 50f, i);
+        }
+        telemetryStore.append(3000L, 1000, 60f, 9);
+        List<Long> drained = new ArrayList<>();
+        List<Integer> batchSizes = new ArrayList<>();
+
+        long overwritten = telemetryStore.drain(new TelemetryBatch(1), 2, batch -> {
+            batchSizes.add(batch.size());
+            for (int i = 0; i < batch.size(); i++) {
+                drained.add(batch.batteryId(i) * 100 + batch.powerWatts(i));
+            }
+        });
+
+        assertThat(overwritten).isEqualTo(2);
+        assertThat(drained).containsExactly(103L, 104L, 105L, 300009L);
+        assertThat(batchSizes).containsExactly(3, 1);
+
+        telemetryStore.append(1L, 6000, 50f, 6);
+        drained.clear();
+        assertThat(telemetryStore.drain(new TelemetryBatch(1), 2, batch -> drained.add(batch.batteryId(0)))).isZero();
+        assertThat(drained).containsExactly(1L);
+    }
+
+    /**
+     * Test that each reading moves its battery's available energy in the live totals by the change since its previous reading.
+     */
+    @Test
+    void shouldUpdateAvailableEnergyTotalsAsReadingsArrive() {
+        telemetryStore.append(2L, 1000, 20f, 500);
+        telemetryStore.append(2L, 2000, 40f, -500);
+        telemetryStore.append(3000L, 3000, 80f, 1000);
+        telemetryStore.append(4L, 3000, 80f, 1000);
+
+        AvailableCapacityResponse inRange = availableEnergyTotals.availableInRange("6100", "6100");
+
+        assertThat(inRange.getReportingBatteries()).isEqualTo(2);
+        assertThat(inRange.getReportingCapacity()).isEqualTo(50000);
+        assertThat(inRange.getAvailableEnergy()).isEqualTo(8000 + 24000);
+        assertThat(availableEnergyTotals.availableInRange("6000", "6000").getReportingBatteries()).isZero();
+    }
+
+    /**
+     * Test that an updated battery's readings and available energy move to its new postcode at its new capacity.
+     */
+    @Test
+    void shouldMoveUpdatedBatteriesBetweenPostcodes() {
+        telemetryStore.append(2L, 1000, 40f, 500);
+
+        telemetryStore.onBatteriesUpdated(new BatteriesUpdatedEvent(List.of(
+                new BatteryChange(new Battery(2L, "Bentley", "6100", 20000), new Battery(2L, "Bentley", "6000", 30000)),
+                new BatteryChange(new Battery(4L, "Midland", "6056", 5000), new Battery(4L, "Midland", "6056", 6000)))));
+
+        AvailableCapacityResponse moved = availableEnergyTotals.availableInRange("6000", "6000");
+        assertThat(moved.getReportingBatteries()).isEqualTo(1);
+        assertThat(moved.getReportingCapacity()).isEqualTo(30000);
+        assertThat(moved.getAvailableEnergy()).isEqualTo(12000);
+        assertThat(availableEnergyTotals.availableInRange("6100", "6100").getReportingBatteries()).isZero();
+        assertThat(telemetryStore.summarize("6000", "6000", 0).getReportingBatteries()).isEqualTo(1);
+        assertThat(telemetryStore.summarize("6100", "6100", 0).getReportingBatteries()).isZero();
+        assertThat(telemetryStore.append(4L, 2000, 50f, 100)).isTrue();
+    }
+}